@@ -1,5 +1,28 @@
 import { useState, useRef, useCallback } from "react";
 
+// names the frame lists, plus however many it left out
+function describe(names, total, verb) {
+    if (!total) return null;
+    const listed = names ?? [];
+    const others = total - listed.length;
+    const who = listed.join(", ") + (others > 0 ? `${listed.length ? " and " : ""}${others} other${others === 1 ? "" : "s"}` : "");
+    return `${who} ${verb}`;
+}
+
+// presence frames carry who is in a room, not a message; shown as a notice like the old join/leave ones
+function presenceNotice(data) {
+    if (data.snapshot) {
+        return `${data.count} ${data.count === 1 ? "person" : "people"} in ${data.room}`;
+    }
+    const parts = [
+        describe(data.joined, data.joinedCount, "joined"),
+        describe(data.left, data.leftCount, "left"),
+    ].filter(Boolean);
+    return parts.length ? `${data.room}: ${parts.join("; ")}` : null;
+}
+
+let localIds = 0;
+
 export function useWebSocket() {
     const [isConnected, setIsConnected] = useState(false);
     const [messages, setMessages] = useState([]);
@@ -23,6 +46,20 @@ export function useWebSocket() {
 
             ws.onmessage = (event) => {
                 const data = JSON.parse(event.data);
+                if (data.type === "presence") {
+                    const notice = presenceNotice(data);
+                    if (!notice) return;
+                    setMessages((prev) => [
+                        ...prev,
+                        {
+                            id: `presence-${++localIds}`,
+                            type: "system",
+                            message: notice,
+                            timestamp: new Date(),
+                        },
+                    ]);
+                    return;
+                }
                 const newMessage = {
                     id: data.id,
                     type: data.type,
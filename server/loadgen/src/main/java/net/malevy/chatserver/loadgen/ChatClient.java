@@ -0,0 +1,135 @@
+package net.malevy.chatserver.loadgen;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * One simulated user. The JDK client is non-blocking: frames arrive on the client's executor and sends
+ * complete asynchronously. WebSocket allows only one outstanding send, so sends are chained.
+ */
+final class ChatClient implements WebSocket.Listener {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final int index;
+    private final String room;
+    private final String run;
+    private final LoadMetrics metrics;
+    private final StringBuilder partial = new StringBuilder();
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+    private volatile WebSocket socket;
+    private volatile boolean open;
+
+    ChatClient(int index, String room, String run, LoadMetrics metrics) {
+        this.index = index;
+        this.room = room;
+        this.run = run;
+        this.metrics = metrics;
+    }
+
+    int index() {
+        return index;
+    }
+
+    String room() {
+        return room;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    CompletableFuture<ChatClient> connect(HttpClient client, URI endpoint) {
+        final URI uri = URI.create(endpoint + (endpoint.getQuery() == null ? "?" : "&")
+                + "username=lg-" + run + "-" + index + "&room=" + room);
+        return client.newWebSocketBuilder().buildAsync(uri, this).thenApply(ws -> this);
+    }
+
+    void send(String frame) {
+        sendLock.lock();
+        try {
+            lastSend = lastSend.thenCompose(ignored -> socket.sendText(frame, true))
+                    .whenComplete((ws, error) -> {
+                        if (error != null) metrics.sendFailed();
+                    })
+                    .exceptionally(error -> null);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    CompletableFuture<?> close() {
+        final WebSocket ws = socket;
+        if (ws == null || !open) return CompletableFuture.completedFuture(null);
+        // our own close is not a disconnect
+        open = false;
+        return ws.sendClose(WebSocket.NORMAL_CLOSURE, "done").exceptionally(error -> null);
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        socket = webSocket;
+        open = true;
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        final long receivedAt = System.nanoTime();
+        if (!last || !partial.isEmpty()) {
+            partial.append(data);
+            if (last) {
+                received(partial.toString(), receivedAt);
+                partial.setLength(0);
+            }
+        } else {
+            received(data.toString(), receivedAt);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (open) metrics.disconnected(statusCode);
+        open = false;
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        if (open) metrics.disconnected(-1);
+        open = false;
+    }
+
+    private void received(String frame, long receivedAt) {
+        final Probe probe = Probe.parse(messageText(frame), run);
+        if (probe != null) metrics.delivered(probe, receivedAt);
+    }
+
+    // the "message" field of a ChatMessage frame, without binding the rest of it
+    static String messageText(String frame) {
+        try (JsonParser parser = JSON.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                if ("message".equals(field)) return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package net.malevy.chatserver.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Opens the configured number of chat sessions, then sends probes on a fixed schedule (open loop: the
+ * schedule does not slow down when the server does) and records how long each takes to reach every
+ * member of its room. Works against a single node or the load balancer in front of the cluster; with
+ * several urls the sessions are spread over them, so fan-out crosses nodes.
+ */
+public class LoadGenerator {
+
+    private static final Duration DRAIN = Duration.ofSeconds(10);
+
+    private final LoadSettings settings;
+    private final PrintStream out;
+    private final String run;
+    private final LoadMetrics metrics = new LoadMetrics();
+
+    public LoadGenerator(LoadSettings settings, PrintStream out) {
+        this.settings = settings;
+        this.out = out;
+        this.run = Long.toString(System.currentTimeMillis(), 36);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.print(LoadSettings.USAGE);
+            return;
+        }
+        final LoadSettings settings;
+        try {
+            settings = LoadSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadSettings.USAGE);
+            System.exit(2);
+            return;
+        }
+        final LoadReport report = new LoadGenerator(settings, System.out).run();
+        report.print(System.out);
+        System.out.println("report written to " + report.write().toAbsolutePath());
+        System.exit(0);
+    }
+
+    public LoadReport run() throws IOException, InterruptedException {
+        final Instant startedAt = Instant.now();
+        Files.createDirectories(settings.reportDirectory());
+        // the JDK client runs one selector thread per HttpClient; spread the sockets over a few
+        final List<HttpClient> httpClients = new ArrayList<>();
+        for (int i = 0; i < Math.min(settings.connections(), Runtime.getRuntime().availableProcessors()); i++) {
+            httpClients.add(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build());
+        }
+
+        final List<ChatClient> clients = connect(httpClients);
+        final AtomicIntegerArray roomSizes = new AtomicIntegerArray(settings.rooms());
+        for (ChatClient client : clients) {
+            if (client.isOpen()) roomSizes.incrementAndGet(roomIndex(client.index()));
+        }
+        final List<ChatClient> senders = chooseSenders(clients);
+        out.printf("run %s: %d sessions open, %d sending at %.1f msg/s%n", run, openCount(clients), senders.size(), settings.rate());
+
+        final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("loadgen-ticker").daemon().factory());
+        final Histogram total = new Histogram(3);
+        try (PrintStream log = new PrintStream(Files.newOutputStream(settings.reportDirectory().resolve("latency.hlog")))) {
+            final HistogramLogWriter writer = new HistogramLogWriter(log);
+            writer.outputComment("chat loadgen run " + run);
+            writer.outputLogFormatVersion();
+            writer.outputStartTime(startedAt.toEpochMilli());
+            writer.outputLegend();
+            final long logStart = System.currentTimeMillis();
+            final Histogram[] interval = {null};
+            ticker.scheduleAtFixedRate(() -> {
+                synchronized (total) {
+                    interval[0] = metrics.latencyInterval(interval[0]);
+                    if (interval[0].getTotalCount() == 0) return;
+                    interval[0].setStartTimeStamp(interval[0].getStartTimeStamp() - logStart);
+                    interval[0].setEndTimeStamp(interval[0].getEndTimeStamp() - logStart);
+                    writer.outputIntervalHistogram(interval[0]);
+                    total.add(interval[0]);
+                    out.printf("  delivered %d/%d, interval p99 %d us, max %d us%n", metrics.delivered(), metrics.expected(),
+                            interval[0].getValueAtPercentile(99), interval[0].getMaxValue());
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+
+            if (!senders.isEmpty()) send(senders, roomSizes);
+            drain();
+            ticker.shutdown();
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+            synchronized (total) {
+                total.add(metrics.latencyInterval(null));
+            }
+        }
+
+        final int stillOpen = openCount(clients);
+        CompletableFuture.allOf(clients.stream().map(ChatClient::close).toArray(CompletableFuture[]::new))
+                .completeOnTimeout(null, 5, TimeUnit.SECONDS).join();
+        return new LoadReport(settings, run, startedAt, stillOpen, metrics.connectFailures(), metrics.sent(),
+                metrics.sendFailures(), metrics.expected(), metrics.delivered(), metrics.disconnects(), total,
+                metrics.connectTimes());
+    }
+
+    private List<ChatClient> connect(List<HttpClient> httpClients) throws InterruptedException {
+        final List<ChatClient> clients = new ArrayList<>(settings.connections());
+        final Semaphore inFlight = new Semaphore(settings.maxConnectsInFlight());
+        final long spacing = settings.rampUp().toNanos() / settings.connections();
+        final long start = System.nanoTime();
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (int i = 0; i < settings.connections(); i++) {
+            LockSupport.parkNanos(start + i * spacing - System.nanoTime());
+            inFlight.acquire();
+            final ChatClient client = new ChatClient(i, "load-" + roomIndex(i), run, metrics);
+            final URI endpoint = settings.urls().get(i % settings.urls().size());
+            final long began = System.nanoTime();
+            clients.add(client);
+            pending.add(client.connect(httpClients.get(i % httpClients.size()), endpoint).whenComplete((c, error) -> {
+                inFlight.release();
+                if (error == null) {
+                    metrics.connected(System.nanoTime() - began);
+                } else {
+                    metrics.connectFailed();
+                }
+            }).exceptionally(error -> null));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        return clients;
+    }
+
+    private List<ChatClient> chooseSenders(List<ChatClient> clients) {
+        final List<ChatClient> open = new ArrayList<>(clients.stream().filter(ChatClient::isOpen).toList());
+        Collections.shuffle(open, new Random(settings.seed()));
+        return open.subList(0, Math.min(open.size(), settings.sendingConnections()));
+    }
+
+    // probe i is due at start + i / rate; a late loop catches up instead of skipping, like real users would
+    private void send(List<ChatClient> senders, AtomicIntegerArray roomSizes) {
+        final long start = System.nanoTime();
+        final long measureFrom = start + settings.warmup().toNanos();
+        final long end = measureFrom + settings.duration().toNanos();
+        metrics.window(measureFrom, end);
+        final double nanosPerMessage = 1e9 / settings.rate();
+        for (long i = 0; ; i++) {
+            final long intended = start + (long) (i * nanosPerMessage);
+            if (intended - end >= 0) break;
+            final long wait = intended - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            final ChatClient sender = senders.get((int) (i % senders.size()));
+            if (!sender.isOpen()) continue;
+            final String text = new Probe(run, sender.index(), i, intended).encode(settings.messageBytes());
+            if (metrics.inWindow(intended)) metrics.sent(roomSizes.get(roomIndex(sender.index())));
+            sender.send("{\"type\":\"message\",\"room\":\"" + sender.room() + "\",\"message\":\"" + text + "\"}");
+        }
+    }
+
+    private void drain() {
+        final long deadline = System.nanoTime() + DRAIN.toNanos();
+        while (metrics.delivered() < metrics.expected() && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    private int roomIndex(int connection) {
+        return connection % settings.rooms();
+    }
+
+    private static int openCount(List<ChatClient> clients) {
+        return (int) clients.stream().filter(ChatClient::isOpen).count();
+    }
+}
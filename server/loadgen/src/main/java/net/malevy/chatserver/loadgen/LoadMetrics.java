@@ -0,0 +1,103 @@
+package net.malevy.chatserver.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and histograms shared by every client. Latencies are recorded in microseconds, from the
+ * probe's intended send time to the moment a receiver saw it, and only for probes scheduled inside the
+ * measurement window, so warm-up traffic never reaches the report.
+ */
+final class LoadMetrics {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder latency = new Recorder(HIGHEST_MICROS, 3);
+    private final Recorder connectTimes = new Recorder(HIGHEST_MICROS, 3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder expected = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final Map<Integer, LongAdder> disconnects = new ConcurrentHashMap<>();
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    void window(long startNanos, long endNanos) {
+        windowEnd = endNanos;
+        windowStart = startNanos;
+    }
+
+    boolean inWindow(long nanos) {
+        return nanos - windowStart >= 0 && nanos - windowEnd < 0;
+    }
+
+    void connected(long nanos) {
+        connectTimes.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_MICROS));
+    }
+
+    void connectFailed() {
+        connectFailures.increment();
+    }
+
+    // called for every probe sent inside the window, with the number of sessions it should reach
+    void sent(int recipients) {
+        sent.increment();
+        expected.add(recipients);
+    }
+
+    void sendFailed() {
+        sendFailures.increment();
+    }
+
+    void delivered(Probe probe, long receivedAt) {
+        if (!inWindow(probe.intendedNanos())) return;
+        delivered.increment();
+        final long micros = TimeUnit.NANOSECONDS.toMicros(receivedAt - probe.intendedNanos());
+        latency.recordValue(Math.max(0, Math.min(micros, HIGHEST_MICROS)));
+    }
+
+    void disconnected(int statusCode) {
+        disconnects.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+    }
+
+    Histogram latencyInterval(Histogram recycle) {
+        return latency.getIntervalHistogram(recycle);
+    }
+
+    Histogram connectTimes() {
+        return connectTimes.getIntervalHistogram();
+    }
+
+    long sent() {
+        return sent.sum();
+    }
+
+    long expected() {
+        return expected.sum();
+    }
+
+    long delivered() {
+        return delivered.sum();
+    }
+
+    long sendFailures() {
+        return sendFailures.sum();
+    }
+
+    long connectFailures() {
+        return connectFailures.sum();
+    }
+
+    Map<Integer, Long> disconnects() {
+        final Map<Integer, Long> counts = new TreeMap<>();
+        disconnects.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,108 @@
+package net.malevy.chatserver.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The outcome of one run: report.json next to the latency.hlog written while it ran
+record LoadReport(
+        LoadSettings settings,
+        String run,
+        Instant startedAt,
+        int connected,
+        long connectFailures,
+        long sent,
+        long sendFailures,
+        long expectedDeliveries,
+        long delivered,
+        Map<Integer, Long> disconnects,
+        Histogram latency,
+        Histogram connectTimes) {
+
+    double achievedRate() {
+        return sent / (settings.duration().toNanos() / 1e9);
+    }
+
+    double lossRatio() {
+        return expectedDeliveries == 0 ? 0 : 1 - (double) delivered / expectedDeliveries;
+    }
+
+    Path write() throws IOException {
+        Files.createDirectories(settings.reportDirectory());
+        final Path file = settings.reportDirectory().resolve("report.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), toMap());
+        return file;
+    }
+
+    void print(PrintStream out) {
+        out.printf("run %s: %d/%d connected (%d failed) over %d url(s)%n",
+                run, connected, settings.connections(), connectFailures, settings.urls().size());
+        out.printf("sent %d at %.1f msg/s (target %.1f), %d send failures%n", sent, achievedRate(), settings.rate(), sendFailures);
+        out.printf("delivered %d of %d expected (%.4f%% lost)%n", delivered, expectedDeliveries, lossRatio() * 100);
+        out.printf("fan-out latency us: p50 %d  p90 %d  p99 %d  p99.9 %d  p99.99 %d  max %d%n",
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(90), latency.getValueAtPercentile(99),
+                latency.getValueAtPercentile(99.9), latency.getValueAtPercentile(99.99), latency.getMaxValue());
+        out.printf("connect us: p50 %d  p99 %d  max %d%n",
+                connectTimes.getValueAtPercentile(50), connectTimes.getValueAtPercentile(99), connectTimes.getMaxValue());
+        if (!disconnects.isEmpty()) out.printf("disconnects by close code: %s%n", disconnects);
+    }
+
+    private Map<String, Object> toMap() {
+        final Map<String, Object> config = new LinkedHashMap<>();
+        config.put("urls", settings.urls().stream().map(Object::toString).toList());
+        config.put("connections", settings.connections());
+        config.put("rooms", settings.rooms());
+        config.put("senders", settings.sendingConnections());
+        config.put("rate", settings.rate());
+        config.put("rampUp", settings.rampUp().toString());
+        config.put("warmup", settings.warmup().toString());
+        config.put("duration", settings.duration().toString());
+        config.put("messageBytes", settings.messageBytes());
+        config.put("maxConnectsInFlight", settings.maxConnectsInFlight());
+        config.put("seed", settings.seed());
+
+        final Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("java", System.getProperty("java.vm.name") + " " + Runtime.version());
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+        environment.put("processors", Runtime.getRuntime().availableProcessors());
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("run", run);
+        report.put("startedAt", startedAt.toString());
+        report.put("settings", config);
+        report.put("environment", environment);
+        report.put("connected", connected);
+        report.put("connectFailures", connectFailures);
+        report.put("sent", sent);
+        report.put("achievedRate", achievedRate());
+        report.put("sendFailures", sendFailures);
+        report.put("expectedDeliveries", expectedDeliveries);
+        report.put("delivered", delivered);
+        report.put("lossRatio", lossRatio());
+        report.put("disconnects", disconnects);
+        report.put("latencyMicros", summary(latency));
+        report.put("connectMicros", summary(connectTimes));
+        return report;
+    }
+
+    private static Map<String, Object> summary(Histogram histogram) {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("min", histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue());
+        summary.put("mean", histogram.getMean());
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            summary.put("p" + (percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile)),
+                    histogram.getValueAtPercentile(percentile));
+        }
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+}
@@ -0,0 +1,108 @@
+package net.malevy.chatserver.loadgen;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Everything that determines a run. It is written into the report as-is, so the same arguments (and
+ * seed) reproduce the same connections, rooms and send schedule.
+ */
+public record LoadSettings(
+        List<URI> urls,
+        int connections,
+        int rooms,
+        int senders,
+        double rate,
+        Duration rampUp,
+        Duration warmup,
+        Duration duration,
+        int messageBytes,
+        int maxConnectsInFlight,
+        long seed,
+        Path reportDirectory) {
+
+    static final String USAGE = """
+            usage: loadgen [options]
+              --url <ws://host:port/chat>[,<url>...]  endpoints; connections are spread round-robin (ws://localhost:8080/chat)
+              --connections <n>                       concurrent WebSocket sessions (100)
+              --rooms <n>                             rooms the connections are spread over (1)
+              --senders <n>                           connections that send; 0 means all (0)
+              --rate <msgs/s>                         total send rate across all senders (100)
+              --ramp-up <duration>                    time over which connections are opened (10s)
+              --warmup <duration>                     sending before latencies are recorded (10s)
+              --duration <duration>                   measured sending time (60s)
+              --message-bytes <n>                     minimum size of the message text (64)
+              --max-connects <n>                      handshakes in flight at once (200)
+              --seed <n>                              seeds the choice of senders (42)
+              --report <dir>                          where report.json and latency.hlog go (build/loadgen)
+            durations accept 500ms, 10s, 2m or ISO-8601 (PT10S)
+            """;
+
+    public LoadSettings {
+        Objects.requireNonNull(urls, "urls cannot be null");
+        if (urls.isEmpty()) throw new IllegalArgumentException("at least one url is required");
+        if (connections < 1) throw new IllegalArgumentException("connections must be at least 1");
+        if (rooms < 1 || rooms > connections) throw new IllegalArgumentException("rooms must be between 1 and connections");
+        if (senders < 0 || senders > connections) throw new IllegalArgumentException("senders must be between 0 and connections");
+        if (!(rate > 0)) throw new IllegalArgumentException("rate must be positive");
+        Objects.requireNonNull(rampUp, "rampUp cannot be null");
+        Objects.requireNonNull(warmup, "warmup cannot be null");
+        Objects.requireNonNull(duration, "duration cannot be null");
+        if (messageBytes < 0) throw new IllegalArgumentException("messageBytes cannot be negative");
+        if (maxConnectsInFlight < 1) throw new IllegalArgumentException("maxConnectsInFlight must be at least 1");
+        Objects.requireNonNull(reportDirectory, "reportDirectory cannot be null");
+        urls = List.copyOf(urls);
+    }
+
+    public int sendingConnections() {
+        return senders == 0 ? connections : senders;
+    }
+
+    public static LoadSettings parse(String... args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            final String name = args[i];
+            if (!name.startsWith("--")) throw new IllegalArgumentException("unexpected argument " + name);
+            if (i + 1 == args.length) throw new IllegalArgumentException("missing value for " + name);
+            options.put(name.substring(2), args[++i]);
+        }
+        final LoadSettings settings = new LoadSettings(
+                Arrays.stream(take(options, "url", "ws://localhost:8080/chat").split(",")).map(String::trim).map(URI::create).toList(),
+                Integer.parseInt(take(options, "connections", "100")),
+                Integer.parseInt(take(options, "rooms", "1")),
+                Integer.parseInt(take(options, "senders", "0")),
+                Double.parseDouble(take(options, "rate", "100")),
+                duration(take(options, "ramp-up", "10s")),
+                duration(take(options, "warmup", "10s")),
+                duration(take(options, "duration", "60s")),
+                Integer.parseInt(take(options, "message-bytes", "64")),
+                Integer.parseInt(take(options, "max-connects", "200")),
+                Long.parseLong(take(options, "seed", "42")),
+                Path.of(take(options, "report", "build/loadgen")));
+        if (!options.isEmpty()) throw new IllegalArgumentException("unknown option(s) " + options.keySet());
+        return settings;
+    }
+
+    static Duration duration(String value) {
+        if (value.startsWith("P") || value.startsWith("p")) return Duration.parse(value);
+        if (value.endsWith("ms")) return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        final long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            default -> throw new IllegalArgumentException("cannot parse duration " + value);
+        };
+    }
+
+    private static String take(Map<String, String> options, String name, String fallback) {
+        final String value = options.remove(name);
+        return value == null ? fallback : value;
+    }
+}
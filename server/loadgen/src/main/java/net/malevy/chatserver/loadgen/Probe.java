@@ -0,0 +1,41 @@
+package net.malevy.chatserver.loadgen;
+
+/*
+ * The text a load generator message carries: "lg <run> <sender> <sequence> <intended send nanos>" plus
+ * padding. The timestamp is the time the message was scheduled for, not when it went out, so a stalled
+ * sender shows up as latency instead of being hidden (coordinated omission). nanoTime is only compared
+ * within this process, which both sends and receives.
+ */
+public record Probe(String run, int sender, long sequence, long intendedNanos) {
+
+    private static final String PREFIX = "lg ";
+
+    public String encode(int minimumLength) {
+        final StringBuilder text = new StringBuilder(Math.max(minimumLength, 64))
+                .append(PREFIX).append(run)
+                .append(' ').append(sender)
+                .append(' ').append(sequence)
+                .append(' ').append(intendedNanos)
+                .append(' ');
+        while (text.length() < minimumLength) text.append('x');
+        return text.toString();
+    }
+
+    // null for anything that is not a probe from this run, e.g. join notices or another generator's traffic
+    public static Probe parse(String text, String run) {
+        if (text == null || !text.startsWith(PREFIX) || !text.startsWith(run, PREFIX.length())) return null;
+        int start = PREFIX.length() + run.length();
+        if (text.length() <= start || text.charAt(start) != ' ') return null;
+        try {
+            final int senderEnd = text.indexOf(' ', ++start);
+            final int sender = Integer.parseInt(text, start, senderEnd, 10);
+            final int sequenceEnd = text.indexOf(' ', senderEnd + 1);
+            final long sequence = Long.parseLong(text, senderEnd + 1, sequenceEnd, 10);
+            final int nanosEnd = text.indexOf(' ', sequenceEnd + 1);
+            final long nanos = Long.parseLong(text, sequenceEnd + 1, nanosEnd < 0 ? text.length() : nanosEnd, 10);
+            return new Probe(run, sender, sequence, nanos);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.malevy.chatserver.loadgen;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadSettingsTest {
+
+    @Nested
+    @DisplayName("parse method")
+    class ParseTest {
+
+        @Test
+        @DisplayName("should fall back to the defaults")
+        void shouldFallBackToDefaults() {
+            // When
+            LoadSettings settings = LoadSettings.parse();
+
+            // Then
+            assertEquals(List.of(URI.create("ws://localhost:8080/chat")), settings.urls());
+            assertEquals(100, settings.connections());
+            assertEquals(100, settings.sendingConnections());
+            assertEquals(Duration.ofSeconds(60), settings.duration());
+            assertEquals(Path.of("build/loadgen"), settings.reportDirectory());
+        }
+
+        @Test
+        @DisplayName("should read every option")
+        void shouldReadEveryOption() {
+            // When
+            LoadSettings settings = LoadSettings.parse(
+                    "--url", "ws://node-1:8080/chat, ws://node-2:8080/chat",
+                    "--connections", "2000", "--rooms", "10", "--senders", "200", "--rate", "2000",
+                    "--ramp-up", "30s", "--warmup", "500ms", "--duration", "2m", "--message-bytes", "256",
+                    "--max-connects", "50", "--seed", "7", "--report", "out");
+
+            // Then
+            assertEquals(List.of(URI.create("ws://node-1:8080/chat"), URI.create("ws://node-2:8080/chat")), settings.urls());
+            assertEquals(2000, settings.connections());
+            assertEquals(10, settings.rooms());
+            assertEquals(200, settings.sendingConnections());
+            assertEquals(2000.0, settings.rate());
+            assertEquals(Duration.ofSeconds(30), settings.rampUp());
+            assertEquals(Duration.ofMillis(500), settings.warmup());
+            assertEquals(Duration.ofMinutes(2), settings.duration());
+            assertEquals(256, settings.messageBytes());
+            assertEquals(50, settings.maxConnectsInFlight());
+            assertEquals(7, settings.seed());
+            assertEquals(Path.of("out"), settings.reportDirectory());
+        }
+
+        @Test
+        @DisplayName("should reject unknown options and impossible values")
+        void shouldRejectUnknownOptionsAndImpossibleValues() {
+            assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--connection", "10"));
+            assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--rate"));
+            assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--rate", "0"));
+            assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--connections", "5", "--rooms", "6"));
+            assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--duration", "10x"));
+        }
+
+        @Test
+        @DisplayName("should accept ISO-8601 durations")
+        void shouldAcceptIsoDurations() {
+            assertEquals(Duration.ofSeconds(90), LoadSettings.duration("PT1M30S"));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.malevy.chatserver.loadgen;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeTest {
+
+    @Test
+    @DisplayName("should round-trip through the message text, padding included")
+    void shouldRoundTrip() {
+        // Given
+        Probe probe = new Probe("abc", 12, 34_567, -9_876_543_210L);
+
+        // When
+        String text = probe.encode(128);
+
+        // Then
+        assertEquals(128, text.length());
+        assertEquals(probe, Probe.parse(text, "abc"));
+    }
+
+    @Test
+    @DisplayName("should ignore other runs and ordinary messages")
+    void shouldIgnoreOtherTraffic() {
+        String text = new Probe("abc", 1, 2, 3).encode(0);
+
+        assertNull(Probe.parse(text, "ab"));
+        assertNull(Probe.parse(text, "xyz"));
+        assertNull(Probe.parse("alice joined the room", "abc"));
+        assertNull(Probe.parse("lg abc not numbers", "abc"));
+        assertNull(Probe.parse(null, "abc"));
+    }
+
+    @Test
+    @DisplayName("should pull the message text out of a chat frame")
+    void shouldExtractMessageText() {
+        String frame = "{\"id\":\"1\",\"type\":\"message\",\"meta\":{\"message\":\"nested\"},\"message\":\"lg abc 1 2 3 \",\"room\":\"r\"}";
+
+        assertEquals("lg abc 1 2 3 ", ChatClient.messageText(frame));
+        assertNull(ChatClient.messageText("{\"type\":\"system\"}"));
+        assertNull(ChatClient.messageText("not json"));
+    }
+}
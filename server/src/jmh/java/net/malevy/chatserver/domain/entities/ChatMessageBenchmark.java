@@ -0,0 +1,67 @@
+package net.malevy.chatserver.domain.entities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The per-message construction cost on the send path: populateFrom runs for every inbound message,
+ * create/createSystemMessage for every server-generated one. A client that leaves id and timestamp
+ * out pays for a random UUID and a clock read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMessageBenchmark {
+
+    private ChatMessage complete;
+    private ChatMessage bare;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        complete = new ChatMessage();
+        complete.setId("3f2c4a1e-8d5b-4c6f-9e7a-1b2c3d4e5f60");
+        complete.setType("message");
+        complete.setMessage("benchmark message");
+        complete.setTimestamp(Instant.parse("2025-01-01T00:00:00Z"));
+        complete.setRoom("lobby");
+
+        bare = new ChatMessage();
+        bare.setType("message");
+        bare.setMessage("benchmark message");
+    }
+
+    @Benchmark
+    public ChatMessage populateFromComplete() {
+        return ChatMessage.populateFrom(complete, "alice", MessageIdGenerator.RANDOM);
+    }
+
+    @Benchmark
+    public ChatMessage populateFromBare() {
+        return ChatMessage.populateFrom(bare, "alice", MessageIdGenerator.RANDOM);
+    }
+
+    @Benchmark
+    public ChatMessage create() {
+        return ChatMessage.create("benchmark message", "alice", MessageIdGenerator.RANDOM);
+    }
+
+    @Benchmark
+    public ChatMessage createSystemMessage() {
+        return ChatMessage.createSystemMessage("alice joined", "lobby", MessageIdGenerator.RANDOM);
+    }
+}
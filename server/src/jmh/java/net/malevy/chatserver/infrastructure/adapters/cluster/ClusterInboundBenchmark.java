@@ -0,0 +1,97 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.dispatch.ShardedRoomExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Inbound cluster throughput of one node without Redis: the listener is fed BATCH pub/sub messages
+ * spread over 64 rooms, as the connection thread would, and the invocation ends when the shards have
+ * decoded, filtered and delivered all of them. The score is the time per message; its inverse is
+ * the rate the node can absorb from the cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterInboundBenchmark {
+
+    private static final int BATCH = 4096;
+    private static final int ROOMS = 64;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private final Message[] messages = new Message[ROOMS];
+    private CountingSessionManager sessionManager;
+    private ShardedRoomExecutor executor;
+    private ClusterMessageListener listener;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final HybridLogicalClock clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), registry);
+        sessionManager = new CountingSessionManager();
+        executor = new ShardedRoomExecutor(shards, BATCH, BATCH, registry);
+        executor.start();
+        listener = new ClusterMessageListener(new RedisMessageListenerContainer(), codec, sessionManager,
+                new NodeIdentifier("this-node"), new ChannelTopic("chat:messages"), new RoomTopics("chat:room:"), new NodeTopics("chat:node:"),
+                clock, new ReorderBuffer(sessionManager, executor, clock, new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)),
+                registry), executor, registry);
+        for (int i = 0; i < ROOMS; i++) {
+            final ChatMessage message = ChatMessage.create("benchmark message", "alice", MessageIdGenerator.RANDOM);
+            message.setRoom("room-" + i);
+            message.setNodeId("other-node");
+            message.setHlc(clock.now());
+            messages[i] = new DefaultMessage(("chat:room:room-" + i).getBytes(StandardCharsets.UTF_8),
+                    codec.encode(message).payload());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long receiveBatch() {
+        final long target = sessionManager.received() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            listener.onMessage(messages[i % ROOMS], null);
+        }
+        while (sessionManager.received() < target) Thread.onSpinWait();
+        return sessionManager.received();
+    }
+}
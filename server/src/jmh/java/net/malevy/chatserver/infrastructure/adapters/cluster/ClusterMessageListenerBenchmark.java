@@ -0,0 +1,95 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What a node spends on each message that arrives over pub/sub before it reaches the session manager:
+ * decoding the routing fields and the same-node check. The session manager only counts, so this is
+ * the listener alone; BroadcastBenchmark covers the fan-out after it. The bare cases are frames from
+ * nodes that predate the envelope; onOwnEnvelopedMessage is the header-only drop that replaced the
+ * decode for this node's own echoes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterMessageListenerBenchmark {
+
+    private ClusterMessageListener listener;
+    private CountingSessionManager sessionManager;
+    private Message remote;
+    private Message own;
+    private Message ownEnveloped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        sessionManager = new CountingSessionManager();
+        final HybridLogicalClock clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), new SimpleMeterRegistry());
+        listener = new ClusterMessageListener(new RedisMessageListenerContainer(), codec, sessionManager,
+                new NodeIdentifier("this-node"), new ChannelTopic("chat:messages"), new RoomTopics("chat:room:"), new NodeTopics("chat:node:"),
+                clock, new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock, new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)),
+                new SimpleMeterRegistry()), RoomExecutor.INLINE, new SimpleMeterRegistry());
+        remote = messageFrom(codec, "other-node");
+        own = messageFrom(codec, "this-node");
+        final NodeIdentifier self = new NodeIdentifier("this-node");
+        ownEnveloped = new DefaultMessage(own.getChannel(),
+                new ClusterEnvelope(0).seal(self.shortId(), clock.now(), "lobby", own.getBody()));
+    }
+
+    private static Message messageFrom(ChatMessageCodec codec, String nodeId) throws IOException {
+        final ChatMessage message = ChatMessage.create("benchmark message", "alice", MessageIdGenerator.RANDOM);
+        message.setRoom("lobby");
+        message.setNodeId(nodeId);
+        return new DefaultMessage("chat:room:lobby".getBytes(StandardCharsets.UTF_8), codec.encode(message).payload());
+    }
+
+    @Benchmark
+    public long onMessage() {
+        listener.onMessage(remote, null);
+        return sessionManager.received();
+    }
+
+    // echoes of this node's own messages are dropped after the decode
+    @Benchmark
+    public long onOwnMessage() {
+        listener.onMessage(own, null);
+        return sessionManager.received();
+    }
+
+    @Benchmark
+    public long onOwnEnvelopedMessage() {
+        listener.onMessage(ownEnveloped, null);
+        return sessionManager.received();
+    }
+}
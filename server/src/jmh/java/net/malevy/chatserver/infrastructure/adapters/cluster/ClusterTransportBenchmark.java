@@ -0,0 +1,143 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.config.RedisConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pub/sub vs streams between two "nodes" in one JVM, through a real Redis (-Dredis.host / -Dredis.port,
+ * default localhost:6379). roundTrip publishes one message and waits for the other node to hand it to
+ * its sessions, so its sample distribution is the end-to-end latency (see p0.99 / p0.999); burst sends
+ * 1000 back to back and waits for the last, which is the sustainable throughput.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterTransportBenchmark {
+
+    private static final String CHANNEL = "bench:chat:messages";
+    private static final int BURST = 1000;
+
+    @Param({"pubsub", "streams"})
+    public String transport;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisPublishPipeline pipeline;
+    private RedisMessageListenerContainer container;
+    private StreamMessageListener streamListener;
+    private final CountingSessionManager receiver = new CountingSessionManager();
+    private byte[] payload;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final RedisConfig redisConfig = new RedisConfig();
+        connectionFactory = (LettuceConnectionFactory) redisConfig.redisConnectionFactory(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        final RedisTemplate<String, byte[]> template = redisConfig.redisTemplate(connectionFactory);
+        template.delete(CHANNEL);
+
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        final ChatMessage message = ChatMessage.create("benchmark message", "bench", MessageIdGenerator.RANDOM);
+        message.setNodeId("publisher");
+        payload = codec.encode(message).payload();
+
+        final StreamSettings streamSettings = new StreamSettings(100_000, 256, Duration.ofMillis(100), Duration.ofSeconds(1), 0);
+        final ChannelTopic topic = new ChannelTopic(CHANNEL);
+        final NodeIdentifier receiverNode = new NodeIdentifier("receiver");
+        final HybridLogicalClock clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), new SimpleMeterRegistry());
+        final ReorderBuffer reorderBuffer = new ReorderBuffer(receiver, RoomExecutor.INLINE, clock,
+                new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)), new SimpleMeterRegistry());
+        final PipelinedCommand command;
+        switch (transport) {
+            case "pubsub" -> {
+                command = PipelinedCommand.PUBLISH;
+                container = new RedisMessageListenerContainer();
+                container.setConnectionFactory(connectionFactory);
+                container.afterPropertiesSet();
+                container.start();
+                new ClusterMessageListener(container, codec, receiver, receiverNode, topic, new RoomTopics("bench:room:"), new NodeTopics("bench:node:"),
+                        clock, reorderBuffer, RoomExecutor.INLINE, new SimpleMeterRegistry()).init();
+            }
+            case "streams" -> {
+                command = PipelinedCommand.xadd(streamSettings.maxLength());
+                streamListener = new StreamMessageListener(new RedisChatStreams(connectionFactory), codec, receiver,
+                        receiverNode, topic, new RoomTopics("bench:room:"), new NodeTopics("bench:node:"), streamSettings, clock, reorderBuffer, RoomExecutor.INLINE,
+                        new SimpleMeterRegistry());
+                streamListener.start();
+            }
+            default -> throw new IllegalArgumentException("unknown transport " + transport);
+        }
+        pipeline = new RedisPublishPipeline(template, new PublishPipelineSettings(64, Duration.ofNanos(200_000), 100_000),
+                command, new SimpleMeterRegistry());
+        pipeline.start();
+        // give the pub/sub subscription time to become active before anything is published
+        Thread.sleep(500);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pipeline.stop();
+        if (container != null) container.destroy();
+        if (streamListener != null) streamListener.stop();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip() {
+        pipeline.publish(CHANNEL, payload);
+        return awaitReceived(++sent);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public long burst() {
+        for (int i = 0; i < BURST; i++) {
+            pipeline.publish(CHANNEL, payload);
+        }
+        sent += BURST;
+        return awaitReceived(sent);
+    }
+
+    private long awaitReceived(long expected) {
+        long received;
+        while ((received = receiver.received()) < expected) {
+            Thread.onSpinWait();
+        }
+        return received;
+    }
+}
@@ -0,0 +1,82 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A receiving node's sessions for the benchmarks: every room has members, and broadcasts are only counted
+class CountingSessionManager implements SessionManager {
+
+    private final AtomicLong received = new AtomicLong();
+
+    long received() {
+        return received.get();
+    }
+
+    @Override
+    public void broadcast(EncodedChatMessage message) {
+        received.incrementAndGet();
+    }
+
+    @Override
+    public void broadcast(ChatMessage message) {
+        received.incrementAndGet();
+    }
+
+    @Override
+    public void send(WebSocketSession session, ChatMessage message) {
+        received.incrementAndGet();
+    }
+
+    @Override
+    public void send(WebSocketSession session, EncodedChatMessage message) {
+        received.incrementAndGet();
+    }
+
+    @Override
+    public boolean hasMembers(String room) {
+        return true;
+    }
+
+    @Override
+    public boolean isOnline(String username) {
+        return true;
+    }
+
+    @Override
+    public void addSession(WebSocketSession session) {
+    }
+
+    @Override
+    public void addResumingSession(WebSocketSession session) {
+    }
+
+    @Override
+    public int resume(WebSocketSession session, String lastMessageId) {
+        return 0;
+    }
+
+    @Override
+    public Set<String> removeSession(WebSocketSession session) {
+        return Set.of();
+    }
+
+    @Override
+    public boolean joinRoom(WebSocketSession session, String room) {
+        return false;
+    }
+
+    @Override
+    public boolean leaveRoom(WebSocketSession session, String room) {
+        return false;
+    }
+
+    @Override
+    public boolean isMember(WebSocketSession session, String room) {
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Append throughput of the mapped history log with the background flusher running, the way a node
+ * records every broadcast. The target is well above 100k appends per second on one thread.
+ * Small segments and a low maxSegments keep the benchmark rolling and deleting as it goes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageHistoryBenchmark {
+
+    private Path directory;
+    private MappedLogMessageHistory history;
+    private EncodedChatMessage message;
+    private long from;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history-bench");
+        history = new MappedLogMessageHistory(new HistorySettings(
+                directory, 16 * 1024 * 1024, 4096, Duration.ofMillis(50), 4, Duration.ofDays(1)), Clock.systemUTC());
+        final String json = "{\"id\":\"bench\",\"type\":\"message\",\"room\":\"lobby\",\"message\":\"benchmark message\"}";
+        message = new EncodedChatMessage("bench", "message", "lobby", "node-1", json.getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 10_000; i++) {
+            history.append(message);
+        }
+        from = history.nextOffset() - 256;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        history.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        return history.append(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long appendContended() {
+        return history.append(message);
+    }
+
+    // payloads are only touched, never copied
+    @Benchmark
+    public long readLast256() {
+        final long[] bytes = {0};
+        history.read(from, (offset, timestamp, room, type, payload) -> {
+            bytes[0] += payload.remaining();
+            return true;
+        });
+        return bytes[0];
+    }
+}
@@ -0,0 +1,80 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.adapters.history.DisabledMessageHistory;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One broadcast to a room of N stub sessions, including the write to every session (the writer runs
+ * inline). broadcastMessage encodes first, as a local send does; broadcastEncoded starts from bytes
+ * already on hand, as a message arriving from the cluster does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    private static final String ROOM = "lobby";
+
+    @Param({"10", "100", "1000"})
+    public int sessions;
+
+    private WebSocketSessionManager manager;
+    private ChatMessage message;
+    private EncodedChatMessage encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        manager = new WebSocketSessionManager(
+                codec,
+                new OutboundQueueSettings(256, OverflowPolicy.DROP_OLDEST, Set.of("system"), Duration.ofSeconds(10)),
+                Runnable::run,
+                new ReplayBuffer(4096),
+                new DisabledMessageHistory(),
+                MessageIdGenerator.RANDOM,
+                new SimpleMeterRegistry());
+        for (int i = 0; i < sessions; i++) {
+            final StubWebSocketSession session = new StubWebSocketSession("member-" + i);
+            manager.addSession(session);
+            manager.joinRoom(session, ROOM);
+        }
+        message = ChatMessage.create("benchmark message", "bench", MessageIdGenerator.RANDOM);
+        message.setRoom(ROOM);
+        encoded = codec.encode(message);
+    }
+
+    @Benchmark
+    public void broadcastMessage() {
+        manager.broadcast(message);
+    }
+
+    @Benchmark
+    public void broadcastEncoded() {
+        manager.broadcast(encoded);
+    }
+}
@@ -0,0 +1,121 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/*
+ * What permessage-deflate costs one broadcast to a room of N sessions, compressing the way Tomcat's
+ * PerMessageDeflate does (raw deflate, default level, sync flush, 15-bit window):
+ *   takeover    - every session keeps its own window between messages (the default)
+ *   no-takeover - every session compresses each message from scratch (server_no_context_takeover)
+ *   shared      - one compression per broadcast reused for every session; what no-takeover would
+ *                 cost if the container let a pre-compressed frame through, which Tomcat does not
+ * The compressed size relative to the JSON frames is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeflateBenchmark {
+
+    private static final String[] USERS = {"alice", "bob", "carol", "dave", "erin", "frank"};
+    private static final String[] WORDS = {"hey", "anyone", "seen", "the", "build", "is", "green", "again", "lunch",
+            "deploy", "at", "noon", "thanks", "lgtm", "merging", "now", "who", "broke", "staging", "ok", "brb", "yes"};
+
+    @Param({"10", "100", "1000"})
+    public int roomSize;
+
+    @Param({"takeover", "no-takeover", "shared"})
+    public String mode;
+
+    private byte[][] frames;
+    private Deflater[] deflaters;
+    private byte[] out;
+    private int next;
+    private long rawBytes;
+    private long compressedBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        final Random random = new Random(42);
+        frames = new byte[1024][];
+        for (int i = 0; i < frames.length; i++) {
+            final StringBuilder text = new StringBuilder();
+            for (int w = 3 + random.nextInt(10); w > 0; w--) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            final ChatMessage message = ChatMessage.create(text.toString().trim(), USERS[random.nextInt(USERS.length)], MessageIdGenerator.RANDOM);
+            message.setRoom("lobby");
+            message.setNodeId("node-1");
+            frames[i] = codec.encode(message).payload();
+        }
+        deflaters = new Deflater[mode.equals("shared") ? 1 : roomSize];
+        for (int i = 0; i < deflaters.length; i++) {
+            deflaters[i] = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        out = new byte[64 * 1024];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Deflater deflater : deflaters) {
+            deflater.end();
+        }
+        System.out.printf("%n%s, room of %d: %.1f%% of the JSON bytes on the wire%n",
+                mode, roomSize, 100.0 * compressedBytes / rawBytes);
+    }
+
+    @Benchmark
+    public int broadcast() {
+        final byte[] frame = frames[next++ & (frames.length - 1)];
+        int sent = 0;
+        if (mode.equals("shared")) {
+            final int compressed = compress(deflaters[0], frame, true);
+            for (int i = 0; i < roomSize; i++) {
+                sent += compressed;
+            }
+        } else {
+            final boolean reset = mode.equals("no-takeover");
+            for (Deflater deflater : deflaters) {
+                sent += compress(deflater, frame, reset);
+            }
+        }
+        rawBytes += (long) frame.length * roomSize;
+        compressedBytes += sent;
+        return sent;
+    }
+
+    // one message, flushed to a byte boundary; the trailing 00 00 ff ff is not sent (RFC 7692)
+    private int compress(Deflater deflater, byte[] frame, boolean reset) {
+        deflater.setInput(frame);
+        int written = 0;
+        do {
+            written += deflater.deflate(out, written, out.length - written, Deflater.SYNC_FLUSH);
+        } while (!deflater.needsInput() || written == out.length);
+        if (reset) deflater.reset();
+        return written - 4;
+    }
+}
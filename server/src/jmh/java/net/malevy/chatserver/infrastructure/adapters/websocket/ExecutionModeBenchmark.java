@@ -0,0 +1,133 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.adapters.history.DisabledMessageHistory;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Platform vs virtual outbound writers with a large idle population and a busy room. Every active
+ * session's send blocks for sendMicros, standing in for a socket write to a real peer; one op is a
+ * message to the active room and lasts until all of its members have been written to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final String IDLE_ROOM = "idle";
+    private static final String ACTIVE_ROOM = "active";
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"50000"})
+    public int idle;
+
+    @Param({"5000"})
+    public int active;
+
+    @Param({"100"})
+    public int sendMicros;
+
+    // matches chat.outbound.writer-threads
+    @Param({"8"})
+    public int writerThreads;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private ExecutorService writer;
+    private WebSocketSessionManager manager;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        writer = switch (mode) {
+            case "platform" -> Executors.newFixedThreadPool(writerThreads,
+                    Thread.ofPlatform().name("ws-writer-", 0).daemon().factory());
+            case "virtual" -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-writer-", 0).factory());
+            default -> throw new IllegalArgumentException("unknown mode " + mode);
+        };
+        manager = new WebSocketSessionManager(
+                new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper()),
+                new OutboundQueueSettings(256, OverflowPolicy.DROP_OLDEST, Set.of("system"), Duration.ofSeconds(10)),
+                writer,
+                new ReplayBuffer(4096),
+                new DisabledMessageHistory(),
+                MessageIdGenerator.RANDOM,
+                new SimpleMeterRegistry());
+        for (int i = 0; i < idle; i++) {
+            StubWebSocketSession session = new StubWebSocketSession("idle-" + i);
+            manager.addSession(session);
+            manager.joinRoom(session, IDLE_ROOM);
+        }
+        final long sendNanos = TimeUnit.MICROSECONDS.toNanos(sendMicros);
+        for (int i = 0; i < active; i++) {
+            StubWebSocketSession session = new BlockingSession("active-" + i, sendNanos, delivered);
+            manager.addSession(session);
+            manager.joinRoom(session, ACTIVE_ROOM);
+        }
+        message = ChatMessage.create("benchmark message", "bench", MessageIdGenerator.RANDOM);
+        message.setRoom(ACTIVE_ROOM);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Benchmark
+    public long fanOutToActiveRoom() {
+        final long target = delivered.get() + active;
+        manager.broadcast(message);
+        while (delivered.get() < target) {
+            LockSupport.parkNanos(10_000);
+        }
+        return target;
+    }
+
+    private static final class BlockingSession extends StubWebSocketSession {
+
+        private final long sendNanos;
+        private final AtomicLong delivered;
+
+        BlockingSession(String id, long sendNanos, AtomicLong delivered) {
+            super(id);
+            this.sendNanos = sendNanos;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            LockSupport.parkNanos(sendNanos);
+            super.sendMessage(message);
+            delivered.incrementAndGet();
+        }
+    }
+}
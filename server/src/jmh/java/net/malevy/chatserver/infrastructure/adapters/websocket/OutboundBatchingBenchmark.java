@@ -0,0 +1,89 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A burst of messages reaching one session's queue before its writer gets to it, as in a busy room,
+ * then the drain that writes them out. Each sendMessage is one write to the socket, so the frames
+ * counter is the syscalls a burst costs: one per message for the plain formats, one per batchSize
+ * messages for the .batch ones. The time is per burst and includes building the batch frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutboundBatchingBenchmark {
+
+    @Param({"chat.json", "chat.json.batch", "chat.cbor", "chat.cbor.batch"})
+    public String subprotocol;
+
+    @Param({"1", "16", "128"})
+    public int burst;
+
+    // the writer pool, held back until the whole burst is queued
+    private final ArrayDeque<Runnable> writes = new ArrayDeque<>();
+    private StubWebSocketSession session;
+    private SessionOutbound outbound;
+    private OutboundMessage message;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Writes {
+        public long frames;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        session = new StubWebSocketSession("member", URI.create("ws://localhost:8080/chat?username=member"), subprotocol);
+        outbound = new SessionOutbound(session,
+                new OutboundQueueSettings(256, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10), 32, Duration.ZERO),
+                writes::add, new OutboundMetrics(new SimpleMeterRegistry()));
+        final ChatMessage chat = ChatMessage.create("benchmark message", "bench", MessageIdGenerator.RANDOM);
+        chat.setRoom("lobby");
+        final byte[] payload = codec.encode(chat).payload();
+        message = new OutboundMessage("message", new TextMessage(payload), OutboundMessage.UNSEQUENCED, new BinaryFrame(payload, codec));
+    }
+
+    @Benchmark
+    public long offerAndDrain(Writes counters) {
+        final long before = session.sent();
+        for (int i = 0; i < burst; i++) {
+            outbound.offer(message);
+        }
+        Runnable drain;
+        while ((drain = writes.poll()) != null) {
+            drain.run();
+        }
+        final long written = session.sent() - before;
+        counters.frames += written;
+        return written;
+    }
+}
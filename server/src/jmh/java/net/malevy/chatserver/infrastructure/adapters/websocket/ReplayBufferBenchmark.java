@@ -0,0 +1,65 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of recording a broadcast in the replay ring, and of building a replay from it.
+ * Run with -prof gc to confirm append allocates nothing (gc.alloc.rate.norm ~ 0 B/op).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBufferBenchmark {
+
+    @Param({"4096"})
+    public int capacity;
+
+    private ReplayBuffer buffer;
+    private TextMessage frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = new ReplayBuffer(capacity);
+        frame = new TextMessage("{\"id\":\"bench\",\"type\":\"message\",\"message\":\"benchmark message\"}");
+        for (int i = 0; i < capacity; i++) {
+            buffer.append("id-" + i, i % 2 == 0 ? "lobby" : "random", "message", frame);
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        return buffer.append("bench", "lobby", "message", frame);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long appendContended() {
+        return buffer.append("bench", "lobby", "message", frame);
+    }
+
+    // a client that missed the last 256 messages in one of two busy rooms
+    @Benchmark
+    public List<OutboundMessage> replayLast256() {
+        final long through = buffer.lastSequence();
+        return buffer.between(through - 256, through, "lobby"::equals);
+    }
+}
@@ -0,0 +1,91 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.adapters.history.DisabledMessageHistory;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Join/leave and fan-out throughput of the session registry with 10k-100k registered sessions.
+ * The "storm" group runs joins and leaves on three threads while a fourth keeps broadcasting,
+ * which is the reconnect-storm shape that used to serialize on the synchronized list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionRegistryBenchmark {
+
+    @Param({"10000", "50000", "100000"})
+    public int sessions;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private WebSocketSessionManager manager;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new WebSocketSessionManager(
+                new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper()),
+                new OutboundQueueSettings(256, OverflowPolicy.DROP_OLDEST, Set.of("system"), Duration.ofSeconds(10)),
+                Runnable::run,
+                new ReplayBuffer(4096),
+                new DisabledMessageHistory(),
+                MessageIdGenerator.RANDOM,
+                new SimpleMeterRegistry());
+        for (int i = 0; i < sessions; i++) {
+            manager.addSession(new StubWebSocketSession("resident-" + i));
+        }
+        message = ChatMessage.create("benchmark message", "bench", MessageIdGenerator.RANDOM);
+    }
+
+    @Benchmark
+    public int joinLeave() {
+        StubWebSocketSession session = new StubWebSocketSession("transient-" + nextId.incrementAndGet());
+        manager.addSession(session);
+        manager.removeSession(session);
+        return manager.sessionCount();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        manager.broadcast(message);
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(3)
+    public int stormJoinLeave() {
+        return joinLeave();
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(1)
+    public void stormBroadcast() {
+        manager.broadcast(message);
+    }
+}
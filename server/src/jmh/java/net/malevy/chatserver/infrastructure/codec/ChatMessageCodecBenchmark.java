@@ -0,0 +1,136 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Jackson with the application's ObjectMapperConfig mapper: the full round trip of a ChatMessage,
+ * against wrap(), which only pulls the routing fields out of an encoded payload. readInbound binds a
+ * client frame with the mapper, as WebsocketConnectionHandler used to, and readInboundCbor the same for
+ * a client that negotiated the CBOR subprotocol; the streamed variants are InboundMessageReader, which
+ * the handler uses now. The rejected pairs are a frame whose message text is over the limit: the mapper
+ * has to build the whole thing before anything can look at it, the reader stops at its length. Run with
+ * -prof gc to see the allocation per frame. toCbor is paid once per broadcast when any CBOR session
+ * receives it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMessageCodecBenchmark {
+
+    private ObjectMapper mapper;
+    private ChatMessageCodec codec;
+    private ChatMessage message;
+    private EncodedChatMessage encoded;
+    private String inbound;
+    private ObjectMapper cborMapper;
+    private byte[] inboundCbor;
+    private InboundMessageReader reader;
+    private String oversized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mapper = new ObjectMapperConfig().buildObjectMapper();
+        codec = new ChatMessageCodec(mapper);
+        message = ChatMessage.create("benchmark message", "alice", MessageIdGenerator.RANDOM);
+        message.setRoom("lobby");
+        message.setNodeId("node-1");
+        encoded = codec.encode(message);
+        inbound = new String(encoded.payload(), StandardCharsets.UTF_8);
+        cborMapper = mapper.copyWith(new CBORFactory());
+        inboundCbor = codec.toCbor(encoded.payload());
+        reader = new InboundMessageReader(new InboundMessageLimits(8192, 4000, 128));
+        oversized = mapper.writeValueAsString(ChatMessage.create("x".repeat(8000), "alice", MessageIdGenerator.RANDOM));
+        System.out.printf("%nframe size: json %d bytes, cbor %d bytes%n", encoded.payload().length, inboundCbor.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public String serializeToString() throws IOException {
+        return mapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public ChatMessage deserialize() throws IOException {
+        return mapper.readValue(encoded.payload(), ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage readInbound() throws IOException {
+        return mapper.readValue(inbound, ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage readInboundCbor() throws IOException {
+        return cborMapper.readValue(inboundCbor, ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage readInboundStreamed() throws IOException {
+        return reader.readJson(inbound);
+    }
+
+    @Benchmark
+    public ChatMessage readInboundCborStreamed() throws IOException {
+        return reader.readCbor(ByteBuffer.wrap(inboundCbor));
+    }
+
+    @Benchmark
+    public ChatMessage rejectOversized() throws IOException {
+        final ChatMessage read = mapper.readValue(oversized, ChatMessage.class);
+        if (read.getMessage().length() > 4000) return null;
+        return read;
+    }
+
+    @Benchmark
+    public RejectedMessageException rejectOversizedStreamed() {
+        try {
+            reader.readJson(oversized);
+            return null;
+        } catch (RejectedMessageException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public byte[] toCbor() throws IOException {
+        return codec.toCbor(encoded.payload());
+    }
+
+    @Benchmark
+    public EncodedChatMessage encode() throws IOException {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public EncodedChatMessage wrap() throws IOException {
+        return codec.wrap(encoded.payload());
+    }
+}
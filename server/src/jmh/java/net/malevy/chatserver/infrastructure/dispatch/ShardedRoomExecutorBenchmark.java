@@ -0,0 +1,77 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * How room work scales with the shard count: one invocation spreads BATCH tasks over 64 rooms and
+ * waits until all have run. Each task burns about as much CPU as encoding and fanning out a message
+ * to a small room, so with enough rooms the time per task should fall close to 1/shards until the
+ * shards outnumber the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedRoomExecutorBenchmark {
+
+    private static final int BATCH = 4096;
+    private static final int ROOMS = 64;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"2000"})
+    public int work;
+
+    private final String[] rooms = new String[ROOMS];
+    private final AtomicInteger done = new AtomicInteger();
+    private ShardedRoomExecutor executor;
+    private Runnable task;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < ROOMS; i++) rooms[i] = "room-" + i;
+        executor = new ShardedRoomExecutor(shards, BATCH, BATCH, new SimpleMeterRegistry());
+        executor.start();
+        task = () -> {
+            Blackhole.consumeCPU(work);
+            done.incrementAndGet();
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int runBatch() {
+        done.set(0);
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(rooms[i % ROOMS], task);
+        }
+        while (done.get() < BATCH) Thread.onSpinWait();
+        return done.get();
+    }
+}
@@ -0,0 +1,59 @@
+package net.malevy.chatserver.infrastructure.ids;
+
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Message ids as the send path produces them: a random UUID string against a snowflake id, as the raw
+ * long and as its 13-character string. The contended variants share one generator between four
+ * threads, which is what the writer pool does under load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private final SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(1, Clock.systemUTC());
+
+    @Benchmark
+    public String uuid() {
+        return MessageIdGenerator.RANDOM.next();
+    }
+
+    @Benchmark
+    public long snowflakeId() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    public String snowflake() {
+        return snowflake.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String uuidContended() {
+        return MessageIdGenerator.RANDOM.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String snowflakeContended() {
+        return snowflake.next();
+    }
+}
@@ -3,5 +3,6 @@ package net.malevy.chatserver.application.ports;
 import net.malevy.chatserver.domain.entities.ChatMessage;
 
 public interface MessageBroadcaster {
-    void  broadcast(ChatMessage message);
+    // false when the message was refused, its room being too busy, and will not be delivered
+    boolean broadcast(ChatMessage message);
 }
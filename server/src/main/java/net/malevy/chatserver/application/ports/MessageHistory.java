@@ -0,0 +1,34 @@
+package net.malevy.chatserver.application.ports;
+
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+public interface MessageHistory {
+
+    long NO_OFFSET = -1L;
+
+    // returns the offset the message was stored at
+    long append(EncodedChatMessage message);
+
+    // hands the message to the history's own writer instead of appending on the caller's thread; false when
+    // the writer has fallen too far behind and the message will not be kept
+    boolean offer(EncodedChatMessage message);
+
+    // offset of the first message stored at or after the instant, or NO_OFFSET if there is none
+    long offsetAt(Instant instant);
+
+    // visits messages from the offset on, oldest first, until the visitor returns false
+    void read(long fromOffset, Visitor visitor);
+
+    // visits messages from the newest back, until the visitor returns false
+    void readBackward(Visitor visitor);
+
+    @FunctionalInterface
+    interface Visitor {
+        // type is the frame's type as it was first delivered; payload is a read-only view of the stored bytes
+        // and is only valid during the call
+        boolean visit(long offset, long timestamp, String room, String type, ByteBuffer payload);
+    }
+}
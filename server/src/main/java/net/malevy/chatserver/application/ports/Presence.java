@@ -0,0 +1,9 @@
+package net.malevy.chatserver.application.ports;
+
+import org.springframework.web.socket.WebSocketSession;
+
+public interface Presence {
+    // both are called after local membership actually changed; the joining session is sent who is there
+    void joined(WebSocketSession session, String username, String room);
+    void left(String username, String room);
+}
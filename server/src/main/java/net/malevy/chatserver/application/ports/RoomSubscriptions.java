@@ -0,0 +1,6 @@
+package net.malevy.chatserver.application.ports;
+
+public interface RoomSubscriptions {
+    // called after local membership of a room changes; subscribes or unsubscribes to match
+    void reconcile(String room);
+}
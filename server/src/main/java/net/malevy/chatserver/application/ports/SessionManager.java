@@ -1,10 +1,32 @@
 package net.malevy.chatserver.application.ports;
 
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Set;
+
 public interface SessionManager {
     void addSession(WebSocketSession session);
-    void removeSession(WebSocketSession session);
+    // nothing is written to a resuming session until resume() has replayed what it missed
+    void addResumingSession(WebSocketSession session);
+    // replays buffered messages after lastMessageId for the session's rooms, then goes live;
+    // returns how many were replayed
+    int resume(WebSocketSession session, String lastMessageId);
+    // returns the rooms the session was a member of, or null when it had already been removed
+    Set<String> removeSession(WebSocketSession session);
+    // both return true only when membership actually changed
+    boolean joinRoom(WebSocketSession session, String room);
+    boolean leaveRoom(WebSocketSession session, String room);
+    boolean isMember(WebSocketSession session, String room);
+    boolean hasMembers(String room);
+    // true while the user has at least one session on this node
+    boolean isOnline(String username);
+    // delivers to the recipient's sessions for a direct message, otherwise to the members of the
+    // message's room, or to every session when it has no room
     void broadcast(ChatMessage message);
+    void broadcast(EncodedChatMessage message);
+    // delivers to the one session only, outside the replay buffer and history
+    void send(WebSocketSession session, ChatMessage message);
+    void send(WebSocketSession session, EncodedChatMessage message);
 }
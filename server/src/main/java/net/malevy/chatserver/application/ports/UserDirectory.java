@@ -0,0 +1,8 @@
+package net.malevy.chatserver.application.ports;
+
+public interface UserDirectory {
+    // called after a user's local sessions change; announces or withdraws this node as holding the user
+    void reconcile(String username);
+    // how many nodes, this one included, hold sessions for a user connected here; at least 1
+    int nodesHolding(String username);
+}
@@ -0,0 +1,74 @@
+package net.malevy.chatserver.application.usecases;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+// A page of a room's stored messages, oldest first, for a member of the room; sent as they were first delivered.
+// The log holds every room's messages, so a request looks at no more than maxScan of them to fill its page
+@Component
+@Slf4j
+public class FetchHistoryUseCase {
+    private final SessionManager sessionManager;
+    private final MessageHistory history;
+    private final int pageSize;
+    private final int maxScan;
+
+    public FetchHistoryUseCase(SessionManager sessionManager,
+                               MessageHistory history,
+                               @Value("${chat.history.page-size:100}") int pageSize,
+                               @Value("${chat.history.max-scan:10000}") int maxScan) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager");
+        this.history = Objects.requireNonNull(history, "history");
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be at least 1");
+        if (maxScan < pageSize) throw new IllegalArgumentException("maxScan must be at least pageSize");
+        this.pageSize = pageSize;
+        this.maxScan = maxScan;
+    }
+
+    private record Stored(String type, byte[] payload) {
+    }
+
+    // since null sends the latest page
+    public void run(WebSocketSession session, String room, Instant since) {
+        Objects.requireNonNull(session, "session");
+        Objects.requireNonNull(room, "room");
+        if (!sessionManager.isMember(session, room)) {
+            log.warn("{} asked for the history of {} without being a member; request dropped", session.getId(), room);
+            return;
+        }
+        // the stored bytes are only valid during the visit, so the page is copied out before anything is sent
+        final List<Stored> page = new ArrayList<>(pageSize);
+        final int[] scanned = {0};
+        final MessageHistory.Visitor collect = (offset, timestamp, stored, type, payload) -> {
+            if (room.equals(stored)) {
+                final byte[] copy = new byte[payload.remaining()];
+                payload.get(copy);
+                page.add(new Stored(type, copy));
+            }
+            return page.size() < pageSize && ++scanned[0] < maxScan;
+        };
+        if (since == null) {
+            history.readBackward(collect);
+            Collections.reverse(page);
+        } else {
+            final long from = history.offsetAt(since);
+            if (from == MessageHistory.NO_OFFSET) return;
+            history.read(from, collect);
+        }
+        for (Stored stored : page) {
+            sessionManager.send(session, new EncodedChatMessage(null, stored.type(), room, null, stored.payload()));
+        }
+        log.debug("Sent {} stored messages of {} to {}", page.size(), room, session.getId());
+    }
+}
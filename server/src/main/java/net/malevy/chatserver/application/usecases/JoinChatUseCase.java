@@ -1,27 +1,46 @@
 package net.malevy.chatserver.application.usecases;
 
 import lombok.extern.slf4j.Slf4j;
-import net.malevy.chatserver.application.ports.MessageBroadcaster;
 import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
 import net.malevy.chatserver.domain.entities.ChatMessage;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Collection;
+import java.util.List;
+
 @Component
 @Slf4j
 public class JoinChatUseCase {
     private final SessionManager sessionManager;
-    private final MessageBroadcaster messageBroadcaster;
+    private final JoinRoomUseCase joinRoomUseCase;
+    private final UserDirectory userDirectory;
 
-    public JoinChatUseCase(SessionManager sessionManager, MessageBroadcaster messageBroadcaster) {
+    public JoinChatUseCase(SessionManager sessionManager, JoinRoomUseCase joinRoomUseCase, UserDirectory userDirectory) {
         this.sessionManager = sessionManager;
-        this.messageBroadcaster = messageBroadcaster;
+        this.joinRoomUseCase = joinRoomUseCase;
+        this.userDirectory = userDirectory;
     }
 
-    public void run(WebSocketSession session, String username) {
-        this.sessionManager.addSession(session);
+    // lastMessageId is the last message a reconnecting client saw, or null for a fresh connection
+    public void run(WebSocketSession session, String username, Collection<String> rooms, String lastMessageId) {
+        // set first: the session manager indexes sessions by user as they are added
         session.getAttributes().put("username", username);
-        messageBroadcaster.broadcast(ChatMessage.createSystemMessage(username + " joined the chat"));
+        if (lastMessageId == null) {
+            this.sessionManager.addSession(session);
+        } else {
+            this.sessionManager.addResumingSession(session);
+        }
+        userDirectory.reconcile(username);
+        for (String room : rooms.isEmpty() ? List.of(ChatMessage.DEFAULT_ROOM) : rooms) {
+            joinRoomUseCase.run(session, room);
+        }
+        if (lastMessageId != null) {
+            final int replayed = sessionManager.resume(session, lastMessageId);
+            log.info("{} ({}) resumed after {}, {} messages replayed", username, session.getId(), lastMessageId, replayed);
+            return;
+        }
         log.info("{} ({}) connected", username, session.getId());
     }
 }
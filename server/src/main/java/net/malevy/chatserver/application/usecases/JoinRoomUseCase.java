@@ -0,0 +1,37 @@
+package net.malevy.chatserver.application.usecases;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
+import net.malevy.chatserver.application.ports.SessionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Objects;
+
+@Component
+@Slf4j
+public class JoinRoomUseCase {
+    private final SessionManager sessionManager;
+    private final RoomSubscriptions roomSubscriptions;
+    private final Presence presence;
+
+    public JoinRoomUseCase(SessionManager sessionManager,
+                           RoomSubscriptions roomSubscriptions,
+                           Presence presence) {
+        this.sessionManager = sessionManager;
+        this.roomSubscriptions = roomSubscriptions;
+        this.presence = presence;
+    }
+
+    public void run(WebSocketSession session, String room) {
+        Objects.requireNonNull(session, "session cannot be null");
+        Objects.requireNonNull(room, "room cannot be null");
+        if (!sessionManager.joinRoom(session, room)) return;
+
+        roomSubscriptions.reconcile(room);
+        final String username = (String) session.getAttributes().get("username");
+        presence.joined(session, username, room);
+        log.info("{} ({}) joined {}", username, session.getId(), room);
+    }
+}
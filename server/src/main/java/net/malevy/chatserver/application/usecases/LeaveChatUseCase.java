@@ -1,27 +1,43 @@
 package net.malevy.chatserver.application.usecases;
 
 import lombok.extern.slf4j.Slf4j;
-import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
 import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.application.ports.UserDirectory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Set;
+
 @Component
 @Slf4j
 public class LeaveChatUseCase {
     private final SessionManager sessionManager;
-    private final MessageBroadcaster messageBroadcaster;
+    private final RoomSubscriptions roomSubscriptions;
+    private final UserDirectory userDirectory;
+    private final Presence presence;
 
-    public LeaveChatUseCase(SessionManager sessionManager, MessageBroadcaster messageBroadcaster) {
+    public LeaveChatUseCase(SessionManager sessionManager,
+                            RoomSubscriptions roomSubscriptions,
+                            UserDirectory userDirectory,
+                            Presence presence) {
         this.sessionManager = sessionManager;
-        this.messageBroadcaster = messageBroadcaster;
+        this.roomSubscriptions = roomSubscriptions;
+        this.userDirectory = userDirectory;
+        this.presence = presence;
     }
 
     public void run(WebSocketSession session) {
-        this.sessionManager.removeSession(session);
+        final Set<String> rooms = this.sessionManager.removeSession(session);
+        // a session can be dropped for idling and then closed, and each ends up here
+        if (rooms == null) return;
         final String username = (String) session.getAttributes().get("username");
-        messageBroadcaster.broadcast(ChatMessage.createSystemMessage(username + " left the chat"));
+        if (username != null) userDirectory.reconcile(username);
+        for (String room : rooms) {
+            roomSubscriptions.reconcile(room);
+            if (username != null) presence.left(username, room);
+        }
         log.info("{} ({}) disconnected", username, session.getId());
     }
 
@@ -0,0 +1,41 @@
+package net.malevy.chatserver.application.usecases;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Objects;
+
+// A message for one user's sessions, wherever they are connected, instead of a room's members
+@Component
+@Slf4j
+public class SendDirectMessageUseCase {
+    private final SessionManager sessionManager;
+    private final MessageBroadcaster messageBroadcaster;
+    private final MessageIdGenerator messageIds;
+
+    public SendDirectMessageUseCase(SessionManager sessionManager,
+                                    MessageBroadcaster messageBroadcaster,
+                                    MessageIdGenerator messageIds) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager");
+        this.messageBroadcaster = Objects.requireNonNull(messageBroadcaster, "messageBroadcaster");
+        this.messageIds = Objects.requireNonNull(messageIds, "messageIds");
+    }
+
+    public void run(WebSocketSession session, ChatMessage message) {
+        Objects.requireNonNull(session, "session");
+        Objects.requireNonNull(message, "message");
+        if (!StringUtils.hasText(message.getTo())) {
+            log.warn("{} sent a direct message without a recipient; message dropped", session.getId());
+            return;
+        }
+        if (!messageBroadcaster.broadcast(ChatMessage.directFrom(message, (String) session.getAttributes().get("username"), messageIds))) {
+            sessionManager.send(session, ChatMessage.createSystemMessage(SendMessageUseCase.NOT_DELIVERED, messageIds));
+        }
+    }
+}
@@ -2,7 +2,9 @@ package net.malevy.chatserver.application.usecases;
 
 import lombok.extern.slf4j.Slf4j;
 import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.SessionManager;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
@@ -11,16 +13,30 @@ import java.util.Objects;
 @Component
 @Slf4j
 public class SendMessageUseCase {
+    static final String NOT_DELIVERED = "The server is too busy right now; your message was not delivered";
+
+    private final SessionManager sessionManager;
     private final MessageBroadcaster messageBroadcaster;
+    private final MessageIdGenerator messageIds;
 
-    public SendMessageUseCase(MessageBroadcaster messageBroadcaster) {
+    public SendMessageUseCase(SessionManager sessionManager,
+                              MessageBroadcaster messageBroadcaster,
+                              MessageIdGenerator messageIds) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager");
         this.messageBroadcaster = Objects.requireNonNull(messageBroadcaster, "messageBroadcaster");
+        this.messageIds = Objects.requireNonNull(messageIds, "messageIds");
     }
 
     public void run(WebSocketSession session, ChatMessage message) {
         Objects.requireNonNull(session, "session");
         Objects.requireNonNull(message, "message");
-        final var decoratedMessage = ChatMessage.populateFrom(message, (String) session.getAttributes().get("username"));
-        messageBroadcaster.broadcast(decoratedMessage);
+        final var decoratedMessage = ChatMessage.populateFrom(message, (String) session.getAttributes().get("username"), messageIds);
+        if (!sessionManager.isMember(session, decoratedMessage.getRoom())) {
+            log.warn("{} is not a member of {}; message dropped", session.getId(), decoratedMessage.getRoom());
+            return;
+        }
+        if (!messageBroadcaster.broadcast(decoratedMessage)) {
+            sessionManager.send(session, ChatMessage.createSystemMessage(NOT_DELIVERED, decoratedMessage.getRoom(), messageIds));
+        }
     }
 }
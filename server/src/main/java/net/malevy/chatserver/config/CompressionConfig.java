@@ -0,0 +1,18 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.infrastructure.adapters.websocket.CompressionSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CompressionConfig {
+
+    @Bean
+    public CompressionSettings compressionSettings(
+            @Value("${chat.compression.enabled:true}") boolean enabled,
+            @Value("${chat.compression.server-context-takeover:true}") boolean serverContextTakeover,
+            @Value("${chat.compression.client-context-takeover:true}") boolean clientContextTakeover) {
+        return new CompressionSettings(enabled, serverContextTakeover, clientContextTakeover);
+    }
+}
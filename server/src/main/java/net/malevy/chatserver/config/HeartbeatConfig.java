@@ -0,0 +1,36 @@
+package net.malevy.chatserver.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
+import net.malevy.chatserver.infrastructure.adapters.websocket.HeartbeatSettings;
+import net.malevy.chatserver.infrastructure.adapters.websocket.IdleSessionReaper;
+import net.malevy.chatserver.infrastructure.adapters.websocket.WebSocketSessionManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+@Configuration
+public class HeartbeatConfig {
+
+    @Bean
+    public HeartbeatSettings heartbeatSettings(
+            @Value("${chat.heartbeat.ping-after:30s}") Duration pingAfter,
+            @Value("${chat.heartbeat.timeout:75s}") Duration timeout,
+            @Value("${chat.heartbeat.tick:1s}") Duration tick) {
+        return new HeartbeatSettings(pingAfter, timeout, tick);
+    }
+
+    // closes run on the outbound writers, which are already expected to block on slow peers
+    @Bean
+    public IdleSessionReaper idleSessionReaper(WebSocketSessionManager sessionManager, LeaveChatUseCase leaveChatUseCase,
+                                               HeartbeatSettings settings,
+                                               @Qualifier("outboundWriterExecutor") Executor writer,
+                                               MeterRegistry meterRegistry) {
+        return new IdleSessionReaper(sessionManager, leaveChatUseCase, settings, writer, Clock.systemUTC(), meterRegistry);
+    }
+}
@@ -0,0 +1,46 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.infrastructure.adapters.history.DisabledMessageHistory;
+import net.malevy.chatserver.infrastructure.adapters.history.HistorySettings;
+import net.malevy.chatserver.infrastructure.adapters.history.MappedLogMessageHistory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+public class HistoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.history.enabled", havingValue = "true")
+    public HistorySettings historySettings(
+            @Value("${chat.history.directory:data/history}") Path directory,
+            @Value("${chat.history.segment-size:64MB}") DataSize segmentSize,
+            @Value("${chat.history.index-interval:4KB}") DataSize indexInterval,
+            @Value("${chat.history.flush-interval:50ms}") Duration flushInterval,
+            @Value("${chat.history.max-segments:64}") int maxSegments,
+            @Value("${chat.history.retention:7d}") Duration retention,
+            @Value("${chat.history.queue-capacity:10000}") int queueCapacity) {
+        return new HistorySettings(directory, Math.toIntExact(segmentSize.toBytes()),
+                Math.toIntExact(indexInterval.toBytes()), flushInterval, maxSegments, retention, queueCapacity);
+    }
+
+    // destroyMethod is inferred from close()
+    @Bean
+    @ConditionalOnProperty(name = "chat.history.enabled", havingValue = "true")
+    public MessageHistory messageHistory(HistorySettings settings) {
+        return new MappedLogMessageHistory(settings, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.history.enabled", havingValue = "false", matchIfMissing = true)
+    public MessageHistory disabledMessageHistory() {
+        return new DisabledMessageHistory();
+    }
+}
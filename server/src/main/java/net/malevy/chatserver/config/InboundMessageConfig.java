@@ -0,0 +1,25 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.infrastructure.codec.InboundMessageLimits;
+import net.malevy.chatserver.infrastructure.codec.InboundMessageReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+public class InboundMessageConfig {
+
+    @Bean
+    public InboundMessageLimits inboundMessageLimits(
+            @Value("${chat.inbound.max-frame-size:8KB}") DataSize maxFrameSize,
+            @Value("${chat.inbound.max-message-length:4000}") int maxMessageLength,
+            @Value("${chat.inbound.max-field-length:128}") int maxFieldLength) {
+        return new InboundMessageLimits(Math.toIntExact(maxFrameSize.toBytes()), maxMessageLength, maxFieldLength);
+    }
+
+    @Bean
+    public InboundMessageReader inboundMessageReader(InboundMessageLimits limits) {
+        return new InboundMessageReader(limits);
+    }
+}
@@ -1,14 +1,29 @@
-package net.malevy.chatserver.config;
-
-import net.malevy.chatserver.domain.entities.NodeIdentifier;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class NodeConfig {
-
-    @Bean
-    public NodeIdentifier nodeIdentifier() {
-        return new NodeIdentifier(java.util.UUID.randomUUID().toString());
-    }
-}
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.ids.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Clock;
+
+@Configuration
+public class NodeConfig {
+
+    // the cluster profile builds its own from the worker id it claims (see RedisConfig)
+    @Bean
+    @Profile("!cluster")
+    public NodeIdentifier nodeIdentifier() {
+        return new NodeIdentifier(java.util.UUID.randomUUID().toString());
+    }
+
+    // a lone node mints every id there is, so any worker will do; the cluster profile claims one (see RedisConfig)
+    @Bean
+    @Profile("!cluster")
+    public MessageIdGenerator messageIdGenerator(@Value("${chat.node.worker-id:-1}") int workerId) {
+        return new SnowflakeIdGenerator(Math.max(workerId, 0), Clock.systemUTC());
+    }
+}
@@ -0,0 +1,49 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.infrastructure.adapters.websocket.OutboundQueueSettings;
+import net.malevy.chatserver.infrastructure.adapters.websocket.OverflowPolicy;
+import net.malevy.chatserver.infrastructure.adapters.websocket.ReplayBuffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class OutboundQueueConfig {
+
+    @Bean
+    public OutboundQueueSettings outboundQueueSettings(
+            @Value("${chat.outbound.queue-capacity:256}") int capacity,
+            @Value("${chat.outbound.overflow-policy:drop-oldest}") OverflowPolicy overflowPolicy,
+            @Value("${chat.outbound.droppable-types:system,presence}") Set<String> droppableTypes,
+            @Value("${chat.outbound.send-time-limit:10s}") Duration sendTimeLimit,
+            @Value("${chat.outbound.batch.size:32}") int batchSize,
+            @Value("${chat.outbound.batch.linger:0ms}") Duration batchLinger) {
+        return new OutboundQueueSettings(capacity, overflowPolicy, droppableTypes, sendTimeLimit, batchSize, batchLinger);
+    }
+
+    // recent frames kept for sessions that reconnect with ?lastMessageId=
+    @Bean
+    public ReplayBuffer replayBuffer(@Value("${chat.replay.capacity:4096}") int capacity) {
+        return new ReplayBuffer(capacity);
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ExecutorService outboundWriterExecutor(@Value("${chat.outbound.writer-threads:8}") int threads) {
+        return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("ws-writer-", 0).daemon().factory());
+    }
+
+    // one virtual thread per drain, so a stalled peer parks its own writer and nobody else's
+    @Bean(name = "outboundWriterExecutor", destroyMethod = "shutdownNow")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public ExecutorService virtualOutboundWriterExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-writer-", 0).factory());
+    }
+}
@@ -0,0 +1,21 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class PresenceConfig {
+
+    @Bean
+    public PresenceSettings presenceSettings(
+            @Value("${chat.presence.window:250ms}") Duration window,
+            @Value("${chat.presence.max-names:50}") int maxNames,
+            @Value("${chat.presence.heartbeat:5s}") Duration heartbeat,
+            @Value("${chat.presence.expire-after:15s}") Duration expireAfter) {
+        return new PresenceSettings(window, maxNames, heartbeat, expireAfter);
+    }
+}
@@ -0,0 +1,38 @@
+package net.malevy.chatserver.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.adapters.websocket.InboundRateLimiter;
+import net.malevy.chatserver.infrastructure.adapters.websocket.RateLimit;
+import net.malevy.chatserver.infrastructure.adapters.websocket.RateLimitSettings;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    public RateLimitSettings rateLimitSettings(
+            @Value("${chat.rate-limit.session:message=10/1s,direct=5/1s,join=20/10s,leave=20/10s,history=5/10s}") String perSession,
+            @Value("${chat.rate-limit.user:message=20/1s,direct=10/1s,join=40/10s,leave=40/10s,history=10/10s}") String perUser,
+            @Value("${chat.rate-limit.violations:100/10s}") String violations,
+            @Value("${chat.rate-limit.share-refresh:5s}") Duration shareRefresh) {
+        return new RateLimitSettings(RateLimitSettings.parseLimits(perSession), RateLimitSettings.parseLimits(perUser),
+                RateLimit.parse(violations), shareRefresh);
+    }
+
+    @Bean
+    public InboundRateLimiter inboundRateLimiter(RateLimitSettings settings, UserDirectory userDirectory,
+                                                 SessionManager sessionManager, ChatMessageCodec codec,
+                                                 MessageIdGenerator messageIdGenerator, MeterRegistry meterRegistry) {
+        return new InboundRateLimiter(settings, userDirectory, sessionManager, codec, messageIdGenerator,
+                Clock.systemUTC(), meterRegistry);
+    }
+}
@@ -1,59 +1,201 @@
-package net.malevy.chatserver.config;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Profile;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
-import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.listener.ChannelTopic;
-import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
-
-@Configuration
-@Profile("cluster")
-public class RedisConfig {
-
-    @Bean
-    public RedisConnectionFactory redisConnectionFactory(
-            @Value("${spring.data.redis.host:localhost}") String host,
-            @Value("${spring.data.redis.port:6379}") int port) {
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
-        return new LettuceConnectionFactory(config);
-    }
-
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        
-        // Use String serializer for keys
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setHashKeySerializer(new StringRedisSerializer());
-        
-        // Use JSON serializer for values with the configured ObjectMapper
-        Jackson2JsonRedisSerializer<Object> jsonSerializer = new Jackson2JsonRedisSerializer<>(objectMapper, Object.class);
-        template.setValueSerializer(jsonSerializer);
-        template.setHashValueSerializer(jsonSerializer);
-        
-        template.afterPropertiesSet();
-        return template;
-    }
-
-    @Bean
-    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
-        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
-        container.setConnectionFactory(connectionFactory);
-        return container;
-    }
-
-    @Bean
-    public ChannelTopic channelTopic() {
-        final String CHAT_CHANNEL = "chat:messages";
-        return new ChannelTopic(CHAT_CHANNEL);
-    }
-}
\ No newline at end of file
+package net.malevy.chatserver.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.adapters.cluster.ClusterPresence;
+import net.malevy.chatserver.infrastructure.adapters.cluster.ClusterUserDirectory;
+import net.malevy.chatserver.infrastructure.adapters.cluster.DirectorySettings;
+import net.malevy.chatserver.infrastructure.adapters.cluster.HybridLogicalClock;
+import net.malevy.chatserver.infrastructure.adapters.cluster.NodeTopics;
+import net.malevy.chatserver.infrastructure.adapters.cluster.OrderingSettings;
+import net.malevy.chatserver.infrastructure.adapters.cluster.PipelinedCommand;
+import net.malevy.chatserver.infrastructure.adapters.cluster.PublishPipelineSettings;
+import net.malevy.chatserver.infrastructure.adapters.cluster.RedisUserLeases;
+import net.malevy.chatserver.infrastructure.adapters.cluster.RedisWorkerIds;
+import net.malevy.chatserver.infrastructure.adapters.cluster.RoomTopics;
+import net.malevy.chatserver.infrastructure.adapters.cluster.UserLeases;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceService;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceSettings;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.ids.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Profile("cluster")
+public class RedisConfig {
+
+    @Bean
+    public RedisConnectionFactory redisConnectionFactory(
+            @Value("${spring.data.redis.host:localhost}") String host,
+            @Value("${spring.data.redis.port:6379}") int port) {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(config);
+        // write a pipelined batch to the socket in one go instead of flushing after every command
+        factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+        return factory;
+    }
+
+    @Bean
+    public RedisTemplate<String, byte[]> redisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        
+        // Use String serializer for keys
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        
+        // Values are messages already encoded by ChatMessageCodec, so they are published as raw bytes
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // the default starts a thread per message, which neither keeps order nor bounds anything; the
+        // listener only hands each message to its room's shard, so it runs on the connection's own thread
+        container.setTaskExecutor(new SyncTaskExecutor());
+        return container;
+    }
+
+    // carries messages that are not addressed to a room; every node subscribes to it
+    @Bean
+    public ChannelTopic channelTopic() {
+        final String CHAT_CHANNEL = "chat:messages";
+        return new ChannelTopic(CHAT_CHANNEL);
+    }
+
+    // one channel per room; a node only subscribes to rooms that have local members
+    @Bean
+    public RoomTopics roomTopics(@Value("${chat.cluster.room-channel-prefix:chat:room:}") String prefix) {
+        return new RoomTopics(prefix);
+    }
+
+    // one channel per node, carrying direct messages for the users connected to it
+    @Bean
+    public NodeTopics nodeTopics(@Value("${chat.cluster.node-channel-prefix:chat:node:}") String prefix) {
+        return new NodeTopics(prefix);
+    }
+
+    // destroyMethod is inferred from close(); fails startup when the worker cannot be claimed
+    @Bean
+    public RedisWorkerIds workerIds(RedisConnectionFactory connectionFactory,
+                                    @Value("${chat.node.worker-id:-1}") int workerId,
+                                    @Value("${chat.cluster.worker-ids.key-prefix:chat:worker:}") String prefix,
+                                    @Value("${chat.cluster.worker-ids.lease:30s}") Duration lease) {
+        return new RedisWorkerIds(connectionFactory, prefix, UUID.randomUUID().toString(), workerId, lease);
+    }
+
+    // the worker id is unique among live nodes, so it is the short id receivers tell their own echoes by
+    @Bean
+    public NodeIdentifier nodeIdentifier(RedisWorkerIds workerIds) {
+        return new NodeIdentifier(workerIds.nodeId(), workerIds.worker());
+    }
+
+    @Bean
+    public MessageIdGenerator messageIdGenerator(RedisWorkerIds workerIds) {
+        return new SnowflakeIdGenerator(workerIds.worker(), Clock.systemUTC());
+    }
+
+    @Bean
+    public DirectorySettings directorySettings(
+            @Value("${chat.cluster.directory.lease:15s}") Duration lease,
+            @Value("${chat.cluster.directory.cache-ttl:1s}") Duration cacheTtl) {
+        return new DirectorySettings(lease, cacheTtl);
+    }
+
+    @Bean
+    public UserLeases userLeases(RedisConnectionFactory connectionFactory,
+                                 @Value("${chat.cluster.directory.key-prefix:chat:user:}") String prefix) {
+        return new RedisUserLeases(connectionFactory, prefix);
+    }
+
+    // one thread, so recipients missing from the cache are looked up in the order their messages were sent
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService userLookups(@Value("${chat.cluster.directory.lookup-queue:10000}") int queueCapacity) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("user-directory-lookup").daemon().factory());
+    }
+
+    @Bean
+    public ClusterUserDirectory clusterUserDirectory(UserLeases leases, SessionManager sessionManager,
+                                                     NodeIdentifier nodeIdentifier, DirectorySettings settings,
+                                                     @Qualifier("userLookups") ExecutorService lookups,
+                                                     MeterRegistry meterRegistry) {
+        return new ClusterUserDirectory(leases, sessionManager, nodeIdentifier, settings, Clock.systemUTC(),
+                lookups, meterRegistry);
+    }
+
+    // room members are replicated on their own channel, pub/sub even when messages go over streams
+    @Bean
+    public ClusterPresence clusterPresence(PresenceService presence, RedisMessageListenerContainer container,
+                                           RedisTemplate<String, byte[]> template, NodeIdentifier nodeIdentifier,
+                                           ObjectMapper mapper, PresenceSettings settings, MeterRegistry meterRegistry,
+                                           @Value("${chat.cluster.presence-channel:chat:presence}") String channel) {
+        return new ClusterPresence(presence, container, template, new ChannelTopic(channel), nodeIdentifier, mapper,
+                settings, Clock.systemUTC(), meterRegistry);
+    }
+
+    @Bean
+    public PublishPipelineSettings publishPipelineSettings(
+            @Value("${chat.cluster.publish.batch-size:64}") int batchSize,
+            @Value("${chat.cluster.publish.max-delay:200us}") Duration maxDelay,
+            @Value("${chat.cluster.publish.queue-capacity:10000}") int queueCapacity) {
+        return new PublishPipelineSettings(batchSize, maxDelay, queueCapacity);
+    }
+
+    // messages travel behind a small binary header; bodies of at least compress-above are deflated (0: never)
+    @Bean
+    public ClusterEnvelope clusterEnvelope(@Value("${chat.cluster.envelope.compress-above:0}") DataSize compressAbove) {
+        return new ClusterEnvelope(Math.toIntExact(compressAbove.toBytes()));
+    }
+
+    @Bean
+    public OrderingSettings orderingSettings(
+            @Value("${chat.cluster.ordering.reorder-window:0ms}") Duration reorderWindow,
+            @Value("${chat.cluster.ordering.max-drift:1s}") Duration maxDrift) {
+        return new OrderingSettings(reorderWindow, maxDrift);
+    }
+
+    @Bean
+    public HybridLogicalClock hybridLogicalClock(OrderingSettings settings, MeterRegistry meterRegistry) {
+        return new HybridLogicalClock(Clock.systemUTC(), settings.maxDrift(), meterRegistry);
+    }
+
+    // fire-and-forget pub/sub; the cluster-streams profile swaps in XADD (see RedisStreamsConfig)
+    @Bean
+    @Profile("!cluster-streams")
+    public PipelinedCommand publishCommand() {
+        return PipelinedCommand.PUBLISH;
+    }
+}
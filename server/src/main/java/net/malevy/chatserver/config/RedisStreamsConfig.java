@@ -0,0 +1,43 @@
+package net.malevy.chatserver.config;
+
+import net.malevy.chatserver.infrastructure.adapters.cluster.ChatStreams;
+import net.malevy.chatserver.infrastructure.adapters.cluster.PipelinedCommand;
+import net.malevy.chatserver.infrastructure.adapters.cluster.RedisChatStreams;
+import net.malevy.chatserver.infrastructure.adapters.cluster.StreamSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+
+/*
+ * Activated together with cluster (spring.profiles.active=cluster,cluster-streams): the same channel
+ * names become stream keys, messages are XADDed through the publish pipeline and read back by
+ * StreamMessageListener instead of pub/sub.
+ */
+@Configuration
+@Profile("cluster & cluster-streams")
+public class RedisStreamsConfig {
+
+    @Bean
+    public StreamSettings streamSettings(
+            @Value("${chat.cluster.streams.max-length:10000}") long maxLength,
+            @Value("${chat.cluster.streams.read-count:256}") int readCount,
+            @Value("${chat.cluster.streams.block:100ms}") Duration block,
+            @Value("${chat.cluster.streams.retry-backoff:1s}") Duration retryBackoff,
+            @Value("${chat.cluster.streams.backlog:0}") int backlog) {
+        return new StreamSettings(maxLength, readCount, block, retryBackoff, backlog);
+    }
+
+    @Bean
+    public PipelinedCommand xaddCommand(StreamSettings settings) {
+        return PipelinedCommand.xadd(settings.maxLength());
+    }
+
+    @Bean
+    public ChatStreams chatStreams(RedisConnectionFactory connectionFactory) {
+        return new RedisChatStreams(connectionFactory);
+    }
+}
@@ -0,0 +1,50 @@
+package net.malevy.chatserver.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.infrastructure.adapters.websocket.AdmissionSettings;
+import net.malevy.chatserver.infrastructure.dispatch.ShardedRoomExecutor;
+import net.malevy.chatserver.infrastructure.diagnostics.VirtualThreadPinningMonitor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+ * spring.threads.virtual.enabled switches Tomcat, and with it every WebSocket callback and the use
+ * cases they run, onto virtual threads. The outbound writers follow the same switch (see
+ * OutboundQueueConfig). Broadcasting always hands off to the room shards, which stay platform threads.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    @Bean
+    public AdmissionSettings admissionSettings(
+            @Value("${chat.admission.max-sessions:100000}") int maxSessions,
+            @Value("${chat.admission.max-concurrent-messages:1000}") int maxConcurrentMessages,
+            @Value("${chat.admission.acquire-timeout:2s}") Duration acquireTimeout) {
+        return new AdmissionSettings(maxSessions, maxConcurrentMessages, acquireTimeout);
+    }
+
+    // shards <= 0 means one per available processor; room-capacity <= 0 lets a room fill its shard
+    @Bean
+    public ShardedRoomExecutor roomExecutor(
+            @Value("${chat.dispatch.shards:0}") int shards,
+            @Value("${chat.dispatch.queue-capacity:10000}") int queueCapacity,
+            @Value("${chat.dispatch.room-capacity:1000}") int roomCapacity,
+            MeterRegistry meterRegistry) {
+        final int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        return new ShardedRoomExecutor(count, queueCapacity, roomCapacity > 0 ? roomCapacity : queueCapacity, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    @ConditionalOnProperty(name = "chat.diagnostics.pinning.enabled", havingValue = "true", matchIfMissing = true)
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            @Value("${chat.diagnostics.pinning.threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningMonitor(threshold);
+    }
+}
@@ -1,24 +1,65 @@
 package net.malevy.chatserver.config;
 
+import net.malevy.chatserver.infrastructure.adapters.websocket.AdmissionControlHandler;
+import net.malevy.chatserver.infrastructure.adapters.websocket.AdmissionSettings;
+import net.malevy.chatserver.infrastructure.adapters.websocket.CompressionSettings;
+import net.malevy.chatserver.infrastructure.adapters.websocket.DeflateNegotiatingUpgradeStrategy;
+import net.malevy.chatserver.infrastructure.adapters.websocket.OutboundQueueSettings;
+import net.malevy.chatserver.infrastructure.adapters.websocket.WireFormat;
+import net.malevy.chatserver.infrastructure.codec.InboundMessageLimits;
+import org.apache.tomcat.websocket.server.Constants;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final WebSocketHandler webSocketHandler;
+    private final AdmissionSettings admissionSettings;
+    private final CompressionSettings compressionSettings;
+    private final OutboundQueueSettings outboundSettings;
+    private final InboundMessageLimits inboundLimits;
 
-    public WebSocketConfig(WebSocketHandler webSocketHandler) {
+    public WebSocketConfig(WebSocketHandler webSocketHandler,
+                           AdmissionSettings admissionSettings,
+                           CompressionSettings compressionSettings,
+                           OutboundQueueSettings outboundSettings,
+                           InboundMessageLimits inboundLimits) {
         this.webSocketHandler = webSocketHandler;
+        this.admissionSettings = admissionSettings;
+        this.compressionSettings = compressionSettings;
+        this.outboundSettings = outboundSettings;
+        this.inboundLimits = inboundLimits;
+    }
+
+    // Tomcat assembles each inbound message, inflated if compressed, in a per-session buffer of this size
+    // and closes the session with 1009 once one runs past it, so a bigger frame is never read in full
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> webSocketBufferCustomizer() {
+        final String size = Integer.toString(inboundLimits.maxFrameSize());
+        return factory -> factory.addContextCustomizers(context -> {
+            context.addParameter(Constants.TEXT_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM, size);
+            context.addParameter(Constants.BINARY_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM, size);
+        });
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(webSocketHandler, "/chat").setAllowedOrigins("*");
+        // the first subprotocol the client offers that we support wins; offering none keeps JSON
+        final DefaultHandshakeHandler handshakeHandler =
+                new DefaultHandshakeHandler(new DeflateNegotiatingUpgradeStrategy(compressionSettings));
+        handshakeHandler.setSupportedProtocols(WireFormat.subprotocols(outboundSettings.batching()));
+        registry.addHandler(new AdmissionControlHandler(webSocketHandler, admissionSettings), "/chat")
+                .setHandshakeHandler(handshakeHandler)
+                .setAllowedOrigins("*");
     }
 
 
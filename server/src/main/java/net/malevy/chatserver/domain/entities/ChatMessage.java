@@ -7,40 +7,62 @@ import org.springframework.util.StringUtils;
 
 import java.time.Instant;
 import java.util.Objects;
-import java.util.UUID;
 
 @Getter
 @Setter
 @NoArgsConstructor
 public class ChatMessage {
+    public static final String DEFAULT_ROOM = "general";
+
     private String id;
     private String type;
     private String message;
     private Instant timestamp;
     private String username;
+    private String room;
+    // the recipient's username for a direct message, which belongs to no room
+    private String to;
     private String nodeId;
+    // hybrid logical clock timestamp, set by the node that published the message to the cluster
+    private Long hlc;
 
-    public static ChatMessage populateFrom(ChatMessage source, String username) {
+    public static ChatMessage populateFrom(ChatMessage source, String username, MessageIdGenerator ids) {
         Objects.requireNonNull(source, "source");
         ChatMessage message = new ChatMessage();
         message.type = source.type;
         message.message = source.message;
         message.timestamp = source.timestamp;
         message.id = source.id;
+        message.room = source.room;
         message.username = Objects.requireNonNull(username, "username");
 
         if (!StringUtils.hasText(message.id)) {
-            message.id = UUID.randomUUID().toString();
+            message.id = Objects.requireNonNull(ids, "ids").next();
         }
         if (message.timestamp == null) {
             message.timestamp = Instant.now();
         }
+        if (!StringUtils.hasText(message.room)) {
+            message.room = DEFAULT_ROOM;
+        }
+        return message;
+    }
+
+    public static ChatMessage directFrom(ChatMessage source, String username, MessageIdGenerator ids) {
+        Objects.requireNonNull(source, "source");
+        ChatMessage message = new ChatMessage();
+        message.type = "direct";
+        message.message = source.message;
+        message.timestamp = source.timestamp == null ? Instant.now() : source.timestamp;
+        message.id = StringUtils.hasText(source.id) ? source.id : Objects.requireNonNull(ids, "ids").next();
+        message.to = Objects.requireNonNull(source.to, "to");
+        message.username = Objects.requireNonNull(username, "username");
         return message;
     }
 
-    public static ChatMessage create(String messageText, String username) {
+    public static ChatMessage create(String messageText, String username, MessageIdGenerator ids) {
         ChatMessage message = new ChatMessage();
-        message.id = UUID.randomUUID().toString();
+        message.id = Objects.requireNonNull(ids, "ids").next();
         message.type = "message";
         message.message = Objects.requireNonNull(messageText,  "messageText");
         message.username = Objects.requireNonNull(username, "username") ;
@@ -48,9 +70,15 @@ public class ChatMessage {
         return message;
     }
 
-    public static ChatMessage createSystemMessage(String messageText) {
-        ChatMessage message = create(messageText, "system");
+    public static ChatMessage createSystemMessage(String messageText, MessageIdGenerator ids) {
+        ChatMessage message = create(messageText, "system", ids);
         message.type = "system";
         return message;
     }
+
+    public static ChatMessage createSystemMessage(String messageText, String room, MessageIdGenerator ids) {
+        ChatMessage message = createSystemMessage(messageText, ids);
+        message.room = Objects.requireNonNull(room, "room");
+        return message;
+    }
 }
@@ -0,0 +1,22 @@
+package net.malevy.chatserver.domain.entities;
+
+// A ChatMessage serialized once, plus the few fields needed to route it without decoding the payload.
+// `to` is only set on direct messages, which go to that user's sessions instead of a room's.
+public record EncodedChatMessage(String id, String type, String room, String nodeId, long hlc, String to, byte[] payload) {
+
+    public static final String PRESENCE = "presence";
+
+    public EncodedChatMessage(String id, String type, String room, String nodeId, long hlc, byte[] payload) {
+        this(id, type, room, nodeId, hlc, null, payload);
+    }
+
+    // for messages that never crossed the cluster and so carry no hybrid clock timestamp
+    public EncodedChatMessage(String id, String type, String room, String nodeId, byte[] payload) {
+        this(id, type, room, nodeId, 0, payload);
+    }
+
+    // direct messages and presence frames are for whoever is connected now, never replayed or kept
+    public boolean ephemeral() {
+        return to != null || PRESENCE.equals(type);
+    }
+}
@@ -0,0 +1,13 @@
+package net.malevy.chatserver.domain.entities;
+
+import java.util.UUID;
+
+// Source of the ids the server gives messages; an id a client supplies is kept as it is.
+@FunctionalInterface
+public interface MessageIdGenerator {
+
+    // for tests and benchmarks; everything the server sends takes its id from the node's generator bean
+    MessageIdGenerator RANDOM = () -> UUID.randomUUID().toString();
+
+    String next();
+}
@@ -1,4 +1,13 @@
 package net.malevy.chatserver.domain.entities;
 
-public record NodeIdentifier(String id) {
+/*
+ * shortId stands in for id where a few bytes have to do, such as the cluster envelope header, so it
+ * has to be unique among live nodes. The cluster profile uses the worker id the node holds in Redis;
+ * the hash of id is only for a lone node and tests, where nothing can collide with it.
+ */
+public record NodeIdentifier(String id, int shortId) {
+
+    public NodeIdentifier(String id) {
+        this(id, id.hashCode());
+    }
 }
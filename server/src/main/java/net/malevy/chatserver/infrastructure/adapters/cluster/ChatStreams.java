@@ -0,0 +1,19 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+// The reads StreamMessageListener needs from Redis Streams; writes go through RedisPublishPipeline
+public interface ChatStreams {
+
+    String FIELD = "m";
+    // the id before any real entry; reading after it returns the whole stream
+    String BEGINNING = "0-0";
+
+    // XREAD COUNT count BLOCK block STREAMS <keys> <ids>: entries after each key's id, oldest first
+    List<StreamEntry> read(Map<String, String> offsets, int count, Duration block);
+
+    // XREVRANGE key + - COUNT count, returned oldest first
+    List<StreamEntry> last(String key, int count);
+}
@@ -1,48 +1,143 @@
-package net.malevy.chatserver.infrastructure.adapters.cluster;
-
-import lombok.extern.slf4j.Slf4j;
-import net.malevy.chatserver.application.ports.MessageBroadcaster;
-import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
-import net.malevy.chatserver.domain.entities.NodeIdentifier;
-import org.springframework.context.annotation.Profile;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.listener.ChannelTopic;
-import org.springframework.stereotype.Component;
-
-import java.util.Objects;
-
-@Component
-@Slf4j
-@Profile("cluster")
-public class ClusterMessageBroadcaster implements MessageBroadcaster {
-
-    private final NodeIdentifier nodeIdentifier;
-    private final ChannelTopic channelTopic;
-    private final SessionManager sessionManager;
-    private final RedisTemplate<String, Object> redisTemplate;
-
-    public ClusterMessageBroadcaster(
-            NodeIdentifier nodeIdentifier,
-            ChannelTopic channelTopic,
-            SessionManager sessionManager,
-            RedisTemplate<String, Object> redisTemplate) {
-        this.nodeIdentifier = nodeIdentifier;
-        this.channelTopic = channelTopic;
-        this.sessionManager = sessionManager;
-        this.redisTemplate = redisTemplate;
-    }
-
-    @Override
-    public void broadcast(ChatMessage message) {
-        Objects.requireNonNull(message, "message cannot be null");
-        try {
-            message.setNodeId(nodeIdentifier.id());
-            sessionManager.broadcast(message);
-            redisTemplate.convertAndSend(channelTopic.getTopic(), message);
-            log.debug("Published message to cluster from nodeId {}", nodeIdentifier.id());
-        } catch (Exception e) {
-            log.error("Error publishing message to Redis cluster", e);
-        }
-    }
-}
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@Slf4j
+@Profile("cluster")
+public class ClusterMessageBroadcaster implements MessageBroadcaster {
+
+    private final NodeIdentifier nodeIdentifier;
+    private final ChannelTopic channelTopic;
+    private final RoomTopics roomTopics;
+    private final NodeTopics nodeTopics;
+    private final ClusterUserDirectory userDirectory;
+    private final HybridLogicalClock clock;
+    private final ReorderBuffer reorderBuffer;
+    private final RedisPublishPipeline publishPipeline;
+    private final ChatMessageCodec codec;
+    private final ClusterEnvelope envelope;
+    private final RoomExecutor roomExecutor;
+    private final Timer broadcastTimer;
+    private final Counter broadcastFailures;
+    private final Counter unroutable;
+
+    public ClusterMessageBroadcaster(
+            NodeIdentifier nodeIdentifier,
+            ChannelTopic channelTopic,
+            RoomTopics roomTopics,
+            NodeTopics nodeTopics,
+            ClusterUserDirectory userDirectory,
+            HybridLogicalClock clock,
+            ReorderBuffer reorderBuffer,
+            RedisPublishPipeline publishPipeline,
+            ChatMessageCodec codec,
+            ClusterEnvelope envelope,
+            RoomExecutor roomExecutor,
+            MeterRegistry meterRegistry) {
+        this.nodeIdentifier = nodeIdentifier;
+        this.channelTopic = channelTopic;
+        this.roomTopics = roomTopics;
+        this.nodeTopics = Objects.requireNonNull(nodeTopics, "nodeTopics cannot be null");
+        this.userDirectory = Objects.requireNonNull(userDirectory, "userDirectory cannot be null");
+        this.clock = clock;
+        this.reorderBuffer = reorderBuffer;
+        this.publishPipeline = publishPipeline;
+        this.codec = codec;
+        this.envelope = Objects.requireNonNull(envelope, "envelope cannot be null");
+        this.roomExecutor = Objects.requireNonNull(roomExecutor, "roomExecutor cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        // how long Redis takes to accept the PUBLISH is chat.cluster.publish.latency, see RedisPublishPipeline
+        this.broadcastTimer = Timer.builder("chat.cluster.broadcast")
+                .description("Time to deliver a message locally and queue it for the cluster")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.broadcastFailures = Counter.builder("chat.cluster.broadcast.failures")
+                .description("Messages that could not be broadcast to the cluster")
+                .register(meterRegistry);
+        this.unroutable = Counter.builder("chat.cluster.direct.unroutable")
+                .description("Direct messages for users with no session on any node")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean broadcast(ChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        final long startedAt = System.nanoTime();
+        final String to = message.getTo();
+        if (to == null) return handOff(message, null, startedAt);
+        // a direct message's recipients are resolved before it reaches a shard: every one of them lands on the
+        // same shard, and a Redis round trip there would stall every room sharing it
+        final List<String> nodes = userDirectory.cachedNodesOf(to);
+        if (nodes != null) return handOff(message, nodes, startedAt);
+        // the sender has been answered by the time the lookup finishes; a shard refusing it then is only counted
+        if (!userDirectory.lookup(to, found -> handOff(message, found, startedAt))) {
+            broadcastFailures.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // stamped, echoed and published on the room's shard, so the room's order is the same on every path
+    private boolean handOff(ChatMessage message, List<String> nodes, long startedAt) {
+        if (!roomExecutor.execute(RoomExecutor.keyOf(message.getRoom(), message.getTo()), () -> publish(message, nodes, startedAt))) {
+            broadcastFailures.increment();
+            log.warn("Dropped message {} for room {}: its shard is full", message.getId(), message.getRoom());
+            return false;
+        }
+        return true;
+    }
+
+    // nodes: the other nodes holding a direct message's recipient; null for room messages
+    private void publish(ChatMessage message, List<String> nodes, long startedAt) {
+        try {
+            message.setNodeId(nodeIdentifier.id());
+            message.setHlc(clock.now());
+            // serialize once; the same bytes go to local sessions and, behind the envelope header, onto the wire
+            final EncodedChatMessage encoded = codec.encode(message);
+            reorderBuffer.offer(encoded);
+            final byte[] frame = envelope.seal(nodeIdentifier.shortId(), encoded.hlc(), encoded.room(), encoded.payload());
+            // local sessions already have it; the rest of the cluster gets it from the publisher thread
+            if (nodes != null) {
+                publishDirect(encoded.to(), nodes, frame);
+            } else {
+                final ChannelTopic topic = message.getRoom() == null ? channelTopic : roomTopics.topicFor(message.getRoom());
+                if (!publishPipeline.publish(topic.getTopic(), frame)) broadcastFailures.increment();
+            }
+            log.debug("Queued message for the cluster from nodeId {}", nodeIdentifier.id());
+        } catch (Exception e) {
+            broadcastFailures.increment();
+            log.error("Error broadcasting message to the cluster", e);
+        }
+        broadcastTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    // only the nodes holding the recipient are sent a direct message, each on its own channel
+    private void publishDirect(String to, List<String> nodes, byte[] frame) {
+        if (nodes.isEmpty() && !userDirectory.isLocal(to)) {
+            unroutable.increment();
+            log.debug("No node holds {}; direct message dropped", to);
+            return;
+        }
+        for (String node : nodes) {
+            if (!publishPipeline.publish(nodeTopics.topicFor(node).getTopic(), frame)) broadcastFailures.increment();
+        }
+    }
+}
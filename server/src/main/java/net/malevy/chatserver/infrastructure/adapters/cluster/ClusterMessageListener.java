@@ -1,60 +1,153 @@
 package net.malevy.chatserver.infrastructure.adapters.cluster;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
 import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
 import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
 @Slf4j
 @Service
-@Profile("cluster")
+@Profile("cluster & !cluster-streams")
 public
-class ClusterMessageListener {
+class ClusterMessageListener implements RoomSubscriptions {
     private final RedisMessageListenerContainer listenerContainer;
-    private final ObjectMapper objectMapper;
+    private final ChatMessageCodec codec;
     private final SessionManager sessionManager;
     private final NodeIdentifier nodeIdentifier;
     private final ChannelTopic chatTopic;
+    private final RoomTopics roomTopics;
+    private final NodeTopics nodeTopics;
+    private final HybridLogicalClock clock;
+    private final ReorderBuffer reorderBuffer;
+    private final RoomExecutor roomExecutor;
+    // the same listener instance has to be handed back to the container to unsubscribe
+    private final MessageListener messageListener = this::onMessage;
+    private final Set<String> subscribedRooms = new HashSet<>();
+    // (un)subscribing talks to Redis; a lock lets a waiting virtual thread unmount instead of pinning
+    private final ReentrantLock subscriptionLock = new ReentrantLock();
+    private final Timer receiveTimer;
+    private final Counter receiveFailures;
+    private final Counter receiveRejected;
+    private final EnvelopeFilter envelopeFilter;
+    private final RecentMessages recentMessages;
 
     public ClusterMessageListener(RedisMessageListenerContainer listenerContainer,
-                                  ObjectMapper objectMapper,
+                                  ChatMessageCodec codec,
                                   SessionManager sessionManager,
                                   NodeIdentifier nodeIdentifier,
-                                  ChannelTopic chatTopic) {
+                                  ChannelTopic chatTopic,
+                                  RoomTopics roomTopics,
+                                  NodeTopics nodeTopics,
+                                  HybridLogicalClock clock,
+                                  ReorderBuffer reorderBuffer,
+                                  RoomExecutor roomExecutor,
+                                  MeterRegistry meterRegistry) {
         this.listenerContainer = listenerContainer;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
         this.sessionManager = sessionManager;
         this.nodeIdentifier = nodeIdentifier;
         this.chatTopic = chatTopic;
+        this.roomTopics = roomTopics;
+        this.nodeTopics = Objects.requireNonNull(nodeTopics, "nodeTopics cannot be null");
+        this.clock = clock;
+        this.reorderBuffer = reorderBuffer;
+        this.roomExecutor = Objects.requireNonNull(roomExecutor, "roomExecutor cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.receiveTimer = ClusterMetrics.receiveTimer(meterRegistry);
+        this.receiveFailures = ClusterMetrics.receiveFailures(meterRegistry);
+        this.receiveRejected = ClusterMetrics.receiveRejected(meterRegistry);
+        this.envelopeFilter = new EnvelopeFilter(nodeIdentifier, sessionManager, meterRegistry);
+        this.recentMessages = new RecentMessages(RecentMessages.CAPACITY, meterRegistry);
     }
 
     @PostConstruct
     public void init() {
-        // Subscribe to Redis messages
-        listenerContainer.addMessageListener(this::onMessage, chatTopic);
+        // Subscribe to Redis messages: those for everyone, and direct messages for users connected here
+        listenerContainer.addMessageListener(messageListener, List.of(chatTopic, nodeTopics.topicFor(nodeIdentifier.id())));
+    }
+
+    @Override
+    public void reconcile(String room) {
+        subscriptionLock.lock();
+        try {
+            final boolean wanted = sessionManager.hasMembers(room);
+            if (wanted && subscribedRooms.add(room)) {
+                listenerContainer.addMessageListener(messageListener, roomTopics.topicFor(room));
+                log.debug("Subscribed to room {}", room);
+            } else if (!wanted && subscribedRooms.remove(room)) {
+                listenerContainer.removeMessageListener(messageListener, roomTopics.topicFor(room));
+                roomTopics.forget(room);
+                log.debug("Unsubscribed from room {}", room);
+            }
+        } finally {
+            subscriptionLock.unlock();
+        }
     }
 
+    // Runs on the Redis connection's thread, so it only reads the envelope header: this node's own echoes,
+    // rooms without local members and second copies of a retried publish stop here, and decoding and
+    // delivery happen on the room's shard.
     public void onMessage(Message message, byte[] pattern) {
+        final long startedAt = System.nanoTime();
+        final byte[] frame = message.getBody();
+        final ClusterEnvelope.Header header;
+        try {
+            header = ClusterEnvelope.isSealed(frame) ? ClusterEnvelope.header(frame) : null;
+        } catch (IllegalArgumentException e) {
+            receiveFailures.increment();
+            log.error("Error processing Redis message", e);
+            return;
+        }
+        if (header != null && !(envelopeFilter.wanted(header) && recentMessages.firstSighting(header))) return;
+        final String room = header != null
+                ? header.room()
+                : roomTopics.roomOf(new String(message.getChannel(), StandardCharsets.UTF_8));
+        if (!roomExecutor.execute(room, () -> receive(frame, header, startedAt))) {
+            receiveRejected.increment();
+            log.warn("Dropped a message for room {}: its shard is full", room);
+        }
+    }
+
+    private void receive(byte[] frame, ClusterEnvelope.Header header, long startedAt) {
         try {
-            ChatMessage chatMessage = objectMapper.readValue(message.getBody(), ChatMessage.class);
+            // only the routing fields are read; the payload is forwarded to sessions as-is
+            EncodedChatMessage chatMessage = codec.wrap(header == null ? frame : ClusterEnvelope.body(frame, header));
 
-            // Skip messages from this node to avoid infinite loop
-            if (nodeIdentifier.id().equals(chatMessage.getNodeId())) {
+            // Skip messages from this node to avoid infinite loop; bare payloads have no header that said so
+            if (nodeIdentifier.id().equals(chatMessage.nodeId())) {
                 log.debug("Skipping message from same node: {}", nodeIdentifier.id());
                 return;
             }
 
             // Broadcast to local WebSocket sessions only
-            sessionManager.broadcast(chatMessage);
+            clock.receive(chatMessage.hlc());
+            reorderBuffer.offer(chatMessage);
+            receiveTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
 
         } catch (Exception e) {
+            receiveFailures.increment();
             log.error("Error processing Redis message", e);
         }
     }
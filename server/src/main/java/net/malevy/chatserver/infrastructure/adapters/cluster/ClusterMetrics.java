@@ -0,0 +1,31 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Meters both cluster listeners record, whichever transport is active; registering twice returns the same meter
+final class ClusterMetrics {
+
+    private ClusterMetrics() {
+    }
+
+    static Timer receiveTimer(MeterRegistry registry) {
+        return Timer.builder("chat.cluster.receive")
+                .description("Time from taking a message off Redis until local sessions have it queued")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    static Counter receiveRejected(MeterRegistry registry) {
+        return Counter.builder("chat.cluster.receive.rejected")
+                .description("Messages from Redis dropped because their room's shard was full")
+                .register(registry);
+    }
+
+    static Counter receiveFailures(MeterRegistry registry) {
+        return Counter.builder("chat.cluster.receive.failures")
+                .description("Messages from Redis that could not be decoded or delivered")
+                .register(registry);
+    }
+}
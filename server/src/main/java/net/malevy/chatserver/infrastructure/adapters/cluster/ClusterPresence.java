@@ -0,0 +1,241 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceService;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceSettings;
+import net.malevy.chatserver.infrastructure.adapters.presence.RoomDelta;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Replicates each node's room members to every other node over one pub/sub channel. A node publishes
+ * at most one delta per presence window, numbered so receivers notice a lost one, and a heartbeat
+ * carrying the current number when nothing changed. A receiver that sees a gap, or a node it does not
+ * know, asks that node for its full state and ignores its deltas until the state arrives. Nodes that
+ * go quiet for expireAfter are forgotten, so a crashed node's users leave on their own. All publishing
+ * happens on this class's thread; the listener only applies what arrives.
+ */
+@Slf4j
+public class ClusterPresence implements MessageListener {
+
+    static final String DELTA = "delta";
+    static final String HEARTBEAT = "heartbeat";
+    static final String STATE = "state";
+    static final String SYNC = "sync";
+    static final String BYE = "bye";
+
+    private final PresenceService presence;
+    private final RedisMessageListenerContainer container;
+    private final RedisTemplate<String, byte[]> template;
+    private final ChannelTopic topic;
+    private final String self;
+    private final ObjectMapper mapper;
+    private final PresenceSettings settings;
+    private final Clock clock;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    // set by a sync request for this node's state; answered once on the next tick however many asked
+    private final AtomicBoolean stateRequested = new AtomicBoolean(true);
+    private final Counter published;
+    private final Counter resyncs;
+    private final Counter failures;
+    // only touched by the replicator thread
+    private long seq;
+    private long lastPublishedAt;
+    private boolean announced;
+    private volatile boolean running;
+    private Thread replicator;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record PresenceMessage(String kind, String node, long seq, String target,
+                           Map<String, RoomDelta> changes, Map<String, Set<String>> members) {
+    }
+
+    // written on the listener thread, read and rescheduled on the replicator's
+    private static final class Peer {
+        private volatile long seq;
+        private volatile long seenAt;
+        // while set, deltas are ignored until a state replaces everything known about the node
+        private volatile long nextSyncAt = -1;
+    }
+
+    public ClusterPresence(PresenceService presence,
+                           RedisMessageListenerContainer container,
+                           RedisTemplate<String, byte[]> template,
+                           ChannelTopic topic,
+                           NodeIdentifier nodeIdentifier,
+                           ObjectMapper mapper,
+                           PresenceSettings settings,
+                           Clock clock,
+                           MeterRegistry meterRegistry) {
+        this.presence = Objects.requireNonNull(presence, "presence cannot be null");
+        this.container = Objects.requireNonNull(container, "container cannot be null");
+        this.template = Objects.requireNonNull(template, "template cannot be null");
+        this.topic = Objects.requireNonNull(topic, "topic cannot be null");
+        this.self = Objects.requireNonNull(nodeIdentifier, "nodeIdentifier cannot be null").id();
+        this.mapper = Objects.requireNonNull(mapper, "mapper cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.published = Counter.builder("chat.cluster.presence.published")
+                .description("Presence deltas, heartbeats and states this node published")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("chat.cluster.presence.resyncs")
+                .description("Full states requested from other nodes after a gap or an unknown node")
+                .register(meterRegistry);
+        this.failures = Counter.builder("chat.cluster.presence.failures")
+                .description("Presence messages that could not be published or read")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        container.addMessageListener(this, topic);
+        running = true;
+        replicator = Thread.ofPlatform().name("presence-replicator").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(replicator);
+        replicator.join(TimeUnit.SECONDS.toMillis(5));
+        container.removeMessageListener(this, topic);
+        // lets the others drop this node's users now rather than after expireAfter
+        publish(new PresenceMessage(BYE, self, seq, null, null, null));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        final PresenceMessage received;
+        try {
+            received = mapper.readValue(message.getBody(), PresenceMessage.class);
+        } catch (IOException e) {
+            failures.increment();
+            log.warn("Discarding unreadable presence message", e);
+            return;
+        }
+        if (received.kind() == null || received.node() == null || self.equals(received.node())) return;
+        final long now = clock.millis();
+        switch (received.kind()) {
+            case DELTA -> peers.compute(received.node(), (node, peer) -> {
+                final Peer known = peer == null ? new Peer() : peer;
+                known.seenAt = now;
+                if (peer != null && known.nextSyncAt < 0 && received.seq() == known.seq + 1) {
+                    presence.applyRemote(node, received.changes() == null ? Map.of() : received.changes());
+                    known.seq = received.seq();
+                } else {
+                    requestSync(known, now);
+                }
+                return known;
+            });
+            case HEARTBEAT -> peers.compute(received.node(), (node, peer) -> {
+                final Peer known = peer == null ? new Peer() : peer;
+                known.seenAt = now;
+                if (peer == null || (known.nextSyncAt < 0 && received.seq() != known.seq)) requestSync(known, now);
+                return known;
+            });
+            case STATE -> peers.compute(received.node(), (node, peer) -> {
+                final Peer known = peer == null ? new Peer() : peer;
+                presence.replaceRemote(node, received.members() == null ? Map.of() : received.members());
+                known.seq = received.seq();
+                known.seenAt = now;
+                known.nextSyncAt = -1;
+                return known;
+            });
+            case SYNC -> {
+                if (received.target() == null || self.equals(received.target())) stateRequested.set(true);
+            }
+            case BYE -> {
+                peers.remove(received.node());
+                presence.forget(received.node());
+            }
+            default -> log.debug("Ignoring presence message of kind {}", received.kind());
+        }
+    }
+
+    // one round of the replicator: this node's changes out, pending sync requests out, silent nodes forgotten
+    void tick() {
+        final long now = clock.millis();
+        if (!announced) {
+            // a node that just started knows nobody; every other node answers with its state
+            announced = publish(new PresenceMessage(SYNC, self, seq, null, null, null));
+        }
+        final Map<String, RoomDelta> changes = presence.drainChanges();
+        if (!changes.isEmpty()) {
+            // numbered even if the publish fails, so receivers see the gap and resync
+            seq++;
+            publish(new PresenceMessage(DELTA, self, seq, null, changes, null));
+            lastPublishedAt = now;
+        } else if (now - lastPublishedAt >= settings.heartbeat().toMillis()) {
+            publish(new PresenceMessage(HEARTBEAT, self, seq, null, null, null));
+            lastPublishedAt = now;
+        }
+        if (stateRequested.getAndSet(false)) {
+            if (!publish(new PresenceMessage(STATE, self, seq, null, null, presence.localMembers()))) stateRequested.set(true);
+        }
+        peers.forEach((node, peer) -> {
+            final long due = peer.nextSyncAt;
+            // requested on the listener thread, sent from here; repeated every heartbeat until a state arrives
+            if (due >= 0 && now >= due && publish(new PresenceMessage(SYNC, self, seq, node, null, null))) {
+                peer.nextSyncAt = now + settings.heartbeat().toMillis();
+            }
+        });
+        final long expireAfter = settings.expireAfter().toMillis();
+        peers.forEach((node, peer) -> {
+            if (now - peer.seenAt > expireAfter && peers.remove(node, peer)) {
+                presence.forget(node);
+                log.info("Forgot the presence of node {}, silent for {}ms", node, now - peer.seenAt);
+            }
+        });
+    }
+
+    private void requestSync(Peer peer, long now) {
+        if (peer.nextSyncAt >= 0) return;
+        peer.nextSyncAt = now;
+        resyncs.increment();
+    }
+
+    private boolean publish(PresenceMessage message) {
+        try {
+            template.convertAndSend(topic.getTopic(), mapper.writeValueAsBytes(message));
+            published.increment();
+            return true;
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("Publishing presence {} failed", message.kind(), e);
+            return false;
+        }
+    }
+
+    private void run() {
+        final long windowNanos = settings.window().toNanos();
+        while (running) {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                log.error("Presence replication failed", e);
+            }
+            LockSupport.parkNanos(this, windowNanos);
+        }
+    }
+}
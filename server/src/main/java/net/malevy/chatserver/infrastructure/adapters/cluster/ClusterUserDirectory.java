@@ -0,0 +1,280 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+ * Which nodes a user's direct messages go to. This node leases the users it has sessions for (see
+ * UserLeases) and renews them in the background; senders look recipients up in a local cache that
+ * only falls through to Redis once per user per cache TTL. A node that dies stops renewing, its leases
+ * run out, and lookups stop returning it without anyone having to clean up after it.
+ * All lease traffic happens on the renewer thread: connects and disconnects only note the user and wake
+ * it, so a reconnect storm becomes a few pipelined renewals instead of a queue of callers behind a lock.
+ */
+@Slf4j
+public class ClusterUserDirectory implements UserDirectory {
+
+    private final UserLeases leases;
+    private final SessionManager sessionManager;
+    private final String self;
+    private final DirectorySettings settings;
+    private final Clock clock;
+    // cache misses are looked up here, in the order they were asked for, instead of on the sender's thread
+    private final Executor lookups;
+    // users this node holds a lease on; only the renewer thread changes it
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    // users whose local sessions changed since the renewer last looked
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    // username -> the other nodes holding the user, as of the last lookup
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    // held username -> how many nodes, this one included, held the user at the last renewal
+    private final Map<String, Integer> holding = new ConcurrentHashMap<>();
+    // lookups handed to the lookup executor that have not finished yet
+    private final AtomicInteger queuedLookups = new AtomicInteger();
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter failures;
+    private volatile boolean running;
+    private volatile Thread renewer;
+
+    private record Route(List<String> nodes, long expiresAt) {
+    }
+
+    public ClusterUserDirectory(UserLeases leases,
+                                SessionManager sessionManager,
+                                NodeIdentifier nodeIdentifier,
+                                DirectorySettings settings,
+                                Clock clock,
+                                Executor lookups,
+                                MeterRegistry meterRegistry) {
+        this.leases = Objects.requireNonNull(leases, "leases cannot be null");
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.self = Objects.requireNonNull(nodeIdentifier, "nodeIdentifier cannot be null").id();
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        this.lookups = Objects.requireNonNull(lookups, "lookups cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.cacheHits = lookups(meterRegistry, "hit");
+        this.cacheMisses = lookups(meterRegistry, "miss");
+        this.failures = Counter.builder("chat.cluster.directory.failures")
+                .description("Directory reads and writes that failed; leases are retried on the next renewal")
+                .register(meterRegistry);
+        Gauge.builder("chat.cluster.directory.held", held, Set::size)
+                .description("Users this node holds a directory lease on")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("chat.cluster.directory.lookups")
+                .description("Recipient lookups, by whether the local cache answered them")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        renewer = Thread.ofPlatform().name("user-directory").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(renewer);
+        renewer.join(TimeUnit.SECONDS.toMillis(5));
+        // hand the users back now rather than a lease from now
+        for (String username : List.copyOf(held)) {
+            release(username);
+        }
+    }
+
+    // only notes the user; the renewer leases or releases them, together with everyone else who changed
+    @Override
+    public void reconcile(String username) {
+        Objects.requireNonNull(username, "username cannot be null");
+        changed.add(username);
+        if (renewer != null) LockSupport.unpark(renewer);
+    }
+
+    // the other nodes holding the user, or null when the cache cannot say without waiting on Redis; also null
+    // while earlier lookups are queued, so a message routed now cannot overtake one still waiting on a lookup
+    public List<String> cachedNodesOf(String username) {
+        Objects.requireNonNull(username, "username cannot be null");
+        if (queuedLookups.get() > 0) return null;
+        final Route cached = routes.get(username);
+        if (cached == null || clock.millis() >= cached.expiresAt()) return null;
+        cacheHits.increment();
+        return cached.nodes();
+    }
+
+    // hands the other nodes holding the user to then on the lookup executor, after every lookup queued before
+    // it; false when the executor would not take it
+    public boolean lookup(String username, Consumer<List<String>> then) {
+        Objects.requireNonNull(username, "username cannot be null");
+        Objects.requireNonNull(then, "then cannot be null");
+        queuedLookups.incrementAndGet();
+        try {
+            lookups.execute(() -> {
+                try {
+                    then.accept(nodesOf(username));
+                } finally {
+                    queuedLookups.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            queuedLookups.decrementAndGet();
+            failures.increment();
+            log.warn("Lookup of the nodes holding {} was refused", username);
+            return false;
+        }
+    }
+
+    // the other nodes holding the user, waiting on Redis on a miss; this node's own sessions are the
+    // session manager's business
+    public List<String> nodesOf(String username) {
+        Objects.requireNonNull(username, "username cannot be null");
+        final long now = clock.millis();
+        final Route cached = routes.get(username);
+        if (cached != null && now < cached.expiresAt()) {
+            cacheHits.increment();
+            return cached.nodes();
+        }
+        cacheMisses.increment();
+        final List<String> holders;
+        try {
+            holders = leases.holders(username, now);
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("Looking up the nodes holding {} failed", username, e);
+            // a stale route still beats dropping the message
+            return cached == null ? List.of() : cached.nodes();
+        }
+        final List<String> others = new ArrayList<>(holders.size());
+        for (String node : holders) {
+            if (!self.equals(node)) others.add(node);
+        }
+        final List<String> nodes = List.copyOf(others);
+        routes.put(username, new Route(nodes, now + settings.cacheTtl().toMillis()));
+        return nodes;
+    }
+
+    // counted by the renewer along with each renewal, so asking never waits on Redis; 1 until the first count
+    @Override
+    public int nodesHolding(String username) {
+        return Math.max(1, holding.getOrDefault(username, 1));
+    }
+
+    public boolean isLocal(String username) {
+        return sessionManager.isOnline(username);
+    }
+
+    Set<String> held() {
+        return held;
+    }
+
+    // leases the users who connected since the last call and releases those who left, in one pipelined renewal
+    void reconcileChanged() {
+        if (changed.isEmpty()) return;
+        final List<String> leasing = new ArrayList<>();
+        for (String username : List.copyOf(changed)) {
+            changed.remove(username);
+            final boolean wanted = sessionManager.isOnline(username);
+            if (wanted && held.add(username)) {
+                leasing.add(username);
+            } else if (!wanted && held.contains(username)) {
+                release(username);
+            }
+        }
+        if (leasing.isEmpty()) return;
+        renew(leasing);
+        log.debug("Leased {} users", leasing.size());
+    }
+
+    // renews every lease this node still needs and counts their holders, retries failed releases and forgets
+    // expired routes
+    void renewAll() {
+        final List<String> online = new ArrayList<>(held.size());
+        for (String username : List.copyOf(held)) {
+            if (sessionManager.isOnline(username)) {
+                online.add(username);
+            } else {
+                release(username);
+            }
+        }
+        if (!online.isEmpty()) {
+            renew(online);
+            count(online);
+        }
+        final long now = clock.millis();
+        routes.values().removeIf(route -> route.expiresAt() <= now);
+    }
+
+    private void run() {
+        final long everyNanos = settings.renewEvery().toNanos();
+        long renewAt = System.nanoTime() + everyNanos;
+        while (running) {
+            // woken early by reconcile; the users who changed meanwhile go out together
+            LockSupport.parkNanos(this, Math.max(0, renewAt - System.nanoTime()));
+            if (!running) break;
+            reconcileChanged();
+            if (System.nanoTime() - renewAt >= 0) {
+                renewAll();
+                renewAt = System.nanoTime() + everyNanos;
+            }
+        }
+    }
+
+    private void renew(List<String> usernames) {
+        try {
+            leases.renew(usernames, self, clock.millis(), settings.lease());
+        } catch (RuntimeException e) {
+            // still held; the next renewal tries again well before the lease runs out
+            failures.increment();
+            log.warn("Renewing {} directory leases failed", usernames.size(), e);
+        }
+    }
+
+    private void count(List<String> usernames) {
+        try {
+            holding.putAll(leases.counts(usernames, clock.millis()));
+        } catch (RuntimeException e) {
+            // the last counts stand until the next renewal
+            failures.increment();
+            log.warn("Counting the nodes holding {} users failed", usernames.size(), e);
+        }
+    }
+
+    private void release(String username) {
+        try {
+            leases.release(username, self);
+            held.remove(username);
+            holding.remove(username);
+        } catch (RuntimeException e) {
+            // still held; the next renewal tries again
+            failures.increment();
+            log.warn("Releasing the directory lease on {} failed", username, e);
+        }
+    }
+}
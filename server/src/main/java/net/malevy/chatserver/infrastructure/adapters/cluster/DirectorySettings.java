@@ -0,0 +1,24 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/*
+ * lease: how long a node's claim on a user lasts without renewal, so roughly how long a dead node
+ * keeps receiving a user's direct messages; it renews every third of that.
+ * cacheTtl: how long a lookup is reused before Redis is asked again, and so how long a sender may
+ * keep routing to a node the user has just left.
+ */
+public record DirectorySettings(Duration lease, Duration cacheTtl) {
+
+    public DirectorySettings {
+        Objects.requireNonNull(lease, "lease cannot be null");
+        Objects.requireNonNull(cacheTtl, "cacheTtl cannot be null");
+        if (lease.toMillis() < 3) throw new IllegalArgumentException("lease must be at least 3ms");
+        if (cacheTtl.isNegative()) throw new IllegalArgumentException("cacheTtl cannot be negative");
+    }
+
+    public Duration renewEvery() {
+        return lease.dividedBy(3);
+    }
+}
@@ -0,0 +1,43 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+
+// What both cluster listeners drop from the envelope header alone, before the body is looked at
+final class EnvelopeFilter {
+
+    private final int self;
+    private final SessionManager sessionManager;
+    private final Counter ownEchoes;
+    private final Counter withoutMembers;
+
+    EnvelopeFilter(NodeIdentifier nodeIdentifier, SessionManager sessionManager, MeterRegistry meterRegistry) {
+        this.self = nodeIdentifier.shortId();
+        this.sessionManager = sessionManager;
+        this.ownEchoes = filtered(meterRegistry, "own");
+        this.withoutMembers = filtered(meterRegistry, "no-members");
+    }
+
+    private static Counter filtered(MeterRegistry registry, String reason) {
+        return Counter.builder("chat.cluster.receive.filtered")
+                .description("Messages from Redis dropped on their envelope header, without decoding the body")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    boolean wanted(ClusterEnvelope.Header header) {
+        if (header.origin() == self) {
+            ownEchoes.increment();
+            return false;
+        }
+        // a room this node stopped following since the message was sent
+        if (header.room() != null && !sessionManager.hasMembers(header.room())) {
+            withoutMembers.increment();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * A hybrid logical clock packed into one long: wall-clock milliseconds in the high 48 bits and a
+ * logical counter in the low 16, so timestamps compare as plain numbers. Every message a node
+ * publishes gets now(), and every message it receives moves the clock past the sender's value, so a
+ * reply is always ordered after what it replies to even when the two hosts' clocks disagree.
+ *
+ * A remote timestamp more than maxDrift ahead of the local wall clock is not adopted; otherwise one
+ * host with a wrong clock would drag every node's timestamps (and reorder watermarks) along with it.
+ */
+public final class HybridLogicalClock {
+
+    public static final int LOGICAL_BITS = 16;
+
+    private final Clock clock;
+    private final long maxDrift;
+    private final AtomicLong last = new AtomicLong();
+    private final Counter driftRejected;
+
+    public HybridLogicalClock(Clock clock, Duration maxDrift, MeterRegistry meterRegistry) {
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        this.maxDrift = Objects.requireNonNull(maxDrift, "maxDrift cannot be null").toMillis() << LOGICAL_BITS;
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.driftRejected = Counter.builder("chat.cluster.clock.drift.rejected")
+                .description("Remote timestamps ignored because they were too far ahead of the local clock")
+                .register(meterRegistry);
+    }
+
+    // a timestamp for a message this node is about to send
+    public long now() {
+        final long wall = wall();
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(previous + 1, wall);
+        } while (!last.compareAndSet(previous, next));
+        return next;
+    }
+
+    // merges a timestamp from another node; 0 (a sender without a clock) leaves the clock alone
+    public void receive(long remote) {
+        if (remote <= 0) return;
+        final long wall = wall();
+        if (remote - wall > maxDrift) {
+            driftRejected.increment();
+            return;
+        }
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            if (previous >= remote && previous >= wall) return;
+            next = Math.max(previous, Math.max(remote, wall));
+        } while (!last.compareAndSet(previous, next));
+    }
+
+    // the clock's reading without ticking it
+    public long current() {
+        return Math.max(last.get(), wall());
+    }
+
+    public static long physicalOf(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+
+    public static long of(long physicalMillis) {
+        return physicalMillis << LOGICAL_BITS;
+    }
+
+    private long wall() {
+        return clock.millis() << LOGICAL_BITS;
+    }
+}
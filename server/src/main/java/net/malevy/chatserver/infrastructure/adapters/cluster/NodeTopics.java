@@ -0,0 +1,23 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Names the Redis channel that carries a node's direct messages, e.g. chat:node:<node id>
+public class NodeTopics {
+
+    private final String prefix;
+    private final Map<String, ChannelTopic> topics = new ConcurrentHashMap<>();
+
+    public NodeTopics(String prefix) {
+        this.prefix = Objects.requireNonNull(prefix, "prefix cannot be null");
+    }
+
+    public ChannelTopic topicFor(String nodeId) {
+        Objects.requireNonNull(nodeId, "nodeId cannot be null");
+        return topics.computeIfAbsent(nodeId, n -> new ChannelTopic(prefix + n));
+    }
+}
@@ -0,0 +1,20 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record OrderingSettings(
+        Duration reorderWindow,
+        Duration maxDrift) {
+
+    public OrderingSettings {
+        Objects.requireNonNull(reorderWindow, "reorderWindow cannot be null");
+        Objects.requireNonNull(maxDrift, "maxDrift cannot be null");
+        if (reorderWindow.isNegative()) throw new IllegalArgumentException("reorderWindow cannot be negative");
+        if (maxDrift.isNegative()) throw new IllegalArgumentException("maxDrift cannot be negative");
+    }
+
+    public boolean reordering() {
+        return !reorderWindow.isZero();
+    }
+}
@@ -0,0 +1,25 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// The command RedisPublishPipeline queues for each message: PUBLISH for pub/sub, XADD for streams
+@FunctionalInterface
+public interface PipelinedCommand {
+
+    PipelinedCommand PUBLISH = (connection, channel, payload) -> connection.publish(channel, payload);
+
+    void write(RedisConnection connection, byte[] destination, byte[] payload);
+
+    // XADD <stream> MAXLEN ~ maxLength * m <payload>; approximate trimming lets Redis drop whole nodes
+    static PipelinedCommand xadd(long maxLength) {
+        final byte[] field = ChatStreams.FIELD.getBytes(StandardCharsets.UTF_8);
+        final XAddOptions options = XAddOptions.maxlen(maxLength).approximateTrimming(true);
+        return (connection, stream, payload) ->
+                connection.streamCommands().xAdd(MapRecord.create(stream, Map.of(field, payload)), options);
+    }
+}
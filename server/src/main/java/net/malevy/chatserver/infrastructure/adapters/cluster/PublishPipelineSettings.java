@@ -0,0 +1,16 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record PublishPipelineSettings(
+        int batchSize,
+        Duration maxDelay,
+        int queueCapacity) {
+
+    public PublishPipelineSettings {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+        Objects.requireNonNull(maxDelay, "maxDelay cannot be null");
+        if (queueCapacity < batchSize) throw new IllegalArgumentException("queueCapacity must be at least batchSize");
+    }
+}
@@ -0,0 +1,72 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+
+import java.util.Objects;
+
+/*
+ * The enveloped messages a node received lately, so that a second copy of one is not delivered. The
+ * origin's short id and hybrid-clock timestamp in the header name a message: a node's clock never
+ * hands out the same timestamp twice. Copies come from the publish pipeline sending a failed batch
+ * again whole (see RedisPublishPipeline), so the part of it that went out the first time arrives twice,
+ * a batch or so apart.
+ *
+ * A set-associative table: a key hashes to a bucket of WAYS entries and replaces the bucket's oldest
+ * when it is full, so it remembers roughly the last capacity messages and allocates nothing per message.
+ */
+final class RecentMessages {
+
+    // many publish batches' worth, so a copy arriving a batch behind its original still finds it
+    static final int CAPACITY = 1 << 14;
+    private static final int WAYS = 4;
+
+    private final int bucketMask;
+    private final long[] hlcs;
+    private final int[] origins;
+    // per bucket, the way the next key goes into
+    private final byte[] next;
+    private final Counter duplicates;
+
+    RecentMessages(int capacity, MeterRegistry meterRegistry) {
+        if (capacity < WAYS || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two of at least " + WAYS);
+        }
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.bucketMask = capacity / WAYS - 1;
+        this.hlcs = new long[capacity];
+        this.origins = new int[capacity];
+        this.next = new byte[capacity / WAYS];
+        this.duplicates = Counter.builder("chat.cluster.receive.filtered")
+                .description("Messages from Redis dropped on their envelope header, without decoding the body")
+                .tag("reason", "duplicate")
+                .register(meterRegistry);
+    }
+
+    // false for a message already seen; a header without a timestamp cannot be told apart and always passes
+    synchronized boolean firstSighting(ClusterEnvelope.Header header) {
+        final long hlc = header.hlc();
+        if (hlc <= 0) return true;
+        final int origin = header.origin();
+        final int bucket = bucketOf(origin, hlc);
+        final int base = bucket * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            if (hlcs[base + way] == hlc && origins[base + way] == origin) {
+                duplicates.increment();
+                return false;
+            }
+        }
+        final int way = next[bucket];
+        next[bucket] = (byte) ((way + 1) % WAYS);
+        hlcs[base + way] = hlc;
+        origins[base + way] = origin;
+        return true;
+    }
+
+    // the low bits of consecutive timestamps barely differ, so they are mixed before picking a bucket
+    private int bucketOf(int origin, long hlc) {
+        final long mixed = (hlc ^ (long) origin << 32) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 40) & bucketMask;
+    }
+}
@@ -0,0 +1,112 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * XREAD ... BLOCK ties up its connection, so reads keep one connection of their own for as long as
+ * it works (Lettuce would otherwise open a dedicated connection per call). Only the reader thread
+ * opens it; a failure closes it and the next read reconnects. close() comes from another thread, so
+ * whoever takes the connection out of the reference is the one that closes it, and once closed no
+ * read opens another.
+ */
+@Slf4j
+public class RedisChatStreams implements ChatStreams {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final AtomicReference<RedisConnection> readConnection = new AtomicReference<>();
+    private volatile boolean closed;
+
+    public RedisChatStreams(RedisConnectionFactory connectionFactory) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "connectionFactory cannot be null");
+    }
+
+    @Override
+    public List<StreamEntry> read(Map<String, String> offsets, int count, Duration block) {
+        @SuppressWarnings("unchecked")
+        final StreamOffset<byte[]>[] streams = new StreamOffset[offsets.size()];
+        int i = 0;
+        for (Map.Entry<String, String> offset : offsets.entrySet()) {
+            streams[i++] = StreamOffset.create(offset.getKey().getBytes(StandardCharsets.UTF_8), ReadOffset.from(offset.getValue()));
+        }
+        if (closed) return List.of();
+        RedisConnection connection = readConnection.get();
+        if (connection == null) {
+            connection = connectionFactory.getConnection();
+            readConnection.set(connection);
+            // a close() that ran while it was being opened did not see it
+            if (closed) {
+                closeReadConnection(connection);
+                return List.of();
+            }
+        }
+        try {
+            final List<ByteRecord> records = connection.streamCommands()
+                    .xRead(StreamReadOptions.empty().count(count).block(block), streams);
+            return toEntries(records, false);
+        } catch (RuntimeException e) {
+            closeReadConnection(connection);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<StreamEntry> last(String key, int count) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            final List<ByteRecord> records = connection.streamCommands()
+                    .xRevRange(key.getBytes(StandardCharsets.UTF_8), Range.unbounded(), Limit.limit().count(count));
+            return toEntries(records, true);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        final RedisConnection connection = readConnection.get();
+        if (connection != null) closeReadConnection(connection);
+    }
+
+    // only the caller that clears the reference closes the connection, so it is closed once
+    private void closeReadConnection(RedisConnection connection) {
+        if (!readConnection.compareAndSet(connection, null)) return;
+        try {
+            connection.close();
+        } catch (RuntimeException e) {
+            log.debug("Error closing stream read connection", e);
+        }
+    }
+
+    private static List<StreamEntry> toEntries(List<ByteRecord> records, boolean reverse) {
+        if (records == null || records.isEmpty()) return List.of();
+        final List<StreamEntry> entries = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            entries.add(new StreamEntry(
+                    new String(record.getStream(), StandardCharsets.UTF_8),
+                    record.getId().getValue(),
+                    payloadOf(record)));
+        }
+        return reverse ? entries.reversed() : entries;
+    }
+
+    private static byte[] payloadOf(ByteRecord record) {
+        // entries carry a single field; byte[] keys do not hash by content, so look it up by value
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            if (FIELD.equals(new String(field.getKey(), StandardCharsets.UTF_8))) return field.getValue();
+        }
+        return new byte[0];
+    }
+}
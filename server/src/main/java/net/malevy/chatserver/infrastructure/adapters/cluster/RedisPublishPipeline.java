@@ -0,0 +1,186 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Takes PUBLISH (or XADD, see PipelinedCommand) off the sending thread. Producers append to a lock-free queue; a single publisher
+ * thread drains it in batches and pipelines each batch over one connection, flushing once the batch
+ * is full or the oldest message has waited maxDelay. One queue, one thread and one connection keep
+ * the node's publishes - and so every sender's - in order. A batch that fails is tried once more
+ * before it is given up on.
+ */
+@Slf4j
+@Component
+@Profile("cluster")
+public class RedisPublishPipeline {
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final PublishPipelineSettings settings;
+    private final PipelinedCommand command;
+    private final Queue<PendingPublish> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Timer publishLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter failed;
+    private final Counter rejected;
+    private volatile boolean running;
+    private Thread publisher;
+
+    public RedisPublishPipeline(RedisTemplate<String, byte[]> redisTemplate,
+                                PublishPipelineSettings settings,
+                                PipelinedCommand command,
+                                MeterRegistry meterRegistry) {
+        this.redisTemplate = Objects.requireNonNull(redisTemplate, "redisTemplate cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.command = Objects.requireNonNull(command, "command cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.publishLatency = Timer.builder("chat.cluster.publish.latency")
+                .description("Time from enqueue until the pipelined command completed")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.cluster.publish.batch.size")
+                .description("Messages per pipelined batch")
+                .register(meterRegistry);
+        this.failed = Counter.builder("chat.cluster.publish.failed")
+                .description("Messages in batches that could not be published, even on a second try")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.cluster.publish.rejected")
+                .description("Messages dropped because the publish queue was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.cluster.publish.queue.depth", depth, AtomicInteger::get)
+                .description("Messages waiting to be published")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        publisher = Thread.ofPlatform().name("redis-publisher").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(publisher);
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean publish(String channel, byte[] payload) {
+        Objects.requireNonNull(channel, "channel cannot be null");
+        Objects.requireNonNull(payload, "payload cannot be null");
+        final int queued = depth.incrementAndGet();
+        if (queued > settings.queueCapacity()) {
+            depth.decrementAndGet();
+            rejected.increment();
+            log.warn("Publish queue full ({}), dropping message for {}", settings.queueCapacity(), channel);
+            return false;
+        }
+        queue.offer(new PendingPublish(channel.getBytes(StandardCharsets.UTF_8), payload, System.nanoTime()));
+        // wake the publisher for the first message of a batch and once a batch is full
+        if (queued == 1 || queued == settings.batchSize()) {
+            LockSupport.unpark(publisher);
+        }
+        return true;
+    }
+
+    int queued() {
+        return depth.get();
+    }
+
+    private void run() {
+        final List<PendingPublish> batch = new ArrayList<>(settings.batchSize());
+        while (running || depth.get() > 0) {
+            if (depth.get() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            awaitBatch();
+            drainInto(batch);
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // gives the batch until maxDelay after its oldest message to fill up; a full batch or shutdown cuts the wait short
+    private void awaitBatch() {
+        // counted before it is queued, so the first message may not be there yet; it is then as good as new
+        final PendingPublish oldest = queue.peek();
+        final long deadline = (oldest == null ? System.nanoTime() : oldest.enqueuedAt()) + settings.maxDelay().toNanos();
+        long remaining;
+        while (running && depth.get() < settings.batchSize() && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void drainInto(List<PendingPublish> batch) {
+        PendingPublish next;
+        while (batch.size() < settings.batchSize() && (next = queue.poll()) != null) {
+            batch.add(next);
+        }
+        depth.addAndGet(-batch.size());
+    }
+
+    private void flush(List<PendingPublish> batch) {
+        if (!tryFlush(batch)) {
+            // the part of the batch that went out before the failure goes out again; receivers drop the
+            // second copies by the origin and clock in their envelopes (see RecentMessages)
+            log.warn("Publishing a batch of {} messages to Redis failed; trying once more", batch.size());
+            if (!tryFlush(batch)) {
+                failed.increment(batch.size());
+                log.error("Dropped a batch of {} messages: publishing to Redis failed twice", batch.size());
+                return;
+            }
+        }
+        final long completedAt = System.nanoTime();
+        for (PendingPublish pending : batch) {
+            publishLatency.record(completedAt - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+        batchSizes.record(batch.size());
+    }
+
+    private boolean tryFlush(List<PendingPublish> batch) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                publishAll(connection, batch);
+                return null;
+            });
+            return true;
+        } catch (RuntimeException e) {
+            log.debug("Pipelined publish of {} messages failed", batch.size(), e);
+            return false;
+        }
+    }
+
+    private void publishAll(RedisConnection connection, List<PendingPublish> batch) {
+        for (PendingPublish pending : batch) {
+            command.write(connection, pending.channel(), pending.payload());
+        }
+    }
+
+    private record PendingPublish(byte[] channel, byte[] payload, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,93 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * One sorted set per user, <prefix><username>, whose members are node ids scored by the time their
+ * lease runs out. Renewals also push the key's own expiry out by a lease, so a user nobody renews
+ * disappears entirely, and a lookup is a single ZRANGEBYSCORE over a handful of members.
+ */
+public class RedisUserLeases implements UserLeases {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final String prefix;
+
+    public RedisUserLeases(RedisConnectionFactory connectionFactory, String prefix) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "connectionFactory cannot be null");
+        this.prefix = Objects.requireNonNull(prefix, "prefix cannot be null");
+    }
+
+    @Override
+    public void renew(Collection<String> usernames, String nodeId, long now, Duration lease) {
+        if (usernames.isEmpty()) return;
+        final byte[] member = nodeId.getBytes(StandardCharsets.UTF_8);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            for (String username : usernames) {
+                final byte[] key = keyOf(username);
+                connection.zSetCommands().zRemRangeByScore(key, Range.closed(Double.NEGATIVE_INFINITY, (double) now));
+                connection.zSetCommands().zAdd(key, now + lease.toMillis(), member);
+                connection.keyCommands().pExpire(key, lease.toMillis());
+            }
+            connection.closePipeline();
+        }
+    }
+
+    @Override
+    public void release(String username, String nodeId) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.zSetCommands().zRem(keyOf(username), nodeId.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public List<String> holders(String username, long now) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            final Set<byte[]> members = connection.zSetCommands()
+                    .zRangeByScore(keyOf(username), Range.leftOpen((double) now, Double.POSITIVE_INFINITY), Limit.unlimited());
+            if (members == null || members.isEmpty()) return List.of();
+            final List<String> nodes = new ArrayList<>(members.size());
+            for (byte[] node : members) {
+                nodes.add(new String(node, StandardCharsets.UTF_8));
+            }
+            return nodes;
+        }
+    }
+
+    @Override
+    public Map<String, Integer> counts(Collection<String> usernames, long now) {
+        if (usernames.isEmpty()) return Map.of();
+        final List<String> ordered = List.copyOf(usernames);
+        final List<Object> replies;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            for (String username : ordered) {
+                connection.zSetCommands().zCount(keyOf(username), Range.leftOpen((double) now, Double.POSITIVE_INFINITY));
+            }
+            replies = connection.closePipeline();
+        }
+        final Map<String, Integer> counts = new HashMap<>(ordered.size() * 2);
+        for (int i = 0; i < ordered.size(); i++) {
+            final Object reply = i < replies.size() ? replies.get(i) : null;
+            counts.put(ordered.get(i), reply instanceof Number count ? count.intValue() : 0);
+        }
+        return counts;
+    }
+
+    private byte[] keyOf(String username) {
+        return (prefix + username).getBytes(StandardCharsets.UTF_8);
+    }
+}
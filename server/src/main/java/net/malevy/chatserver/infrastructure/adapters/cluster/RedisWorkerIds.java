@@ -0,0 +1,138 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.infrastructure.ids.SnowflakeIdGenerator;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Gives this node a Snowflake worker id no other live node holds. Key <prefix><worker> is set to the
+ * node id with SET NX PX and renewed every third of a lease for as long as the node runs; a node that
+ * dies stops renewing and its worker is free again a lease later. A configured worker is claimed the
+ * same way, so two nodes given the same one fail at startup instead of minting the same ids.
+ */
+@Slf4j
+public class RedisWorkerIds implements AutoCloseable {
+
+    // only the holder may extend or give back a worker
+    private static final byte[] RENEW = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RELEASE = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "return redis.call('del', KEYS[1]) else return 0 end").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory connectionFactory;
+    private final String prefix;
+    private final String nodeId;
+    private final byte[] owner;
+    private final Duration lease;
+    private final int worker;
+    private final Thread renewer;
+    private volatile boolean running = true;
+
+    // configured < 0 takes whichever worker is free; throws IllegalStateException when the worker cannot be had
+    public RedisWorkerIds(RedisConnectionFactory connectionFactory, String prefix, String nodeId, int configured,
+                          Duration lease) {
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "connectionFactory cannot be null");
+        this.prefix = Objects.requireNonNull(prefix, "prefix cannot be null");
+        this.nodeId = Objects.requireNonNull(nodeId, "nodeId cannot be null");
+        this.owner = nodeId.getBytes(StandardCharsets.UTF_8);
+        this.lease = Objects.requireNonNull(lease, "lease cannot be null");
+        if (lease.toMillis() < 3) throw new IllegalArgumentException("lease must be at least 3ms");
+        if (configured > SnowflakeIdGenerator.MAX_WORKER) {
+            throw new IllegalArgumentException("worker must be at most " + SnowflakeIdGenerator.MAX_WORKER);
+        }
+        this.worker = configured >= 0 ? claim(configured) : claimAny();
+        log.info("Claimed worker id {} for node {}", worker, nodeId);
+        this.renewer = Thread.ofPlatform().name("worker-id-lease").daemon().start(this::run);
+    }
+
+    public int worker() {
+        return worker;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(renewer);
+        try {
+            renewer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.scriptingCommands().eval(RELEASE, ReturnType.INTEGER, 1, keyOf(worker), owner);
+        } catch (RuntimeException e) {
+            // it runs out a lease from now anyway
+            log.warn("Releasing worker id {} failed", worker, e);
+        }
+    }
+
+    private int claim(int candidate) {
+        if (!trySet(candidate)) {
+            throw new IllegalStateException("worker id " + candidate + " is already held by another node");
+        }
+        return candidate;
+    }
+
+    // starts at a random worker so nodes starting together do not all race for the same one
+    private int claimAny() {
+        final int start = ThreadLocalRandom.current().nextInt(SnowflakeIdGenerator.MAX_WORKER + 1);
+        for (int i = 0; i <= SnowflakeIdGenerator.MAX_WORKER; i++) {
+            final int candidate = (start + i) & SnowflakeIdGenerator.MAX_WORKER;
+            if (trySet(candidate)) return candidate;
+        }
+        throw new IllegalStateException("every worker id is held by another node");
+    }
+
+    private boolean trySet(int candidate) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            return Boolean.TRUE.equals(connection.stringCommands().set(keyOf(candidate), owner,
+                    Expiration.milliseconds(lease.toMillis()), RedisStringCommands.SetOption.SET_IF_ABSENT));
+        }
+    }
+
+    private void run() {
+        final long everyNanos = lease.dividedBy(3).toNanos();
+        while (running) {
+            LockSupport.parkNanos(this, everyNanos);
+            if (!running) break;
+            try {
+                renew();
+            } catch (RuntimeException e) {
+                // still ours until the lease runs out; the next renewal tries again well before that
+                log.warn("Renewing worker id {} failed", worker, e);
+            }
+        }
+    }
+
+    private void renew() {
+        final Long renewed;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            renewed = connection.scriptingCommands().eval(RENEW, ReturnType.INTEGER, 1, keyOf(worker), owner,
+                    Long.toString(lease.toMillis()).getBytes(StandardCharsets.UTF_8));
+        }
+        if (renewed != null && renewed == 1L) return;
+        // the lease ran out, say across a long Redis outage; take it back unless another node already has
+        if (!trySet(worker)) {
+            log.error("Worker id {} was taken by another node; message ids from the two may collide", worker);
+        }
+    }
+
+    private byte[] keyOf(int candidate) {
+        return (prefix + candidate).getBytes(StandardCharsets.UTF_8);
+    }
+}
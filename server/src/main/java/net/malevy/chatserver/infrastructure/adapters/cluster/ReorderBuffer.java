@@ -0,0 +1,203 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * The last step before cluster messages (local and remote) reach local sessions. With a zero window
+ * every message is handed over as it arrives. With a window, messages wait per room and are released
+ * in hybrid-clock order once the clock has moved a full window past them, so every node delivers a
+ * room's messages in the same order as long as none takes longer than the window to arrive. That
+ * adds up to one window of latency to every message, the sender's own echo included.
+ *
+ * A message whose timestamp is at or before one already released is late: it goes out immediately,
+ * out of order, and is counted. One released ahead of messages that arrived earlier is counted as
+ * reordered, which shows how much work the window is doing.
+ *
+ * offer() is called on the room's shard, so what it delivers is already in the room's order. Released
+ * messages go back through the room's shard as well, since the shard is the only thread that may fan out,
+ * buffer and record a room's messages; they are handed over under the room's entry, so a message the
+ * shard refuses stays queued, with everything behind it, and is tried again on the next tick.
+ */
+@Slf4j
+@Component
+@Profile("cluster")
+public class ReorderBuffer {
+
+    private static final Comparator<Pending> ORDER = Comparator
+            .comparingLong((Pending p) -> p.message.hlc())
+            .thenComparing(p -> p.message.nodeId(), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(p -> p.message.id(), Comparator.nullsFirst(Comparator.naturalOrder()));
+    // messages without a room are ordered together, like the channel they travel on
+    private static final String NO_ROOM = "";
+
+    private final SessionManager sessionManager;
+    private final RoomExecutor roomExecutor;
+    private final HybridLogicalClock clock;
+    private final long window;
+    private final long tickNanos;
+    private final Map<String, RoomQueue> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final Counter reordered;
+    private final Counter late;
+    private final Counter deferred;
+    private final Timer held;
+    private volatile boolean running;
+    private Thread releaser;
+
+    public ReorderBuffer(SessionManager sessionManager,
+                         RoomExecutor roomExecutor,
+                         HybridLogicalClock clock,
+                         OrderingSettings settings,
+                         MeterRegistry meterRegistry) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.roomExecutor = Objects.requireNonNull(roomExecutor, "roomExecutor cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        Objects.requireNonNull(settings, "settings cannot be null");
+        this.window = HybridLogicalClock.of(settings.reorderWindow().toMillis());
+        // a quarter of the window keeps the extra wait past the window small without spinning
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), settings.reorderWindow().toNanos() / 4);
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.reordered = Counter.builder("chat.cluster.reorder.reordered")
+                .description("Messages delivered ahead of messages that arrived before them")
+                .register(meterRegistry);
+        this.late = Counter.builder("chat.cluster.reorder.late")
+                .description("Messages that arrived after a later message was already delivered")
+                .register(meterRegistry);
+        this.deferred = Counter.builder("chat.cluster.reorder.deferred")
+                .description("Releases put off to the next tick because their room's shard was full")
+                .register(meterRegistry);
+        this.held = Timer.builder("chat.cluster.reorder.held")
+                .description("Time a message waited in the reorder window")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("chat.cluster.reorder.buffered", buffered, AtomicInteger::get)
+                .description("Messages waiting in the reorder window")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (window == 0) return;
+        running = true;
+        releaser = Thread.ofPlatform().name("cluster-reorder").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (releaser == null) return;
+        running = false;
+        LockSupport.unpark(releaser);
+        releaser.join(TimeUnit.SECONDS.toMillis(5));
+        // nothing else will release what is still waiting
+        release(Long.MAX_VALUE);
+        if (buffered.get() > 0) {
+            log.warn("Stopped with {} messages still held: their rooms' shards would not take them", buffered.get());
+        }
+    }
+
+    public void offer(EncodedChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        // without a window, a timestamp, or with one the clock refused to adopt, there is nothing to wait for
+        if (window == 0 || message.hlc() <= 0 || message.hlc() > clock.current()) {
+            sessionManager.broadcast(message);
+            return;
+        }
+        final boolean[] isLate = new boolean[1];
+        rooms.compute(roomOf(message), (room, queue) -> {
+            if (queue == null) queue = new RoomQueue();
+            if (message.hlc() <= queue.released) {
+                isLate[0] = true;
+                return queue;
+            }
+            if (message.hlc() < queue.highest) reordered.increment();
+            queue.highest = Math.max(queue.highest, message.hlc());
+            queue.pending.add(new Pending(message, System.nanoTime()));
+            buffered.incrementAndGet();
+            return queue;
+        });
+        if (isLate[0]) {
+            late.increment();
+            deliver(message);
+        }
+    }
+
+    int buffered() {
+        return buffered.get();
+    }
+
+    // hands over every message at or before the watermark, in order; drops rooms that have gone quiet
+    void release(long watermark) {
+        for (String room : rooms.keySet()) {
+            rooms.computeIfPresent(room, (key, queue) -> {
+                Pending next;
+                while ((next = queue.pending.peek()) != null && next.message.hlc() <= watermark) {
+                    final EncodedChatMessage message = next.message;
+                    // in order, behind whatever the shard is already doing for the room
+                    if (!roomExecutor.execute(RoomExecutor.keyOf(message.room(), message.to()), () -> deliver(message))) {
+                        deferred.increment();
+                        log.debug("Room {}'s shard is full; holding {} for the next tick", key, message.id());
+                        break;
+                    }
+                    queue.pending.poll();
+                    buffered.decrementAndGet();
+                    queue.released = message.hlc();
+                    held.record(System.nanoTime() - next.arrivedAt, TimeUnit.NANOSECONDS);
+                }
+                // a room is forgotten a window after its last release; later stragglers are no longer counted as late
+                return queue.pending.isEmpty() && queue.released <= watermark - window ? null : queue;
+            });
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, tickNanos);
+            try {
+                release(clock.current() - window);
+            } catch (RuntimeException e) {
+                log.error("Releasing reordered messages failed", e);
+            }
+        }
+    }
+
+    private void deliver(EncodedChatMessage message) {
+        try {
+            sessionManager.broadcast(message);
+        } catch (RuntimeException e) {
+            log.error("Error delivering message {} to local sessions", message.id(), e);
+        }
+    }
+
+    private static String roomOf(EncodedChatMessage message) {
+        return message.room() == null ? NO_ROOM : message.room();
+    }
+
+    private record Pending(EncodedChatMessage message, long arrivedAt) {
+    }
+
+    private static final class RoomQueue {
+        private final PriorityQueue<Pending> pending = new PriorityQueue<>(ORDER);
+        private long highest;
+        private long released;
+    }
+}
@@ -0,0 +1,33 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Names the Redis channel that carries a room's messages, e.g. chat:room:general
+public class RoomTopics {
+
+    private final String prefix;
+    private final Map<String, ChannelTopic> topics = new ConcurrentHashMap<>();
+
+    public RoomTopics(String prefix) {
+        this.prefix = Objects.requireNonNull(prefix, "prefix cannot be null");
+    }
+
+    public ChannelTopic topicFor(String room) {
+        Objects.requireNonNull(room, "room cannot be null");
+        return topics.computeIfAbsent(room, r -> new ChannelTopic(prefix + r));
+    }
+
+    // the room a channel carries, or null for a channel that is not a room's
+    public String roomOf(String channel) {
+        Objects.requireNonNull(channel, "channel cannot be null");
+        return channel.startsWith(prefix) ? channel.substring(prefix.length()) : null;
+    }
+
+    public void forget(String room) {
+        topics.remove(room);
+    }
+}
@@ -0,0 +1,5 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+// One stream record: the key it was read from, its Redis id (<millis>-<sequence>) and the encoded message
+public record StreamEntry(String key, String id, byte[] payload) {
+}
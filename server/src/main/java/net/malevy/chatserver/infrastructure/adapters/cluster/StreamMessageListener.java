@@ -0,0 +1,225 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * The streams counterpart of ClusterMessageListener. Each channel the pub/sub mode would subscribe to
+ * is a stream here, and a single reader thread XREADs all of them in batches. The node remembers the
+ * last id it delivered per stream, so after a dropped connection or a long pause it picks up where it
+ * stopped (as far back as MAXLEN keeps), and an entry is only delivered if its id is past that offset.
+ * That alone does not keep a message from arriving twice: a publish batch that is retried appends the
+ * part that went out the first time again, under new entry ids. Entries read live are therefore also
+ * checked against the recent envelopes (see RecentMessages), so a message reaches sessions once.
+ */
+@Slf4j
+@Service
+@Profile("cluster & cluster-streams")
+public class StreamMessageListener implements RoomSubscriptions {
+
+    private final ChatStreams streams;
+    private final ChatMessageCodec codec;
+    private final SessionManager sessionManager;
+    private final NodeIdentifier nodeIdentifier;
+    private final ChannelTopic chatTopic;
+    private final RoomTopics roomTopics;
+    private final NodeTopics nodeTopics;
+    private final StreamSettings settings;
+    private final HybridLogicalClock clock;
+    private final ReorderBuffer reorderBuffer;
+    private final RoomExecutor roomExecutor;
+    // stream key -> id of the last entry delivered from it; only streams in here are read
+    private final Map<String, String> offsets = new ConcurrentHashMap<>();
+    private final ReentrantLock subscriptionLock = new ReentrantLock();
+    private final Timer receiveTimer;
+    private final Counter receiveFailures;
+    private final Counter receiveRejected;
+    private final EnvelopeFilter envelopeFilter;
+    private final RecentMessages recentMessages;
+    private final Counter readFailures;
+    private volatile boolean running;
+    private Thread reader;
+
+    public StreamMessageListener(ChatStreams streams,
+                                 ChatMessageCodec codec,
+                                 SessionManager sessionManager,
+                                 NodeIdentifier nodeIdentifier,
+                                 ChannelTopic chatTopic,
+                                 RoomTopics roomTopics,
+                                 NodeTopics nodeTopics,
+                                 StreamSettings settings,
+                                 HybridLogicalClock clock,
+                                 ReorderBuffer reorderBuffer,
+                                 RoomExecutor roomExecutor,
+                                 MeterRegistry meterRegistry) {
+        this.streams = Objects.requireNonNull(streams, "streams cannot be null");
+        this.codec = Objects.requireNonNull(codec, "codec cannot be null");
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.nodeIdentifier = Objects.requireNonNull(nodeIdentifier, "nodeIdentifier cannot be null");
+        this.chatTopic = Objects.requireNonNull(chatTopic, "chatTopic cannot be null");
+        this.roomTopics = Objects.requireNonNull(roomTopics, "roomTopics cannot be null");
+        this.nodeTopics = Objects.requireNonNull(nodeTopics, "nodeTopics cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        this.reorderBuffer = Objects.requireNonNull(reorderBuffer, "reorderBuffer cannot be null");
+        this.roomExecutor = Objects.requireNonNull(roomExecutor, "roomExecutor cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.receiveTimer = ClusterMetrics.receiveTimer(meterRegistry);
+        this.receiveFailures = ClusterMetrics.receiveFailures(meterRegistry);
+        this.receiveRejected = ClusterMetrics.receiveRejected(meterRegistry);
+        this.envelopeFilter = new EnvelopeFilter(nodeIdentifier, sessionManager, meterRegistry);
+        this.recentMessages = new RecentMessages(RecentMessages.CAPACITY, meterRegistry);
+        this.readFailures = Counter.builder("chat.cluster.stream.read.failures")
+                .description("XREAD calls that failed and were retried")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        subscribe(chatTopic.getTopic());
+        subscribe(nodeTopics.topicFor(nodeIdentifier.id()).getTopic());
+        running = true;
+        reader = Thread.ofPlatform().name("redis-stream-reader").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(reader);
+        reader.join(settings.block().toMillis() + TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public void reconcile(String room) {
+        subscriptionLock.lock();
+        try {
+            final String key = roomTopics.topicFor(room).getTopic();
+            final boolean wanted = sessionManager.hasMembers(room);
+            if (wanted && !offsets.containsKey(key)) {
+                subscribe(key);
+                LockSupport.unpark(reader);
+                log.debug("Reading stream for room {}", room);
+            } else if (!wanted && offsets.remove(key) != null) {
+                roomTopics.forget(room);
+                log.debug("Stopped reading stream for room {}", room);
+            }
+        } finally {
+            subscriptionLock.unlock();
+        }
+    }
+
+    String offsetOf(String key) {
+        return offsets.get(key);
+    }
+
+    // starts after the stream's current tail, first handing the last `backlog` entries to local sessions;
+    // the backlog goes out even if this node saw it before, since the sessions now in the room may not have
+    private void subscribe(String key) {
+        final List<StreamEntry> tail = streams.last(key, Math.max(settings.backlog(), 1));
+        final int skip = tail.size() - Math.min(settings.backlog(), tail.size());
+        for (StreamEntry entry : tail.subList(skip, tail.size())) {
+            deliver(entry, false);
+        }
+        offsets.put(key, tail.isEmpty() ? ChatStreams.BEGINNING : tail.getLast().id());
+    }
+
+    private void run() {
+        while (running) {
+            if (offsets.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                final List<StreamEntry> batch = streams.read(Map.copyOf(offsets), settings.readCount(), settings.block());
+                for (StreamEntry entry : batch) {
+                    if (advance(entry)) deliver(entry, true);
+                }
+            } catch (RuntimeException e) {
+                // offsets are untouched, so the next read resumes right after the last delivered entry
+                readFailures.increment();
+                log.warn("Reading Redis streams failed, retrying in {}", settings.retryBackoff(), e);
+                LockSupport.parkNanos(this, settings.retryBackoff().toNanos());
+            }
+        }
+    }
+
+    // moves the stream's offset to the entry; false for entries at or before it, or from a dropped stream
+    private boolean advance(StreamEntry entry) {
+        final boolean[] advanced = {false};
+        offsets.computeIfPresent(entry.key(), (key, current) -> {
+            if (compareIds(entry.id(), current) <= 0) return current;
+            advanced[0] = true;
+            return entry.id();
+        });
+        return advanced[0];
+    }
+
+    // the reader thread only reads envelope headers; the room's shard decodes and delivers what passes
+    private void deliver(StreamEntry entry, boolean dropCopies) {
+        final long startedAt = System.nanoTime();
+        final byte[] frame = entry.payload();
+        final ClusterEnvelope.Header header;
+        try {
+            header = ClusterEnvelope.isSealed(frame) ? ClusterEnvelope.header(frame) : null;
+        } catch (IllegalArgumentException e) {
+            receiveFailures.increment();
+            log.error("Error processing stream entry {} from {}", entry.id(), entry.key(), e);
+            return;
+        }
+        if (header != null) {
+            if (!envelopeFilter.wanted(header)) return;
+            if (!recentMessages.firstSighting(header) && dropCopies) return;
+        }
+        final String room = header != null ? header.room() : roomTopics.roomOf(entry.key());
+        if (!roomExecutor.execute(room, () -> receive(entry, header, startedAt))) {
+            receiveRejected.increment();
+            log.warn("Dropped stream entry {} from {}: its shard is full", entry.id(), entry.key());
+        }
+    }
+
+    private void receive(StreamEntry entry, ClusterEnvelope.Header header, long startedAt) {
+        try {
+            // only the routing fields are read; the payload is forwarded to sessions as-is
+            final byte[] frame = entry.payload();
+            final EncodedChatMessage chatMessage = codec.wrap(header == null ? frame : ClusterEnvelope.body(frame, header));
+            if (nodeIdentifier.id().equals(chatMessage.nodeId())) return;
+            clock.receive(chatMessage.hlc());
+            reorderBuffer.offer(chatMessage);
+            receiveTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            receiveFailures.increment();
+            log.error("Error processing stream entry {} from {}", entry.id(), entry.key(), e);
+        }
+    }
+
+    // ids are <millis>-<sequence>; both parts compare numerically
+    static int compareIds(String left, String right) {
+        final int l = left.indexOf('-');
+        final int r = right.indexOf('-');
+        final int byTime = Long.compare(Long.parseLong(left, 0, l, 10), Long.parseLong(right, 0, r, 10));
+        if (byTime != 0) return byTime;
+        return Long.compare(Long.parseLong(left, l + 1, left.length(), 10), Long.parseLong(right, r + 1, right.length(), 10));
+    }
+}
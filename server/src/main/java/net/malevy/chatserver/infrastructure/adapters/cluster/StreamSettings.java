@@ -0,0 +1,20 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record StreamSettings(
+        long maxLength,
+        int readCount,
+        Duration block,
+        Duration retryBackoff,
+        int backlog) {
+
+    public StreamSettings {
+        if (maxLength < 1) throw new IllegalArgumentException("maxLength must be at least 1");
+        if (readCount < 1) throw new IllegalArgumentException("readCount must be at least 1");
+        Objects.requireNonNull(block, "block cannot be null");
+        Objects.requireNonNull(retryBackoff, "retryBackoff cannot be null");
+        if (backlog < 0) throw new IllegalArgumentException("backlog cannot be negative");
+    }
+}
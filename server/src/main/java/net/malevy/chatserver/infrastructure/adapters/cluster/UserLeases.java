@@ -0,0 +1,25 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The cluster's record of which nodes hold which users. Each node leases the users it has sessions
+ * for and keeps renewing them; a lease that is not renewed runs out, so a node that dies drops out of
+ * the directory on its own.
+ */
+public interface UserLeases {
+
+    // takes out or extends this node's lease on each user until now + lease, dropping leases that ran out
+    void renew(Collection<String> usernames, String nodeId, long now, Duration lease);
+
+    void release(String username, String nodeId);
+
+    // the nodes whose lease on the user runs past now
+    List<String> holders(String username, long now);
+
+    // how many nodes' leases on each user run past now, in one round trip
+    Map<String, Integer> counts(Collection<String> usernames, long now);
+}
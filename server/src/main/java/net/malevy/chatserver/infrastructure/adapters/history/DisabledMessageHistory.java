@@ -0,0 +1,34 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+
+import java.time.Instant;
+
+// used when chat.history.enabled is false; nothing is kept, so every lookup comes back empty
+public class DisabledMessageHistory implements MessageHistory {
+
+    @Override
+    public long append(EncodedChatMessage message) {
+        return NO_OFFSET;
+    }
+
+    // nothing to fall behind on
+    @Override
+    public boolean offer(EncodedChatMessage message) {
+        return true;
+    }
+
+    @Override
+    public long offsetAt(Instant instant) {
+        return NO_OFFSET;
+    }
+
+    @Override
+    public void read(long fromOffset, Visitor visitor) {
+    }
+
+    @Override
+    public void readBackward(Visitor visitor) {
+    }
+}
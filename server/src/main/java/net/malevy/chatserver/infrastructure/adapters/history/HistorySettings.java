@@ -0,0 +1,32 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+public record HistorySettings(
+        Path directory,
+        int segmentBytes,
+        int indexIntervalBytes,
+        Duration flushInterval,
+        int maxSegments,
+        Duration retention,
+        int queueCapacity) {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    public HistorySettings(Path directory, int segmentBytes, int indexIntervalBytes, Duration flushInterval,
+                           int maxSegments, Duration retention) {
+        this(directory, segmentBytes, indexIntervalBytes, flushInterval, maxSegments, retention, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public HistorySettings {
+        Objects.requireNonNull(directory, "directory cannot be null");
+        if (segmentBytes < 1024) throw new IllegalArgumentException("segmentBytes must be at least 1024");
+        if (indexIntervalBytes < 1) throw new IllegalArgumentException("indexIntervalBytes must be at least 1");
+        Objects.requireNonNull(flushInterval, "flushInterval cannot be null");
+        if (maxSegments < 1) throw new IllegalArgumentException("maxSegments must be at least 1");
+        Objects.requireNonNull(retention, "retention cannot be null");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1");
+    }
+}
@@ -0,0 +1,301 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import net.malevy.chatserver.application.ports.MessageHistory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/*
+ * One fixed-size, memory-mapped file of the log. Records are laid out back to back:
+ *
+ *   int length | int crc32c | long offset | long timestamp | short roomLength | short typeLength | room | type | payload
+ *
+ * where length covers the whole record and the crc everything after it, and a field length of -1 stands for
+ * a missing room or type. A zero length marks the end
+ * of the written part, and recovery stops at the first record whose crc does not match (a torn write).
+ * Every indexIntervalBytes a record's offset, position and timestamp go into a sparse in-memory index
+ * that is rebuilt when the segment is reopened.
+ *
+ * Only the log's single writer appends; readers see records up to the volatile committed position.
+ */
+final class LogSegment {
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 2 + 2;
+    private static final short NO_FIELD = -1;
+
+    private final Path path;
+    private final long baseOffset;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexIntervalBytes;
+    private final long[] indexOffsets;
+    private final int[] indexPositions;
+    private final long[] indexTimestamps;
+    private final CRC32C crc = new CRC32C();
+    private volatile int indexSize;
+    private volatile int committed;
+    private volatile long nextOffset;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+    private int lastIndexedPosition = -1;
+    private int flushed;
+
+    private LogSegment(Path path, long baseOffset, FileChannel channel, MappedByteBuffer buffer, int indexIntervalBytes) {
+        this.path = path;
+        this.baseOffset = baseOffset;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.indexIntervalBytes = indexIntervalBytes;
+        // entries are at least an interval (and a record header) apart, so this never fills up
+        this.indexOffsets = new long[buffer.capacity() / Math.max(indexIntervalBytes, HEADER_BYTES) + 1];
+        this.indexPositions = new int[indexOffsets.length];
+        this.indexTimestamps = new long[indexOffsets.length];
+        this.nextOffset = baseOffset;
+    }
+
+    static Path fileFor(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d.log", baseOffset));
+    }
+
+    static long baseOffsetOf(Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".log".length()));
+    }
+
+    static LogSegment open(Path file, int segmentBytes, int indexIntervalBytes) throws IOException {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = Math.max(channel.size(), segmentBytes);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            final LogSegment segment = new LogSegment(file, baseOffsetOf(file), channel, buffer, indexIntervalBytes);
+            segment.recover();
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    boolean isEmpty() {
+        return committed == 0;
+    }
+
+    // false when the record does not fit into what is left of the segment
+    boolean append(long offset, long timestamp, byte[] room, byte[] type, byte[] payload) {
+        final short roomLength = fieldLength(room, "room");
+        final short typeLength = fieldLength(type, "type");
+        final int length = HEADER_BYTES + Math.max(roomLength, 0) + Math.max(typeLength, 0) + payload.length;
+        final int position = committed;
+        // keep room for the zero length that terminates the segment
+        if ((long) position + length + 4 > buffer.capacity()) return false;
+
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, timestamp);
+        buffer.putShort(position + 24, roomLength);
+        buffer.putShort(position + 26, typeLength);
+        int cursor = position + HEADER_BYTES;
+        if (room != null) {
+            buffer.put(cursor, room);
+            cursor += room.length;
+        }
+        if (type != null) {
+            buffer.put(cursor, type);
+            cursor += type.length;
+        }
+        buffer.put(cursor, payload);
+        buffer.putInt(position + length, 0);
+        crc.reset();
+        crc.update(buffer.slice(position + 8, length - 8));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+
+        maybeIndex(offset, position, timestamp);
+        nextOffset = offset + 1;
+        lastTimestamp = timestamp;
+        committed = position + length;
+        return true;
+    }
+
+    // only forces when something was appended since the last flush; returns whether it did
+    synchronized boolean flush() {
+        final int upTo = committed;
+        if (upTo == flushed) return false;
+        buffer.force(flushed, upTo - flushed);
+        flushed = upTo;
+        return true;
+    }
+
+    long offsetAt(long timestamp) {
+        if (committed == 0 || lastTimestamp < timestamp) return MessageHistory.NO_OFFSET;
+        final int entries = indexSize;
+        // last indexed record strictly before the timestamp; scan forward from there
+        int low = 0;
+        int high = entries - 1;
+        int start = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (indexTimestamps[mid] < timestamp) {
+                start = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final long[] found = {MessageHistory.NO_OFFSET};
+        scan(start, (offset, recordTimestamp, room, type, payload) -> {
+            if (recordTimestamp < timestamp) return true;
+            found[0] = offset;
+            return false;
+        }, false);
+        return found[0];
+    }
+
+    // returns false when the visitor asked to stop
+    boolean read(long fromOffset, MessageHistory.Visitor visitor) {
+        final int entries = indexSize;
+        int low = 0;
+        int high = entries - 1;
+        int start = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (indexOffsets[mid] <= fromOffset) {
+                start = indexPositions[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return scan(start, (offset, timestamp, room, type, payload) ->
+                offset < fromOffset || visitor.visit(offset, timestamp, room, type, payload), true);
+    }
+
+    // newest first; records only link forward, so each stretch between two index entries is walked forward
+    // and then visited in reverse. Returns false when the visitor asked to stop
+    boolean readBackward(MessageHistory.Visitor visitor) {
+        final int end = committed;
+        final ByteBuffer view = buffer.asReadOnlyBuffer();
+        int[] positions = new int[16];
+        int stretchEnd = end;
+        for (int entry = indexSize - 1; entry >= 0; entry--) {
+            final int stretchStart = indexPositions[entry];
+            // indexed after end was read; its record is not committed yet
+            if (stretchStart >= end) continue;
+            int count = 0;
+            for (int position = stretchStart; position < stretchEnd; position += view.getInt(position)) {
+                if (count == positions.length) positions = Arrays.copyOf(positions, count * 2);
+                positions[count++] = position;
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                if (!visit(view, positions[i], visitor, true)) return false;
+            }
+            stretchEnd = stretchStart;
+        }
+        return true;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private boolean scan(int from, MessageHistory.Visitor visitor, boolean decodeFields) {
+        final int end = committed;
+        final ByteBuffer view = buffer.asReadOnlyBuffer();
+        int position = from;
+        while (position < end) {
+            if (!visit(view, position, visitor, decodeFields)) return false;
+            position += view.getInt(position);
+        }
+        return true;
+    }
+
+    private static boolean visit(ByteBuffer view, int position, MessageHistory.Visitor visitor, boolean decodeFields) {
+        final int length = view.getInt(position);
+        final long offset = view.getLong(position + 8);
+        final long timestamp = view.getLong(position + 16);
+        final short roomLength = view.getShort(position + 24);
+        final short typeLength = view.getShort(position + 26);
+        final int roomStart = position + HEADER_BYTES;
+        final int typeStart = roomStart + Math.max(roomLength, 0);
+        final int payloadStart = typeStart + Math.max(typeLength, 0);
+        final String room = decodeFields ? decode(view, roomStart, roomLength) : null;
+        final String type = decodeFields ? decode(view, typeStart, typeLength) : null;
+        final ByteBuffer payload = view.slice(payloadStart, position + length - payloadStart);
+        return visitor.visit(offset, timestamp, room, type, payload);
+    }
+
+    private static String decode(ByteBuffer view, int start, short length) {
+        return length == NO_FIELD ? null : StandardCharsets.UTF_8.decode(view.slice(start, length)).toString();
+    }
+
+    // the length goes into a short, so a longer field is refused rather than wrapping around and corrupting the record
+    private static short fieldLength(byte[] field, String name) {
+        if (field == null) return NO_FIELD;
+        if (field.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " of " + field.length + " bytes is too long to store");
+        }
+        return (short) field.length;
+    }
+
+    private void recover() {
+        int position = 0;
+        final int limit = buffer.capacity();
+        while (position + HEADER_BYTES <= limit) {
+            final int length = buffer.getInt(position);
+            if (length < HEADER_BYTES || position + length > limit) break;
+            crc.reset();
+            crc.update(buffer.slice(position + 8, length - 8));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) break;
+            final long offset = buffer.getLong(position + 8);
+            if (position > 0 && offset != nextOffset) break;
+            final long timestamp = buffer.getLong(position + 16);
+            maybeIndex(offset, position, timestamp);
+            nextOffset = offset + 1;
+            lastTimestamp = timestamp;
+            position += length;
+        }
+        // wipe a torn tail so the next append is not followed by stale bytes that look valid
+        if (position + 4 <= limit) buffer.putInt(position, 0);
+        committed = position;
+        flushed = position;
+    }
+
+    private void maybeIndex(long offset, int position, long timestamp) {
+        if (lastIndexedPosition >= 0 && position - lastIndexedPosition < indexIntervalBytes) return;
+        final int entry = indexSize;
+        indexOffsets[entry] = offset;
+        indexPositions[entry] = position;
+        indexTimestamps[entry] = timestamp;
+        lastIndexedPosition = position;
+        indexSize = entry + 1;
+    }
+}
@@ -0,0 +1,243 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/*
+ * Append-only history kept in a directory of memory-mapped segments. Appends only copy into the mapping,
+ * a background thread forces dirty pages to disk every flushInterval (group commit), so a crash loses at
+ * most that much history. Segments beyond maxSegments or older than the retention are deleted whenever
+ * the log rolls over to a new segment.
+ * Broadcasts offer their messages instead of appending: the same thread drains them from a lock-free
+ * queue and appends, rolls and flushes, so the room shards never wait on each other or on the disk.
+ */
+@Slf4j
+public class MappedLogMessageHistory implements MessageHistory, AutoCloseable {
+
+    private final HistorySettings settings;
+    private final Clock clock;
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Queue<EncodedChatMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Thread writer;
+    private volatile LogSegment active;
+    private volatile boolean running = true;
+
+    public MappedLogMessageHistory(HistorySettings settings, Clock clock) {
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        try {
+            Files.createDirectories(settings.directory());
+            try (Stream<Path> files = Files.list(settings.directory())) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".log")).sorted().toList()) {
+                    final LogSegment segment = LogSegment.open(file, settings.segmentBytes(), settings.indexIntervalBytes());
+                    segments.put(segment.baseOffset(), segment);
+                }
+            }
+            if (segments.isEmpty()) {
+                roll(0);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("unable to open message history in " + settings.directory(), e);
+        }
+        log.info("message history opened in {} with {} segment(s), next offset {}",
+                settings.directory(), segments.size(), active.nextOffset());
+
+        writer = Thread.ofPlatform().name("history-writer").daemon().start(this::run);
+    }
+
+    @Override
+    public boolean offer(EncodedChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        if (!running) return false;
+        final int queued = depth.incrementAndGet();
+        if (queued > settings.queueCapacity()) {
+            depth.decrementAndGet();
+            return false;
+        }
+        queue.offer(message);
+        if (queued == 1) LockSupport.unpark(writer);
+        return true;
+    }
+
+    @Override
+    public long append(EncodedChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        final byte[] room = message.room() == null ? null : message.room().getBytes(StandardCharsets.UTF_8);
+        final byte[] type = message.type() == null ? null : message.type().getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = message.payload();
+
+        appendLock.lock();
+        try {
+            LogSegment segment = active;
+            final long offset = segment.nextOffset();
+            // keep timestamps monotonic so offsetAt can binary search even if the wall clock steps back
+            final long timestamp = Math.max(clock.millis(), segment.lastTimestamp());
+            if (!segment.append(offset, timestamp, room, type, payload)) {
+                if (segment.isEmpty()) {
+                    throw new IllegalArgumentException("message of " + payload.length + " bytes does not fit into a segment");
+                }
+                segment = roll(offset);
+                if (!segment.append(offset, timestamp, room, type, payload)) {
+                    throw new IllegalArgumentException("message of " + payload.length + " bytes does not fit into a segment");
+                }
+            }
+            return offset;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public long offsetAt(Instant instant) {
+        final long timestamp = instant.toEpochMilli();
+        for (LogSegment segment : segments.values()) {
+            final long offset = segment.offsetAt(timestamp);
+            if (offset != NO_OFFSET) return offset;
+        }
+        return NO_OFFSET;
+    }
+
+    @Override
+    public void read(long fromOffset, Visitor visitor) {
+        Objects.requireNonNull(visitor, "visitor cannot be null");
+        final Long first = segments.floorKey(fromOffset);
+        final Map<Long, LogSegment> tail = first == null ? segments : segments.tailMap(first, true);
+        for (LogSegment segment : tail.values()) {
+            if (!segment.read(fromOffset, visitor)) return;
+        }
+    }
+
+    @Override
+    public void readBackward(Visitor visitor) {
+        Objects.requireNonNull(visitor, "visitor cannot be null");
+        for (LogSegment segment : segments.descendingMap().values()) {
+            if (!segment.readBackward(visitor)) return;
+        }
+    }
+
+    long nextOffset() {
+        return active.nextOffset();
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    void flush() {
+        for (LogSegment segment : segments.values()) {
+            segment.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                // it appends whatever is still queued before it stops
+                writer.join(settings.flushInterval().toMillis() + 5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        appendLock.lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.flush();
+                segment.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private LogSegment roll(long baseOffset) throws UncheckedIOException {
+        try {
+            if (active != null) active.flush();
+            final LogSegment segment = LogSegment.open(
+                    LogSegment.fileFor(settings.directory(), baseOffset), settings.segmentBytes(), settings.indexIntervalBytes());
+            segments.put(baseOffset, segment);
+            active = segment;
+            enforceRetention();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to roll message history at offset " + baseOffset, e);
+        }
+    }
+
+    private void enforceRetention() {
+        final long cutoff = clock.millis() - settings.retention().toMillis();
+        final List<LogSegment> expired = new ArrayList<>();
+        for (LogSegment segment : segments.values()) {
+            if (segment == active) break;
+            if (segments.size() - expired.size() > settings.maxSegments() || segment.lastTimestamp() < cutoff) {
+                expired.add(segment);
+            }
+        }
+        for (LogSegment segment : expired) {
+            segments.remove(segment.baseOffset());
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("unable to delete history segment starting at {}", segment.baseOffset(), e);
+            }
+        }
+    }
+
+    private void run() {
+        final long intervalNanos = settings.flushInterval().toNanos();
+        long flushAt = System.nanoTime() + intervalNanos;
+        while (running || depth.get() > 0) {
+            if (depth.get() == 0) LockSupport.parkNanos(this, Math.max(0, flushAt - System.nanoTime()));
+            drain();
+            if (System.nanoTime() - flushAt >= 0) {
+                try {
+                    // only the active segment can be dirty; roll() flushes the one it retires
+                    active.flush();
+                } catch (RuntimeException e) {
+                    log.warn("unable to flush message history", e);
+                }
+                flushAt = System.nanoTime() + intervalNanos;
+            }
+        }
+    }
+
+    // a bounded run at a time, so a steady stream of offers cannot hold off the next flush
+    private void drain() {
+        EncodedChatMessage next;
+        for (int i = 0; i < settings.queueCapacity() && (next = queue.poll()) != null; i++) {
+            depth.decrementAndGet();
+            try {
+                append(next);
+            } catch (RuntimeException e) {
+                log.error("Failed to record message {} in history", next.id(), e);
+            }
+        }
+    }
+}
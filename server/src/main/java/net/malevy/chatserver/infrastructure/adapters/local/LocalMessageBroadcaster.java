@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.malevy.chatserver.application.ports.MessageBroadcaster;
 import net.malevy.chatserver.application.ports.SessionManager;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
@@ -15,15 +16,21 @@ import java.util.Objects;
 public class LocalMessageBroadcaster implements MessageBroadcaster {
 
     private final SessionManager sessionManager;
+    private final RoomExecutor roomExecutor;
 
-    public LocalMessageBroadcaster(SessionManager sessionManager) {
+    public LocalMessageBroadcaster(SessionManager sessionManager, RoomExecutor roomExecutor) {
         this.sessionManager = sessionManager;
+        this.roomExecutor = Objects.requireNonNull(roomExecutor, "roomExecutor cannot be null");
     }
 
     @Override
-    public void broadcast(ChatMessage message) {
+    public boolean broadcast(ChatMessage message) {
         Objects.requireNonNull(message, "message cannot be null");
-        sessionManager.broadcast(message);
+        if (!roomExecutor.execute(RoomExecutor.keyOf(message.getRoom(), message.getTo()), () -> sessionManager.broadcast(message))) {
+            log.warn("Dropped message {} for room {}: its shard is full", message.getId(), message.getRoom());
+            return false;
+        }
         log.debug("publishing message id: {}", message.getId());
+        return true;
     }
 }
@@ -0,0 +1,15 @@
+package net.malevy.chatserver.infrastructure.adapters.local;
+
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("!cluster")
+public class LocalRoomSubscriptions implements RoomSubscriptions {
+
+    @Override
+    public void reconcile(String room) {
+        // a single node already sees every message, so there is nothing to subscribe to
+    }
+}
@@ -0,0 +1,20 @@
+package net.malevy.chatserver.infrastructure.adapters.local;
+
+import net.malevy.chatserver.application.ports.UserDirectory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("!cluster")
+public class LocalUserDirectory implements UserDirectory {
+
+    @Override
+    public void reconcile(String username) {
+        // a single node holds every session, so there is no one else to tell
+    }
+
+    @Override
+    public int nodesHolding(String username) {
+        return 1;
+    }
+}
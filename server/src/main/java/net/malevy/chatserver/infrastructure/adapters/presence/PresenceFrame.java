@@ -0,0 +1,34 @@
+package net.malevy.chatserver.infrastructure.adapters.presence;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+
+import java.util.List;
+
+/*
+ * What sessions are sent. A snapshot lists who is in the room when the session joins; an update lists
+ * who came and went over the last window. Name lists are cut at PresenceSettings.maxNames, and the
+ * counts always tell the whole story, so a frame stays small however many users moved.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record PresenceFrame(
+        String type,
+        String room,
+        boolean snapshot,
+        int count,
+        List<String> members,
+        List<String> joined,
+        Integer joinedCount,
+        List<String> left,
+        Integer leftCount) {
+
+    static final String TYPE = EncodedChatMessage.PRESENCE;
+
+    static PresenceFrame snapshot(String room, int count, List<String> members) {
+        return new PresenceFrame(TYPE, room, true, count, members, null, null, null, null);
+    }
+
+    static PresenceFrame update(String room, int count, List<String> joined, int joinedCount, List<String> left, int leftCount) {
+        return new PresenceFrame(TYPE, room, false, count, null, joined, joinedCount, left, leftCount);
+    }
+}
@@ -0,0 +1,316 @@
+package net.malevy.chatserver.infrastructure.adapters.presence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Who is in each room, across the cluster, without a message per join or leave. Every change is a
+ * few map updates under one lock; what sessions see is collected per room and sent once per window
+ * as a single "+N joined / -M left" frame, and a user who comes and goes within a window cancels out.
+ * Other nodes' members arrive through a replicator (see ClusterPresence) as per-node deltas or whole
+ * states, and a user is in a room while this node or any other holds them there.
+ */
+@Slf4j
+@Component
+public class PresenceService implements Presence {
+
+    private final SessionManager sessionManager;
+    private final ObjectMapper mapper;
+    private final PresenceSettings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    // room -> user -> sessions on this node
+    private final Map<String, Map<String, Integer>> local = new HashMap<>();
+    // room -> user -> nodes holding the user there, this one included
+    private final Map<String, Map<String, Integer>> holders = new HashMap<>();
+    // node -> room -> users, as last replicated
+    private final Map<String, Map<String, Set<String>>> remote = new HashMap<>();
+    // room -> user -> whether they are now present; what local sessions are sent at the end of the window
+    private Map<String, Map<String, Boolean>> visible = new HashMap<>();
+    // the same for this node's own members, for the replicator; only kept once something drains it
+    private Map<String, Map<String, Boolean>> outbound = new HashMap<>();
+    private boolean replicating;
+    private final Counter snapshots;
+    private final Counter updates;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public PresenceService(SessionManager sessionManager, ObjectMapper mapper, PresenceSettings settings,
+                           MeterRegistry meterRegistry) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.mapper = Objects.requireNonNull(mapper, "mapper cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.snapshots = frames(meterRegistry, "snapshot");
+        this.updates = frames(meterRegistry, "update");
+        Gauge.builder("chat.presence.rooms", this, PresenceService::rooms)
+                .description("Rooms with at least one member anywhere in the cluster")
+                .register(meterRegistry);
+    }
+
+    private static Counter frames(MeterRegistry registry, String kind) {
+        return Counter.builder("chat.presence.frames")
+                .description("Presence frames handed to sessions")
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = Thread.ofPlatform().name("presence").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public void joined(WebSocketSession session, String username, String room) {
+        Objects.requireNonNull(session, "session cannot be null");
+        Objects.requireNonNull(username, "username cannot be null");
+        Objects.requireNonNull(room, "room cannot be null");
+        final PresenceFrame snapshot;
+        lock.lock();
+        try {
+            if (local.computeIfAbsent(room, r -> new HashMap<>()).merge(username, 1, Integer::sum) == 1) {
+                changed(outbound, room, username, true);
+                hold(room, username);
+            }
+            final Map<String, Integer> members = holders.get(room);
+            snapshot = PresenceFrame.snapshot(room, members.size(), firstNames(members.keySet()));
+        } finally {
+            lock.unlock();
+        }
+        final EncodedChatMessage encoded = encode(snapshot);
+        if (encoded == null) return;
+        sessionManager.send(session, encoded);
+        snapshots.increment();
+    }
+
+    @Override
+    public void left(String username, String room) {
+        Objects.requireNonNull(username, "username cannot be null");
+        Objects.requireNonNull(room, "room cannot be null");
+        lock.lock();
+        try {
+            final Map<String, Integer> users = local.get(room);
+            if (users == null || !users.containsKey(username)) return;
+            if (users.merge(username, -1, Integer::sum) > 0) return;
+            users.remove(username);
+            if (users.isEmpty()) local.remove(room);
+            changed(outbound, room, username, false);
+            release(room, username);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // applies another node's changes; users it already had, or never had, are ignored
+    public void applyRemote(String node, Map<String, RoomDelta> changes) {
+        Objects.requireNonNull(node, "node cannot be null");
+        lock.lock();
+        try {
+            final Map<String, Set<String>> rooms = remote.computeIfAbsent(node, n -> new HashMap<>());
+            changes.forEach((room, delta) -> {
+                final Set<String> users = rooms.computeIfAbsent(room, r -> new HashSet<>());
+                for (String username : delta.joined()) {
+                    if (users.add(username)) hold(room, username);
+                }
+                for (String username : delta.left()) {
+                    if (users.remove(username)) release(room, username);
+                }
+                if (users.isEmpty()) rooms.remove(room);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // replaces everything known about another node with its full state
+    public void replaceRemote(String node, Map<String, ? extends Collection<String>> state) {
+        Objects.requireNonNull(node, "node cannot be null");
+        lock.lock();
+        try {
+            final Map<String, Set<String>> before = Objects.requireNonNullElse(remote.remove(node), Map.of());
+            final Map<String, Set<String>> after = new HashMap<>();
+            state.forEach((room, users) -> {
+                if (!users.isEmpty()) after.put(room, new HashSet<>(users));
+            });
+            before.forEach((room, users) -> {
+                final Set<String> kept = after.getOrDefault(room, Set.of());
+                for (String username : users) {
+                    if (!kept.contains(username)) release(room, username);
+                }
+            });
+            after.forEach((room, users) -> {
+                final Set<String> had = before.getOrDefault(room, Set.of());
+                for (String username : users) {
+                    if (!had.contains(username)) hold(room, username);
+                }
+            });
+            if (!after.isEmpty()) remote.put(node, after);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void forget(String node) {
+        replaceRemote(node, Map.of());
+    }
+
+    // this node's own changes since the last call, for the replicator to send on
+    public Map<String, RoomDelta> drainChanges() {
+        lock.lock();
+        try {
+            replicating = true;
+            final Map<String, Map<String, Boolean>> drained = outbound;
+            outbound = new HashMap<>();
+            final Map<String, RoomDelta> changes = new HashMap<>(drained.size());
+            drained.forEach((room, users) -> changes.put(room, deltaOf(users)));
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // this node's members by room, for a node that has to start from a full state
+    public Map<String, Set<String>> localMembers() {
+        lock.lock();
+        try {
+            replicating = true;
+            final Map<String, Set<String>> members = new HashMap<>(local.size());
+            local.forEach((room, users) -> members.put(room, Set.copyOf(users.keySet())));
+            return members;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // sends each room's local members what changed in the room over the last window
+    void flush() {
+        final Map<String, Map<String, Boolean>> drained;
+        final Map<String, Integer> counts;
+        lock.lock();
+        try {
+            if (visible.isEmpty()) return;
+            drained = visible;
+            visible = new HashMap<>();
+            counts = new HashMap<>(drained.size());
+            for (String room : drained.keySet()) {
+                final Map<String, Integer> members = holders.get(room);
+                counts.put(room, members == null ? 0 : members.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+        drained.forEach((room, users) -> {
+            if (!sessionManager.hasMembers(room)) return;
+            final RoomDelta delta = deltaOf(users);
+            final EncodedChatMessage encoded = encode(PresenceFrame.update(room, counts.get(room),
+                    firstNames(delta.joined()), delta.joined().size(), firstNames(delta.left()), delta.left().size()));
+            if (encoded == null) return;
+            sessionManager.broadcast(encoded);
+            updates.increment();
+        });
+    }
+
+    private void run() {
+        final long windowNanos = settings.window().toNanos();
+        while (running) {
+            LockSupport.parkNanos(this, windowNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Failed to send presence updates", e);
+            }
+        }
+    }
+
+    private void hold(String room, String username) {
+        if (holders.computeIfAbsent(room, r -> new HashMap<>()).merge(username, 1, Integer::sum) == 1) {
+            changed(visible, room, username, true);
+        }
+    }
+
+    private void release(String room, String username) {
+        final Map<String, Integer> users = holders.get(room);
+        if (users == null || !users.containsKey(username)) return;
+        if (users.merge(username, -1, Integer::sum) > 0) return;
+        users.remove(username);
+        if (users.isEmpty()) holders.remove(room);
+        changed(visible, room, username, false);
+    }
+
+    // a change that undoes one still pending cancels it instead of being sent as well
+    private void changed(Map<String, Map<String, Boolean>> pending, String room, String username, boolean present) {
+        if (pending == outbound && !replicating) return;
+        final Map<String, Boolean> users = pending.computeIfAbsent(room, r -> new HashMap<>());
+        final Boolean before = users.get(username);
+        if (before != null && before != present) {
+            users.remove(username);
+            if (users.isEmpty()) pending.remove(room);
+        } else {
+            users.put(username, present);
+        }
+    }
+
+    private static RoomDelta deltaOf(Map<String, Boolean> users) {
+        final Set<String> joined = new HashSet<>();
+        final Set<String> left = new HashSet<>();
+        users.forEach((username, present) -> (present ? joined : left).add(username));
+        return new RoomDelta(joined, left);
+    }
+
+    private List<String> firstNames(Collection<String> names) {
+        final List<String> first = new ArrayList<>(Math.min(names.size(), settings.maxNames()));
+        for (String name : names) {
+            if (first.size() == settings.maxNames()) break;
+            first.add(name);
+        }
+        return first;
+    }
+
+    private EncodedChatMessage encode(PresenceFrame frame) {
+        try {
+            return new EncodedChatMessage(null, PresenceFrame.TYPE, frame.room(), null, mapper.writeValueAsBytes(frame));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize presence for room {}", frame.room(), e);
+            return null;
+        }
+    }
+
+    private int rooms() {
+        lock.lock();
+        try {
+            return holders.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.malevy.chatserver.infrastructure.adapters.presence;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record PresenceSettings(
+        Duration window,
+        int maxNames,
+        Duration heartbeat,
+        Duration expireAfter) {
+
+    public PresenceSettings {
+        Objects.requireNonNull(window, "window cannot be null");
+        Objects.requireNonNull(heartbeat, "heartbeat cannot be null");
+        Objects.requireNonNull(expireAfter, "expireAfter cannot be null");
+        if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("window must be positive");
+        if (maxNames < 0) throw new IllegalArgumentException("maxNames cannot be negative");
+        if (heartbeat.isNegative() || heartbeat.isZero()) throw new IllegalArgumentException("heartbeat must be positive");
+        if (expireAfter.compareTo(heartbeat) <= 0) throw new IllegalArgumentException("expireAfter must be longer than heartbeat");
+    }
+}
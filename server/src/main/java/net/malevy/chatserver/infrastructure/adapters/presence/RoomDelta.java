@@ -0,0 +1,7 @@
+package net.malevy.chatserver.infrastructure.adapters.presence;
+
+import java.util.Set;
+
+// users who came into or went out of a room since the last delta; a user is never in both
+public record RoomDelta(Set<String> joined, Set<String> left) {
+}
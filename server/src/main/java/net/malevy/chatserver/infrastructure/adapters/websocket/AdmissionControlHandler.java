@@ -0,0 +1,85 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Bounds how many sessions are accepted and how many inbound messages are handled at once. On
+ * platform threads Tomcat's worker pool used to be the only limit; with virtual threads there is
+ * no pool, so without this every connection could be inside a use case at the same time.
+ *
+ * Only a virtual thread waits up to acquireTimeout for a message permit. A platform thread is one of
+ * Tomcat's workers, and parking it would take it from every other connection, so it is refused at once.
+ */
+@Slf4j
+public class AdmissionControlHandler extends WebSocketHandlerDecorator {
+
+    static final CloseStatus TOO_MANY_SESSIONS = CloseStatus.SERVICE_OVERLOAD.withReason("too many sessions");
+    static final CloseStatus OVERLOADED = CloseStatus.SERVICE_OVERLOAD.withReason("server overloaded");
+
+    private final AdmissionSettings settings;
+    private final Semaphore sessionPermits;
+    private final Semaphore messagePermits;
+    private final Set<String> admitted = ConcurrentHashMap.newKeySet();
+
+    public AdmissionControlHandler(WebSocketHandler delegate, AdmissionSettings settings) {
+        super(delegate);
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.sessionPermits = new Semaphore(settings.maxSessions());
+        this.messagePermits = new Semaphore(settings.maxConcurrentMessages());
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        if (!sessionPermits.tryAcquire()) {
+            log.warn("Rejecting session {}: {} sessions already open", session.getId(), settings.maxSessions());
+            session.close(TOO_MANY_SESSIONS);
+            return;
+        }
+        admitted.add(session.getId());
+        super.afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        if (!admitted.contains(session.getId())) return;
+        final boolean acquired = Thread.currentThread().isVirtual()
+                ? messagePermits.tryAcquire(settings.acquireTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                : messagePermits.tryAcquire();
+        if (!acquired) {
+            log.warn("Closing session {}: no capacity to handle its message", session.getId());
+            session.close(OVERLOADED);
+            return;
+        }
+        try {
+            super.handleMessage(session, message);
+        } finally {
+            messagePermits.release();
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        // a rejected session never reached the delegate, so it has nothing to clean up
+        if (!admitted.remove(session.getId())) return;
+        try {
+            super.afterConnectionClosed(session, closeStatus);
+        } finally {
+            sessionPermits.release();
+        }
+    }
+
+    int openSessions() {
+        return admitted.size();
+    }
+}
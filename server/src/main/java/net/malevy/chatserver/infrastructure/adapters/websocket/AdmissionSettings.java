@@ -0,0 +1,16 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record AdmissionSettings(
+        int maxSessions,
+        int maxConcurrentMessages,
+        Duration acquireTimeout) {
+
+    public AdmissionSettings {
+        if (maxSessions < 1) throw new IllegalArgumentException("maxSessions must be at least 1");
+        if (maxConcurrentMessages < 1) throw new IllegalArgumentException("maxConcurrentMessages must be at least 1");
+        Objects.requireNonNull(acquireTimeout, "acquireTimeout cannot be null");
+    }
+}
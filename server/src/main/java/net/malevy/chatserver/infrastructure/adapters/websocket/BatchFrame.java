@@ -0,0 +1,78 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * One frame carrying several messages for a session that negotiated a batched WireFormat: a JSON
+ * array of the messages' payloads, or a CBOR array of their CBOR forms. The payloads are copied in as
+ * they are, so batching costs one array copy per session and no re-encoding.
+ */
+final class BatchFrame {
+
+    private BatchFrame() {
+    }
+
+    static WebSocketMessage<?> of(List<OutboundMessage> messages, WireFormat format) throws IOException {
+        return format.binary() ? cbor(messages) : json(messages);
+    }
+
+    private static TextMessage json(List<OutboundMessage> messages) {
+        final byte[][] parts = new byte[messages.size()][];
+        int length = 1 + messages.size();
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = ((TextMessage) messages.get(i).frame()).asBytes();
+            length += parts[i].length;
+        }
+        final byte[] frame = new byte[length];
+        frame[0] = '[';
+        int at = 1;
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) frame[at++] = ',';
+            System.arraycopy(parts[i], 0, frame, at, parts[i].length);
+            at += parts[i].length;
+        }
+        frame[at] = ']';
+        return new TextMessage(frame);
+    }
+
+    private static BinaryMessage cbor(List<OutboundMessage> messages) throws IOException {
+        final byte[][] parts = new byte[messages.size()][];
+        final int header = arrayHeaderLength(parts.length);
+        int length = header;
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = messages.get(i).binary().bytes();
+            length += parts[i].length;
+        }
+        final byte[] frame = new byte[length];
+        writeArrayHeader(frame, parts.length);
+        int at = header;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, frame, at, part.length);
+            at += part.length;
+        }
+        return new BinaryMessage(frame);
+    }
+
+    // CBOR major type 4 (array) with the count inline below 24, else in the following one or two bytes
+    private static int arrayHeaderLength(int count) {
+        return count < 24 ? 1 : count < 256 ? 2 : 3;
+    }
+
+    private static void writeArrayHeader(byte[] frame, int count) {
+        if (count < 24) {
+            frame[0] = (byte) (0x80 | count);
+        } else if (count < 256) {
+            frame[0] = (byte) 0x98;
+            frame[1] = (byte) count;
+        } else {
+            frame[0] = (byte) 0x99;
+            frame[1] = (byte) (count >>> 8);
+            frame[2] = (byte) count;
+        }
+    }
+}
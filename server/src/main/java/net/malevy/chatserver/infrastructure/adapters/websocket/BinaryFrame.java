@@ -0,0 +1,40 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/*
+ * The CBOR form of one broadcast, shared by every CBOR session it goes to. It is transcoded the
+ * first time such a session is written to, so a node with only JSON clients never pays for it. Two
+ * writers racing on the first use both produce the same bytes, so the race is left benign instead of
+ * taking a lock on the send path.
+ */
+final class BinaryFrame {
+
+    private final byte[] json;
+    private final ChatMessageCodec codec;
+    private volatile byte[] cbor;
+
+    BinaryFrame(byte[] json, ChatMessageCodec codec) {
+        this.json = Objects.requireNonNull(json, "json cannot be null");
+        this.codec = Objects.requireNonNull(codec, "codec cannot be null");
+    }
+
+    // a fresh message every time: the container consumes the payload buffer while sending it
+    BinaryMessage frame() throws IOException {
+        return new BinaryMessage(bytes());
+    }
+
+    // shared by every session; callers copy from it and never write to it
+    byte[] bytes() throws IOException {
+        byte[] encoded = cbor;
+        if (encoded == null) {
+            encoded = codec.toCbor(json);
+            cbor = encoded;
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,12 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+/*
+ * permessage-deflate (RFC 7692) as offered to clients. With context takeover the compressor keeps
+ * its window between messages, which is what makes repetitive chat text compress well; without it
+ * every message starts from scratch and compresses worse.
+ */
+public record CompressionSettings(
+        boolean enabled,
+        boolean serverContextTakeover,
+        boolean clientContextTakeover) {
+}
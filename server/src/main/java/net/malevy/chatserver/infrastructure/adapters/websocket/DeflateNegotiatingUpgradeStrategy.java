@@ -0,0 +1,182 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Decoder;
+import jakarta.websocket.Encoder;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Tomcat negotiates permessage-deflate itself, from the client's offer, whenever a client asks for it;
+ * Spring's extension filtering never reaches that decision. This strategy hands Tomcat an endpoint
+ * configuration whose configurator rewrites the negotiated offer first: it drops the extension when
+ * compression is disabled and adds the no_context_takeover parameters the settings ask for.
+ *
+ * Tomcat compresses per connection and only with a 15-bit window (all java.util.zip.Deflater offers),
+ * so offers asking for a smaller window are declined by Tomcat, not here.
+ */
+public class DeflateNegotiatingUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private final CompressionSettings settings;
+
+    public DeflateNegotiatingUpgradeStrategy(CompressionSettings settings) {
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+    }
+
+    @Override
+    protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                          ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+        super.upgradeHttpToWebSocket(request, response, new NegotiatingEndpointConfig(endpointConfig), pathParams);
+    }
+
+    // the extensions the container would have agreed to, adjusted to the settings
+    List<Extension> negotiate(List<Extension> negotiated) {
+        final List<Extension> adjusted = new ArrayList<>(negotiated.size());
+        for (Extension extension : negotiated) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                adjusted.add(extension);
+            } else if (settings.enabled()) {
+                adjusted.add(withoutContextTakeover(extension));
+            }
+        }
+        return adjusted;
+    }
+
+    private Extension withoutContextTakeover(Extension offer) {
+        final List<Extension.Parameter> parameters = new ArrayList<>(offer.getParameters());
+        if (!settings.serverContextTakeover()) addIfMissing(parameters, SERVER_NO_CONTEXT_TAKEOVER);
+        if (!settings.clientContextTakeover()) addIfMissing(parameters, CLIENT_NO_CONTEXT_TAKEOVER);
+        return new DeflateOffer(offer.getName(), List.copyOf(parameters));
+    }
+
+    // the container rejects an offer that names a parameter twice
+    private static void addIfMissing(List<Extension.Parameter> parameters, String name) {
+        for (Extension.Parameter parameter : parameters) {
+            if (name.equals(parameter.getName())) return;
+        }
+        parameters.add(new Flag(name));
+    }
+
+    private record DeflateOffer(String name, List<Parameter> parameters) implements Extension {
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+    }
+
+    private record Flag(String name) implements Extension.Parameter {
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return null;
+        }
+    }
+
+    // Spring's registration is its own configurator; everything but the extensions is left to it
+    private final class NegotiatingEndpointConfig implements ServerEndpointConfig {
+
+        private final ServerEndpointConfig delegate;
+        private final Configurator configurator;
+
+        private NegotiatingEndpointConfig(ServerEndpointConfig delegate) {
+            this.delegate = delegate;
+            this.configurator = new NegotiatingConfigurator(delegate.getConfigurator());
+        }
+
+        @Override
+        public Class<?> getEndpointClass() {
+            return delegate.getEndpointClass();
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+
+        @Override
+        public List<String> getSubprotocols() {
+            return delegate.getSubprotocols();
+        }
+
+        @Override
+        public List<Extension> getExtensions() {
+            return delegate.getExtensions();
+        }
+
+        @Override
+        public Configurator getConfigurator() {
+            return configurator;
+        }
+
+        @Override
+        public List<Class<? extends Encoder>> getEncoders() {
+            return delegate.getEncoders();
+        }
+
+        @Override
+        public List<Class<? extends Decoder>> getDecoders() {
+            return delegate.getDecoders();
+        }
+
+        @Override
+        public Map<String, Object> getUserProperties() {
+            return delegate.getUserProperties();
+        }
+    }
+
+    private final class NegotiatingConfigurator extends ServerEndpointConfig.Configurator {
+
+        private final ServerEndpointConfig.Configurator delegate;
+
+        private NegotiatingConfigurator(ServerEndpointConfig.Configurator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+            return negotiate(delegate.getNegotiatedExtensions(installed, requested));
+        }
+
+        @Override
+        public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+            return delegate.getNegotiatedSubprotocol(supported, requested);
+        }
+
+        @Override
+        public boolean checkOrigin(String originHeaderValue) {
+            return delegate.checkOrigin(originHeaderValue);
+        }
+
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            delegate.modifyHandshake(sec, request, response);
+        }
+
+        @Override
+        public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+            return delegate.getEndpointInstance(endpointClass);
+        }
+    }
+}
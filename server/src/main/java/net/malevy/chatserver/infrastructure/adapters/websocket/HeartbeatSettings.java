@@ -0,0 +1,23 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/*
+ * A session the server has heard nothing from for pingAfter is pinged; one still silent after timeout
+ * is dropped. Timeouts are kept on a timing wheel that turns every tick, so they fire up to a tick late.
+ */
+public record HeartbeatSettings(
+        Duration pingAfter,
+        Duration timeout,
+        Duration tick) {
+
+    public HeartbeatSettings {
+        Objects.requireNonNull(pingAfter, "pingAfter cannot be null");
+        Objects.requireNonNull(timeout, "timeout cannot be null");
+        Objects.requireNonNull(tick, "tick cannot be null");
+        if (tick.toMillis() < 1) throw new IllegalArgumentException("tick must be at least 1ms");
+        if (pingAfter.compareTo(tick) < 0) throw new IllegalArgumentException("pingAfter cannot be shorter than tick");
+        if (timeout.compareTo(pingAfter) <= 0) throw new IllegalArgumentException("timeout must be longer than pingAfter");
+    }
+}
@@ -0,0 +1,187 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
+import net.malevy.chatserver.infrastructure.dispatch.TimingWheel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Finds sessions whose peer has gone away without closing, as half-open sockets behind a proxy do.
+ * Anything the client sends, pongs included, marks the session as heard from; that is one volatile
+ * write and nothing else. Each session has one pending timeout on a timing wheel. When it fires, a
+ * session heard from since is simply rescheduled; a quiet one is pinged and given until timeout to
+ * answer; one that never does is taken out through LeaveChatUseCase, so broadcasts stop reaching it
+ * at once, and then closed off the sweeper thread in case the close blocks on the dead peer.
+ */
+@Slf4j
+public class IdleSessionReaper {
+
+    static final CloseStatus IDLE_TIMEOUT = CloseStatus.SESSION_NOT_RELIABLE.withReason("idle timeout");
+
+    private final WebSocketSessionManager sessionManager;
+    private final LeaveChatUseCase leaveChatUseCase;
+    private final HeartbeatSettings settings;
+    private final Executor closer;
+    private final Clock clock;
+    private final TimingWheel<Tracked> wheel;
+    // keyed by session id; a session is only here between track and untrack
+    private final Map<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final Counter pings;
+    private final Counter reaped;
+    private volatile boolean running;
+    private Thread sweeper;
+
+    private static final class Tracked {
+        private final WebSocketSession session;
+        private volatile long heardAt;
+        // only touched by the sweeper
+        private long pingedAt = Long.MIN_VALUE;
+
+        private Tracked(WebSocketSession session, long heardAt) {
+            this.session = session;
+            this.heardAt = heardAt;
+        }
+    }
+
+    public IdleSessionReaper(WebSocketSessionManager sessionManager,
+                             LeaveChatUseCase leaveChatUseCase,
+                             HeartbeatSettings settings,
+                             Executor closer,
+                             Clock clock,
+                             MeterRegistry meterRegistry) {
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.leaveChatUseCase = Objects.requireNonNull(leaveChatUseCase, "leaveChatUseCase cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.closer = Objects.requireNonNull(closer, "closer cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        final long tickMillis = settings.tick().toMillis();
+        // one turn covers the longest wait, so a timeout is looked at only in the turn it is due
+        this.wheel = new TimingWheel<>(tickMillis, slotsFor(Math.ceilDiv(settings.timeout().toMillis(), tickMillis)), clock.millis());
+        this.pings = Counter.builder("chat.sessions.pings")
+                .description("Pings sent to sessions the server had not heard from")
+                .register(meterRegistry);
+        this.reaped = Counter.builder("chat.sessions.reaped")
+                .description("Sessions dropped for not answering a ping within the timeout")
+                .register(meterRegistry);
+        Gauge.builder("chat.sessions.tracked", tracked, Map::size)
+                .description("Sessions watched for idleness")
+                .register(meterRegistry);
+    }
+
+    private static int slotsFor(long ticks) {
+        final int wanted = (int) Math.min(ticks, 1 << 16);
+        return wanted <= 1 ? 1 : Integer.highestOneBit(wanted - 1) << 1;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        sweeper = Thread.ofPlatform().name("idle-sessions").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(sweeper);
+        sweeper.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public void track(WebSocketSession session) {
+        Objects.requireNonNull(session, "session cannot be null");
+        final long now = clock.millis();
+        final Tracked entry = new Tracked(session, now);
+        if (tracked.putIfAbsent(session.getId(), entry) != null) return;
+        wheel.schedule(entry, now + settings.pingAfter().toMillis());
+    }
+
+    public void touch(WebSocketSession session) {
+        final Tracked entry = tracked.get(session.getId());
+        if (entry != null) entry.heardAt = clock.millis();
+    }
+
+    // the pending timeout finds the session gone and is dropped
+    public void untrack(WebSocketSession session) {
+        tracked.remove(session.getId());
+    }
+
+    int trackedCount() {
+        return tracked.size();
+    }
+
+    // one turn of the wheel up to now; package-private so tests can drive it with their own clock
+    void sweep() {
+        wheel.advance(clock.millis(), this::expired);
+    }
+
+    private void expired(Tracked entry) {
+        if (tracked.get(entry.session.getId()) != entry) return;
+        final long now = clock.millis();
+        final long heardAt = entry.heardAt;
+        if (now - heardAt >= settings.timeout().toMillis()) {
+            reap(entry);
+            return;
+        }
+        if (now - heardAt < settings.pingAfter().toMillis()) {
+            wheel.schedule(entry, heardAt + settings.pingAfter().toMillis());
+            return;
+        }
+        if (entry.pingedAt < heardAt) {
+            entry.pingedAt = now;
+            if (sessionManager.ping(entry.session)) pings.increment();
+        }
+        wheel.schedule(entry, heardAt + settings.timeout().toMillis());
+    }
+
+    private void reap(Tracked entry) {
+        if (!tracked.remove(entry.session.getId(), entry)) return;
+        reaped.increment();
+        log.info("Dropping session {}: nothing heard for {}", entry.session.getId(), settings.timeout());
+        try {
+            leaveChatUseCase.run(entry.session);
+        } catch (RuntimeException e) {
+            log.error("Failed to remove idle session {}", entry.session.getId(), e);
+        }
+        try {
+            closer.execute(() -> close(entry.session));
+        } catch (RejectedExecutionException e) {
+            close(entry.session);
+        }
+    }
+
+    private static void close(WebSocketSession session) {
+        try {
+            session.close(IDLE_TIMEOUT);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close idle session {}", session.getId(), e);
+        }
+    }
+
+    private void run() {
+        final long tickNanos = settings.tick().toNanos();
+        while (running) {
+            LockSupport.parkNanos(this, tickNanos);
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                log.error("Idle session sweep failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Token buckets on every inbound message, per session and per user, kept as GCRA: a bucket is the
+ * single time at which it would be full again, so taking a token is one compare-and-set on a long and
+ * nothing is allocated. The buckets for a session or user are created when it connects.
+ *
+ * A user connected to several nodes gets an equal share of their allowance on each, sized from the
+ * user directory's leases and refreshed every shareRefresh, so the cluster as a whole stays within it
+ * without a round trip per message. Rejected messages are dropped; the first of a run gets the client
+ * a system message, and a session that keeps going past its violations allowance is closed.
+ */
+@Slf4j
+public class InboundRateLimiter {
+
+    static final CloseStatus RATE_LIMITED = CloseStatus.POLICY_VIOLATION.withReason("rate limit exceeded");
+    static final String SLOW_DOWN = "You are sending messages too quickly; some were dropped";
+
+    private static final int TYPE_COUNT = RateLimitSettings.TYPES.size();
+    // the session's violations bucket sits after its per-type ones
+    private static final int VIOLATIONS = TYPE_COUNT;
+
+    private final UserDirectory userDirectory;
+    private final SessionManager sessionManager;
+    private final ChatMessageCodec codec;
+    private final MessageIdGenerator messageIds;
+    private final Clock clock;
+    // per type, indexed like RateLimitSettings.TYPES, in microseconds; an interval of 0 means unlimited
+    private final long[] sessionInterval = new long[TYPE_COUNT];
+    private final long[] sessionPer = new long[TYPE_COUNT];
+    private final long[] userInterval = new long[TYPE_COUNT];
+    private final long[] userPer = new long[TYPE_COUNT];
+    private final long violationInterval;
+    private final long violationPer;
+    private final long shareRefreshMicros;
+    private final boolean limitsUsers;
+    // keyed by session id, between open and close
+    private final Map<String, SessionLimits> sessions = new ConcurrentHashMap<>();
+    // keyed by username while the user has sessions on this node
+    private final Map<String, UserLimits> users = new ConcurrentHashMap<>();
+    private final Counter[] throttled = new Counter[TYPE_COUNT];
+    private final Counter closes;
+
+    private static final class SessionLimits {
+        // theoretical arrival time of each bucket, in microseconds
+        private final AtomicLongArray tat = new AtomicLongArray(TYPE_COUNT + 1);
+        private final String username;
+        private final UserLimits user;
+        // set on the first rejection of a run, so the client is told once
+        private volatile boolean throttled;
+        private volatile boolean closing;
+
+        private SessionLimits(String username, UserLimits user) {
+            this.username = username;
+            this.user = user;
+        }
+    }
+
+    private static final class UserLimits {
+        private final AtomicLongArray tat = new AtomicLongArray(TYPE_COUNT);
+        // only changed inside users.compute
+        private int sessions;
+        // this node's share is 1/nodes of the user's allowance
+        private volatile int nodes = 1;
+        private volatile long refreshAt;
+    }
+
+    public InboundRateLimiter(RateLimitSettings settings,
+                              UserDirectory userDirectory,
+                              SessionManager sessionManager,
+                              ChatMessageCodec codec,
+                              MessageIdGenerator messageIds,
+                              Clock clock,
+                              MeterRegistry meterRegistry) {
+        Objects.requireNonNull(settings, "settings cannot be null");
+        this.userDirectory = Objects.requireNonNull(userDirectory, "userDirectory cannot be null");
+        this.sessionManager = Objects.requireNonNull(sessionManager, "sessionManager cannot be null");
+        this.codec = Objects.requireNonNull(codec, "codec cannot be null");
+        this.messageIds = Objects.requireNonNull(messageIds, "messageIds cannot be null");
+        this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        for (int kind = 0; kind < TYPE_COUNT; kind++) {
+            final String type = RateLimitSettings.TYPES.get(kind);
+            final RateLimit session = settings.perSession().get(type);
+            if (session != null) {
+                sessionInterval[kind] = session.intervalMicros();
+                sessionPer[kind] = session.per().toNanos() / 1000;
+            }
+            final RateLimit user = settings.perUser().get(type);
+            if (user != null) {
+                userInterval[kind] = user.intervalMicros();
+                userPer[kind] = user.per().toNanos() / 1000;
+            }
+            throttled[kind] = Counter.builder("chat.inbound.throttled")
+                    .description("Inbound messages dropped for exceeding a session or user rate limit")
+                    .tag("type", type)
+                    .register(meterRegistry);
+        }
+        this.violationInterval = settings.violations().intervalMicros();
+        this.violationPer = settings.violations().per().toNanos() / 1000;
+        this.shareRefreshMicros = settings.shareRefresh().toNanos() / 1000;
+        this.limitsUsers = !settings.perUser().isEmpty();
+        this.closes = Counter.builder("chat.inbound.throttle.closes")
+                .description("Sessions closed for continuing to send past their rate limit")
+                .register(meterRegistry);
+    }
+
+    // username is null for anonymous sessions, which are only limited per session
+    public void open(WebSocketSession session, String username) {
+        Objects.requireNonNull(session, "session cannot be null");
+        UserLimits user = null;
+        if (username != null && limitsUsers) {
+            user = users.compute(username, (name, existing) -> {
+                final UserLimits limits = existing == null ? new UserLimits() : existing;
+                limits.sessions++;
+                return limits;
+            });
+            // another session of the user here may mean another node; look again on the next message
+            user.refreshAt = 0;
+        }
+        sessions.put(session.getId(), new SessionLimits(username, user));
+    }
+
+    public void close(WebSocketSession session) {
+        final SessionLimits limits = sessions.remove(session.getId());
+        if (limits == null || limits.user == null) return;
+        users.computeIfPresent(limits.username, (name, user) -> --user.sessions == 0 ? null : user);
+    }
+
+    // false when the message is to be dropped; the client has then been told, or is being closed
+    public boolean admit(WebSocketSession session, String type) {
+        final SessionLimits limits = sessions.get(session.getId());
+        if (limits == null) return true;
+        if (limits.closing) return false;
+        final int kind = kindOf(type);
+        final long now = clock.millis() * 1000;
+        if (take(limits.tat, kind, now, sessionInterval[kind], sessionPer[kind])) {
+            if (takeUser(limits, kind, now)) {
+                if (limits.throttled) limits.throttled = false;
+                return true;
+            }
+            // the user is over their allowance, so the session's token was not used after all
+            refund(limits.tat, kind, sessionInterval[kind]);
+        }
+        throttled[kind].increment();
+        if (!take(limits.tat, VIOLATIONS, now, violationInterval, violationPer)) {
+            limits.closing = true;
+            closes.increment();
+            log.warn("Closing session {} of {}: still sending past its rate limit", session.getId(), limits.username);
+            close(session, RATE_LIMITED);
+            return false;
+        }
+        if (!limits.throttled) {
+            limits.throttled = true;
+            slowDown(session);
+        }
+        return false;
+    }
+
+    private boolean takeUser(SessionLimits limits, int kind, long now) {
+        final UserLimits user = limits.user;
+        if (user == null || userInterval[kind] == 0) return true;
+        if (now >= user.refreshAt) refreshShare(limits.username, user, now);
+        final int nodes = user.nodes;
+        final long interval = userInterval[kind] * nodes;
+        // the burst shrinks with the share too, but a node always lets one message through
+        return take(user.tat, kind, now, interval, Math.max(userPer[kind], interval));
+    }
+
+    // the directory counts holders in the background, so this reads a cached number rather than asking Redis
+    private void refreshShare(String username, UserLimits user, long now) {
+        // pushed out first, so the messages racing this one don't all go to the directory
+        user.refreshAt = now + shareRefreshMicros;
+        try {
+            user.nodes = Math.max(1, userDirectory.nodesHolding(username));
+        } catch (RuntimeException e) {
+            log.warn("Looking up the nodes holding {} failed; keeping a 1/{} share", username, user.nodes, e);
+        }
+    }
+
+    /*
+     * GCRA: tat is when the bucket would next be full, had it been left alone. A message is allowed
+     * while it arrives no more than per - interval ahead of that, and moves it on by interval.
+     */
+    private static boolean take(AtomicLongArray tat, int index, long now, long interval, long per) {
+        if (interval == 0) return true;
+        final long tolerance = per - interval;
+        while (true) {
+            final long current = tat.get(index);
+            final long from = Math.max(current, now);
+            if (from - now > tolerance) return false;
+            if (tat.compareAndSet(index, current, from + interval)) return true;
+        }
+    }
+
+    // undoes one take; the bucket may fall behind now, which take() already treats as full
+    private static void refund(AtomicLongArray tat, int index, long interval) {
+        if (interval != 0) tat.addAndGet(index, -interval);
+    }
+
+    private void slowDown(WebSocketSession session) {
+        try {
+            sessionManager.send(session, codec.encode(ChatMessage.createSystemMessage(SLOW_DOWN, messageIds)));
+        } catch (Exception e) {
+            log.debug("Failed to tell session {} it is being throttled", session.getId(), e);
+        }
+    }
+
+    private static void close(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close session {}", session.getId(), e);
+        }
+    }
+
+    private static int kindOf(String type) {
+        final int kind = type == null ? 0 : RateLimitSettings.TYPES.indexOf(type);
+        return Math.max(kind, 0);
+    }
+}
@@ -0,0 +1,31 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+
+// one instance per broadcast, shared by every session queue it is offered to
+record OutboundMessage(String type, WebSocketMessage<?> frame, long sequence, BinaryFrame binary) {
+
+    // messages that never went through the replay buffer
+    static final long UNSEQUENCED = 0L;
+
+    OutboundMessage(String type, WebSocketMessage<?> frame) {
+        this(type, frame, UNSEQUENCED);
+    }
+
+    OutboundMessage(String type, WebSocketMessage<?> frame, long sequence) {
+        this(type, frame, sequence, null);
+    }
+
+    // frames built without a binary form go to every session as they are
+    WebSocketMessage<?> frameFor(WireFormat format) throws IOException {
+        return format.binary() && binary != null ? binary.frame() : frame;
+    }
+
+    // whether the message can go into a batch for the format, or has to be sent on its own
+    boolean batchable(WireFormat format) {
+        return format.binary() ? binary != null : frame instanceof TextMessage;
+    }
+}
@@ -0,0 +1,83 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Meters shared by every SessionOutbound. All of them are registered once with fixed tags, so the
+ * per-frame cost is an add or a timer record, never a lookup or a tag allocation.
+ */
+final class OutboundMetrics {
+
+    private final Timer send;
+    private final Counter sendFailures;
+    private final Counter dropped;
+    private final DistributionSummary batchSize;
+    private final Counter slowConsumerEvictions;
+    private final Counter sendFailedEvictions;
+    private final AtomicLong queued = new AtomicLong();
+
+    OutboundMetrics(MeterRegistry registry) {
+        Objects.requireNonNull(registry, "registry cannot be null");
+        this.send = Timer.builder("chat.session.send")
+                .description("Time to write one frame to one session")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.sendFailures = Counter.builder("chat.session.send.failures")
+                .description("Frames that could not be written to a session")
+                .register(registry);
+        this.dropped = Counter.builder("chat.outbound.dropped")
+                .description("Frames dropped from full outbound queues")
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("chat.outbound.batch.size")
+                .description("Messages per frame sent to sessions that negotiated batched frames")
+                .register(registry);
+        this.slowConsumerEvictions = evictions(registry, "slow-consumer");
+        this.sendFailedEvictions = evictions(registry, "send-failed");
+        Gauge.builder("chat.outbound.queue.depth", queued, AtomicLong::get)
+                .description("Frames waiting in all outbound queues")
+                .register(registry);
+    }
+
+    private static Counter evictions(MeterRegistry registry, String reason) {
+        return Counter.builder("chat.session.evictions")
+                .description("Sessions closed by the server because they could not keep up")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    void sent(long nanos) {
+        send.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void sendFailed() {
+        sendFailures.increment();
+    }
+
+    void batched(int messages) {
+        batchSize.record(messages);
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    void evicted(boolean slowConsumer) {
+        (slowConsumer ? slowConsumerEvictions : sendFailedEvictions).increment();
+    }
+
+    void queued(int delta) {
+        if (delta != 0) queued.addAndGet(delta);
+    }
+
+    long queued() {
+        return queued.get();
+    }
+}
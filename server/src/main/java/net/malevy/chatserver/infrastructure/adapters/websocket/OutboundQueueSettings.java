@@ -0,0 +1,39 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+
+public record OutboundQueueSettings(
+        int capacity,
+        OverflowPolicy overflowPolicy,
+        Set<String> droppableTypes,
+        Duration sendTimeLimit,
+        int batchSize,
+        Duration batchLinger) {
+
+    // batching off: every message is its own frame
+    public OutboundQueueSettings(int capacity, OverflowPolicy overflowPolicy, Set<String> droppableTypes, Duration sendTimeLimit) {
+        this(capacity, overflowPolicy, droppableTypes, sendTimeLimit, 1, Duration.ZERO);
+    }
+
+    public OutboundQueueSettings {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        Objects.requireNonNull(overflowPolicy, "overflowPolicy cannot be null");
+        droppableTypes = Set.copyOf(Objects.requireNonNull(droppableTypes, "droppableTypes cannot be null"));
+        Objects.requireNonNull(sendTimeLimit, "sendTimeLimit cannot be null");
+        // a batch is a CBOR array, whose count header is kept to at most two bytes
+        if (batchSize < 1 || batchSize > 0xFFFF) throw new IllegalArgumentException("batchSize must be between 1 and 65535");
+        Objects.requireNonNull(batchLinger, "batchLinger cannot be null");
+        if (batchLinger.isNegative()) throw new IllegalArgumentException("batchLinger cannot be negative");
+    }
+
+    // sessions may only ask for batched frames when more than one message can share a frame
+    public boolean batching() {
+        return batchSize > 1;
+    }
+
+    public boolean isDroppable(String type) {
+        return type != null && droppableTypes.contains(type);
+    }
+}
@@ -0,0 +1,10 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+public enum OverflowPolicy {
+    // discard the oldest queued frame to make room for the new one
+    DROP_OLDEST,
+    // discard the oldest queued frame of a droppable type; disconnect if none can be dropped
+    DROP_BY_TYPE,
+    // evict the session as soon as its queue is full
+    DISCONNECT
+}
@@ -0,0 +1,34 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Objects;
+
+// `permits` messages per `per`, all of which may arrive at once; written as "20/10s"
+public record RateLimit(int permits, Duration per) {
+
+    public RateLimit {
+        if (permits < 1) throw new IllegalArgumentException("permits must be at least 1");
+        Objects.requireNonNull(per, "per cannot be null");
+        if (per.toNanos() / 1000 < permits) throw new IllegalArgumentException("per must allow at least a microsecond per permit");
+    }
+
+    public static RateLimit parse(String spec) {
+        Objects.requireNonNull(spec, "spec cannot be null");
+        final int slash = spec.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("rate limit must look like <permits>/<duration>: " + spec);
+        return new RateLimit(Integer.parseInt(spec.substring(0, slash).trim()),
+                DurationStyle.detectAndParse(spec.substring(slash + 1).trim()));
+    }
+
+    // the spacing between messages at the sustained rate, in microseconds
+    long intervalMicros() {
+        return per.toNanos() / 1000 / permits;
+    }
+
+    @Override
+    public String toString() {
+        return permits + "/" + per;
+    }
+}
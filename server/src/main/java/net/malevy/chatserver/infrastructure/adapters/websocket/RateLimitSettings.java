@@ -0,0 +1,49 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Limits keyed by inbound message type; a type without one is not limited. perUser is the user's
+ * allowance across the whole cluster. violations is how many rejected messages a session may send
+ * before it is closed.
+ */
+public record RateLimitSettings(
+        Map<String, RateLimit> perSession,
+        Map<String, RateLimit> perUser,
+        RateLimit violations,
+        Duration shareRefresh) {
+
+    // what the connection handler dispatches on; anything else is handled, and limited, as a message
+    static final List<String> TYPES = List.of("message", "direct", "join", "leave", "history");
+
+    public RateLimitSettings {
+        perSession = checked(Objects.requireNonNull(perSession, "perSession cannot be null"));
+        perUser = checked(Objects.requireNonNull(perUser, "perUser cannot be null"));
+        Objects.requireNonNull(violations, "violations cannot be null");
+        Objects.requireNonNull(shareRefresh, "shareRefresh cannot be null");
+        if (shareRefresh.isNegative()) throw new IllegalArgumentException("shareRefresh cannot be negative");
+    }
+
+    // "message=10/1s,direct=5/1s"; blank means no limits
+    public static Map<String, RateLimit> parseLimits(String spec) {
+        final Map<String, RateLimit> limits = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) return limits;
+        for (String entry : spec.split(",")) {
+            final int equals = entry.indexOf('=');
+            if (equals < 0) throw new IllegalArgumentException("rate limit must look like <type>=<permits>/<duration>: " + entry);
+            limits.put(entry.substring(0, equals).trim(), RateLimit.parse(entry.substring(equals + 1)));
+        }
+        return limits;
+    }
+
+    private static Map<String, RateLimit> checked(Map<String, RateLimit> limits) {
+        for (String type : limits.keySet()) {
+            if (!TYPES.contains(type)) throw new IllegalArgumentException("no inbound message type " + type + "; expected one of " + TYPES);
+        }
+        return Map.copyOf(limits);
+    }
+}
@@ -0,0 +1,134 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/*
+ * Fixed-capacity ring of the most recent frames delivered on this node, for replaying to sessions
+ * that reconnect. All slots are allocated up front and append only stores references, so the hot
+ * path allocates nothing. Each slot has a stamp: twice the sequence it holds once published, odd
+ * while a writer is filling it in. A writer claims a sequence with one atomic increment, takes the
+ * slot by CAS-ing its stamp to odd, writes the fields and publishes with a release store of the even
+ * stamp. Only one writer is ever inside a slot, and a slot only moves forward: a writer that lost
+ * the race for its slot to a newer sequence leaves that one in place.
+ *
+ * Readers load the stamp with acquire, copy the fields, and check after a load fence that the stamp
+ * has not moved (a seqlock per slot); a slot that changed underneath them, or that is not published
+ * within a bounded wait, is skipped.
+ */
+public final class ReplayBuffer {
+
+    static final long NOT_FOUND = -1L;
+    // how long a reader waits for a claimed sequence to be published before skipping it
+    private static final int MAX_SPINS = 1 << 10;
+
+    private final int mask;
+    private final String[] ids;
+    private final String[] rooms;
+    private final String[] types;
+    private final WebSocketMessage<?>[] frames;
+    private final BinaryFrame[] binaries;
+    private final AtomicLongArray stamps;
+    // sequences start at 1 so that 0 can mean "unsequenced"
+    private final AtomicLong nextSequence = new AtomicLong(1);
+
+    // what a reader copied out of a slot; only built on the replay path
+    private record Copy(String id, String room, String type, WebSocketMessage<?> frame, BinaryFrame binary) {
+    }
+
+    public ReplayBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two of at least 2");
+        }
+        this.mask = capacity - 1;
+        this.ids = new String[capacity];
+        this.rooms = new String[capacity];
+        this.types = new String[capacity];
+        this.frames = new WebSocketMessage<?>[capacity];
+        this.binaries = new BinaryFrame[capacity];
+        this.stamps = new AtomicLongArray(capacity);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    long append(String id, String room, String type, WebSocketMessage<?> frame) {
+        return append(id, room, type, frame, null);
+    }
+
+    long append(String id, String room, String type, WebSocketMessage<?> frame, BinaryFrame binary) {
+        Objects.requireNonNull(frame, "frame cannot be null");
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) (sequence & mask);
+        while (true) {
+            final long current = stamps.get(slot);
+            // a writer a whole lap ahead got here first; its message is the one worth keeping
+            if (current >>> 1 > sequence) return sequence;
+            // an odd stamp is an older writer still filling the slot in; it is a few stores from done
+            if ((current & 1) == 0 && stamps.compareAndSet(slot, current, sequence << 1 | 1)) break;
+            Thread.onSpinWait();
+        }
+        ids[slot] = id;
+        rooms[slot] = room;
+        types[slot] = type;
+        frames[slot] = frame;
+        binaries[slot] = binary;
+        stamps.setRelease(slot, sequence << 1);
+        return sequence;
+    }
+
+    // highest sequence handed out so far; it may still be in the middle of being written
+    long lastSequence() {
+        return nextSequence.get() - 1;
+    }
+
+    // sequence of the newest buffered message with this id, or NOT_FOUND
+    long find(String id) {
+        Objects.requireNonNull(id, "id cannot be null");
+        final long last = lastSequence();
+        for (long sequence = last; sequence > Math.max(0, last - capacity()); sequence--) {
+            final Copy slot = awaitPublished((int) (sequence & mask), sequence);
+            if (slot != null && id.equals(slot.id())) return sequence;
+        }
+        return NOT_FOUND;
+    }
+
+    // frames with after < sequence <= through whose room passes the filter, oldest first
+    List<OutboundMessage> between(long after, long through, Predicate<String> roomFilter) {
+        final long oldest = Math.max(after + 1, through - capacity() + 1);
+        final List<OutboundMessage> replay = new ArrayList<>((int) Math.max(0, through - oldest + 1));
+        for (long sequence = Math.max(1, oldest); sequence <= through; sequence++) {
+            final Copy slot = awaitPublished((int) (sequence & mask), sequence);
+            if (slot != null && roomFilter.test(slot.room())) {
+                replay.add(new OutboundMessage(slot.type(), slot.frame(), sequence, slot.binary()));
+            }
+        }
+        return replay;
+    }
+
+    // a copy of the slot as published for the sequence, or null once it has been overwritten or its
+    // writer is slow to publish; a claimed sequence is normally a few stores away from published
+    private Copy awaitPublished(int slot, long sequence) {
+        final long published = sequence << 1;
+        for (int spins = 0; spins < MAX_SPINS; spins++) {
+            final long before = stamps.getAcquire(slot);
+            if (before == published) {
+                final Copy copy = new Copy(ids[slot], rooms[slot], types[slot], frames[slot], binaries[slot]);
+                // the field loads above may not drift past the recheck
+                VarHandle.acquireFence();
+                return stamps.get(slot) == published ? copy : null;
+            }
+            if (before >>> 1 > sequence) return null;
+            Thread.onSpinWait();
+        }
+        return null;
+    }
+}
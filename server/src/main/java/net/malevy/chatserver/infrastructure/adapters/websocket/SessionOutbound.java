@@ -0,0 +1,352 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Bounded outbound queue for a single session. Producers only ever enqueue; the frames are written
+ * by at most one drain task at a time on the writer executor, so a stalled peer ties up a writer
+ * thread instead of the thread that is fanning a message out. The queue is guarded by a lock rather
+ * than a monitor so a virtual thread waiting for it can unmount instead of pinning its carrier.
+ *
+ * A heartbeat ping is a control frame and stays out of that queue: it sits in a slot of its own that
+ * the overflow policy never looks at, so it cannot push chat frames out, and the drain writes it before
+ * the next data frame rather than behind the backlog. Pings offered while one is pending coalesce.
+ */
+@Slf4j
+final class SessionOutbound {
+
+    static final CloseStatus SLOW_CONSUMER = CloseStatus.SESSION_NOT_RELIABLE.withReason("slow consumer");
+    static final CloseStatus SEND_FAILED = CloseStatus.SESSION_NOT_RELIABLE.withReason("send failed");
+
+    private static final long IDLE = 0L;
+
+    private final WebSocketSession session;
+    private final OutboundQueueSettings settings;
+    private final Executor writer;
+    // hands a drain back to the writer once the batch linger is up; null without a linger
+    private final Executor lingering;
+    private final OutboundMetrics metrics;
+    private final WireFormat format;
+    private final Deque<OutboundMessage> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean evicted = new AtomicBoolean();
+    private final AtomicBoolean pingPending = new AtomicBoolean();
+    private volatile long sendStartedAt = IDLE;
+    // while held, frames are queued but not written, so a replay can still go in front of them
+    private boolean held;
+    private long replayedThrough = OutboundMessage.UNSEQUENCED;
+
+    SessionOutbound(WebSocketSession session, OutboundQueueSettings settings, Executor writer, OutboundMetrics metrics) {
+        this(session, settings, writer, metrics, false);
+    }
+
+    SessionOutbound(WebSocketSession session, OutboundQueueSettings settings, Executor writer, OutboundMetrics metrics,
+                    boolean held) {
+        this.session = Objects.requireNonNull(session, "session cannot be null");
+        this.settings = Objects.requireNonNull(settings, "settings cannot be null");
+        this.writer = Objects.requireNonNull(writer, "writer cannot be null");
+        final long lingerNanos = settings.batchLinger().toNanos();
+        this.lingering = lingerNanos > 0 ? CompletableFuture.delayedExecutor(lingerNanos, TimeUnit.NANOSECONDS, writer) : null;
+        this.metrics = Objects.requireNonNull(metrics, "metrics cannot be null");
+        this.format = WireFormat.of(session);
+        this.held = held;
+    }
+
+    WebSocketSession session() {
+        return session;
+    }
+
+    Set<String> rooms() {
+        return rooms;
+    }
+
+    boolean isEvicted() {
+        return evicted.get();
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void offer(OutboundMessage message) {
+        if (evicted.get()) return;
+        if (isStalled()) {
+            evict(SLOW_CONSUMER);
+            return;
+        }
+
+        final boolean drain;
+        lock.lock();
+        try {
+            // already part of the replay this session was given
+            if (message.sequence() != OutboundMessage.UNSEQUENCED && message.sequence() <= replayedThrough) return;
+            if (queue.size() >= settings.capacity()) {
+                switch (makeRoomFor(message)) {
+                    case DROP -> {
+                        metrics.dropped();
+                        log.debug("Dropping {} frame for slow session {}", message.type(), session.getId());
+                        return;
+                    }
+                    case EVICT -> {
+                        evict(SLOW_CONSUMER);
+                        return;
+                    }
+                    case ACCEPT -> {
+                    }
+                }
+            }
+            queue.addLast(message);
+            metrics.queued(1);
+            drain = !held;
+        } finally {
+            lock.unlock();
+        }
+        if (drain) scheduleDrain();
+    }
+
+    // writes a ping ahead of the queued frames; a held session gets it too, as it orders nothing
+    void ping() {
+        if (evicted.get()) return;
+        if (isStalled()) {
+            evict(SLOW_CONSUMER);
+            return;
+        }
+        if (pingPending.compareAndSet(false, true)) scheduleDrain();
+    }
+
+    /*
+     * Puts the replayed frames ahead of everything queued so far, drops queued frames the replay
+     * already covers, and releases the hold. Frames offered later that the replay covered are dropped
+     * on arrival.
+     */
+    void resume(List<OutboundMessage> replay, long through) {
+        if (evicted.get()) return;
+        lock.lock();
+        try {
+            final int before = queue.size();
+            queue.removeIf(m -> m.sequence() != OutboundMessage.UNSEQUENCED && m.sequence() <= through);
+            for (int i = replay.size() - 1; i >= 0; i--) {
+                queue.addFirst(replay.get(i));
+            }
+            replayedThrough = Math.max(replayedThrough, through);
+            held = false;
+            metrics.queued(queue.size() - before);
+        } finally {
+            lock.unlock();
+        }
+        scheduleDrain();
+    }
+
+    void evict(CloseStatus status) {
+        if (!evicted.compareAndSet(false, true)) return;
+        lock.lock();
+        try {
+            metrics.queued(-queue.size());
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        metrics.evicted(status == SLOW_CONSUMER);
+        log.warn("Evicting session {}: {}", session.getId(), status);
+        try {
+            // closing writes a close frame, which can block on the same peer that got us here
+            writer.execute(() -> close(status));
+        } catch (RejectedExecutionException e) {
+            close(status);
+        }
+    }
+
+    private boolean isStalled() {
+        final long startedAt = sendStartedAt;
+        return startedAt != IDLE && System.nanoTime() - startedAt > settings.sendTimeLimit().toNanos();
+    }
+
+    private Admission makeRoomFor(OutboundMessage message) {
+        return switch (settings.overflowPolicy()) {
+            case DROP_OLDEST -> {
+                if (queue.pollFirst() != null) metrics.queued(-1);
+                metrics.dropped();
+                yield Admission.ACCEPT;
+            }
+            case DROP_BY_TYPE -> {
+                for (Iterator<OutboundMessage> it = queue.iterator(); it.hasNext(); ) {
+                    if (settings.isDroppable(it.next().type())) {
+                        it.remove();
+                        metrics.queued(-1);
+                        metrics.dropped();
+                        yield Admission.ACCEPT;
+                    }
+                }
+                yield settings.isDroppable(message.type()) ? Admission.DROP : Admission.EVICT;
+            }
+            case DISCONNECT -> Admission.EVICT;
+        };
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) return;
+        try {
+            writer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            log.warn("Writer rejected drain for session {}", session.getId());
+        }
+    }
+
+    private void drain() {
+        if (format.batched() && settings.batching()) {
+            drainBatches(false);
+            return;
+        }
+        while (true) {
+            sendPendingPing();
+            OutboundMessage next;
+            lock.lock();
+            try {
+                next = held ? null : queue.pollFirst();
+                if (next != null) metrics.queued(-1);
+            } finally {
+                lock.unlock();
+            }
+            if (next == null) {
+                if (stopDraining()) return;
+                continue;
+            }
+            send(next);
+        }
+    }
+
+    // as drain(), but everything queued (up to batchSize) goes out as one frame and one write
+    private void drainBatches(boolean lingered) {
+        final List<OutboundMessage> batch = new ArrayList<>(Math.min(settings.batchSize(), settings.capacity()));
+        while (true) {
+            sendPendingPing();
+            // a short batch waits up to the linger for company, with the drain still claimed but off the
+            // writer thread, which would otherwise be parked for every session sharing the pool; a full one goes at once
+            if (!lingered && lingering != null) {
+                final int waiting = queued();
+                if (waiting > 0 && waiting < settings.batchSize() && linger()) return;
+            }
+            lingered = false;
+            lock.lock();
+            try {
+                while (!held && batch.size() < settings.batchSize()) {
+                    final OutboundMessage next = queue.peekFirst();
+                    // a message without this format's encoding goes in a frame of its own
+                    if (next == null || (!batch.isEmpty() && !next.batchable(format))) break;
+                    batch.add(queue.pollFirst());
+                    if (!next.batchable(format)) break;
+                }
+                metrics.queued(-batch.size());
+            } finally {
+                lock.unlock();
+            }
+            if (batch.isEmpty()) {
+                if (stopDraining()) return;
+                continue;
+            }
+            if (batch.size() == 1 && !batch.get(0).batchable(format)) {
+                send(batch.get(0));
+            } else {
+                sendBatch(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    // false when the drain could not be put off, in which case it carries on now
+    private boolean linger() {
+        try {
+            lingering.execute(() -> drainBatches(true));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // true once nothing can be written; a producer may have enqueued between the last poll and clearing the flag
+    private boolean stopDraining() {
+        draining.set(false);
+        if (!pingPending.get()) {
+            lock.lock();
+            try {
+                // a held queue waits for resume(), which schedules its own drain
+                if (held || queue.isEmpty()) return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return !draining.compareAndSet(false, true);
+    }
+
+    private void sendPendingPing() {
+        if (pingPending.getAndSet(false) && !evicted.get()) send(new OutboundMessage("ping", new PingMessage()));
+    }
+
+    private void send(OutboundMessage message) {
+        final long startedAt = System.nanoTime();
+        sendStartedAt = startedAt;
+        try {
+            session.sendMessage(message.frameFor(format));
+            metrics.sent(System.nanoTime() - startedAt);
+        } catch (IOException | RuntimeException e) {
+            metrics.sendFailed();
+            log.error("Failed to send message to {}", session.getId(), e);
+            evict(SEND_FAILED);
+        } finally {
+            sendStartedAt = IDLE;
+        }
+    }
+
+    private void sendBatch(List<OutboundMessage> batch) {
+        final long startedAt = System.nanoTime();
+        sendStartedAt = startedAt;
+        try {
+            session.sendMessage(BatchFrame.of(batch, format));
+            metrics.sent(System.nanoTime() - startedAt);
+            metrics.batched(batch.size());
+        } catch (IOException | RuntimeException e) {
+            metrics.sendFailed();
+            log.error("Failed to send {} messages to {}", batch.size(), session.getId(), e);
+            evict(SEND_FAILED);
+        } finally {
+            sendStartedAt = IDLE;
+        }
+    }
+
+    private void close(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close session {}", session.getId(), e);
+        }
+    }
+
+    private enum Admission {ACCEPT, DROP, EVICT}
+}
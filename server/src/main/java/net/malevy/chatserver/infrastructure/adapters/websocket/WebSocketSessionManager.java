@@ -1,59 +1,326 @@
-package net.malevy.chatserver.infrastructure.adapters.websocket;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
-import org.springframework.stereotype.Component;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-
-@Slf4j
-@Component
-public class WebSocketSessionManager implements SessionManager {
-    
-    private final ObjectMapper mapper;
-    private final List<WebSocketSession> sessions = Collections.synchronizedList(new ArrayList<>());
-
-    public WebSocketSessionManager(ObjectMapper mapper) {
-
-        this.mapper = Objects.requireNonNull(mapper, "mapper cannot be null") ;
-    }
-
-    @Override
-    public void addSession(WebSocketSession session) {
-        Objects.requireNonNull(session, "session cannot be null");
-        if (sessions.contains(session)) return;
-        sessions.add(session);
-    }
-
-    @Override
-    public void removeSession(WebSocketSession session) {
-        Objects.requireNonNull(session, "session cannot be null");
-        sessions.remove(session);
-    }
-
-    @Override
-    public void broadcast(ChatMessage message) {
-        Objects.requireNonNull(message, "message cannot be null");
-        try {
-            TextMessage textMessage = new TextMessage(mapper.writeValueAsString(message));
-            for (WebSocketSession session : sessions) {
-                try {
-                    session.sendMessage(textMessage);
-                } catch (IOException e) {
-                    log.error("Failed to send message to {}", session.getId(), e);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Failed to serialize message", e);
-        }
-    }
-
-}
\ No newline at end of file
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class WebSocketSessionManager implements SessionManager {
+
+    static final String REPLAY_GAP = "Some messages sent while you were away could not be replayed and were missed";
+
+    private final ChatMessageCodec codec;
+    private final OutboundQueueSettings outboundSettings;
+    private final Executor writer;
+    private final ReplayBuffer replayBuffer;
+    private final MessageHistory history;
+    private final MessageIdGenerator messageIds;
+    private final OutboundMetrics outboundMetrics;
+    private final Timer broadcastTimer;
+    private final Counter encodeFailures;
+    private final Counter historyDropped;
+    // keyed by session id; iteration is weakly consistent, so fan-out never blocks joins or leaves
+    private final ConcurrentMap<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
+    // room -> members keyed by session id; a room is only present while it has local members
+    private final ConcurrentMap<String, Map<String, SessionOutbound>> rooms = new ConcurrentHashMap<>();
+    // username -> that user's sessions keyed by session id; a user is only present while connected here
+    private final ConcurrentMap<String, Map<String, SessionOutbound>> users = new ConcurrentHashMap<>();
+
+    public WebSocketSessionManager(
+            ChatMessageCodec codec,
+            OutboundQueueSettings outboundSettings,
+            @Qualifier("outboundWriterExecutor") Executor writer,
+            ReplayBuffer replayBuffer,
+            MessageHistory history,
+            MessageIdGenerator messageIds,
+            MeterRegistry meterRegistry) {
+
+        this.codec = Objects.requireNonNull(codec, "codec cannot be null") ;
+        this.outboundSettings = Objects.requireNonNull(outboundSettings, "outboundSettings cannot be null");
+        this.writer = Objects.requireNonNull(writer, "writer cannot be null");
+        this.replayBuffer = Objects.requireNonNull(replayBuffer, "replayBuffer cannot be null");
+        this.history = Objects.requireNonNull(history, "history cannot be null");
+        this.messageIds = Objects.requireNonNull(messageIds, "messageIds cannot be null");
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.outboundMetrics = new OutboundMetrics(meterRegistry);
+        this.broadcastTimer = Timer.builder("chat.broadcast")
+                .description("Time to hand one message to every recipient's outbound queue")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.encodeFailures = Counter.builder("chat.broadcast.encode.failures")
+                .description("Messages that could not be serialized for broadcast")
+                .register(meterRegistry);
+        this.historyDropped = Counter.builder("chat.history.dropped")
+                .description("Messages left out of the history because its writer had fallen behind")
+                .register(meterRegistry);
+        Gauge.builder("chat.sessions.live", sessions, Map::size)
+                .description("Open WebSocket sessions on this node")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addSession(WebSocketSession session) {
+        register(session, false);
+    }
+
+    @Override
+    public void addResumingSession(WebSocketSession session) {
+        register(session, true);
+    }
+
+    @Override
+    public int resume(WebSocketSession session, String lastMessageId) {
+        Objects.requireNonNull(session, "session cannot be null");
+        final SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return 0;
+
+        final long through = replayBuffer.lastSequence();
+        long after = through;
+        boolean gap = false;
+        if (lastMessageId != null) {
+            after = replayBuffer.find(lastMessageId);
+            if (after == ReplayBuffer.NOT_FOUND) {
+                // older than anything buffered, or never seen here: what we still have, behind a notice of the gap
+                log.info("{} not in the replay buffer; replaying the newest buffered messages to {}", lastMessageId, session.getId());
+                after = 0;
+                gap = true;
+            }
+        }
+        final Set<String> joined = outbound.rooms();
+        List<OutboundMessage> replay = replayBuffer.between(after, through, room -> room == null || joined.contains(room));
+        // more than the session's queue holds would only be dropped again, or get it evicted
+        final int room = Math.max(0, outboundSettings.capacity() - 1);
+        if (replay.size() > room) {
+            replay = replay.subList(replay.size() - room, replay.size());
+            gap = true;
+        }
+        final int replayed = replay.size();
+        final OutboundMessage notice = gap ? gapNotice() : null;
+        if (notice != null) {
+            final List<OutboundMessage> noticed = new ArrayList<>(replayed + 1);
+            noticed.add(notice);
+            noticed.addAll(replay);
+            replay = noticed;
+        }
+        outbound.resume(replay, through);
+        return replayed;
+    }
+
+    // null when it could not be encoded; the replay then goes without it
+    private OutboundMessage gapNotice() {
+        final EncodedChatMessage notice;
+        try {
+            notice = codec.encode(ChatMessage.createSystemMessage(REPLAY_GAP, messageIds));
+        } catch (Exception e) {
+            encodeFailures.increment();
+            log.error("Failed to serialize the replay gap notice", e);
+            return null;
+        }
+        return new OutboundMessage(notice.type(), new TextMessage(notice.payload()), OutboundMessage.UNSEQUENCED,
+                new BinaryFrame(notice.payload(), codec));
+    }
+
+    private void register(WebSocketSession session, boolean held) {
+        Objects.requireNonNull(session, "session cannot be null");
+        if (sessions.containsKey(session.getId())) return;
+        final SessionOutbound outbound = new SessionOutbound(session, outboundSettings, writer, outboundMetrics, held);
+        if (sessions.putIfAbsent(session.getId(), outbound) != null) return;
+
+        final String username = usernameOf(session);
+        if (username != null) addMember(users, username, session.getId(), outbound);
+    }
+
+    @Override
+    public Set<String> removeSession(WebSocketSession session) {
+        Objects.requireNonNull(session, "session cannot be null");
+        final SessionOutbound outbound = sessions.remove(session.getId());
+        if (outbound == null) return null;
+
+        final Set<String> joined = Set.copyOf(outbound.rooms());
+        for (String room : joined) {
+            removeMember(rooms, room, session.getId());
+        }
+        outbound.rooms().clear();
+        final String username = usernameOf(session);
+        if (username != null) removeMember(users, username, session.getId());
+        return joined;
+    }
+
+    @Override
+    public boolean joinRoom(WebSocketSession session, String room) {
+        Objects.requireNonNull(session, "session cannot be null");
+        Objects.requireNonNull(room, "room cannot be null");
+        final SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null || !outbound.rooms().add(room)) return false;
+
+        addMember(rooms, room, session.getId(), outbound);
+        if (sessions.get(session.getId()) != outbound) {
+            // lost a race with removeSession, which may already have swept this session's rooms
+            removeMember(rooms, room, session.getId());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean leaveRoom(WebSocketSession session, String room) {
+        Objects.requireNonNull(session, "session cannot be null");
+        Objects.requireNonNull(room, "room cannot be null");
+        final SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null || !outbound.rooms().remove(room)) return false;
+
+        removeMember(rooms, room, session.getId());
+        return true;
+    }
+
+    @Override
+    public boolean isMember(WebSocketSession session, String room) {
+        Objects.requireNonNull(session, "session cannot be null");
+        final SessionOutbound outbound = sessions.get(session.getId());
+        return outbound != null && room != null && outbound.rooms().contains(room);
+    }
+
+    @Override
+    public boolean hasMembers(String room) {
+        return room != null && rooms.containsKey(room);
+    }
+
+    @Override
+    public boolean isOnline(String username) {
+        return username != null && users.containsKey(username);
+    }
+
+    @Override
+    public void broadcast(ChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        final EncodedChatMessage encoded;
+        try {
+            encoded = codec.encode(message);
+        } catch (Exception e) {
+            encodeFailures.increment();
+            log.error("Failed to serialize message", e);
+            return;
+        }
+        broadcast(encoded);
+    }
+
+    @Override
+    public void broadcast(EncodedChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        final long startedAt = System.nanoTime();
+        // the payload is already JSON, so one frame is built from it and shared by every session
+        final TextMessage frame = new TextMessage(message.payload());
+        final BinaryFrame binary = new BinaryFrame(message.payload(), codec);
+        if (message.ephemeral()) {
+            // kept out of the replay buffer and history: a direct message has no room, so a resuming
+            // session of any user would be handed it, and presence is stale by the time anyone resumes
+            final Map<String, SessionOutbound> recipients = message.to() != null ? users.get(message.to()) : rooms.get(message.room());
+            if (recipients != null) {
+                final OutboundMessage outbound = new OutboundMessage(message.type(), frame, OutboundMessage.UNSEQUENCED, binary);
+                for (SessionOutbound session : recipients.values()) {
+                    session.offer(outbound);
+                }
+            }
+            broadcastTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return;
+        }
+        // buffered before the fan-out, so a session resuming concurrently gets it exactly once
+        final long sequence = replayBuffer.append(message.id(), message.room(), message.type(), frame, binary);
+        // every message passes through here once per node, local or from the cluster; the history appends it later
+        if (!history.offer(message)) {
+            historyDropped.increment();
+            log.warn("History is behind; message {} will not be kept", message.id());
+        }
+
+        final Map<String, SessionOutbound> recipients = message.room() == null ? sessions : rooms.get(message.room());
+        if (recipients != null) {
+            OutboundMessage outbound = new OutboundMessage(message.type(), frame, sequence, binary);
+            // offering only enqueues; the socket writes happen on the writer executor
+            for (SessionOutbound session : recipients.values()) {
+                session.offer(outbound);
+            }
+        }
+        broadcastTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void send(WebSocketSession session, ChatMessage message) {
+        Objects.requireNonNull(message, "message cannot be null");
+        final EncodedChatMessage encoded;
+        try {
+            encoded = codec.encode(message);
+        } catch (Exception e) {
+            encodeFailures.increment();
+            log.error("Failed to serialize message", e);
+            return;
+        }
+        send(session, encoded);
+    }
+
+    @Override
+    public void send(WebSocketSession session, EncodedChatMessage message) {
+        Objects.requireNonNull(session, "session cannot be null");
+        Objects.requireNonNull(message, "message cannot be null");
+        final SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return;
+        outbound.offer(new OutboundMessage(message.type(), new TextMessage(message.payload()), OutboundMessage.UNSEQUENCED,
+                new BinaryFrame(message.payload(), codec)));
+    }
+
+    // written by the session's writer, the only thread that may write to it, but outside its bounded data
+    // queue: a ping never evicts chat frames under drop-oldest and does not wait behind the backlog
+    boolean ping(WebSocketSession session) {
+        final SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return false;
+        outbound.ping();
+        return true;
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    private static String usernameOf(WebSocketSession session) {
+        return (String) session.getAttributes().get("username");
+    }
+
+    private static void addMember(ConcurrentMap<String, Map<String, SessionOutbound>> index, String key,
+                                  String sessionId, SessionOutbound outbound) {
+        index.compute(key, (name, members) -> {
+            final Map<String, SessionOutbound> updated = members == null ? new ConcurrentHashMap<>() : members;
+            updated.put(sessionId, outbound);
+            return updated;
+        });
+    }
+
+    private static void removeMember(ConcurrentMap<String, Map<String, SessionOutbound>> index, String key, String sessionId) {
+        index.computeIfPresent(key, (name, members) -> {
+            members.remove(sessionId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+}
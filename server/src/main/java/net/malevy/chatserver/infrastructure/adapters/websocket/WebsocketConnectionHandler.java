@@ -1,69 +1,186 @@
-package net.malevy.chatserver.infrastructure.adapters.websocket;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import net.malevy.chatserver.application.usecases.JoinChatUseCase;
-import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
-import net.malevy.chatserver.application.usecases.SendMessageUseCase;
-import net.malevy.chatserver.domain.entities.ChatMessage;
-import org.springframework.stereotype.Component;
-import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
-import org.springframework.web.util.UriComponentsBuilder;
-
-import java.net.URI;
-import java.util.Objects;
-
-@Slf4j
-@Component
-public class WebsocketConnectionHandler extends TextWebSocketHandler {
-
-    private final ObjectMapper mapper;
-    private final JoinChatUseCase joinChatUseCase;
-    private final LeaveChatUseCase leaveChatUseCase;
-    private final SendMessageUseCase sendMessageUseCase;
-
-    public WebsocketConnectionHandler(
-            ObjectMapper mapper,
-            JoinChatUseCase joinChatUseCase,
-            LeaveChatUseCase leaveChatUseCase,
-            SendMessageUseCase sendMessageUseCase
-    ) {
-        this.mapper = mapper;
-        this.joinChatUseCase = joinChatUseCase;
-        this.leaveChatUseCase = leaveChatUseCase;
-        this.sendMessageUseCase = sendMessageUseCase;
-    }
-
-    @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        super.afterConnectionEstablished(session);
-        String username = Objects.requireNonNullElse(getUsernameFromUri(session.getUri()), "{unknown}");
-        joinChatUseCase.run(session,  username);
-    }
-
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        super.afterConnectionClosed(session, status);
-        leaveChatUseCase.run(session);
-    }
-
-    @Override
-    public void handleTextMessage(WebSocketSession session, TextMessage receivedMessage) throws Exception {
-        super.handleTextMessage(session, receivedMessage);
-
-        log.info("received {} bytes from {}", receivedMessage.getPayloadLength(), session.getId());
-
-        final ChatMessage received = mapper.readValue(receivedMessage.getPayload(), ChatMessage.class);
-        sendMessageUseCase.run(session,  received);
-    }
-
-    public static String getUsernameFromUri(URI uri) {
-        Objects.requireNonNull(uri, "must provide a valid URI");
-        final var components = UriComponentsBuilder.fromUri(uri).build();
-        if (!components.getQueryParams().containsKey("username")) return null;
-        return components.getQueryParams().get("username").getFirst();
-    }
-}
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import net.malevy.chatserver.application.usecases.FetchHistoryUseCase;
+import net.malevy.chatserver.application.usecases.JoinChatUseCase;
+import net.malevy.chatserver.application.usecases.JoinRoomUseCase;
+import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
+import net.malevy.chatserver.application.usecases.LeaveRoomUseCase;
+import net.malevy.chatserver.application.usecases.SendDirectMessageUseCase;
+import net.malevy.chatserver.application.usecases.SendMessageUseCase;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.infrastructure.codec.InboundMessageReader;
+import net.malevy.chatserver.infrastructure.codec.RejectedMessageException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+@Slf4j
+@Component
+public class WebsocketConnectionHandler extends AbstractWebSocketHandler {
+
+    static final CloseStatus RESERVED_TYPE = CloseStatus.POLICY_VIOLATION.withReason("reserved message type");
+
+    private final InboundMessageReader reader;
+    private final JoinChatUseCase joinChatUseCase;
+    private final LeaveChatUseCase leaveChatUseCase;
+    private final SendMessageUseCase sendMessageUseCase;
+    private final SendDirectMessageUseCase sendDirectMessageUseCase;
+    private final JoinRoomUseCase joinRoomUseCase;
+    private final LeaveRoomUseCase leaveRoomUseCase;
+    private final FetchHistoryUseCase fetchHistoryUseCase;
+    private final IdleSessionReaper idleSessions;
+    private final InboundRateLimiter rateLimiter;
+
+    public WebsocketConnectionHandler(
+            InboundMessageReader reader,
+            JoinChatUseCase joinChatUseCase,
+            LeaveChatUseCase leaveChatUseCase,
+            SendMessageUseCase sendMessageUseCase,
+            SendDirectMessageUseCase sendDirectMessageUseCase,
+            JoinRoomUseCase joinRoomUseCase,
+            LeaveRoomUseCase leaveRoomUseCase,
+            FetchHistoryUseCase fetchHistoryUseCase,
+            IdleSessionReaper idleSessions,
+            InboundRateLimiter rateLimiter
+    ) {
+        this.reader = reader;
+        this.joinChatUseCase = joinChatUseCase;
+        this.leaveChatUseCase = leaveChatUseCase;
+        this.sendMessageUseCase = sendMessageUseCase;
+        this.sendDirectMessageUseCase = sendDirectMessageUseCase;
+        this.joinRoomUseCase = joinRoomUseCase;
+        this.leaveRoomUseCase = leaveRoomUseCase;
+        this.fetchHistoryUseCase = fetchHistoryUseCase;
+        this.idleSessions = idleSessions;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        super.afterConnectionEstablished(session);
+        final String requestedUsername = getUsernameFromUri(session.getUri());
+        String username = Objects.requireNonNullElse(requestedUsername, "{unknown}");
+        // before the session can send anything; anonymous sessions do not share one user's allowance
+        rateLimiter.open(session, requestedUsername);
+        joinChatUseCase.run(session,  username, getRoomsFromUri(session.getUri()), getLastMessageIdFromUri(session.getUri()));
+        idleSessions.track(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        super.afterConnectionClosed(session, status);
+        idleSessions.untrack(session);
+        leaveChatUseCase.run(session);
+        rateLimiter.close(session);
+    }
+
+    // every frame from the client, pongs included, shows the connection is alive
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        idleSessions.touch(session);
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage receivedMessage) throws Exception {
+        super.handleTextMessage(session, receivedMessage);
+
+        log.debug("received {} bytes from {}", receivedMessage.getPayloadLength(), session.getId());
+
+        final ChatMessage received;
+        try {
+            received = reader.readJson(receivedMessage.getPayload());
+        } catch (RejectedMessageException e) {
+            reject(session, e);
+            return;
+        }
+        dispatch(session, received);
+    }
+
+    // frames from clients that negotiated WireFormat.CBOR; they go to the same use cases as text frames
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage receivedMessage) throws Exception {
+        super.handleBinaryMessage(session, receivedMessage);
+
+        log.debug("received {} bytes from {}", receivedMessage.getPayloadLength(), session.getId());
+
+        final ChatMessage received;
+        try {
+            received = reader.readCbor(receivedMessage.getPayload());
+        } catch (RejectedMessageException e) {
+            reject(session, e);
+            return;
+        }
+        dispatch(session, received);
+    }
+
+    // a client sending what it should not is closed rather than answered, so it cannot keep the parser busy
+    private static void reject(WebSocketSession session, RejectedMessageException e) throws IOException {
+        log.warn("Closing session {}: {}", session.getId(), e.getMessage());
+        session.close(e.oversized() ? CloseStatus.TOO_BIG_TO_PROCESS : CloseStatus.BAD_DATA);
+    }
+
+    private void dispatch(WebSocketSession session, ChatMessage received) throws IOException {
+        // only the server sends these; a client's would be fanned out as if the server had
+        if (isReserved(received.getType())) {
+            log.warn("Closing session {}: it sent a {} message", session.getId(), received.getType());
+            session.close(RESERVED_TYPE);
+            return;
+        }
+        if (!rateLimiter.admit(session, received.getType())) return;
+        switch (Objects.requireNonNullElse(received.getType(), "message")) {
+            case "join" -> joinRoomUseCase.run(session, roomOf(received));
+            case "leave" -> leaveRoomUseCase.run(session, roomOf(received));
+            case "direct" -> sendDirectMessageUseCase.run(session, received);
+            case "history" -> fetchHistoryUseCase.run(session, roomOf(received), received.getTimestamp());
+            default -> sendMessageUseCase.run(session,  received);
+        }
+    }
+
+    private static boolean isReserved(String type) {
+        return "system".equals(type) || EncodedChatMessage.PRESENCE.equals(type);
+    }
+
+    private static String roomOf(ChatMessage message) {
+        return StringUtils.hasText(message.getRoom()) ? message.getRoom() : ChatMessage.DEFAULT_ROOM;
+    }
+
+    public static String getUsernameFromUri(URI uri) {
+        Objects.requireNonNull(uri, "must provide a valid URI");
+        final var components = UriComponentsBuilder.fromUri(uri).build();
+        if (!components.getQueryParams().containsKey("username")) return null;
+        return components.getQueryParams().get("username").getFirst();
+    }
+
+    public static String getLastMessageIdFromUri(URI uri) {
+        Objects.requireNonNull(uri, "must provide a valid URI");
+        final String lastMessageId = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("lastMessageId");
+        return StringUtils.hasText(lastMessageId) ? lastMessageId : null;
+    }
+
+    public static Set<String> getRoomsFromUri(URI uri) {
+        Objects.requireNonNull(uri, "must provide a valid URI");
+        final List<String> rooms = UriComponentsBuilder.fromUri(uri).build().getQueryParams().get("room");
+        if (rooms == null) return Set.of();
+        final Set<String> distinct = new LinkedHashSet<>();
+        for (String room : rooms) {
+            if (StringUtils.hasText(room)) distinct.add(room);
+        }
+        return distinct;
+    }
+}
@@ -0,0 +1,54 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+
+// How frames sent to a session are encoded, agreed during the handshake through Sec-WebSocket-Protocol.
+// A client that asks for no subprotocol, or for one we do not know, gets JSON. The .batch variants
+// send every frame as an array of one or more messages (see OutboundQueueSettings.batchSize); what
+// the client sends is unchanged.
+public enum WireFormat {
+    JSON("chat.json", false, false),
+    CBOR("chat.cbor", true, false),
+    JSON_BATCH("chat.json.batch", false, true),
+    CBOR_BATCH("chat.cbor.batch", true, true);
+
+    private final String subprotocol;
+    private final boolean binary;
+    private final boolean batched;
+
+    WireFormat(String subprotocol, boolean binary, boolean batched) {
+        this.subprotocol = subprotocol;
+        this.binary = binary;
+        this.batched = batched;
+    }
+
+    public String subprotocol() {
+        return subprotocol;
+    }
+
+    boolean binary() {
+        return binary;
+    }
+
+    boolean batched() {
+        return batched;
+    }
+
+    // the batched variants are only offered while batching is turned on
+    public static String[] subprotocols(boolean batching) {
+        return Arrays.stream(values())
+                .filter(format -> batching || !format.batched)
+                .map(WireFormat::subprotocol)
+                .toArray(String[]::new);
+    }
+
+    static WireFormat of(WebSocketSession session) {
+        final String accepted = session.getAcceptedProtocol();
+        for (WireFormat format : values()) {
+            if (format.subprotocol.equals(accepted)) return format;
+        }
+        return JSON;
+    }
+}
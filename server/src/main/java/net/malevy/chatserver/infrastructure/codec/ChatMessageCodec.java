@@ -0,0 +1,94 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+@Component
+public class ChatMessageCodec {
+
+    private final ObjectMapper mapper;
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    public ChatMessageCodec(ObjectMapper mapper) {
+        this.mapper = Objects.requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    public EncodedChatMessage encode(ChatMessage message) throws IOException {
+        Objects.requireNonNull(message, "message cannot be null");
+        return new EncodedChatMessage(message.getId(), message.getType(), message.getRoom(), message.getNodeId(),
+                message.getHlc() == null ? 0 : message.getHlc(), message.getTo(), mapper.writeValueAsBytes(message));
+    }
+
+    public ChatMessage decode(EncodedChatMessage message) throws IOException {
+        Objects.requireNonNull(message, "message cannot be null");
+        return mapper.readValue(message.payload(), ChatMessage.class);
+    }
+
+    // Reads only the routing fields of an already-encoded message. The payload is validated as
+    // JSON but no other field values are materialized, and the bytes are passed along untouched.
+    public EncodedChatMessage wrap(byte[] payload) throws IOException {
+        Objects.requireNonNull(payload, "payload cannot be null");
+        String id = null;
+        String type = null;
+        String room = null;
+        String nodeId = null;
+        long hlc = 0;
+        String to = null;
+
+        try (JsonParser parser = mapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id" -> id = textOrNull(parser, value);
+                    case "type" -> type = textOrNull(parser, value);
+                    case "room" -> room = textOrNull(parser, value);
+                    case "nodeId" -> nodeId = textOrNull(parser, value);
+                    case "hlc" -> hlc = longOrZero(parser, value);
+                    case "to" -> to = textOrNull(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new IOException("malformed message payload");
+            }
+        }
+        return new EncodedChatMessage(id, type, room, nodeId, hlc, to, payload);
+    }
+
+    // Copies an encoded JSON payload token by token into CBOR, so binary sessions get the same
+    // fields and values without the message being decoded into a ChatMessage first.
+    public byte[] toCbor(byte[] payload) throws IOException {
+        Objects.requireNonNull(payload, "payload cannot be null");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length);
+        try (JsonParser parser = mapper.getFactory().createParser(payload);
+             JsonGenerator generator = cborFactory.createGenerator(out)) {
+            if (parser.nextToken() == null) throw new IOException("empty message payload");
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    private static long longOrZero(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) return parser.getLongValue();
+        parser.skipChildren();
+        return 0;
+    }
+
+    private static String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+}
@@ -0,0 +1,140 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * The fixed-layout header a node puts in front of every message it sends to the cluster, so that a
+ * receiver can drop its own echoes and messages for rooms it has no members in by reading a few
+ * bytes, and only decodes the body of messages it will deliver. All numbers are big-endian:
+ *
+ *   0  magic 0xCE        1  version        2  flags        3  reserved
+ *   4  origin node short id (int)
+ *   8  hybrid clock timestamp (long)
+ *  16  room length in bytes (unsigned short; 0xFFFF for no room), then the room in UTF-8
+ *      if FLAG_DEFLATE: the body's inflated length (int)
+ *      the body: the message's JSON, deflated when FLAG_DEFLATE is set
+ *
+ * A JSON body starts with '{', never 0xCE, so payloads from nodes that predate the envelope are
+ * still told apart and read as plain JSON.
+ */
+public final class ClusterEnvelope {
+
+    static final byte MAGIC = (byte) 0xCE;
+    static final byte VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+    private static final int FIXED_LENGTH = 18;
+    private static final int NO_ROOM = 0xFFFF;
+    // far above any message a client may send; the declared length comes off the wire, so it is not trusted further
+    static final int MAX_INFLATED_LENGTH = 1 << 20;
+
+    // Deflater and Inflater hold native buffers; one per thread saves allocating them per message
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int compressAbove;
+
+    // bodies of at least compressAbove bytes are deflated; 0 never compresses
+    public ClusterEnvelope(int compressAbove) {
+        if (compressAbove < 0) throw new IllegalArgumentException("compressAbove cannot be negative");
+        this.compressAbove = compressAbove;
+    }
+
+    public byte[] seal(int origin, long hlc, String room, byte[] body) {
+        final byte[] roomBytes = room == null ? new byte[0] : room.getBytes(StandardCharsets.UTF_8);
+        if (roomBytes.length >= NO_ROOM) throw new IllegalArgumentException("room name too long for the envelope");
+        // a receiver refuses to inflate past the cap, so a body that large goes out as it is
+        final boolean compress = compressAbove > 0 && body.length >= compressAbove && body.length <= MAX_INFLATED_LENGTH;
+        final byte[] content = compress ? deflate(body) : body;
+        final ByteBuffer frame = ByteBuffer.allocate(FIXED_LENGTH + roomBytes.length + (compress ? 4 : 0) + content.length);
+        frame.put(MAGIC).put(VERSION).put((byte) (compress ? FLAG_DEFLATE : 0)).put((byte) 0);
+        frame.putInt(origin);
+        frame.putLong(hlc);
+        frame.putShort((short) (room == null ? NO_ROOM : roomBytes.length)).put(roomBytes);
+        if (compress) frame.putInt(body.length);
+        return frame.put(content).array();
+    }
+
+    // false for a bare JSON payload from a node that does not send envelopes
+    public static boolean isSealed(byte[] frame) {
+        return frame.length > 0 && frame[0] == MAGIC;
+    }
+
+    public static Header header(byte[] frame) {
+        if (!isSealed(frame)) throw new IllegalArgumentException("not a cluster envelope");
+        if (frame.length < FIXED_LENGTH) throw new IllegalArgumentException("truncated cluster envelope");
+        if (frame[1] != VERSION) throw new IllegalArgumentException("unsupported cluster envelope version " + frame[1]);
+        final ByteBuffer buffer = ByteBuffer.wrap(frame);
+        final int flags = frame[2];
+        final int origin = buffer.getInt(4);
+        final long hlc = buffer.getLong(8);
+        final int roomLength = Short.toUnsignedInt(buffer.getShort(16));
+        final boolean hasRoom = roomLength != NO_ROOM;
+        int bodyOffset = FIXED_LENGTH + (hasRoom ? roomLength : 0);
+        if (bodyOffset > frame.length) throw new IllegalArgumentException("truncated cluster envelope");
+        final String room = hasRoom ? new String(frame, FIXED_LENGTH, roomLength, StandardCharsets.UTF_8) : null;
+        final boolean deflated = (flags & FLAG_DEFLATE) != 0;
+        int inflatedLength = -1;
+        if (deflated) {
+            if (bodyOffset + 4 > frame.length) throw new IllegalArgumentException("truncated cluster envelope");
+            inflatedLength = buffer.getInt(bodyOffset);
+            if (inflatedLength < 0 || inflatedLength > MAX_INFLATED_LENGTH) {
+                throw new IllegalArgumentException("corrupt cluster envelope length " + inflatedLength);
+            }
+            bodyOffset += 4;
+        }
+        return new Header(origin, hlc, room, bodyOffset, inflatedLength);
+    }
+
+    public static byte[] body(byte[] frame, Header header) {
+        if (header.inflatedLength() < 0) return Arrays.copyOfRange(frame, header.bodyOffset(), frame.length);
+        if (header.inflatedLength() > MAX_INFLATED_LENGTH) throw new IllegalArgumentException("cluster envelope body too large");
+        final Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(frame, header.bodyOffset(), frame.length - header.bodyOffset());
+            final byte[] body = new byte[header.inflatedLength()];
+            int length = 0;
+            while (length < body.length && !inflater.finished()) {
+                final int read = inflater.inflate(body, length, body.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += read;
+            }
+            if (length != body.length) throw new IllegalArgumentException("cluster envelope body is shorter than declared");
+            return body;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("cluster envelope body is not valid deflate data", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    // the body of an enveloped frame, or the frame itself when it is bare JSON
+    public static byte[] open(byte[] frame) {
+        return isSealed(frame) ? body(frame, header(frame)) : frame;
+    }
+
+    private static byte[] deflate(byte[] body) {
+        final Deflater deflater = DEFLATERS.get();
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+            final byte[] chunk = new byte[Math.max(64, body.length)];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    // inflatedLength is -1 when the body is stored as it is
+    public record Header(int origin, long hlc, String room, int bodyOffset, int inflatedLength) {
+    }
+}
@@ -0,0 +1,23 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+/*
+ * Bounds on what a client may send. maxFrameSize is in bytes for binary frames and characters for
+ * text ones; maxMessageLength bounds the message text and maxFieldLength every other string field.
+ * The history log keeps a room's and a type's length in a short, so no field may take more than
+ * Short.MAX_VALUE bytes of UTF-8, and a char takes at most three of them.
+ */
+public record InboundMessageLimits(
+        int maxFrameSize,
+        int maxMessageLength,
+        int maxFieldLength) {
+
+    public static final int MAX_FIELD_LENGTH = Short.MAX_VALUE / 3;
+
+    public InboundMessageLimits {
+        if (maxFrameSize < 256) throw new IllegalArgumentException("maxFrameSize must be at least 256");
+        if (maxMessageLength < 1) throw new IllegalArgumentException("maxMessageLength must be at least 1");
+        if (maxFieldLength < 32) throw new IllegalArgumentException("maxFieldLength must be at least 32");
+        if (maxFieldLength > MAX_FIELD_LENGTH) throw new IllegalArgumentException("maxFieldLength must be at most " + MAX_FIELD_LENGTH);
+        if (maxMessageLength >= maxFrameSize) throw new IllegalArgumentException("maxMessageLength must be less than maxFrameSize");
+    }
+}
@@ -0,0 +1,140 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.core.exc.StreamConstraintsException;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Objects;
+
+/*
+ * Reads what clients send, JSON or CBOR, a token at a time into a ChatMessage, instead of binding it
+ * with the ObjectMapper. A frame over the size limit is refused before a parser exists; otherwise
+ * every string is measured in the parser's recycled buffer and only becomes a String once it is known
+ * to be within its field's limit. Fields the server sets itself are skipped without being decoded, and
+ * anything else - an unknown field, a nested value, a number where text belongs - rejects the frame at
+ * that token, so nothing after it is read.
+ */
+public class InboundMessageReader {
+
+    private final InboundMessageLimits limits;
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory;
+
+    public InboundMessageReader(InboundMessageLimits limits) {
+        this.limits = Objects.requireNonNull(limits, "limits cannot be null");
+        // the parser's own backstop: a message is one flat object no bigger than a frame
+        final StreamReadConstraints constraints = StreamReadConstraints.builder()
+                .maxDocumentLength(limits.maxFrameSize())
+                .maxStringLength(Math.max(limits.maxMessageLength(), limits.maxFieldLength()))
+                .maxNameLength(64)
+                .maxNestingDepth(1)
+                .maxNumberLength(32)
+                .build();
+        this.jsonFactory = JsonFactory.builder().streamReadConstraints(constraints).build();
+        this.cborFactory = CBORFactory.builder().streamReadConstraints(constraints).build();
+    }
+
+    public ChatMessage readJson(String payload) throws RejectedMessageException {
+        Objects.requireNonNull(payload, "payload cannot be null");
+        if (payload.length() > limits.maxFrameSize()) {
+            throw new RejectedMessageException("frame of " + payload.length() + " characters is over the limit", true);
+        }
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            return read(parser);
+        } catch (RejectedMessageException e) {
+            throw e;
+        } catch (StreamConstraintsException e) {
+            throw new RejectedMessageException(e.getOriginalMessage(), e, true);
+        } catch (IOException e) {
+            throw new RejectedMessageException("malformed message: " + e.getMessage(), e, false);
+        }
+    }
+
+    public ChatMessage readCbor(ByteBuffer payload) throws RejectedMessageException {
+        Objects.requireNonNull(payload, "payload cannot be null");
+        if (payload.remaining() > limits.maxFrameSize()) {
+            throw new RejectedMessageException("frame of " + payload.remaining() + " bytes is over the limit", true);
+        }
+        try (JsonParser parser = payload.hasArray()
+                ? cborFactory.createParser(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining())
+                : cborFactory.createParser(new ByteBufferBackedInputStream(payload.duplicate()))) {
+            return read(parser);
+        } catch (RejectedMessageException e) {
+            throw e;
+        } catch (StreamConstraintsException e) {
+            throw new RejectedMessageException(e.getOriginalMessage(), e, true);
+        } catch (IOException e) {
+            throw new RejectedMessageException("malformed message: " + e.getMessage(), e, false);
+        }
+    }
+
+    private ChatMessage read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RejectedMessageException("expected an object", false);
+        }
+        final ChatMessage message = new ChatMessage();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            // names are canonicalized by the parser, so a known one costs no allocation
+            final String field = parser.currentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type" -> message.setType(text(parser, value, field, limits.maxFieldLength()));
+                case "message" -> message.setMessage(text(parser, value, field, limits.maxMessageLength()));
+                case "room" -> message.setRoom(text(parser, value, field, limits.maxFieldLength()));
+                case "to" -> message.setTo(text(parser, value, field, limits.maxFieldLength()));
+                case "id" -> message.setId(text(parser, value, field, limits.maxFieldLength()));
+                case "username" -> message.setUsername(text(parser, value, field, limits.maxFieldLength()));
+                case "timestamp" -> message.setTimestamp(instant(parser, value));
+                // set by the server whatever the client says, so never decoded
+                case "nodeId", "hlc" -> scalar(value, field);
+                default -> throw new RejectedMessageException("unknown field " + field, false);
+            }
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+            throw new RejectedMessageException("malformed message", false);
+        }
+        return message;
+    }
+
+    private static String text(JsonParser parser, JsonToken value, String field, int maxLength) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        if (value != JsonToken.VALUE_STRING) throw new RejectedMessageException(field + " must be a string", false);
+        if (parser.getTextLength() > maxLength) {
+            throw new RejectedMessageException(field + " is longer than " + maxLength + " characters", true);
+        }
+        return parser.getText();
+    }
+
+    // as the JavaTimeModule reads an Instant: ISO-8601 text, or seconds since the epoch
+    private Instant instant(JsonParser parser, JsonToken value) throws IOException {
+        try {
+            return switch (value) {
+                case VALUE_NULL -> null;
+                case VALUE_STRING -> Instant.parse(text(parser, value, "timestamp", limits.maxFieldLength()));
+                case VALUE_NUMBER_INT -> Instant.ofEpochSecond(parser.getLongValue());
+                case VALUE_NUMBER_FLOAT -> {
+                    final BigDecimal seconds = parser.getDecimalValue();
+                    final long whole = seconds.longValue();
+                    yield Instant.ofEpochSecond(whole, seconds.subtract(BigDecimal.valueOf(whole)).movePointRight(9).intValue());
+                }
+                default -> throw new RejectedMessageException("timestamp must be text or a number", false);
+            };
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new RejectedMessageException("timestamp is not an instant", e, false);
+        }
+    }
+
+    private static void scalar(JsonToken value, String field) throws RejectedMessageException {
+        if (!value.isScalarValue()) throw new RejectedMessageException(field + " must be a single value", false);
+    }
+}
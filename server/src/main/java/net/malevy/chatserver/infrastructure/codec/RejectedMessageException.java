@@ -0,0 +1,23 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import java.io.IOException;
+
+// an inbound frame that is not a message the server accepts; oversized when it broke a size limit
+public class RejectedMessageException extends IOException {
+
+    private final boolean oversized;
+
+    public RejectedMessageException(String message, boolean oversized) {
+        super(message);
+        this.oversized = oversized;
+    }
+
+    public RejectedMessageException(String message, Throwable cause, boolean oversized) {
+        super(message, cause);
+        this.oversized = oversized;
+    }
+
+    public boolean oversized() {
+        return oversized;
+    }
+}
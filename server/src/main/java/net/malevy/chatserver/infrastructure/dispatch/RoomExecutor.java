@@ -0,0 +1,22 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+// Runs work for a room; tasks for the same room run one at a time, in the order they were submitted.
+@FunctionalInterface
+public interface RoomExecutor {
+
+    // runs the task on the calling thread, which keeps per-room order only if callers already do
+    RoomExecutor INLINE = (room, task) -> {
+        task.run();
+        return true;
+    };
+
+    // false when the task was not accepted and will never run
+    boolean execute(String room, Runnable task);
+
+    // what a message is ordered under: its room, or for a direct message its recipient, so direct
+    // messages spread across shards and each recipient is capped like a room
+    static String keyOf(String room, String to) {
+        if (room != null || to == null) return room;
+        return "@" + to;
+    }
+}
@@ -0,0 +1,207 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Hashes each room to one of a fixed number of shards. A shard is one platform thread draining a
+ * lock-free queue that any thread may add to, so everything done for a room - local echoes and
+ * messages from the cluster alike - happens in submission order without the work itself taking a
+ * lock. Rooms on different shards run in parallel, so throughput grows with the shard count up to
+ * the number of cores.
+ *
+ * Each shard's queue is bounded, and so is each room's share of it: a room with roomCapacity tasks
+ * waiting gets its next ones rejected, so one hot room cannot fill its shard and starve the rooms
+ * hashed alongside it. Tasks without a room are only bounded by their shard. A room's count is an
+ * AtomicInteger found with one map read and carried on its task, so submitting and running take no
+ * lock; the map is only written when a room first shows up and when an idle shard retires the counts
+ * of rooms with nothing waiting.
+ */
+@Slf4j
+public class ShardedRoomExecutor implements RoomExecutor {
+
+    // tasks without a room share a shard like any other room
+    private static final String NO_ROOM = "";
+    // a count the shard is taking out of its map; producers that find it fetch a fresh one
+    private static final int RETIRED = -1;
+    private static final long RETIRE_EVERY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Shard[] shards;
+    private final int queueCapacity;
+    private final int roomCapacity;
+    private final Counter shardRejected;
+    private final Counter roomRejected;
+
+    public ShardedRoomExecutor(int shards, int queueCapacity, int roomCapacity, MeterRegistry meterRegistry) {
+        if (shards < 1) throw new IllegalArgumentException("shards must be at least 1");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1");
+        if (roomCapacity < 1 || roomCapacity > queueCapacity) {
+            throw new IllegalArgumentException("roomCapacity must be between 1 and queueCapacity");
+        }
+        Objects.requireNonNull(meterRegistry, "meterRegistry cannot be null");
+        this.queueCapacity = queueCapacity;
+        this.roomCapacity = roomCapacity;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, meterRegistry);
+        }
+        this.shardRejected = Counter.builder("chat.dispatch.rejected")
+                .description("Room tasks dropped because their shard's queue, or their room's share of it, was full")
+                .tag("limit", "shard")
+                .register(meterRegistry);
+        this.roomRejected = Counter.builder("chat.dispatch.rejected")
+                .description("Room tasks dropped because their shard's queue, or their room's share of it, was full")
+                .tag("limit", "room")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Shard shard : shards) {
+            shard.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            if (shard.thread != null) shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    @Override
+    public boolean execute(String room, Runnable task) {
+        Objects.requireNonNull(task, "task cannot be null");
+        final Shard shard = shards[shardOf(room)];
+        if (shard.depth.incrementAndGet() > queueCapacity) {
+            shard.depth.decrementAndGet();
+            shardRejected.increment();
+            return false;
+        }
+        AtomicInteger waiting = null;
+        if (room != null && (waiting = admit(shard, room)) == null) {
+            shard.depth.decrementAndGet();
+            roomRejected.increment();
+            return false;
+        }
+        shard.queue.offer(new Task(waiting, task));
+        if (shard.waiting) LockSupport.unpark(shard.thread);
+        return true;
+    }
+
+    // the room's count, taken one further, or null when the room already has roomCapacity tasks waiting
+    private AtomicInteger admit(Shard shard, String room) {
+        while (true) {
+            AtomicInteger waiting = shard.rooms.get(room);
+            if (waiting == null) waiting = shard.rooms.computeIfAbsent(room, key -> new AtomicInteger());
+            int tasks;
+            do {
+                tasks = waiting.get();
+                if (tasks == RETIRED) break;
+                if (tasks >= roomCapacity) return null;
+            } while (!waiting.compareAndSet(tasks, tasks + 1));
+            if (tasks != RETIRED) return waiting;
+            // the shard is retiring it; help it out of the map and start over
+            shard.rooms.remove(room, waiting);
+        }
+    }
+
+    int shardOf(String room) {
+        final int hash = (room == null ? NO_ROOM : room).hashCode();
+        // spread the high bits down, as HashMap does, so similar room names still land apart
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    int shards() {
+        return shards.length;
+    }
+
+    // waiting is the room's count of waiting tasks, null for a task without a room
+    private record Task(AtomicInteger waiting, Runnable runnable) {
+    }
+
+    private static final class Shard {
+        private final int index;
+        private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+        // tasks waiting per room, for the rooms seen since the shard last retired idle ones
+        private final Map<String, AtomicInteger> rooms = new ConcurrentHashMap<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final Counter executed;
+        private volatile boolean running = true;
+        private volatile boolean waiting;
+        private volatile Thread thread;
+        // only touched by the shard's thread
+        private long retiredAt = System.nanoTime();
+
+        Shard(int index, MeterRegistry meterRegistry) {
+            this.index = index;
+            final String tag = Integer.toString(index);
+            this.executed = Counter.builder("chat.dispatch.executed")
+                    .description("Room tasks run, per shard; uneven counts mean hot rooms share a shard")
+                    .tag("shard", tag)
+                    .register(meterRegistry);
+            Gauge.builder("chat.dispatch.queue.depth", depth, AtomicInteger::get)
+                    .description("Room tasks waiting, per shard")
+                    .tag("shard", tag)
+                    .register(meterRegistry);
+        }
+
+        void start() {
+            thread = Thread.ofPlatform().name("room-shard-" + index).daemon().start(this::run);
+        }
+
+        private void run() {
+            // whatever was accepted before stop() still runs
+            while (running || !queue.isEmpty()) {
+                final Task task = queue.poll();
+                if (task == null) {
+                    park();
+                    continue;
+                }
+                depth.decrementAndGet();
+                if (task.waiting != null) task.waiting.decrementAndGet();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    log.error("Room task failed on shard {}", index, e);
+                }
+                executed.increment();
+            }
+        }
+
+        // producers check waiting after adding, and the queue is checked again after setting it, so no wakeup is lost
+        private void park() {
+            retireIdleRooms();
+            waiting = true;
+            if (running && queue.isEmpty()) LockSupport.park(this);
+            waiting = false;
+        }
+
+        // at most once a second, and only while idle, so rooms that come and go do not churn the map
+        private void retireIdleRooms() {
+            final long now = System.nanoTime();
+            if (now - retiredAt < RETIRE_EVERY_NANOS || rooms.isEmpty()) return;
+            retiredAt = now;
+            for (Map.Entry<String, AtomicInteger> room : rooms.entrySet()) {
+                if (room.getValue().compareAndSet(0, RETIRED)) rooms.remove(room.getKey(), room.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/*
+ * A hashed timing wheel: deadlines are rounded to a tick and hashed into one of a fixed number of
+ * slots, so scheduling is an append and each tick only looks at the one slot it lands on, however
+ * many timeouts are pending. A deadline further out than one turn of the wheel sits in its slot until
+ * the turn it is due. Any thread may schedule; only the thread calling advance() touches the slots,
+ * so they need no locking. There is no cancel: owners check on expiry whether the timeout still holds,
+ * which keeps every reschedule and cancel O(1) as well.
+ */
+public final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<T>>> slots;
+    private final Queue<Timeout<T>> inbox = new ConcurrentLinkedQueue<>();
+    // the next tick advance() will process
+    private long nextTick;
+
+    private record Timeout<T>(T item, long tick) {
+    }
+
+    public TimingWheel(long tickMillis, int slots, long startMillis) {
+        if (tickMillis < 1) throw new IllegalArgumentException("tickMillis must be at least 1");
+        if (slots < 1 || Integer.bitCount(slots) != 1) throw new IllegalArgumentException("slots must be a power of two");
+        this.tickMillis = tickMillis;
+        this.mask = slots - 1;
+        this.slots = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            this.slots.add(new ArrayList<>());
+        }
+        this.nextTick = startMillis / tickMillis;
+    }
+
+    // item expires on the first advance() at or after the tick its deadline falls in
+    public void schedule(T item, long deadlineMillis) {
+        Objects.requireNonNull(item, "item cannot be null");
+        inbox.add(new Timeout<>(item, Math.ceilDiv(deadlineMillis, tickMillis)));
+    }
+
+    // hands every item whose deadline is at or before nowMillis to expired, overdue ones first
+    public void advance(long nowMillis, Consumer<T> expired) {
+        final long through = nowMillis / tickMillis;
+        final List<Timeout<T>> overdue = new ArrayList<>();
+        for (Timeout<T> timeout; (timeout = inbox.poll()) != null; ) {
+            // its tick has already been processed, so no slot will come round for it in time
+            if (timeout.tick() < nextTick) overdue.add(timeout);
+            else slots.get((int) (timeout.tick() & mask)).add(timeout);
+        }
+        for (Timeout<T> timeout : overdue) {
+            expired.accept(timeout.item());
+        }
+        // past a full turn every slot has been visited once; the rest are due in this pass
+        final long from = Math.max(nextTick, through - mask);
+        for (long tick = from; tick <= through; tick++) {
+            final List<Timeout<T>> slot = slots.get((int) (tick & mask));
+            if (slot.isEmpty()) continue;
+            final List<Timeout<T>> due = new ArrayList<>();
+            slot.removeIf(timeout -> timeout.tick() <= through && due.add(timeout));
+            for (Timeout<T> timeout : due) {
+                expired.accept(timeout.item());
+            }
+        }
+        nextTick = Math.max(nextTick, through + 1);
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+}
@@ -0,0 +1,56 @@
+package net.malevy.chatserver.infrastructure.ids;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * Crockford's base32 for 64-bit values, always 13 characters with the most significant first, so the
+ * strings sort the same way as the unsigned numbers they encode. Decoding is case-insensitive and
+ * reads I and L as 1 and O as 0, as the alphabet's spec asks.
+ */
+public final class Crockford32 {
+
+    public static final int LENGTH = 13;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = (byte) i;
+            VALUES[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+        VALUES['I'] = VALUES['i'] = VALUES['L'] = VALUES['l'] = 1;
+        VALUES['O'] = VALUES['o'] = 0;
+    }
+
+    private Crockford32() {
+    }
+
+    public static String encode(long value) {
+        final char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    public static long decode(CharSequence text) {
+        Objects.requireNonNull(text, "text cannot be null");
+        if (text.length() != LENGTH) throw new IllegalArgumentException("expected " + LENGTH + " characters: " + text);
+        long value = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            final int digit = digit(text.charAt(i));
+            // 13 digits hold 65 bits, so the first may only use the low four
+            if (digit < 0 || (i == 0 && digit > 15)) throw new IllegalArgumentException("not a base32 id: " + text);
+            value = value << 5 | digit;
+        }
+        return value;
+    }
+
+    private static int digit(char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+}
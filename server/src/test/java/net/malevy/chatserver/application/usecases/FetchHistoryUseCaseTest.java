@@ -0,0 +1,180 @@
+package net.malevy.chatserver.application.usecases;
+
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FetchHistoryUseCaseTest {
+
+    private static final Instant SINCE = Instant.parse("2025-06-01T12:00:00Z");
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private MessageHistory history;
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    private FetchHistoryUseCase fetchHistoryUseCase;
+
+    @BeforeEach
+    void setUp() {
+        fetchHistoryUseCase = new FetchHistoryUseCase(sessionManager, history, 2, 4);
+    }
+
+    // visits these (room, payload) pairs, numbered from offset 7 on, as messages of type "message"
+    private static void visit(MessageHistory.Visitor visitor, String... roomsAndPayloads) {
+        for (int i = 0; i < roomsAndPayloads.length; i += 2) {
+            ByteBuffer payload = ByteBuffer.wrap(roomsAndPayloads[i + 1].getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            if (!visitor.visit(7 + i / 2, SINCE.toEpochMilli(), roomsAndPayloads[i], "message", payload)) return;
+        }
+    }
+
+    // the history holds these (room, payload) pairs from offset 7 on
+    private void stored(String... roomsAndPayloads) {
+        doAnswer(invocation -> {
+            visit(invocation.getArgument(1), roomsAndPayloads);
+            return null;
+        }).when(history).read(eq(7L), any());
+    }
+
+    // the latest stored (room, payload) pairs, newest first
+    private void latest(String... roomsAndPayloads) {
+        doAnswer(invocation -> {
+            visit(invocation.getArgument(0), roomsAndPayloads);
+            return null;
+        }).when(history).readBackward(any());
+    }
+
+    private List<String> sentPayloads(int count) {
+        ArgumentCaptor<EncodedChatMessage> captor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+        verify(sessionManager, times(count)).send(eq(webSocketSession), captor.capture());
+        return captor.getAllValues().stream().map(m -> new String(m.payload(), StandardCharsets.UTF_8)).toList();
+    }
+
+    @Nested
+    @DisplayName("run method")
+    class RunMethodTest {
+
+        @Test
+        @DisplayName("should send a page of the room's stored messages, oldest first")
+        void shouldSendPageOfRoomMessages() {
+            // Given
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(true);
+            when(history.offsetAt(SINCE)).thenReturn(7L);
+            stored("lobby", "{\"message\":\"one\"}", "random", "{\"message\":\"elsewhere\"}",
+                    "lobby", "{\"message\":\"two\"}", "lobby", "{\"message\":\"three\"}");
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", SINCE);
+
+            // Then
+            assertEquals(List.of("{\"message\":\"one\"}", "{\"message\":\"two\"}"), sentPayloads(2));
+        }
+
+        @Test
+        @DisplayName("should send the latest page, oldest first, when no instant is given")
+        void shouldSendLatestPageWithoutInstant() {
+            // Given
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(true);
+            latest("lobby", "{\"message\":\"three\"}", "random", "{\"message\":\"elsewhere\"}",
+                    "lobby", "{\"message\":\"two\"}", "lobby", "{\"message\":\"one\"}");
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", null);
+
+            // Then
+            verify(history, never()).read(anyLong(), any());
+            assertEquals(List.of("{\"message\":\"two\"}", "{\"message\":\"three\"}"), sentPayloads(2));
+        }
+
+        @Test
+        @DisplayName("should stop looking after maxScan stored messages even if the page is not full")
+        void shouldStopAfterMaxScan() {
+            // Given
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(true);
+            when(history.offsetAt(SINCE)).thenReturn(7L);
+            stored("lobby", "{\"message\":\"one\"}", "random", "{\"message\":\"a\"}", "random", "{\"message\":\"b\"}",
+                    "random", "{\"message\":\"c\"}", "lobby", "{\"message\":\"too far\"}");
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", SINCE);
+
+            // Then
+            assertEquals(List.of("{\"message\":\"one\"}"), sentPayloads(1));
+        }
+
+        @Test
+        @DisplayName("should send each stored message with the type it was stored with")
+        void shouldKeepStoredType() {
+            // Given
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(true);
+            doAnswer(invocation -> {
+                MessageHistory.Visitor visitor = invocation.getArgument(0);
+                visitor.visit(8, SINCE.toEpochMilli(), "lobby", "system",
+                        ByteBuffer.wrap("{\"message\":\"notice\"}".getBytes(StandardCharsets.UTF_8)));
+                return null;
+            }).when(history).readBackward(any());
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", null);
+
+            // Then
+            ArgumentCaptor<EncodedChatMessage> captor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+            verify(sessionManager).send(eq(webSocketSession), captor.capture());
+            assertEquals("system", captor.getValue().type());
+        }
+
+        @Test
+        @DisplayName("should not read the history of a room the session is not in")
+        void shouldNotReadRoomSessionIsNotIn() {
+            // Given
+            when(webSocketSession.getId()).thenReturn("session-123");
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(false);
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", SINCE);
+
+            // Then
+            verifyNoInteractions(history);
+            verify(sessionManager, never()).send(any(), any(EncodedChatMessage.class));
+        }
+
+        @Test
+        @DisplayName("should send nothing when no message was stored at or after the instant")
+        void shouldSendNothingWhenNothingStoredSince() {
+            // Given
+            when(sessionManager.isMember(webSocketSession, "lobby")).thenReturn(true);
+            when(history.offsetAt(SINCE)).thenReturn(MessageHistory.NO_OFFSET);
+
+            // When
+            fetchHistoryUseCase.run(webSocketSession, "lobby", SINCE);
+
+            // Then
+            verify(history, never()).read(anyLong(), any());
+            verify(sessionManager, never()).send(any(), any(EncodedChatMessage.class));
+        }
+    }
+}
@@ -1,19 +1,20 @@
 package net.malevy.chatserver.application.usecases;
 
-import net.malevy.chatserver.application.ports.MessageBroadcaster;
 import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
 import net.malevy.chatserver.domain.entities.ChatMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,7 +28,10 @@ class JoinChatUseCaseTest {
     private SessionManager sessionManager;
 
     @Mock
-    private MessageBroadcaster messageBroadcaster;
+    private JoinRoomUseCase joinRoomUseCase;
+
+    @Mock
+    private UserDirectory userDirectory;
 
     @Mock
     private WebSocketSession webSocketSession;
@@ -36,7 +40,7 @@ class JoinChatUseCaseTest {
 
     @BeforeEach
     void setUp() {
-        joinChatUseCase = new JoinChatUseCase(sessionManager, messageBroadcaster);
+        joinChatUseCase = new JoinChatUseCase(sessionManager, joinRoomUseCase, userDirectory);
     }
 
     @Nested
@@ -53,12 +57,33 @@ class JoinChatUseCaseTest {
             when(webSocketSession.getId()).thenReturn("session-123");
 
             // When
-            joinChatUseCase.run(webSocketSession, username);
+            joinChatUseCase.run(webSocketSession, username, List.of(), null);
 
             // Then
             verify(sessionManager).addSession(webSocketSession);
         }
 
+        @Test
+        @DisplayName("should name the user before adding the session and announce the user afterwards")
+        void shouldNameUserBeforeAddingSessionAndAnnounceAfterwards() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(webSocketSession.getId()).thenReturn("session-123");
+            doAnswer(invocation -> {
+                assertEquals("testuser", sessionAttributes.get("username"));
+                return null;
+            }).when(sessionManager).addSession(webSocketSession);
+
+            // When
+            joinChatUseCase.run(webSocketSession, "testuser", List.of(), null);
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, userDirectory);
+            inOrder.verify(sessionManager).addSession(webSocketSession);
+            inOrder.verify(userDirectory).reconcile("testuser");
+        }
+
         @Test
         @DisplayName("should set username in session attributes")
         void shouldSetUsernameInSessionAttributes() {
@@ -69,38 +94,80 @@ class JoinChatUseCaseTest {
             when(webSocketSession.getId()).thenReturn("session-123");
 
             // When
-            joinChatUseCase.run(webSocketSession, username);
+            joinChatUseCase.run(webSocketSession, username, List.of(), null);
 
             // Then
             assertEquals(username, sessionAttributes.get("username"));
         }
 
         @Test
-        @DisplayName("should broadcast system message about user joining")
-        void shouldBroadcastSystemMessageAboutUserJoining() {
+        @DisplayName("should join the default room when no rooms are requested")
+        void shouldJoinDefaultRoomWhenNoRoomsAreRequested() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>());
+
+            // When
+            joinChatUseCase.run(webSocketSession, "testuser", List.of(), null);
+
+            // Then
+            verify(joinRoomUseCase).run(webSocketSession, ChatMessage.DEFAULT_ROOM);
+            verifyNoMoreInteractions(joinRoomUseCase);
+        }
+
+        @Test
+        @DisplayName("should join each requested room after registering the session")
+        void shouldJoinEachRequestedRoomAfterRegisteringSession() {
             // Given
-            String username = "testuser";
             Map<String, Object> sessionAttributes = new HashMap<>();
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
-            when(webSocketSession.getId()).thenReturn("session-123");
 
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            // When
+            joinChatUseCase.run(webSocketSession, "testuser", List.of("lobby", "random"), null);
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, joinRoomUseCase);
+            inOrder.verify(sessionManager).addSession(webSocketSession);
+            inOrder.verify(joinRoomUseCase).run(webSocketSession, "lobby");
+            inOrder.verify(joinRoomUseCase).run(webSocketSession, "random");
+            verify(joinRoomUseCase, never()).run(webSocketSession, ChatMessage.DEFAULT_ROOM);
+        }
+
+    }
+
+    @Nested
+    @DisplayName("resuming")
+    class ResumingTest {
+
+        @Test
+        @DisplayName("should hold the session until the missed messages are replayed")
+        void shouldHoldSessionUntilMissedMessagesAreReplayed() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>());
 
             // When
-            joinChatUseCase.run(webSocketSession, username);
+            joinChatUseCase.run(webSocketSession, "testuser", List.of("lobby"), "msg-41");
 
             // Then
-            verify(messageBroadcaster).broadcast(messageCaptor.capture());
-            
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertNotNull(capturedMessage);
-            assertEquals("system", capturedMessage.getType());
-            assertEquals("system", capturedMessage.getUsername());
-            assertEquals(username + " joined the chat", capturedMessage.getMessage());
-            assertNotNull(capturedMessage.getId());
-            assertNotNull(capturedMessage.getTimestamp());
+            InOrder inOrder = inOrder(sessionManager, joinRoomUseCase);
+            inOrder.verify(sessionManager).addResumingSession(webSocketSession);
+            inOrder.verify(joinRoomUseCase).run(webSocketSession, "lobby");
+            inOrder.verify(sessionManager).resume(webSocketSession, "msg-41");
+            verify(sessionManager, never()).addSession(any());
         }
 
+        @Test
+        @DisplayName("should not replay anything for a fresh connection")
+        void shouldNotReplayForFreshConnection() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>());
+
+            // When
+            joinChatUseCase.run(webSocketSession, "testuser", List.of(), null);
+
+            // Then
+            verify(sessionManager).addSession(webSocketSession);
+            verify(sessionManager, never()).resume(any(), any());
+        }
     }
 
     @Nested
@@ -118,23 +185,23 @@ class JoinChatUseCaseTest {
 
             // When & Then
             assertThrows(RuntimeException.class, () -> {
-                joinChatUseCase.run(webSocketSession, username);
+                joinChatUseCase.run(webSocketSession, username, List.of(), null);
             });
         }
 
         @Test
-        @DisplayName("should handle message broadcaster exception")
-        void shouldHandleMessageBroadcasterException() {
+        @DisplayName("should handle join room exception")
+        void shouldHandleJoinRoomException() {
             // Given
             String username = "testuser";
             Map<String, Object> sessionAttributes = new HashMap<>();
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
 
-            doThrow(new RuntimeException("Broadcast error")).when(messageBroadcaster).broadcast(any(ChatMessage.class));
+            doThrow(new RuntimeException("Broadcast error")).when(joinRoomUseCase).run(any(), any());
 
             // When & Then
             assertThrows(RuntimeException.class, () -> {
-                joinChatUseCase.run(webSocketSession, username);
+                joinChatUseCase.run(webSocketSession, username, List.of(), null);
             });
             
             // Verify session was still added before the exception
@@ -154,7 +221,7 @@ class JoinChatUseCaseTest {
 
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                joinChatUseCase.run(null, username);
+                joinChatUseCase.run(null, username, List.of(), null);
             });
         }
 
@@ -166,18 +233,13 @@ class JoinChatUseCaseTest {
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
             when(webSocketSession.getId()).thenReturn("session-123");
 
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
-
             // When
-            joinChatUseCase.run(webSocketSession, null);
+            joinChatUseCase.run(webSocketSession, null, List.of(), null);
 
             // Then
             verify(sessionManager).addSession(webSocketSession);
             assertNull(sessionAttributes.get("username"));
-            
-            verify(messageBroadcaster).broadcast(messageCaptor.capture());
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertEquals("null joined the chat", capturedMessage.getMessage());
+            verify(joinRoomUseCase).run(webSocketSession, ChatMessage.DEFAULT_ROOM);
         }
     }
-}
\ No newline at end of file
+}
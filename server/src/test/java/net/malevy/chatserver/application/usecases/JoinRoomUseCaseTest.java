@@ -0,0 +1,94 @@
+package net.malevy.chatserver.application.usecases;
+
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
+import net.malevy.chatserver.application.ports.SessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JoinRoomUseCaseTest {
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private RoomSubscriptions roomSubscriptions;
+
+    @Mock
+    private Presence presence;
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    private JoinRoomUseCase joinRoomUseCase;
+
+    @BeforeEach
+    void setUp() {
+        joinRoomUseCase = new JoinRoomUseCase(sessionManager, roomSubscriptions, presence);
+    }
+
+    @Nested
+    @DisplayName("run method")
+    class RunMethodTest {
+
+        @Test
+        @DisplayName("should subscribe to the room before recording the join")
+        void shouldSubscribeBeforeRecordingJoin() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "testuser");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(sessionManager.joinRoom(webSocketSession, "lobby")).thenReturn(true);
+
+            // When
+            joinRoomUseCase.run(webSocketSession, "lobby");
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, roomSubscriptions, presence);
+            inOrder.verify(sessionManager).joinRoom(webSocketSession, "lobby");
+            inOrder.verify(roomSubscriptions).reconcile("lobby");
+            inOrder.verify(presence).joined(webSocketSession, "testuser", "lobby");
+        }
+
+        @Test
+        @DisplayName("should do nothing when the session is already in the room")
+        void shouldDoNothingWhenAlreadyInRoom() {
+            // Given
+            when(sessionManager.joinRoom(webSocketSession, "lobby")).thenReturn(false);
+
+            // When
+            joinRoomUseCase.run(webSocketSession, "lobby");
+
+            // Then
+            verifyNoInteractions(roomSubscriptions);
+            verifyNoInteractions(presence);
+        }
+    }
+
+    @Nested
+    @DisplayName("Null parameter handling")
+    class NullParameterHandlingTest {
+
+        @Test
+        @DisplayName("should reject a null session or room")
+        void shouldRejectNullSessionOrRoom() {
+            assertThrows(NullPointerException.class, () -> joinRoomUseCase.run(null, "lobby"));
+            assertThrows(NullPointerException.class, () -> joinRoomUseCase.run(webSocketSession, null));
+            verifyNoInteractions(sessionManager);
+        }
+    }
+}
@@ -1,23 +1,24 @@
 package net.malevy.chatserver.application.usecases;
 
-import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
 import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.application.ports.UserDirectory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,7 +28,13 @@ class LeaveChatUseCaseTest {
     private SessionManager sessionManager;
 
     @Mock
-    private MessageBroadcaster messageBroadcaster;
+    private RoomSubscriptions roomSubscriptions;
+
+    @Mock
+    private UserDirectory userDirectory;
+
+    @Mock
+    private Presence presence;
 
     @Mock
     private WebSocketSession webSocketSession;
@@ -36,7 +43,7 @@ class LeaveChatUseCaseTest {
 
     @BeforeEach
     void setUp() {
-        leaveChatUseCase = new LeaveChatUseCase(sessionManager, messageBroadcaster);
+        leaveChatUseCase = new LeaveChatUseCase(sessionManager, roomSubscriptions, userDirectory, presence);
     }
 
     @Nested
@@ -60,30 +67,39 @@ class LeaveChatUseCaseTest {
         }
 
         @Test
-        @DisplayName("should broadcast system message about user leaving")
-        void shouldBroadcastSystemMessageAboutUserLeaving() {
+        @DisplayName("should tell the user directory once the session is gone")
+        void shouldReconcileUserAfterRemovingSession() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "testuser");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            leaveChatUseCase.run(webSocketSession);
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, userDirectory);
+            inOrder.verify(sessionManager).removeSession(webSocketSession);
+            inOrder.verify(userDirectory).reconcile("testuser");
+        }
+
+        @Test
+        @DisplayName("should record the user leaving the room")
+        void shouldRecordUserLeavingTheRoom() {
             // Given
             String username = "testuser";
             Map<String, Object> sessionAttributes = new HashMap<>();
             sessionAttributes.put("username", username);
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
             when(webSocketSession.getId()).thenReturn("session-123");
-
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            when(sessionManager.removeSession(webSocketSession)).thenReturn(Set.of("general"));
 
             // When
             leaveChatUseCase.run(webSocketSession);
 
             // Then
-            verify(messageBroadcaster).broadcast(messageCaptor.capture());
-            
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertNotNull(capturedMessage);
-            assertEquals("system", capturedMessage.getType());
-            assertEquals("system", capturedMessage.getUsername());
-            assertEquals(username + " left the chat", capturedMessage.getMessage());
-            assertNotNull(capturedMessage.getId());
-            assertNotNull(capturedMessage.getTimestamp());
+            verify(presence).left(username, "general");
         }
 
         @Test
@@ -94,18 +110,48 @@ class LeaveChatUseCaseTest {
             // No username key in attributes
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
             when(webSocketSession.getId()).thenReturn("session-123");
-
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            when(sessionManager.removeSession(webSocketSession)).thenReturn(Set.of("general"));
 
             // When
             leaveChatUseCase.run(webSocketSession);
 
             // Then
             verify(sessionManager).removeSession(webSocketSession);
-            
-            verify(messageBroadcaster).broadcast(messageCaptor.capture());
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertEquals("null left the chat", capturedMessage.getMessage());
+            verify(roomSubscriptions).reconcile("general");
+            verifyNoInteractions(presence);
+        }
+
+        @Test
+        @DisplayName("should record the departure from every room the session was in")
+        void shouldRecordDepartureFromEveryRoom() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "testuser");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(webSocketSession.getId()).thenReturn("session-123");
+            when(sessionManager.removeSession(webSocketSession)).thenReturn(Set.of("lobby", "random"));
+
+            // When
+            leaveChatUseCase.run(webSocketSession);
+
+            // Then
+            verify(roomSubscriptions).reconcile("lobby");
+            verify(roomSubscriptions).reconcile("random");
+            verify(presence).left("testuser", "lobby");
+            verify(presence).left("testuser", "random");
+        }
+
+        @Test
+        @DisplayName("should do nothing for a session that was already removed")
+        void shouldIgnoreSessionAlreadyRemoved() {
+            // Given
+            when(sessionManager.removeSession(webSocketSession)).thenReturn(null);
+
+            // When
+            leaveChatUseCase.run(webSocketSession);
+
+            // Then
+            verifyNoInteractions(userDirectory, roomSubscriptions, presence);
         }
 
     }
@@ -128,14 +174,15 @@ class LeaveChatUseCaseTest {
         }
 
         @Test
-        @DisplayName("should handle message broadcaster exception")
-        void shouldHandleMessageBroadcasterException() {
+        @DisplayName("should handle presence exception")
+        void shouldHandlePresenceException() {
             // Given
             Map<String, Object> sessionAttributes = new HashMap<>();
             sessionAttributes.put("username", "testuser");
             when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(sessionManager.removeSession(webSocketSession)).thenReturn(Set.of("general"));
 
-            doThrow(new RuntimeException("Broadcast error")).when(messageBroadcaster).broadcast(any(ChatMessage.class));
+            doThrow(new RuntimeException("Presence error")).when(presence).left("testuser", "general");
 
             // When & Then
             assertThrows(RuntimeException.class, () -> {
@@ -176,4 +223,4 @@ class LeaveChatUseCaseTest {
             verify(sessionManager).removeSession(webSocketSession);
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package net.malevy.chatserver.application.usecases;
+
+import net.malevy.chatserver.application.ports.Presence;
+import net.malevy.chatserver.application.ports.RoomSubscriptions;
+import net.malevy.chatserver.application.ports.SessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LeaveRoomUseCaseTest {
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private RoomSubscriptions roomSubscriptions;
+
+    @Mock
+    private Presence presence;
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    private LeaveRoomUseCase leaveRoomUseCase;
+
+    @BeforeEach
+    void setUp() {
+        leaveRoomUseCase = new LeaveRoomUseCase(sessionManager, roomSubscriptions, presence);
+    }
+
+    @Nested
+    @DisplayName("run method")
+    class RunMethodTest {
+
+        @Test
+        @DisplayName("should reconcile the subscription before recording the departure")
+        void shouldReconcileBeforeRecordingDeparture() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "testuser");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(sessionManager.leaveRoom(webSocketSession, "lobby")).thenReturn(true);
+
+            // When
+            leaveRoomUseCase.run(webSocketSession, "lobby");
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, roomSubscriptions, presence);
+            inOrder.verify(sessionManager).leaveRoom(webSocketSession, "lobby");
+            inOrder.verify(roomSubscriptions).reconcile("lobby");
+            inOrder.verify(presence).left("testuser", "lobby");
+        }
+
+        @Test
+        @DisplayName("should do nothing when the session is not in the room")
+        void shouldDoNothingWhenNotInRoom() {
+            // Given
+            when(sessionManager.leaveRoom(webSocketSession, "lobby")).thenReturn(false);
+
+            // When
+            leaveRoomUseCase.run(webSocketSession, "lobby");
+
+            // Then
+            verifyNoInteractions(roomSubscriptions);
+            verifyNoInteractions(presence);
+        }
+    }
+
+    @Nested
+    @DisplayName("Null parameter handling")
+    class NullParameterHandlingTest {
+
+        @Test
+        @DisplayName("should reject a null session or room")
+        void shouldRejectNullSessionOrRoom() {
+            assertThrows(NullPointerException.class, () -> leaveRoomUseCase.run(null, "lobby"));
+            assertThrows(NullPointerException.class, () -> leaveRoomUseCase.run(webSocketSession, null));
+            verifyNoInteractions(sessionManager);
+        }
+    }
+}
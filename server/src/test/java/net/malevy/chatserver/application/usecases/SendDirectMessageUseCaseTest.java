@@ -0,0 +1,112 @@
+package net.malevy.chatserver.application.usecases;
+
+import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SendDirectMessageUseCaseTest {
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private MessageBroadcaster messageBroadcaster;
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    private SendDirectMessageUseCase sendDirectMessageUseCase;
+
+    @BeforeEach
+    void setUp() {
+        sendDirectMessageUseCase = new SendDirectMessageUseCase(sessionManager, messageBroadcaster, MessageIdGenerator.RANDOM);
+    }
+
+    @Nested
+    @DisplayName("run method")
+    class RunMethodTest {
+
+        @Test
+        @DisplayName("should broadcast a direct message from the session's user without a room")
+        void shouldBroadcastDirectMessageWithoutRoom() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "alice");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("psst");
+            inputMessage.setTo("bob");
+            inputMessage.setRoom("general");
+
+            // When
+            sendDirectMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            verify(messageBroadcaster).broadcast(messageCaptor.capture());
+            ChatMessage sent = messageCaptor.getValue();
+            assertEquals("direct", sent.getType());
+            assertEquals("alice", sent.getUsername());
+            assertEquals("bob", sent.getTo());
+            assertEquals("psst", sent.getMessage());
+            assertNull(sent.getRoom());
+            assertNotNull(sent.getId());
+            assertNotNull(sent.getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should drop a direct message without a recipient")
+        void shouldDropDirectMessageWithoutRecipient() {
+            // Given
+            when(webSocketSession.getId()).thenReturn("session-123");
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("psst");
+            inputMessage.setTo(" ");
+
+            // When
+            sendDirectMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            verify(messageBroadcaster, never()).broadcast(any());
+        }
+
+        @Test
+        @DisplayName("should tell the sender when the broadcaster refuses the message")
+        void shouldTellSenderWhenMessageIsRefused() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>(Map.of("username", "alice")));
+            when(messageBroadcaster.broadcast(any())).thenReturn(false);
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("psst");
+            inputMessage.setTo("bob");
+
+            // When
+            sendDirectMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            ArgumentCaptor<ChatMessage> notice = ArgumentCaptor.forClass(ChatMessage.class);
+            verify(sessionManager).send(eq(webSocketSession), notice.capture());
+            assertEquals("system", notice.getValue().getType());
+            assertEquals(SendMessageUseCase.NOT_DELIVERED, notice.getValue().getMessage());
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package net.malevy.chatserver.application.usecases;
 
 import net.malevy.chatserver.application.ports.MessageBroadcaster;
+import net.malevy.chatserver.application.ports.SessionManager;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -18,11 +20,15 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class SendMessageUseCaseTest {
 
+    @Mock
+    private SessionManager sessionManager;
+
     @Mock
     private MessageBroadcaster messageBroadcaster;
 
@@ -33,7 +39,9 @@ class SendMessageUseCaseTest {
 
     @BeforeEach
     void setUp() {
-        sendMessageUseCase = new SendMessageUseCase(messageBroadcaster);
+        sendMessageUseCase = new SendMessageUseCase(sessionManager, messageBroadcaster, MessageIdGenerator.RANDOM);
+        lenient().when(sessionManager.isMember(any(), any())).thenReturn(true);
+        lenient().when(messageBroadcaster.broadcast(any())).thenReturn(true);
     }
 
     @Nested
@@ -59,6 +67,61 @@ class SendMessageUseCaseTest {
             verify(webSocketSession).getAttributes();
             verify(messageBroadcaster).broadcast(any(ChatMessage.class));
         }
+
+        @Test
+        @DisplayName("should send to the default room when none is given")
+        void shouldSendToDefaultRoomWhenNoneIsGiven() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>(Map.of("username", "testuser")));
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("Hello world");
+
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+
+            // When
+            sendMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            verify(sessionManager).isMember(webSocketSession, ChatMessage.DEFAULT_ROOM);
+            verify(messageBroadcaster).broadcast(messageCaptor.capture());
+            assertEquals(ChatMessage.DEFAULT_ROOM, messageCaptor.getValue().getRoom());
+        }
+
+        @Test
+        @DisplayName("should drop a message for a room the sender has not joined")
+        void shouldDropMessageForRoomSenderHasNotJoined() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>(Map.of("username", "testuser")));
+            when(sessionManager.isMember(webSocketSession, "secret")).thenReturn(false);
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("Hello world");
+            inputMessage.setRoom("secret");
+
+            // When
+            sendMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            verify(messageBroadcaster, never()).broadcast(any(ChatMessage.class));
+        }
+
+        @Test
+        @DisplayName("should give the message an id from the generator")
+        void shouldGiveMessageIdFromGenerator() {
+            // Given
+            sendMessageUseCase = new SendMessageUseCase(sessionManager, messageBroadcaster, () -> "0000000000001");
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>(Map.of("username", "testuser")));
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("Hello world");
+
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+
+            // When
+            sendMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            verify(messageBroadcaster).broadcast(messageCaptor.capture());
+            assertEquals("0000000000001", messageCaptor.getValue().getId());
+        }
     }
 
     @Nested
@@ -85,6 +148,44 @@ class SendMessageUseCaseTest {
             });
         }
 
+        @Test
+        @DisplayName("should tell the sender when the broadcaster refuses the message")
+        void shouldTellSenderWhenMessageIsRefused() {
+            // Given
+            Map<String, Object> sessionAttributes = new HashMap<>();
+            sessionAttributes.put("username", "testuser");
+            when(webSocketSession.getAttributes()).thenReturn(sessionAttributes);
+            when(messageBroadcaster.broadcast(any())).thenReturn(false);
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("Hello");
+            inputMessage.setRoom("busy");
+
+            // When
+            sendMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            ArgumentCaptor<ChatMessage> notice = ArgumentCaptor.forClass(ChatMessage.class);
+            verify(sessionManager).send(eq(webSocketSession), notice.capture());
+            assertEquals("system", notice.getValue().getType());
+            assertEquals("busy", notice.getValue().getRoom());
+            assertEquals(SendMessageUseCase.NOT_DELIVERED, notice.getValue().getMessage());
+        }
+
+        @Test
+        @DisplayName("should not tell the sender anything when the message is accepted")
+        void shouldNotTellSenderWhenMessageIsAccepted() {
+            // Given
+            when(webSocketSession.getAttributes()).thenReturn(new HashMap<>(Map.of("username", "testuser")));
+            ChatMessage inputMessage = new ChatMessage();
+            inputMessage.setMessage("Hello");
+
+            // When
+            sendMessageUseCase.run(webSocketSession, inputMessage);
+
+            // Then
+            verify(sessionManager, never()).send(any(), any(ChatMessage.class));
+        }
+
         @Test
         @DisplayName("should handle ChatMessage.populateFrom exceptions")
         void shouldHandleChatMessagePopulateFromExceptions() {
@@ -125,4 +226,4 @@ class SendMessageUseCaseTest {
         }
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -28,7 +28,7 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result);
@@ -51,7 +51,7 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result.getId());
@@ -70,7 +70,7 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result.getId());
@@ -90,7 +90,7 @@ class ChatMessageTest {
             Instant beforeCall = Instant.now();
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result.getTimestamp());
@@ -102,7 +102,7 @@ class ChatMessageTest {
         void shouldThrowExceptionWhenSourceIsNull() {
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                ChatMessage.populateFrom(null, "testuser");
+                ChatMessage.populateFrom(null, "testuser", MessageIdGenerator.RANDOM);
             });
         }
 
@@ -115,11 +115,46 @@ class ChatMessageTest {
 
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                ChatMessage.populateFrom(source, null);
+                ChatMessage.populateFrom(source, null, MessageIdGenerator.RANDOM);
             });
         }
     }
 
+    @Nested
+    @DisplayName("directFrom method")
+    class DirectFromTest {
+
+        @Test
+        @DisplayName("should address the message to the recipient and leave it out of every room")
+        void shouldAddressMessageToRecipientWithoutRoom() {
+            // Given
+            ChatMessage source = new ChatMessage();
+            source.setMessage("psst");
+            source.setTo("bob");
+            source.setRoom("general");
+            source.setType("message");
+
+            // When
+            ChatMessage result = ChatMessage.directFrom(source, "alice", MessageIdGenerator.RANDOM);
+
+            // Then
+            assertEquals("direct", result.getType());
+            assertEquals("bob", result.getTo());
+            assertEquals("alice", result.getUsername());
+            assertEquals("psst", result.getMessage());
+            assertNull(result.getRoom());
+            assertNotNull(result.getId());
+            assertNotNull(result.getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should throw exception when the recipient is missing")
+        void shouldThrowExceptionWhenRecipientIsMissing() {
+            assertThrows(NullPointerException.class,
+                    () -> ChatMessage.directFrom(new ChatMessage(), "alice", MessageIdGenerator.RANDOM));
+        }
+    }
+
     @Nested
     @DisplayName("create method")
     class CreateTest {
@@ -133,7 +168,7 @@ class ChatMessageTest {
             Instant beforeCall = Instant.now();
 
             // When
-            ChatMessage result = ChatMessage.create(messageText, username);
+            ChatMessage result = ChatMessage.create(messageText, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result);
@@ -151,7 +186,7 @@ class ChatMessageTest {
         void shouldThrowExceptionWhenMessageTextIsNull() {
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                ChatMessage.create(null, "testuser");
+                ChatMessage.create(null, "testuser", MessageIdGenerator.RANDOM);
             });
         }
 
@@ -160,7 +195,7 @@ class ChatMessageTest {
         void shouldThrowExceptionWhenUsernameIsNull() {
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                ChatMessage.create("Hello", null);
+                ChatMessage.create("Hello", null, MessageIdGenerator.RANDOM);
             });
         }
     }
@@ -177,7 +212,7 @@ class ChatMessageTest {
             Instant beforeCall = Instant.now();
 
             // When
-            ChatMessage result = ChatMessage.createSystemMessage(messageText);
+            ChatMessage result = ChatMessage.createSystemMessage(messageText, MessageIdGenerator.RANDOM);
 
             // Then
             assertNotNull(result);
@@ -195,7 +230,7 @@ class ChatMessageTest {
         void shouldThrowExceptionWhenMessageTextIsNull() {
             // When & Then
             assertThrows(NullPointerException.class, () -> {
-                ChatMessage.createSystemMessage(null);
+                ChatMessage.createSystemMessage(null, MessageIdGenerator.RANDOM);
             });
         }
     }
@@ -266,7 +301,7 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertEquals("", result.getType());
@@ -287,7 +322,7 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertEquals("existing-id", result.getId());
@@ -305,10 +340,10 @@ class ChatMessageTest {
             String username = "testuser";
 
             // When
-            ChatMessage result = ChatMessage.populateFrom(source, username);
+            ChatMessage result = ChatMessage.populateFrom(source, username, MessageIdGenerator.RANDOM);
 
             // Then
             assertEquals(existingTimestamp, result.getTimestamp());
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
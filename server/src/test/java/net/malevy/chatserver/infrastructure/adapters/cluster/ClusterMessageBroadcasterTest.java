@@ -1,144 +1,374 @@
-package net.malevy.chatserver.infrastructure.adapters.cluster;
-
-import net.malevy.chatserver.application.ports.SessionManager;
-import net.malevy.chatserver.domain.entities.ChatMessage;
-import net.malevy.chatserver.domain.entities.NodeIdentifier;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.DisplayName;
-import org.junit.jupiter.api.Nested;
-import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.listener.ChannelTopic;
-
-import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.*;
-
-@ExtendWith(MockitoExtension.class)
-class ClusterMessageBroadcasterTest {
-
-    @Mock
-    private SessionManager sessionManager;
-
-    @Mock
-    private RedisTemplate<String, Object> redisTemplate;
-
-    private ChannelTopic channelTopic;
-    private NodeIdentifier nodeIdentifier;
-    private ClusterMessageBroadcaster broadcaster;
-
-    @BeforeEach
-    void setUp() {
-        nodeIdentifier = new NodeIdentifier("test-node-123");
-        channelTopic = new ChannelTopic("test-chat-channel");
-        broadcaster = new ClusterMessageBroadcaster(
-                nodeIdentifier,
-                channelTopic,
-                sessionManager,
-                redisTemplate
-        );
-    }
-
-    @Nested
-    @DisplayName("Constructor")
-    class ConstructorTest {
-
-        @Test
-        @DisplayName("should create instance with all dependencies")
-        void shouldCreateInstanceWithAllDependencies() {
-            ClusterMessageBroadcaster broadcaster = new ClusterMessageBroadcaster(
-                    nodeIdentifier,
-                    channelTopic,
-                    sessionManager,
-                    redisTemplate
-            );
-
-            assertNotNull(broadcaster);
-        }
-    }
-
-    @Nested
-    @DisplayName("broadcast method")
-    class BroadcastTest {
-
-        @Test
-        @DisplayName("should set node ID on message before broadcasting")
-        void shouldSetNodeIdOnMessageBeforeBroadcasting() {
-            // Given
-            ChatMessage message = ChatMessage.create("Hello", "user1");
-
-            // When
-            broadcaster.broadcast(message);
-
-            // Then
-            assertEquals("test-node-123", message.getNodeId());
-        }
-
-        @Test
-        @DisplayName("should call sessionManager broadcast with message")
-        void shouldCallSessionManagerBroadcastWithMessage() {
-            // Given
-            ChatMessage message = ChatMessage.create("Hello", "user1");
-
-            // When
-            broadcaster.broadcast(message);
-
-            // Then
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
-            verify(sessionManager).broadcast(messageCaptor.capture());
-
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertEquals("Hello", capturedMessage.getMessage());
-            assertEquals("user1", capturedMessage.getUsername());
-            assertEquals("test-node-123", capturedMessage.getNodeId());
-        }
-
-        @Test
-        @DisplayName("should publish message to Redis topic")
-        void shouldPublishMessageToRedisTopic() {
-            // Given
-            ChatMessage message = ChatMessage.create("Test message", "testuser");
-
-            // When
-            broadcaster.broadcast(message);
-
-            // Then
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
-            verify(redisTemplate).convertAndSend(eq("test-chat-channel"), messageCaptor.capture());
-
-            ChatMessage publishedMessage = messageCaptor.getValue();
-            assertEquals("Test message", publishedMessage.getMessage());
-            assertEquals("testuser", publishedMessage.getUsername());
-            assertEquals("test-node-123", publishedMessage.getNodeId());
-        }
-
-        @Test
-        @DisplayName("should handle null message")
-        void shouldHandleNullMessageGracefully() {
-            // When & Then - should not throw NullPointerException from ClusterMessageBroadcaster
-            assertThrows(NullPointerException.class,() -> {
-                broadcaster.broadcast(null);
-            });
-        }
-
-        @Test
-        @DisplayName("should handle message with null properties")
-        void shouldHandleMessageWithNullProperties() {
-            // Given
-            ChatMessage message = new ChatMessage();
-
-            // When & Then
-            assertDoesNotThrow(() -> {
-                broadcaster.broadcast(message);
-            });
-
-            // Verify nodeId was set
-            assertEquals("test-node-123", message.getNodeId());
-        }
-
-    }
-}
\ No newline at end of file
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterMessageBroadcasterTest {
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private RedisPublishPipeline publishPipeline;
+
+    @Mock
+    private UserLeases userLeases;
+
+    private ChannelTopic channelTopic;
+    private RoomTopics roomTopics;
+    private NodeTopics nodeTopics;
+    private ClusterUserDirectory userDirectory;
+    private SimpleMeterRegistry meterRegistry;
+    private NodeIdentifier nodeIdentifier;
+    private ChatMessageCodec codec;
+    private HybridLogicalClock clock;
+    private ReorderBuffer reorderBuffer;
+    private ClusterMessageBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        nodeIdentifier = new NodeIdentifier("test-node-123");
+        channelTopic = new ChannelTopic("test-chat-channel");
+        roomTopics = new RoomTopics("test-room:");
+        nodeTopics = new NodeTopics("test-node:");
+        meterRegistry = new SimpleMeterRegistry();
+        userDirectory = new ClusterUserDirectory(userLeases, sessionManager, nodeIdentifier,
+                new DirectorySettings(Duration.ofSeconds(15), Duration.ofSeconds(1)), Clock.systemUTC(), Runnable::run, meterRegistry);
+        codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+        clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), new SimpleMeterRegistry());
+        reorderBuffer = new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock,
+                new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)), new SimpleMeterRegistry());
+        broadcaster = new ClusterMessageBroadcaster(
+                nodeIdentifier,
+                channelTopic,
+                roomTopics,
+                nodeTopics,
+                userDirectory,
+                clock,
+                reorderBuffer,
+                publishPipeline,
+                codec,
+                new ClusterEnvelope(0),
+                RoomExecutor.INLINE,
+                meterRegistry
+        );
+    }
+
+    @Nested
+    @DisplayName("Constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should create instance with all dependencies")
+        void shouldCreateInstanceWithAllDependencies() {
+            ClusterMessageBroadcaster broadcaster = new ClusterMessageBroadcaster(
+                    nodeIdentifier,
+                    channelTopic,
+                    roomTopics,
+                    nodeTopics,
+                    userDirectory,
+                    clock,
+                    reorderBuffer,
+                    publishPipeline,
+                    codec,
+                    new ClusterEnvelope(0),
+                    RoomExecutor.INLINE,
+                    new SimpleMeterRegistry()
+            );
+
+            assertNotNull(broadcaster);
+        }
+    }
+
+    @Nested
+    @DisplayName("direct messages")
+    class DirectMessageTest {
+
+        private ChatMessage directTo(String username) {
+            ChatMessage source = new ChatMessage();
+            source.setMessage("psst");
+            source.setTo(username);
+            return ChatMessage.directFrom(source, "alice", MessageIdGenerator.RANDOM);
+        }
+
+        @Test
+        @DisplayName("should publish only to the channels of the other nodes holding the recipient")
+        void shouldPublishOnlyToNodesHoldingRecipient() {
+            // Given
+            when(userLeases.holders(eq("bob"), anyLong())).thenReturn(List.of("node-a", "test-node-123", "node-b"));
+
+            // When
+            broadcaster.broadcast(directTo("bob"));
+
+            // Then
+            ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+            verify(publishPipeline).publish(eq("test-node:node-a"), payloadCaptor.capture());
+            verify(publishPipeline).publish(eq("test-node:node-b"), any());
+            verifyNoMoreInteractions(publishPipeline);
+            assertNull(ClusterEnvelope.header(payloadCaptor.getValue()).room());
+        }
+
+        @Test
+        @DisplayName("should still deliver to the recipient's sessions on this node")
+        void shouldDeliverToLocalSessionsOfRecipient() {
+            // Given
+            when(userLeases.holders(eq("bob"), anyLong())).thenReturn(List.of("test-node-123"));
+            when(sessionManager.isOnline("bob")).thenReturn(true);
+
+            // When
+            broadcaster.broadcast(directTo("bob"));
+
+            // Then
+            ArgumentCaptor<EncodedChatMessage> messageCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+            verify(sessionManager).broadcast(messageCaptor.capture());
+            assertEquals("bob", messageCaptor.getValue().to());
+            verifyNoInteractions(publishPipeline);
+            assertEquals(0, meterRegistry.get("chat.cluster.direct.unroutable").counter().count());
+        }
+
+        @Test
+        @DisplayName("should order direct messages by recipient instead of on one shared shard")
+        void shouldKeyDirectMessagesByRecipient() {
+            // Given
+            List<String> keys = new ArrayList<>();
+            ClusterMessageBroadcaster keyed = new ClusterMessageBroadcaster(nodeIdentifier, channelTopic, roomTopics,
+                    nodeTopics, userDirectory, clock, reorderBuffer, publishPipeline, codec, new ClusterEnvelope(0),
+                    (room, task) -> keys.add(room), new SimpleMeterRegistry());
+            when(userLeases.holders(any(), anyLong())).thenReturn(List.of("node-b"));
+
+            // When
+            keyed.broadcast(directTo("bob"));
+            keyed.broadcast(directTo("carol"));
+
+            // Then
+            assertEquals(List.of("@bob", "@carol"), keys);
+        }
+
+        @Test
+        @DisplayName("should look the recipient up before handing the message to its shard")
+        void shouldLookUpRecipientBeforeTheShard() {
+            // Given
+            Deque<Runnable> lookups = new ArrayDeque<>();
+            Deque<Runnable> shard = new ArrayDeque<>();
+            ClusterUserDirectory directory = new ClusterUserDirectory(userLeases, sessionManager, nodeIdentifier,
+                    new DirectorySettings(Duration.ofSeconds(15), Duration.ofSeconds(1)), Clock.systemUTC(), lookups::add,
+                    new SimpleMeterRegistry());
+            ClusterMessageBroadcaster broadcaster = new ClusterMessageBroadcaster(nodeIdentifier, channelTopic, roomTopics,
+                    nodeTopics, directory, clock, reorderBuffer, publishPipeline, codec, new ClusterEnvelope(0),
+                    (room, task) -> shard.add(task), new SimpleMeterRegistry());
+            when(userLeases.holders(eq("bob"), anyLong())).thenReturn(List.of("node-b"));
+
+            // When
+            assertTrue(broadcaster.broadcast(directTo("bob")));
+
+            // Then: nothing reaches the shard until Redis has answered, off the shard
+            assertTrue(shard.isEmpty());
+            verifyNoInteractions(userLeases);
+
+            // When
+            lookups.poll().run();
+            shard.poll().run();
+
+            // Then
+            verify(publishPipeline).publish(eq("test-node:node-b"), any());
+        }
+
+        @Test
+        @DisplayName("should count a message for a user no node holds instead of publishing it")
+        void shouldCountMessageForUserNoNodeHolds() {
+            // Given
+            when(userLeases.holders(eq("bob"), anyLong())).thenReturn(List.of());
+
+            // When
+            broadcaster.broadcast(directTo("bob"));
+
+            // Then
+            verifyNoInteractions(publishPipeline);
+            assertEquals(1, meterRegistry.get("chat.cluster.direct.unroutable").counter().count());
+        }
+    }
+
+    @Nested
+    @DisplayName("broadcast method")
+    class BroadcastTest {
+
+        @Test
+        @DisplayName("should set node ID on message before broadcasting")
+        void shouldSetNodeIdOnMessageBeforeBroadcasting() {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello", "user1", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            assertEquals("test-node-123", message.getNodeId());
+        }
+
+        @Test
+        @DisplayName("should stamp each message with a later hybrid clock timestamp")
+        void shouldStampEachMessageWithLaterTimestamp() throws Exception {
+            // Given
+            ChatMessage first = ChatMessage.create("one", "user1", MessageIdGenerator.RANDOM);
+            ChatMessage second = ChatMessage.create("two", "user1", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(first);
+            broadcaster.broadcast(second);
+
+            // Then
+            ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+            verify(publishPipeline, times(2)).publish(eq("test-chat-channel"), payloadCaptor.capture());
+            assertNotNull(first.getHlc());
+            assertTrue(second.getHlc() > first.getHlc());
+            assertEquals(first.getHlc(), codec.wrap(ClusterEnvelope.open(payloadCaptor.getAllValues().get(0))).hlc());
+        }
+
+        @Test
+        @DisplayName("should call sessionManager broadcast with message")
+        void shouldCallSessionManagerBroadcastWithMessage() throws Exception {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello", "user1", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            ArgumentCaptor<EncodedChatMessage> messageCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+            verify(sessionManager).broadcast(messageCaptor.capture());
+
+            ChatMessage capturedMessage = codec.decode(messageCaptor.getValue());
+            assertEquals("Hello", capturedMessage.getMessage());
+            assertEquals("user1", capturedMessage.getUsername());
+            assertEquals("test-node-123", capturedMessage.getNodeId());
+        }
+
+        @Test
+        @DisplayName("should queue message for the Redis topic")
+        void shouldPublishMessageToRedisTopic() throws Exception {
+            // Given
+            ChatMessage message = ChatMessage.create("Test message", "testuser", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+            verify(publishPipeline).publish(eq("test-chat-channel"), payloadCaptor.capture());
+
+            ChatMessage publishedMessage = codec.decode(codec.wrap(ClusterEnvelope.open(payloadCaptor.getValue())));
+            assertEquals("Test message", publishedMessage.getMessage());
+            assertEquals("testuser", publishedMessage.getUsername());
+            assertEquals("test-node-123", publishedMessage.getNodeId());
+        }
+
+        @Test
+        @DisplayName("should publish room messages to the room's channel")
+        void shouldPublishRoomMessagesToRoomChannel() throws Exception {
+            // Given
+            ChatMessage message = ChatMessage.createSystemMessage("testuser joined the chat", "lobby", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+            verify(publishPipeline).publish(eq("test-room:lobby"), payloadCaptor.capture());
+            verify(publishPipeline, never()).publish(eq("test-chat-channel"), any());
+            assertEquals("lobby", ClusterEnvelope.header(payloadCaptor.getValue()).room());
+        }
+
+        @Test
+        @DisplayName("should publish the bytes that were delivered locally behind the envelope header")
+        void shouldPublishTheSameBytesThatWereDeliveredLocally() {
+            // Given
+            ChatMessage message = ChatMessage.create("Once", "testuser", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            ArgumentCaptor<EncodedChatMessage> localCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+            ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+            verify(sessionManager).broadcast(localCaptor.capture());
+            verify(publishPipeline).publish(eq("test-chat-channel"), payloadCaptor.capture());
+            assertArrayEquals(localCaptor.getValue().payload(), ClusterEnvelope.open(payloadCaptor.getValue()));
+            ClusterEnvelope.Header header = ClusterEnvelope.header(payloadCaptor.getValue());
+            assertEquals(nodeIdentifier.shortId(), header.origin());
+            assertNull(header.room());
+            assertEquals(message.getHlc(), header.hlc());
+        }
+
+        @Test
+        @DisplayName("should echo locally before handing the message to the publisher")
+        void shouldEchoLocallyBeforeHandingMessageToPublisher() {
+            // Given
+            ChatMessage message = ChatMessage.create("Ordered", "testuser", MessageIdGenerator.RANDOM);
+
+            // When
+            broadcaster.broadcast(message);
+
+            // Then
+            InOrder inOrder = inOrder(sessionManager, publishPipeline);
+            inOrder.verify(sessionManager).broadcast(any(EncodedChatMessage.class));
+            inOrder.verify(publishPipeline).publish(eq("test-chat-channel"), any());
+        }
+
+        @Test
+        @DisplayName("should handle null message")
+        void shouldHandleNullMessageGracefully() {
+            // When & Then - should not throw NullPointerException from ClusterMessageBroadcaster
+            assertThrows(NullPointerException.class,() -> {
+                broadcaster.broadcast(null);
+            });
+        }
+
+        @Test
+        @DisplayName("should handle message with null properties")
+        void shouldHandleMessageWithNullProperties() {
+            // Given
+            ChatMessage message = new ChatMessage();
+
+            // When & Then
+            assertDoesNotThrow(() -> {
+                broadcaster.broadcast(message);
+            });
+
+            // Verify nodeId was set
+            assertEquals("test-node-123", message.getNodeId());
+        }
+
+    }
+}
@@ -1,10 +1,16 @@
 package net.malevy.chatserver.infrastructure.adapters.cluster;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.malevy.chatserver.application.ports.SessionManager;
 import net.malevy.chatserver.config.ObjectMapperConfig;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
 import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -14,11 +20,19 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,23 +45,38 @@ class ClusterMessageListenerTest {
     private SessionManager sessionManager;
 
     private ObjectMapper objectMapper;
+    private ChatMessageCodec codec;
     private NodeIdentifier nodeIdentifier;
     private ChannelTopic chatTopic;
+    private SimpleMeterRegistry meterRegistry;
+    private HybridLogicalClock clock;
+    private ReorderBuffer reorderBuffer;
     private ClusterMessageListener listener;
 
     @BeforeEach
     void setUp() {
         ObjectMapperConfig config = new ObjectMapperConfig();
         objectMapper = config.buildObjectMapper();
+        codec = new ChatMessageCodec(objectMapper);
         nodeIdentifier = new NodeIdentifier("current-node-123");
         chatTopic = new ChannelTopic("test-chat-topic");
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), meterRegistry);
+        reorderBuffer = new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock,
+                new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)), meterRegistry);
         
         listener = new ClusterMessageListener(
                 listenerContainer,
-                objectMapper,
+                codec,
                 sessionManager,
                 nodeIdentifier,
-                chatTopic
+                chatTopic,
+                new RoomTopics("test-room:"),
+                new NodeTopics("test-node:"),
+                clock,
+                reorderBuffer,
+                RoomExecutor.INLINE,
+                meterRegistry
         );
     }
 
@@ -60,25 +89,47 @@ class ClusterMessageListenerTest {
         void shouldCreateInstanceWithAllDependencies() {
             ClusterMessageListener listener = new ClusterMessageListener(
                     listenerContainer,
-                    objectMapper,
+                    codec,
                     sessionManager,
                     nodeIdentifier,
-                    chatTopic
+                    chatTopic,
+                    new RoomTopics("test-room:"),
+                    new NodeTopics("test-node:"),
+                    clock,
+                    reorderBuffer,
+                    RoomExecutor.INLINE,
+                    meterRegistry
             );
 
             assertNotNull(listener);
         }
     }
 
+    @Nested
+    @DisplayName("init method")
+    class InitTest {
+
+        @Test
+        @DisplayName("should subscribe to the shared channel and to this node's direct message channel")
+        void shouldSubscribeToSharedAndNodeChannels() {
+            // When
+            listener.init();
+
+            // Then
+            verify(listenerContainer).addMessageListener(any(MessageListener.class),
+                    eq(List.of(chatTopic, new ChannelTopic("test-node:current-node-123"))));
+        }
+    }
+
     @Nested
     @DisplayName("onMessage method")
     class OnMessageTest {
 
         @Test
-        @DisplayName("should deserialize message and broadcast to session manager")
-        void shouldDeserializeMessageAndBroadcastToSessionManager() throws Exception {
+        @DisplayName("should forward the received payload to session manager")
+        void shouldForwardReceivedPayloadToSessionManager() throws Exception {
             // Given
-            ChatMessage originalMessage = ChatMessage.create("Hello cluster", "remote-user");
+            ChatMessage originalMessage = ChatMessage.create("Hello cluster", "remote-user", MessageIdGenerator.RANDOM);
             originalMessage.setNodeId("remote-node-456");
             String messageJson = objectMapper.writeValueAsString(originalMessage);
             DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(), messageJson.getBytes());
@@ -87,20 +138,43 @@ class ClusterMessageListenerTest {
             listener.onMessage(redisMessage, null);
 
             // Then
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            ArgumentCaptor<EncodedChatMessage> messageCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
             verify(sessionManager).broadcast(messageCaptor.capture());
 
-            ChatMessage capturedMessage = messageCaptor.getValue();
+            assertArrayEquals(messageJson.getBytes(), messageCaptor.getValue().payload());
+            assertEquals(originalMessage.getId(), messageCaptor.getValue().id());
+            assertEquals("remote-node-456", messageCaptor.getValue().nodeId());
+
+            ChatMessage capturedMessage = codec.decode(messageCaptor.getValue());
             assertEquals("Hello cluster", capturedMessage.getMessage());
             assertEquals("remote-user", capturedMessage.getUsername());
             assertEquals("remote-node-456", capturedMessage.getNodeId());
         }
 
+        @Test
+        @DisplayName("should move the local clock past the sender's timestamp")
+        void shouldMoveLocalClockPastSendersTimestamp() throws Exception {
+            // Given
+            long remote = clock.current() + HybridLogicalClock.of(200);
+            ChatMessage originalMessage = ChatMessage.create("From the future", "remote-user", MessageIdGenerator.RANDOM);
+            originalMessage.setNodeId("remote-node-456");
+            originalMessage.setHlc(remote);
+            DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(),
+                    objectMapper.writeValueAsBytes(originalMessage));
+
+            // When
+            listener.onMessage(redisMessage, null);
+
+            // Then
+            assertTrue(clock.now() > remote);
+            verify(sessionManager).broadcast(any(EncodedChatMessage.class));
+        }
+
         @Test
         @DisplayName("should skip messages from same node to avoid infinite loop")
         void shouldSkipMessagesFromSameNodeToAvoidInfiniteLoop() throws Exception {
             // Given
-            ChatMessage sameNodeMessage = ChatMessage.create("Local message", "local-user");
+            ChatMessage sameNodeMessage = ChatMessage.create("Local message", "local-user", MessageIdGenerator.RANDOM);
             sameNodeMessage.setNodeId("current-node-123"); // Same as nodeIdentifier
             String messageJson = objectMapper.writeValueAsString(sameNodeMessage);
             DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(), messageJson.getBytes());
@@ -109,7 +183,44 @@ class ClusterMessageListenerTest {
             listener.onMessage(redisMessage, null);
 
             // Then
-            verify(sessionManager, never()).broadcast(any());
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
+        }
+
+        @Test
+        @DisplayName("should hand the raw message to the shard of the room its channel names")
+        void shouldHandRawMessageToShardOfChannelsRoom() {
+            // Given
+            List<String> rooms = new ArrayList<>();
+            List<Runnable> tasks = new ArrayList<>();
+            ClusterMessageListener keyed = new ClusterMessageListener(listenerContainer, codec, sessionManager,
+                    nodeIdentifier, chatTopic, new RoomTopics("test-room:"), new NodeTopics("test-node:"), clock, reorderBuffer,
+                    (room, task) -> rooms.add(room) && tasks.add(task), meterRegistry);
+
+            // When: not even valid JSON, since nothing is decoded before the hand-off
+            keyed.onMessage(new DefaultMessage("test-room:lobby".getBytes(), "invalid json".getBytes()), null);
+            keyed.onMessage(new DefaultMessage("test-chat-topic".getBytes(), "invalid json".getBytes()), null);
+
+            // Then
+            assertEquals(Arrays.asList("lobby", null), rooms);
+            assertEquals(0, meterRegistry.get("chat.cluster.receive.failures").counter().count());
+            tasks.forEach(Runnable::run);
+            assertEquals(2, meterRegistry.get("chat.cluster.receive.failures").counter().count());
+        }
+
+        @Test
+        @DisplayName("should count messages its room's shard had no room for")
+        void shouldCountMessagesShardRejected() {
+            // Given
+            ClusterMessageListener full = new ClusterMessageListener(listenerContainer, codec, sessionManager,
+                    nodeIdentifier, chatTopic, new RoomTopics("test-room:"), new NodeTopics("test-node:"), clock, reorderBuffer,
+                    (room, task) -> false, meterRegistry);
+
+            // When
+            full.onMessage(new DefaultMessage("test-room:lobby".getBytes(), "{}".getBytes()), null);
+
+            // Then
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.rejected").counter().count());
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
         }
 
         @Test
@@ -124,7 +235,8 @@ class ClusterMessageListenerTest {
             });
 
             // Verify sessionManager was not called
-            verify(sessionManager, never()).broadcast(any());
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.failures").counter().count());
         }
 
         @Test
@@ -139,14 +251,14 @@ class ClusterMessageListenerTest {
             });
 
             // Verify sessionManager was not called
-            verify(sessionManager, never()).broadcast(any());
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
         }
 
         @Test
         @DisplayName("should handle message with null nodeId")
         void shouldHandleMessageWithNullNodeId() throws Exception {
             // Given
-            ChatMessage messageWithNullNodeId = ChatMessage.create("Test", "user");
+            ChatMessage messageWithNullNodeId = ChatMessage.create("Test", "user", MessageIdGenerator.RANDOM);
             messageWithNullNodeId.setNodeId(null);
             String messageJson = objectMapper.writeValueAsString(messageWithNullNodeId);
             DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(), messageJson.getBytes());
@@ -155,18 +267,18 @@ class ClusterMessageListenerTest {
             listener.onMessage(redisMessage, null);
 
             // Then - should broadcast since null != current node id
-            verify(sessionManager).broadcast(any(ChatMessage.class));
+            verify(sessionManager).broadcast(any(EncodedChatMessage.class));
         }
 
         @Test
         @DisplayName("should handle sessionManager exceptions gracefully")
         void shouldHandleSessionManagerExceptionsGracefully() throws Exception {
             // Given
-            ChatMessage remoteMessage = ChatMessage.create("Test", "user");
+            ChatMessage remoteMessage = ChatMessage.create("Test", "user", MessageIdGenerator.RANDOM);
             remoteMessage.setNodeId("remote-node");
             String messageJson = objectMapper.writeValueAsString(remoteMessage);
             DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(), messageJson.getBytes());
-            doThrow(new RuntimeException("SessionManager error")).when(sessionManager).broadcast(any());
+            doThrow(new RuntimeException("SessionManager error")).when(sessionManager).broadcast(any(EncodedChatMessage.class));
 
             // When & Then - should not throw exception
             assertDoesNotThrow(() -> {
@@ -178,7 +290,7 @@ class ClusterMessageListenerTest {
         @DisplayName("should handle messages with empty nodeId string")
         void shouldHandleMessagesWithEmptyNodeIdString() throws Exception {
             // Given
-            ChatMessage messageWithEmptyNodeId = ChatMessage.create("Test", "user");
+            ChatMessage messageWithEmptyNodeId = ChatMessage.create("Test", "user", MessageIdGenerator.RANDOM);
             messageWithEmptyNodeId.setNodeId("");
             String messageJson = objectMapper.writeValueAsString(messageWithEmptyNodeId);
             DefaultMessage redisMessage = new DefaultMessage("test-channel".getBytes(), messageJson.getBytes());
@@ -187,8 +299,172 @@ class ClusterMessageListenerTest {
             listener.onMessage(redisMessage, null);
 
             // Then - should broadcast since "" != "current-node-123"
-            verify(sessionManager).broadcast(any(ChatMessage.class));
+            verify(sessionManager).broadcast(any(EncodedChatMessage.class));
+        }
+
+    }
+
+    @Nested
+    @DisplayName("enveloped messages")
+    class EnvelopeTest {
+
+        private DefaultMessage enveloped(String nodeId, int origin, String room, int compressAbove) throws Exception {
+            ChatMessage message = ChatMessage.createSystemMessage("joined", room, MessageIdGenerator.RANDOM);
+            message.setNodeId(nodeId);
+            byte[] body = objectMapper.writeValueAsBytes(message);
+            return new DefaultMessage(("test-room:" + room).getBytes(),
+                    new ClusterEnvelope(compressAbove).seal(origin, clock.now(), room, body));
+        }
+
+        @Test
+        @DisplayName("should drop this node's own echoes on the header without decoding the body")
+        void shouldDropOwnEchoesOnHeader() throws Exception {
+            // Given: the body claims another node, so only the header can have caught it
+            DefaultMessage redisMessage = enveloped("remote-node", nodeIdentifier.shortId(), "lobby", 0);
+
+            // When
+            listener.onMessage(redisMessage, null);
+
+            // Then
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.filtered").tag("reason", "own").counter().count());
+        }
+
+        @Test
+        @DisplayName("should drop messages for rooms without local members")
+        void shouldDropMessagesForRoomsWithoutLocalMembers() throws Exception {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(false);
+
+            // When
+            listener.onMessage(enveloped("remote-node", 42, "lobby", 0), null);
+
+            // Then
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.filtered").tag("reason", "no-members").counter().count());
+        }
+
+        @Test
+        @DisplayName("should deliver a message once when a retried publish batch sends it again")
+        void shouldDropSecondCopyOfRetriedMessage() throws Exception {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(true);
+            DefaultMessage first = enveloped("remote-node", 42, "lobby", 0);
+            DefaultMessage second = enveloped("remote-node", 42, "lobby", 0);
+
+            // When: the batch holding both failed after the first went out, and was sent again whole
+            listener.onMessage(first, null);
+            listener.onMessage(first, null);
+            listener.onMessage(second, null);
+
+            // Then
+            verify(sessionManager, times(2)).broadcast(any(EncodedChatMessage.class));
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.filtered").tag("reason", "duplicate").counter().count());
+        }
+
+        @Test
+        @DisplayName("should deliver the body of a wanted message, inflating it when it was compressed")
+        void shouldDeliverBodyOfWantedMessage() throws Exception {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(true);
+            ArgumentCaptor<EncodedChatMessage> messageCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+
+            // When
+            listener.onMessage(enveloped("remote-node", 42, "lobby", 0), null);
+            listener.onMessage(enveloped("remote-node", 42, "lobby", 1), null);
+
+            // Then
+            verify(sessionManager, times(2)).broadcast(messageCaptor.capture());
+            for (EncodedChatMessage delivered : messageCaptor.getAllValues()) {
+                assertEquals("lobby", delivered.room());
+                assertEquals('{', delivered.payload()[0]);
+                assertEquals("joined", codec.decode(delivered).getMessage());
+            }
+        }
+
+        @Test
+        @DisplayName("should hand a direct message to the session manager with its recipient")
+        void shouldHandDirectMessageToSessionManager() throws Exception {
+            // Given: a direct message has no room, so nothing about it is filtered on the header
+            ChatMessage source = new ChatMessage();
+            source.setMessage("psst");
+            source.setTo("bob");
+            ChatMessage direct = ChatMessage.directFrom(source, "alice", MessageIdGenerator.RANDOM);
+            direct.setNodeId("remote-node");
+            DefaultMessage redisMessage = new DefaultMessage("test-node:current-node-123".getBytes(),
+                    new ClusterEnvelope(0).seal(42, clock.now(), null, objectMapper.writeValueAsBytes(direct)));
+
+            // When
+            listener.onMessage(redisMessage, null);
+
+            // Then
+            ArgumentCaptor<EncodedChatMessage> messageCaptor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+            verify(sessionManager).broadcast(messageCaptor.capture());
+            assertEquals("bob", messageCaptor.getValue().to());
+            assertNull(messageCaptor.getValue().room());
+            verify(sessionManager, never()).hasMembers(any());
+        }
+
+        @Test
+        @DisplayName("should count a corrupt envelope as a failure")
+        void shouldCountCorruptEnvelopeAsFailure() {
+            // Given
+            DefaultMessage redisMessage = new DefaultMessage("test-room:lobby".getBytes(), new byte[]{(byte) 0xCE, 1, 0});
+
+            // When
+            listener.onMessage(redisMessage, null);
+
+            // Then
+            verify(sessionManager, never()).broadcast(any(EncodedChatMessage.class));
+            assertEquals(1, meterRegistry.get("chat.cluster.receive.failures").counter().count());
         }
+    }
 
+    @Nested
+    @DisplayName("reconcile method")
+    class ReconcileTest {
+
+        @Test
+        @DisplayName("should subscribe once when a room gains local members")
+        void shouldSubscribeOnceWhenRoomGainsLocalMembers() {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(true);
+
+            // When
+            listener.reconcile("lobby");
+            listener.reconcile("lobby");
+
+            // Then
+            verify(listenerContainer, times(1)).addMessageListener(any(MessageListener.class), eq(new ChannelTopic("test-room:lobby")));
+        }
+
+        @Test
+        @DisplayName("should unsubscribe when the last local member leaves")
+        void shouldUnsubscribeWhenLastLocalMemberLeaves() {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(true, false);
+            listener.reconcile("lobby");
+
+            // When
+            listener.reconcile("lobby");
+
+            // Then
+            ArgumentCaptor<MessageListener> added = ArgumentCaptor.forClass(MessageListener.class);
+            verify(listenerContainer).addMessageListener(added.capture(), eq(new ChannelTopic("test-room:lobby")));
+            verify(listenerContainer).removeMessageListener(added.getValue(), new ChannelTopic("test-room:lobby"));
+        }
+
+        @Test
+        @DisplayName("should ignore rooms it never subscribed to")
+        void shouldIgnoreRoomsItNeverSubscribedTo() {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(false);
+
+            // When
+            listener.reconcile("lobby");
+
+            // Then
+            verifyNoInteractions(listenerContainer);
+        }
     }
-}
\ No newline at end of file
+}
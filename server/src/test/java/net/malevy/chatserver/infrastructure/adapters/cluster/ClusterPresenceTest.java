@@ -0,0 +1,230 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceService;
+import net.malevy.chatserver.infrastructure.adapters.presence.PresenceSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterPresenceTest {
+
+    private static final PresenceSettings SETTINGS = new PresenceSettings(Duration.ofMillis(250), 50, Duration.ofSeconds(5), Duration.ofSeconds(15));
+    private static final ChannelTopic TOPIC = new ChannelTopic("chat:presence");
+
+    @Mock
+    private SessionManager sessionsOnA;
+
+    @Mock
+    private SessionManager sessionsOnB;
+
+    @Mock
+    private RedisMessageListenerContainer container;
+
+    @Mock
+    private RedisTemplate<String, byte[]> template;
+
+    private final ObjectMapper mapper = new ObjectMapperConfig().buildObjectMapper();
+    private final MutableClock clock = new MutableClock();
+    // every node on the channel; a publish reaches all of them unless the channel is down
+    private final List<ClusterPresence> subscribers = new ArrayList<>();
+    private boolean delivering = true;
+    private PresenceService presenceOnA;
+    private PresenceService presenceOnB;
+    private ClusterPresence nodeA;
+    private ClusterPresence nodeB;
+
+    @BeforeEach
+    void setUp() {
+        presenceOnA = new PresenceService(sessionsOnA, mapper, SETTINGS, new SimpleMeterRegistry());
+        presenceOnB = new PresenceService(sessionsOnB, mapper, SETTINGS, new SimpleMeterRegistry());
+        nodeA = new ClusterPresence(presenceOnA, container, template, TOPIC, new NodeIdentifier("node-a"), mapper,
+                SETTINGS, clock, new SimpleMeterRegistry());
+        nodeB = new ClusterPresence(presenceOnB, container, template, TOPIC, new NodeIdentifier("node-b"), mapper,
+                SETTINGS, clock, new SimpleMeterRegistry());
+        subscribers.addAll(List.of(nodeA, nodeB));
+        lenient().when(template.convertAndSend(anyString(), any())).thenAnswer(invocation -> {
+            if (!delivering) return 0L;
+            final byte[] body = invocation.getArgument(1);
+            final DefaultMessage message = new DefaultMessage(TOPIC.getTopic().getBytes(StandardCharsets.UTF_8), body);
+            for (ClusterPresence subscriber : List.copyOf(subscribers)) {
+                subscriber.onMessage(message, null);
+            }
+            return (long) subscribers.size();
+        });
+    }
+
+    private void tickBoth() {
+        nodeA.tick();
+        nodeB.tick();
+    }
+
+    // what a session joining the room on node B is told about it
+    private int countSeenOnB(String room) throws IOException {
+        final WebSocketSession session = mock(WebSocketSession.class);
+        presenceOnB.joined(session, "observer", room);
+        final ArgumentCaptor<EncodedChatMessage> captor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+        verify(sessionsOnB, atLeastOnce()).send(eq(session), captor.capture());
+        presenceOnB.left("observer", room);
+        return mapper.readTree(captor.getValue().payload()).get("count").asInt() - 1;
+    }
+
+    @Nested
+    @DisplayName("replication")
+    class ReplicationTest {
+
+        @Test
+        @DisplayName("should give a starting node the members other nodes already had")
+        void shouldSendStateToStartingNode() throws IOException {
+            // Given
+            presenceOnA.joined(mock(WebSocketSession.class), "alice", "lobby");
+
+            // When
+            tickBoth();
+
+            // Then
+            assertEquals(1, countSeenOnB("lobby"));
+        }
+
+        @Test
+        @DisplayName("should replicate later joins and leaves as deltas")
+        void shouldReplicateDeltas() throws IOException {
+            // Given
+            tickBoth();
+
+            // When
+            presenceOnA.joined(mock(WebSocketSession.class), "alice", "lobby");
+            presenceOnA.joined(mock(WebSocketSession.class), "bob", "lobby");
+            nodeA.tick();
+
+            // Then
+            assertEquals(2, countSeenOnB("lobby"));
+
+            // When
+            presenceOnA.left("bob", "lobby");
+            nodeA.tick();
+
+            // Then
+            assertEquals(1, countSeenOnB("lobby"));
+        }
+
+        @Test
+        @DisplayName("should resync from a full state after a lost delta")
+        void shouldResyncAfterLostDelta() throws IOException {
+            // Given
+            tickBoth();
+            presenceOnA.joined(mock(WebSocketSession.class), "alice", "lobby");
+            delivering = false;
+            nodeA.tick();
+            delivering = true;
+
+            // When
+            presenceOnA.joined(mock(WebSocketSession.class), "bob", "lobby");
+            nodeA.tick();
+
+            // Then: the out-of-sequence delta is not applied
+            assertEquals(0, countSeenOnB("lobby"));
+
+            // When: B asks, A answers
+            nodeB.tick();
+            nodeA.tick();
+
+            // Then
+            assertEquals(2, countSeenOnB("lobby"));
+        }
+    }
+
+    @Nested
+    @DisplayName("node expiry")
+    class NodeExpiryTest {
+
+        @Test
+        @DisplayName("should forget a node's members once it has been silent for expireAfter")
+        void shouldForgetSilentNode() throws IOException {
+            // Given
+            presenceOnA.joined(mock(WebSocketSession.class), "alice", "lobby");
+            tickBoth();
+            subscribers.remove(nodeA);
+
+            // When
+            clock.advance(SETTINGS.expireAfter().plusSeconds(1));
+            nodeB.tick();
+
+            // Then
+            assertEquals(0, countSeenOnB("lobby"));
+        }
+
+        @Test
+        @DisplayName("should keep a node that only sends heartbeats")
+        void shouldKeepNodeSendingHeartbeats() throws IOException {
+            // Given
+            presenceOnA.joined(mock(WebSocketSession.class), "alice", "lobby");
+            tickBoth();
+
+            // When
+            for (int i = 0; i < 4; i++) {
+                clock.advance(SETTINGS.heartbeat());
+                tickBoth();
+            }
+
+            // Then
+            assertEquals(1, countSeenOnB("lobby"));
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
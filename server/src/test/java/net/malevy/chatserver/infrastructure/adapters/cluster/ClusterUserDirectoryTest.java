@@ -0,0 +1,326 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterUserDirectoryTest {
+
+    private static final DirectorySettings SETTINGS = new DirectorySettings(Duration.ofSeconds(15), Duration.ofSeconds(1));
+
+    @Mock
+    private SessionManager sessionsOnA;
+
+    @Mock
+    private SessionManager sessionsOnB;
+
+    private final InMemoryUserLeases leases = new InMemoryUserLeases();
+    private final MutableClock clock = new MutableClock();
+    private SimpleMeterRegistry meterRegistry;
+    private ClusterUserDirectory nodeA;
+    private ClusterUserDirectory nodeB;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nodeA = new ClusterUserDirectory(leases, sessionsOnA, new NodeIdentifier("node-a"), SETTINGS, clock, Runnable::run, meterRegistry);
+        nodeB = new ClusterUserDirectory(leases, sessionsOnB, new NodeIdentifier("node-b"), SETTINGS, clock, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    // reconcile only notes the user; the renewer thread, not started here, is what leases them
+    private void connect(SessionManager sessions, ClusterUserDirectory directory, String username) {
+        when(sessions.isOnline(username)).thenReturn(true);
+        directory.reconcile(username);
+        directory.reconcileChanged();
+    }
+
+    private void disconnect(SessionManager sessions, ClusterUserDirectory directory, String username) {
+        when(sessions.isOnline(username)).thenReturn(false);
+        directory.reconcile(username);
+        directory.reconcileChanged();
+    }
+
+    @Nested
+    @DisplayName("reconcile method")
+    class ReconcileTest {
+
+        @Test
+        @DisplayName("should lease a user while they have sessions here and release them after")
+        void shouldLeaseWhileConnectedAndReleaseAfter() {
+            // When
+            connect(sessionsOnB, nodeB, "bob");
+
+            // Then
+            assertEquals(List.of("node-b"), nodeA.nodesOf("bob"));
+            assertEquals(Set.of("bob"), nodeB.held());
+
+            // When
+            disconnect(sessionsOnB, nodeB, "bob");
+            clock.advance(SETTINGS.cacheTtl());
+
+            // Then
+            assertEquals(List.of(), nodeA.nodesOf("bob"));
+            assertEquals(Set.of(), nodeB.held());
+        }
+
+        @Test
+        @DisplayName("should leave Redis alone until the renewer picks up the users who changed")
+        void shouldLeaveLeasingToTheRenewer() {
+            // Given
+            when(sessionsOnB.isOnline("bob")).thenReturn(true);
+            when(sessionsOnB.isOnline("carol")).thenReturn(true);
+
+            // When
+            nodeB.reconcile("bob");
+            nodeB.reconcile("carol");
+
+            // Then
+            assertEquals(Set.of(), nodeB.held());
+            assertEquals(List.of(), leases.holders("bob", clock.millis()));
+
+            // When
+            nodeB.reconcileChanged();
+
+            // Then
+            assertEquals(Set.of("bob", "carol"), nodeB.held());
+            assertEquals(List.of("node-b"), leases.holders("carol", clock.millis()));
+        }
+
+        @Test
+        @DisplayName("should keep a user it failed to release and retry on the next renewal")
+        void shouldRetryFailedRelease() {
+            // Given
+            connect(sessionsOnB, nodeB, "bob");
+            leases.failing(true);
+            disconnect(sessionsOnB, nodeB, "bob");
+            assertEquals(Set.of("bob"), nodeB.held());
+
+            // When
+            leases.failing(false);
+            nodeB.renewAll();
+
+            // Then
+            assertEquals(Set.of(), nodeB.held());
+            assertEquals(List.of(), leases.holders("bob", clock.millis()));
+        }
+    }
+
+    @Nested
+    @DisplayName("nodesOf method")
+    class NodesOfTest {
+
+        @Test
+        @DisplayName("should leave this node out of the nodes holding a user")
+        void shouldLeaveThisNodeOut() {
+            // When
+            connect(sessionsOnA, nodeA, "bob");
+            connect(sessionsOnB, nodeB, "bob");
+
+            // Then
+            assertEquals(List.of("node-b"), nodeA.nodesOf("bob"));
+            assertEquals(List.of("node-a"), nodeB.nodesOf("bob"));
+        }
+
+        @Test
+        @DisplayName("should count this node among the nodes holding a user, as of the last renewal")
+        void shouldCountThisNodeAmongHolders() {
+            // When
+            connect(sessionsOnA, nodeA, "bob");
+
+            // Then
+            assertEquals(1, nodeA.nodesHolding("bob"));
+
+            // When
+            connect(sessionsOnB, nodeB, "bob");
+            nodeA.renewAll();
+
+            // Then
+            assertEquals(2, nodeA.nodesHolding("bob"));
+            assertEquals(0, leases.lookups());
+        }
+
+        @Test
+        @DisplayName("should answer from the cache until it expires")
+        void shouldAnswerFromCacheUntilItExpires() {
+            // Given
+            connect(sessionsOnB, nodeB, "bob");
+            nodeA.nodesOf("bob");
+
+            // When
+            nodeA.nodesOf("bob");
+            nodeA.nodesOf("bob");
+
+            // Then
+            assertEquals(1, leases.lookups());
+            assertEquals(2, meterRegistry.get("chat.cluster.directory.lookups").tag("result", "hit").counter().count());
+
+            // When
+            clock.advance(SETTINGS.cacheTtl());
+            nodeA.nodesOf("bob");
+
+            // Then
+            assertEquals(2, leases.lookups());
+        }
+
+        @Test
+        @DisplayName("should stop returning a node that died once its lease runs out")
+        void shouldDropDeadNodeOnceLeaseRunsOut() {
+            // Given: node B holds bob and then stops renewing without releasing anything
+            connect(sessionsOnB, nodeB, "bob");
+            assertEquals(List.of("node-b"), nodeA.nodesOf("bob"));
+
+            // When
+            clock.advance(SETTINGS.lease());
+
+            // Then
+            assertEquals(List.of(), nodeA.nodesOf("bob"));
+        }
+
+        @Test
+        @DisplayName("should keep a node that renews its leases")
+        void shouldKeepNodeThatRenews() {
+            // Given
+            connect(sessionsOnB, nodeB, "bob");
+
+            // When
+            for (int i = 0; i < 6; i++) {
+                clock.advance(SETTINGS.renewEvery());
+                nodeB.renewAll();
+            }
+
+            // Then
+            assertEquals(List.of("node-b"), nodeA.nodesOf("bob"));
+        }
+
+        @Test
+        @DisplayName("should fall back to the last known route when Redis cannot be reached")
+        void shouldFallBackToLastKnownRoute() {
+            // Given
+            connect(sessionsOnB, nodeB, "bob");
+            nodeA.nodesOf("bob");
+            clock.advance(SETTINGS.cacheTtl());
+            leases.failing(true);
+
+            // When & Then
+            assertEquals(List.of("node-b"), nodeA.nodesOf("bob"));
+            assertEquals(List.of(), nodeA.nodesOf("carol"));
+            assertEquals(2, meterRegistry.get("chat.cluster.directory.failures").counter().count());
+        }
+    }
+
+    @Nested
+    @DisplayName("lookup method")
+    class LookupTest {
+
+        @Test
+        @DisplayName("should look a miss up on the lookup executor rather than the caller's thread")
+        void shouldLookUpMissOnLookupExecutor() {
+            // Given
+            Deque<Runnable> pending = new ArrayDeque<>();
+            ClusterUserDirectory directory = new ClusterUserDirectory(leases, sessionsOnA, new NodeIdentifier("node-a"),
+                    SETTINGS, clock, pending::add, new SimpleMeterRegistry());
+            connect(sessionsOnB, nodeB, "bob");
+            List<List<String>> found = new ArrayList<>();
+
+            // When
+            assertNull(directory.cachedNodesOf("bob"));
+            assertTrue(directory.lookup("bob", found::add));
+
+            // Then
+            assertEquals(List.of(), found);
+            assertEquals(0, leases.lookups());
+
+            // When
+            pending.poll().run();
+
+            // Then
+            assertEquals(List.of(List.of("node-b")), found);
+            assertEquals(List.of("node-b"), directory.cachedNodesOf("bob"));
+        }
+
+        @Test
+        @DisplayName("should not answer from the cache while an earlier lookup is still queued")
+        void shouldNotOvertakeQueuedLookup() {
+            // Given
+            Deque<Runnable> pending = new ArrayDeque<>();
+            ClusterUserDirectory directory = new ClusterUserDirectory(leases, sessionsOnA, new NodeIdentifier("node-a"),
+                    SETTINGS, clock, pending::add, new SimpleMeterRegistry());
+            connect(sessionsOnB, nodeB, "bob");
+            directory.lookup("bob", nodes -> { });
+            pending.poll().run();
+
+            // When
+            directory.lookup("carol", nodes -> { });
+
+            // Then
+            assertNull(directory.cachedNodesOf("bob"));
+
+            // When
+            pending.poll().run();
+
+            // Then
+            assertEquals(List.of("node-b"), directory.cachedNodesOf("bob"));
+        }
+
+        @Test
+        @DisplayName("should refuse a lookup the executor will not take")
+        void shouldRefuseLookupExecutorWillNotTake() {
+            // Given
+            ClusterUserDirectory directory = new ClusterUserDirectory(leases, sessionsOnA, new NodeIdentifier("node-a"),
+                    SETTINGS, clock, task -> {
+                        throw new RejectedExecutionException("full");
+                    }, meterRegistry);
+
+            // When & Then
+            assertFalse(directory.lookup("bob", nodes -> fail("should not be looked up")));
+            assertEquals(1, meterRegistry.get("chat.cluster.directory.failures").counter().count());
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HybridLogicalClockTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+    private SimpleMeterRegistry meterRegistry;
+    private HybridLogicalClock clock;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new HybridLogicalClock(Clock.fixed(NOW, ZoneOffset.UTC), Duration.ofSeconds(1), meterRegistry);
+    }
+
+    @Nested
+    @DisplayName("now method")
+    class NowTest {
+
+        @Test
+        @DisplayName("should follow the wall clock")
+        void shouldFollowWallClock() {
+            // When
+            long timestamp = clock.now();
+
+            // Then
+            assertEquals(NOW.toEpochMilli(), HybridLogicalClock.physicalOf(timestamp));
+        }
+
+        @Test
+        @DisplayName("should count up while the wall clock stands still")
+        void shouldCountUpWhileWallClockStandsStill() {
+            // When
+            long first = clock.now();
+            long second = clock.now();
+
+            // Then
+            assertEquals(first + 1, second);
+            assertEquals(HybridLogicalClock.physicalOf(first), HybridLogicalClock.physicalOf(second));
+        }
+    }
+
+    @Nested
+    @DisplayName("receive method")
+    class ReceiveTest {
+
+        @Test
+        @DisplayName("should order the next local timestamp after a remote one from a faster clock")
+        void shouldOrderNextTimestampAfterRemoteOne() {
+            // Given
+            long remote = HybridLogicalClock.of(NOW.toEpochMilli() + 300) + 7;
+
+            // When
+            clock.receive(remote);
+
+            // Then
+            assertEquals(remote, clock.current());
+            assertTrue(clock.now() > remote);
+        }
+
+        @Test
+        @DisplayName("should ignore a remote timestamp behind the local clock")
+        void shouldIgnoreRemoteTimestampBehindLocalClock() {
+            // Given
+            long local = clock.now();
+
+            // When
+            clock.receive(HybridLogicalClock.of(NOW.toEpochMilli() - 5_000));
+
+            // Then
+            assertEquals(local + 1, clock.now());
+        }
+
+        @Test
+        @DisplayName("should not adopt a remote timestamp beyond the allowed drift")
+        void shouldNotAdoptRemoteTimestampBeyondAllowedDrift() {
+            // When
+            clock.receive(HybridLogicalClock.of(NOW.toEpochMilli() + 60_000));
+
+            // Then
+            assertEquals(NOW.toEpochMilli(), HybridLogicalClock.physicalOf(clock.now()));
+            assertEquals(1.0, meterRegistry.counter("chat.cluster.clock.drift.rejected").count());
+        }
+
+        @Test
+        @DisplayName("should ignore messages without a timestamp")
+        void shouldIgnoreMessagesWithoutTimestamp() {
+            // When
+            clock.receive(0);
+
+            // Then
+            assertEquals(HybridLogicalClock.of(NOW.toEpochMilli()), clock.current());
+        }
+    }
+}
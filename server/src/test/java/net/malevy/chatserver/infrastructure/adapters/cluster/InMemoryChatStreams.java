@@ -0,0 +1,81 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stand-in for Redis Streams: XADD/XREAD/XREVRANGE semantics over in-memory lists, plus fault injection
+class InMemoryChatStreams implements ChatStreams {
+
+    private final Map<String, List<StreamEntry>> streams = new HashMap<>();
+    private long lastId;
+    private int failingReads;
+    private boolean ignoreOffsetsOnce;
+    private int reads;
+
+    synchronized String add(String key, byte[] payload) {
+        final StreamEntry entry = new StreamEntry(key, ++lastId + "-0", payload);
+        streams.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        notifyAll();
+        return entry.id();
+    }
+
+    // the next reads fail as if the connection dropped
+    synchronized void failNextReads(int count) {
+        failingReads = count;
+    }
+
+    // the next read returns every entry again, as a redelivery would
+    synchronized void redeliverOnce() {
+        ignoreOffsetsOnce = true;
+    }
+
+    synchronized int reads() {
+        return reads;
+    }
+
+    @Override
+    public synchronized List<StreamEntry> read(Map<String, String> offsets, int count, Duration block) {
+        reads++;
+        if (failingReads > 0) {
+            failingReads--;
+            throw new RedisConnectionFailureException("connection lost");
+        }
+        List<StreamEntry> found = collect(offsets, count);
+        final long deadline = System.nanoTime() + block.toNanos();
+        long remaining;
+        while (found.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                wait(Math.max(1, remaining / 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            }
+            found = collect(offsets, count);
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized List<StreamEntry> last(String key, int count) {
+        final List<StreamEntry> entries = streams.getOrDefault(key, List.of());
+        return List.copyOf(entries.subList(Math.max(0, entries.size() - count), entries.size()));
+    }
+
+    private List<StreamEntry> collect(Map<String, String> offsets, int count) {
+        final boolean everything = ignoreOffsetsOnce;
+        ignoreOffsetsOnce = false;
+        final List<StreamEntry> found = new ArrayList<>();
+        for (Map.Entry<String, String> offset : offsets.entrySet()) {
+            for (StreamEntry entry : streams.getOrDefault(offset.getKey(), List.of())) {
+                if (found.size() == count) return found;
+                if (everything || StreamMessageListener.compareIds(entry.id(), offset.getValue()) > 0) found.add(entry);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,63 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stand-in for the per-user sorted sets in Redis: node -> lease expiry per user, plus fault injection
+class InMemoryUserLeases implements UserLeases {
+
+    private final Map<String, Map<String, Long>> users = new HashMap<>();
+    private boolean failing;
+    private int lookups;
+
+    synchronized void failing(boolean failing) {
+        this.failing = failing;
+    }
+
+    synchronized int lookups() {
+        return lookups;
+    }
+
+    @Override
+    public synchronized void renew(Collection<String> usernames, String nodeId, long now, Duration lease) {
+        failIfAsked();
+        for (String username : usernames) {
+            final Map<String, Long> holders = users.computeIfAbsent(username, u -> new HashMap<>());
+            holders.values().removeIf(expiresAt -> expiresAt <= now);
+            holders.put(nodeId, now + lease.toMillis());
+        }
+    }
+
+    @Override
+    public synchronized void release(String username, String nodeId) {
+        failIfAsked();
+        final Map<String, Long> holders = users.get(username);
+        if (holders != null) holders.remove(nodeId);
+    }
+
+    @Override
+    public synchronized List<String> holders(String username, long now) {
+        failIfAsked();
+        lookups++;
+        final Map<String, Long> holders = users.getOrDefault(username, Map.of());
+        return holders.entrySet().stream().filter(e -> e.getValue() > now).map(Map.Entry::getKey).sorted().toList();
+    }
+
+    @Override
+    public synchronized Map<String, Integer> counts(Collection<String> usernames, long now) {
+        failIfAsked();
+        final Map<String, Integer> counts = new HashMap<>();
+        for (String username : usernames) {
+            final Map<String, Long> holders = users.getOrDefault(username, Map.of());
+            counts.put(username, (int) holders.values().stream().filter(expiresAt -> expiresAt > now).count());
+        }
+        return counts;
+    }
+
+    private void failIfAsked() {
+        if (failing) throw new IllegalStateException("Redis is unavailable");
+    }
+}
@@ -0,0 +1,220 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisPublishPipelineTest {
+
+    @Mock
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Mock
+    private RedisConnection connection;
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<Integer> batches;
+    private List<String> published;
+    private RedisPublishPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        batches = Collections.synchronizedList(new ArrayList<>());
+        published = Collections.synchronizedList(new ArrayList<>());
+        lenient().when(connection.publish(any(byte[].class), any(byte[].class))).thenAnswer(invocation -> {
+            published.add(new String(invocation.<byte[]>getArgument(1)));
+            return 1L;
+        });
+        lenient().when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            int before = published.size();
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            batches.add(published.size() - before);
+            return List.of();
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (pipeline != null) pipeline.stop();
+    }
+
+    private RedisPublishPipeline start(int batchSize, Duration maxDelay, int capacity) {
+        pipeline = new RedisPublishPipeline(redisTemplate, new PublishPipelineSettings(batchSize, maxDelay, capacity),
+                PipelinedCommand.PUBLISH, meterRegistry);
+        pipeline.start();
+        return pipeline;
+    }
+
+    @Nested
+    @DisplayName("publish method")
+    class PublishTest {
+
+        @Test
+        @DisplayName("should publish in the order messages were queued")
+        void shouldPublishInQueueOrder() {
+            // Given
+            start(4, Duration.ofMillis(1), 1000);
+
+            // When
+            for (int i = 0; i < 100; i++) {
+                pipeline.publish("chat:room:lobby", ("m" + i).getBytes());
+            }
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> published.size() == 100);
+            for (int i = 0; i < 100; i++) {
+                assertEquals("m" + i, published.get(i));
+            }
+            assertTrue(batches.stream().allMatch(size -> size <= 4));
+        }
+
+        @Test
+        @DisplayName("should flush a partial batch once the deadline passes")
+        void shouldFlushPartialBatchOnceDeadlinePasses() {
+            // Given
+            start(64, Duration.ofMillis(5), 1000);
+
+            // When
+            pipeline.publish("chat:messages", "only".getBytes());
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> published.size() == 1);
+            assertEquals(List.of(1), batches);
+            assertEquals(0, pipeline.queued());
+            assertEquals(1, meterRegistry.get("chat.cluster.publish.latency").timer().count());
+        }
+
+        @Test
+        @DisplayName("should reject messages once the queue is full")
+        void shouldRejectMessagesOnceQueueIsFull() throws InterruptedException {
+            // Given
+            CountDownLatch release = new CountDownLatch(1);
+            when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+                release.await(5, TimeUnit.SECONDS);
+                return List.of();
+            });
+            start(1, Duration.ZERO, 2);
+            pipeline.publish("chat:messages", "in-flight".getBytes());
+            await().atMost(Duration.ofSeconds(5)).until(() -> pipeline.queued() == 0);
+
+            // When
+            boolean first = pipeline.publish("chat:messages", "a".getBytes());
+            boolean second = pipeline.publish("chat:messages", "b".getBytes());
+            boolean third = pipeline.publish("chat:messages", "c".getBytes());
+
+            // Then
+            assertTrue(first);
+            assertTrue(second);
+            assertFalse(third);
+            assertEquals(2.0, meterRegistry.get("chat.cluster.publish.queue.depth").gauge().value());
+            assertEquals(1.0, meterRegistry.get("chat.cluster.publish.rejected").counter().count());
+            release.countDown();
+        }
+
+        @Test
+        @DisplayName("should try a failed batch once more before giving up on it")
+        void shouldRetryFailedBatchOnce() {
+            // Given
+            when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                    .thenThrow(new IllegalStateException("connection lost"))
+                    .thenReturn(List.of());
+            start(1, Duration.ZERO, 10);
+
+            // When
+            pipeline.publish("chat:messages", "retried".getBytes());
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() ->
+                    meterRegistry.get("chat.cluster.publish.latency").timer().count() == 1);
+            verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+            assertEquals(0.0, meterRegistry.get("chat.cluster.publish.failed").counter().count());
+        }
+
+        @Test
+        @DisplayName("should keep publishing after a batch fails twice")
+        void shouldKeepPublishingAfterFailedBatch() {
+            // Given
+            when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                    .thenThrow(new IllegalStateException("connection lost"))
+                    .thenThrow(new IllegalStateException("connection lost"))
+                    .thenReturn(List.of());
+            start(1, Duration.ZERO, 10);
+
+            // When
+            pipeline.publish("chat:messages", "lost".getBytes());
+            await().atMost(Duration.ofSeconds(5)).until(() -> meterRegistry.get("chat.cluster.publish.failed").counter().count() == 1.0);
+            pipeline.publish("chat:messages", "next".getBytes());
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                    verify(redisTemplate, times(3)).executePipelined(any(RedisCallback.class)));
+        }
+
+        @Test
+        @DisplayName("should drain queued messages on stop")
+        void shouldDrainQueuedMessagesOnStop() throws InterruptedException {
+            // Given
+            start(64, Duration.ofSeconds(10), 1000);
+            pipeline.publish("chat:messages", "a".getBytes());
+            pipeline.publish("chat:messages", "b".getBytes());
+
+            // When
+            pipeline.stop();
+
+            // Then
+            assertEquals(List.of("a", "b"), published);
+        }
+    }
+
+    @Nested
+    @DisplayName("xadd command")
+    class XaddCommandTest {
+
+        @Test
+        @DisplayName("should append the payload to the stream with approximate MAXLEN trimming")
+        @SuppressWarnings("unchecked")
+        void shouldAppendWithApproximateTrimming() {
+            // Given
+            RedisStreamCommands streamCommands = mock(RedisStreamCommands.class);
+            when(connection.streamCommands()).thenReturn(streamCommands);
+            ArgumentCaptor<MapRecord<byte[], byte[], byte[]>> record = ArgumentCaptor.forClass(MapRecord.class);
+            ArgumentCaptor<RedisStreamCommands.XAddOptions> options = ArgumentCaptor.forClass(RedisStreamCommands.XAddOptions.class);
+
+            // When
+            PipelinedCommand.xadd(500).write(connection, "chat:room:lobby".getBytes(), "payload".getBytes());
+
+            // Then
+            verify(streamCommands).xAdd(record.capture(), options.capture());
+            assertEquals("chat:room:lobby", new String(record.getValue().getStream()));
+            assertEquals("payload", new String(record.getValue().getValue().values().iterator().next()));
+            assertEquals(500L, options.getValue().getMaxlen());
+            assertTrue(options.getValue().isApproximateTrimming());
+        }
+    }
+}
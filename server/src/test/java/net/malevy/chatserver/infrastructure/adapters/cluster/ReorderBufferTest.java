@@ -0,0 +1,280 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReorderBufferTest {
+
+    private static final long NOW = Instant.parse("2026-03-01T12:00:00Z").toEpochMilli();
+    private static final Duration WINDOW = Duration.ofMillis(50);
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private HybridLogicalClock clock;
+    private ReorderBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(invocation -> {
+            EncodedChatMessage message = invocation.getArgument(0);
+            delivered.add(message.id());
+            return null;
+        }).when(sessionManager).broadcast(any(EncodedChatMessage.class));
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new HybridLogicalClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC), Duration.ofSeconds(1),
+                meterRegistry);
+        buffer = new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock, new OrderingSettings(WINDOW, Duration.ofSeconds(1)), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        buffer.stop();
+    }
+
+    private static EncodedChatMessage message(String id, String room, String nodeId, long hlc) {
+        return new EncodedChatMessage(id, "message", room, nodeId, hlc, new byte[0]);
+    }
+
+    private static long at(long offsetMillis) {
+        return HybridLogicalClock.of(NOW + offsetMillis);
+    }
+
+    @Nested
+    @DisplayName("offer method")
+    class OfferTest {
+
+        @Test
+        @DisplayName("should deliver at once when there is no window")
+        void shouldDeliverAtOnceWithoutWindow() {
+            // Given
+            ReorderBuffer passThrough = new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock,
+                    new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)), meterRegistry);
+
+            // When
+            passThrough.offer(message("b", "lobby", "n1", at(-10)));
+            passThrough.offer(message("a", "lobby", "n1", at(-20)));
+
+            // Then
+            assertEquals(List.of("b", "a"), delivered);
+        }
+
+        @Test
+        @DisplayName("should hold messages until the window has passed them")
+        void shouldHoldMessagesUntilWindowHasPassed() {
+            // When
+            buffer.offer(message("a", "lobby", "n1", at(-10)));
+
+            // Then
+            assertTrue(delivered.isEmpty());
+            assertEquals(1, buffer.buffered());
+
+            // When
+            buffer.release(at(-10));
+
+            // Then
+            assertEquals(List.of("a"), delivered);
+            assertEquals(0, buffer.buffered());
+        }
+
+        @Test
+        @DisplayName("should release a room's messages in timestamp order and count the ones it reordered")
+        void shouldReleaseInTimestampOrder() {
+            // Given
+            buffer.offer(message("third", "lobby", "n1", at(-10)));
+            buffer.offer(message("first", "lobby", "n2", at(-30)));
+            buffer.offer(message("second", "lobby", "n1", at(-20)));
+
+            // When
+            buffer.release(at(0));
+
+            // Then
+            assertEquals(List.of("first", "second", "third"), delivered);
+            assertEquals(2.0, meterRegistry.counter("chat.cluster.reorder.reordered").count());
+        }
+
+        @Test
+        @DisplayName("should break timestamp ties by node")
+        void shouldBreakTimestampTiesByNode() {
+            // Given
+            buffer.offer(message("from-b", "lobby", "node-b", at(-10)));
+            buffer.offer(message("from-a", "lobby", "node-a", at(-10)));
+
+            // When
+            buffer.release(at(0));
+
+            // Then
+            assertEquals(List.of("from-a", "from-b"), delivered);
+        }
+
+        @Test
+        @DisplayName("should deliver a message older than one already released at once and count it as late")
+        void shouldDeliverLateMessagesAtOnce() {
+            // Given
+            buffer.offer(message("later", "lobby", "n1", at(-10)));
+            buffer.release(at(0));
+
+            // When
+            buffer.offer(message("earlier", "lobby", "n2", at(-20)));
+
+            // Then
+            assertEquals(List.of("later", "earlier"), delivered);
+            assertEquals(1.0, meterRegistry.counter("chat.cluster.reorder.late").count());
+        }
+
+        @Test
+        @DisplayName("should keep rooms independent")
+        void shouldKeepRoomsIndependent() {
+            // Given
+            buffer.offer(message("lobby-late", "lobby", "n1", at(-10)));
+            buffer.release(at(0));
+
+            // When
+            buffer.offer(message("other", "other", "n1", at(-20)));
+
+            // Then
+            assertEquals(List.of("lobby-late"), delivered);
+            assertEquals(0.0, meterRegistry.counter("chat.cluster.reorder.late").count());
+        }
+
+        @Test
+        @DisplayName("should deliver messages without a timestamp at once")
+        void shouldDeliverMessagesWithoutTimestampAtOnce() {
+            // When
+            buffer.offer(message("legacy", "lobby", "n1", 0));
+
+            // Then
+            assertEquals(List.of("legacy"), delivered);
+        }
+
+        @Test
+        @DisplayName("should deliver messages stamped ahead of the local clock at once")
+        void shouldDeliverMessagesAheadOfLocalClockAtOnce() {
+            // When
+            buffer.offer(message("ahead", "lobby", "n1", at(60_000)));
+
+            // Then
+            assertEquals(List.of("ahead"), delivered);
+        }
+    }
+
+    @Nested
+    @DisplayName("releasing")
+    class ReleasingTest {
+
+        @Test
+        @DisplayName("should release held messages on its own once the clock passes the window")
+        void shouldReleaseHeldMessagesOnItsOwn() throws InterruptedException {
+            // Given
+            HybridLogicalClock wallClock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), meterRegistry);
+            ReorderBuffer running = new ReorderBuffer(sessionManager, RoomExecutor.INLINE, wallClock,
+                    new OrderingSettings(WINDOW, Duration.ofSeconds(1)), meterRegistry);
+            running.start();
+            long now = wallClock.now();
+
+            // When
+            running.offer(message("second", "lobby", "n1", now));
+            running.offer(message("first", "lobby", "n2", now - 1));
+
+            // Then
+            await().atMost(Duration.ofSeconds(2)).until(() -> delivered.size() == 2);
+            assertEquals(List.of("first", "second"), delivered);
+            running.stop();
+        }
+
+        @Test
+        @DisplayName("should hand over whatever is still held when stopped")
+        void shouldHandOverHeldMessagesWhenStopped() throws InterruptedException {
+            // Given
+            buffer.start();
+            buffer.offer(message("a", "lobby", "n1", at(-10)));
+
+            // When
+            buffer.stop();
+
+            // Then
+            assertEquals(List.of("a"), delivered);
+        }
+
+        @Test
+        @DisplayName("should hand released messages to their room's shard in order")
+        void shouldReleaseThroughRoomExecutor() throws InterruptedException {
+            // Given
+            List<String> rooms = new ArrayList<>();
+            List<Runnable> tasks = new ArrayList<>();
+            ReorderBuffer sharded = new ReorderBuffer(sessionManager, (room, task) -> {
+                rooms.add(room);
+                return tasks.add(task);
+            }, clock, new OrderingSettings(WINDOW, Duration.ofSeconds(1)), meterRegistry);
+            sharded.start();
+            sharded.offer(message("second", "lobby", "n1", at(-10)));
+            sharded.offer(message("first", "lobby", "n2", at(-20)));
+
+            // When
+            sharded.stop();
+
+            // Then
+            assertEquals(List.of(), delivered);
+            assertEquals(List.of("lobby", "lobby"), rooms);
+            tasks.forEach(Runnable::run);
+            assertEquals(List.of("first", "second"), delivered);
+        }
+
+        @Test
+        @DisplayName("should keep a released message its room's shard refuses and hand it over on a later tick")
+        void shouldKeepRefusedReleaseForNextTick() {
+            // Given
+            AtomicBoolean accepting = new AtomicBoolean(false);
+            ReorderBuffer full = new ReorderBuffer(sessionManager, (room, task) -> {
+                if (!accepting.get()) return false;
+                task.run();
+                return true;
+            }, clock, new OrderingSettings(WINDOW, Duration.ofSeconds(1)), meterRegistry);
+            full.offer(message("second", "lobby", "n1", at(-10)));
+            full.offer(message("first", "lobby", "n2", at(-20)));
+
+            // When
+            full.release(at(0));
+
+            // Then
+            assertEquals(List.of(), delivered);
+            assertEquals(2, full.buffered());
+            assertEquals(1, meterRegistry.get("chat.cluster.reorder.deferred").counter().count());
+
+            // When
+            accepting.set(true);
+            full.release(at(0));
+
+            // Then
+            assertEquals(List.of("first", "second"), delivered);
+            assertEquals(0, full.buffered());
+        }
+    }
+}
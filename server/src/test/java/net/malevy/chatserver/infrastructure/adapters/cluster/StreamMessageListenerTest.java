@@ -0,0 +1,277 @@
+package net.malevy.chatserver.infrastructure.adapters.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.domain.entities.NodeIdentifier;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import net.malevy.chatserver.infrastructure.codec.ClusterEnvelope;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamMessageListenerTest {
+
+    private static final String CHAT_KEY = "chat:messages";
+    private static final String ROOM_PREFIX = "chat:room:";
+    private static final String NODE_PREFIX = "chat:node:";
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+    private final InMemoryChatStreams streams = new InMemoryChatStreams();
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private final HybridLogicalClock clock = new HybridLogicalClock(Clock.systemUTC(), Duration.ofSeconds(1), new SimpleMeterRegistry());
+    private StreamMessageListener listener;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(invocation -> {
+            EncodedChatMessage message = invocation.getArgument(0);
+            delivered.add(message.id());
+            return null;
+        }).when(sessionManager).broadcast(any(EncodedChatMessage.class));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (listener != null) listener.stop();
+    }
+
+    private void start(int backlog) {
+        listener = new StreamMessageListener(streams, codec, sessionManager, new NodeIdentifier("this-node"),
+                new ChannelTopic(CHAT_KEY), new RoomTopics(ROOM_PREFIX), new NodeTopics(NODE_PREFIX),
+                new StreamSettings(1000, 2, Duration.ofMillis(20), Duration.ofMillis(10), backlog),
+                clock, new ReorderBuffer(sessionManager, RoomExecutor.INLINE, clock, new OrderingSettings(Duration.ZERO, Duration.ofSeconds(1)),
+                new SimpleMeterRegistry()), RoomExecutor.INLINE, new SimpleMeterRegistry());
+        listener.start();
+    }
+
+    private String publish(String key, String room, String nodeId) throws Exception {
+        ChatMessage message = ChatMessage.create("hello", "alice", MessageIdGenerator.RANDOM);
+        message.setRoom(room);
+        message.setNodeId(nodeId);
+        streams.add(key, codec.encode(message).payload());
+        return message.getId();
+    }
+
+    // sealed the way the publish pipeline sends it, under a fresh hybrid-clock timestamp
+    private byte[] sealed(String room) throws Exception {
+        ChatMessage message = ChatMessage.create("hello", "alice", MessageIdGenerator.RANDOM);
+        message.setRoom(room);
+        message.setNodeId("other-node");
+        message.setHlc(clock.now());
+        byte[] body = codec.encode(message).payload();
+        return new ClusterEnvelope(0).seal(42, message.getHlc(), room, body);
+    }
+
+    private String publish(String room) throws Exception {
+        return publish(room == null ? CHAT_KEY : ROOM_PREFIX + room, room, "other-node");
+    }
+
+    @Nested
+    @DisplayName("reading")
+    class ReadingTest {
+
+        @Test
+        @DisplayName("should deliver entries added after start in order, in batches")
+        void shouldDeliverEntriesInOrder() throws Exception {
+            // Given
+            String before = publish(null);
+            start(0);
+
+            // When
+            String first = publish(null);
+            String second = publish(null);
+            String third = publish(null);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.size() == 3);
+            assertEquals(List.of(first, second, third), delivered);
+            assertFalse(delivered.contains(before));
+        }
+
+        @Test
+        @DisplayName("should skip entries published by this node")
+        void shouldSkipOwnEntries() throws Exception {
+            // Given
+            start(0);
+
+            // When
+            publish(CHAT_KEY, null, "this-node");
+            String other = publish(null);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(other));
+            assertEquals(List.of(other), delivered);
+        }
+
+        @Test
+        @DisplayName("should hand the stream's backlog to sessions when it starts reading")
+        void shouldDeliverBacklog() throws Exception {
+            // Given
+            publish(null);
+            String second = publish(null);
+            String third = publish(null);
+
+            // When
+            start(2);
+
+            // Then
+            assertEquals(List.of(second, third), delivered);
+        }
+    }
+
+    @Nested
+    @DisplayName("reconcile method")
+    class ReconcileTest {
+
+        @Test
+        @DisplayName("should read a room's stream only while it has local members")
+        void shouldReadRoomStreamWhileItHasMembers() throws Exception {
+            // Given
+            start(0);
+            when(sessionManager.hasMembers("lobby")).thenReturn(true);
+            listener.reconcile("lobby");
+
+            // When
+            String whileMember = publish("lobby");
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(whileMember));
+            when(sessionManager.hasMembers("lobby")).thenReturn(false);
+            listener.reconcile("lobby");
+            String afterLeaving = publish("lobby");
+            String global = publish(null);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(global));
+            assertFalse(delivered.contains(afterLeaving));
+            assertNull(listener.offsetOf(ROOM_PREFIX + "lobby"));
+        }
+
+        @Test
+        @DisplayName("should start a room's stream after what it already holds")
+        void shouldStartRoomStreamAtItsTail() throws Exception {
+            // Given
+            start(0);
+            String old = publish("lobby");
+
+            // When
+            when(sessionManager.hasMembers("lobby")).thenReturn(true);
+            listener.reconcile("lobby");
+            String fresh = publish("lobby");
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(fresh));
+            assertFalse(delivered.contains(old));
+        }
+    }
+
+    @Nested
+    @DisplayName("catch-up")
+    class CatchUpTest {
+
+        @Test
+        @DisplayName("should deliver what was added while reads failed, exactly once")
+        void shouldCatchUpAfterFailedReads() throws Exception {
+            // Given
+            start(0);
+            String first = publish(null);
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(first));
+
+            // When
+            streams.failNextReads(5);
+            String second = publish(null);
+            String third = publish(null);
+            String fourth = publish(null);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.size() == 4);
+            assertEquals(List.of(first, second, third, fourth), delivered);
+        }
+
+        @Test
+        @DisplayName("should drop entries at or before the stream's offset")
+        void shouldDropRedeliveredEntries() throws Exception {
+            // Given
+            start(0);
+            String first = publish(null);
+            String second = publish(null);
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.size() == 2);
+
+            // When
+            streams.redeliverOnce();
+            String third = publish(null);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.contains(third));
+            int reads = streams.reads();
+            await().atMost(Duration.ofSeconds(5)).until(() -> streams.reads() > reads + 2);
+            assertEquals(List.of(first, second, third), delivered);
+        }
+    }
+
+    @Nested
+    @DisplayName("retried publishes")
+    class RetriedPublishTest {
+
+        @Test
+        @DisplayName("should deliver each message once when a partly failed batch is appended again")
+        void shouldDeliverOnceWhenBatchIsReplayed() throws Exception {
+            // Given
+            start(0);
+            byte[] first = sealed(null);
+            byte[] second = sealed(null);
+            byte[] third = sealed(null);
+
+            // When: the batch failed after XADDing the first two, and the retry appended all three
+            streams.add(CHAT_KEY, first);
+            streams.add(CHAT_KEY, second);
+            streams.add(CHAT_KEY, first);
+            streams.add(CHAT_KEY, second);
+            streams.add(CHAT_KEY, third);
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.size() == 3);
+            int reads = streams.reads();
+            await().atMost(Duration.ofSeconds(5)).until(() -> streams.reads() > reads + 2);
+            assertEquals(3, delivered.size());
+            assertEquals(3, delivered.stream().distinct().count());
+        }
+    }
+
+    @Nested
+    @DisplayName("compareIds method")
+    class CompareIdsTest {
+
+        @Test
+        @DisplayName("should compare both parts of an id numerically")
+        void shouldCompareNumerically() {
+            assertTrue(StreamMessageListener.compareIds("10-0", "9-5") > 0);
+            assertTrue(StreamMessageListener.compareIds("9-10", "9-9") > 0);
+            assertEquals(0, StreamMessageListener.compareIds("9-9", "9-9"));
+            assertTrue(StreamMessageListener.compareIds(ChatStreams.BEGINNING, "1-0") < 0);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package net.malevy.chatserver.infrastructure.adapters.history;
+
+import net.malevy.chatserver.application.ports.MessageHistory;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLogMessageHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    private MappedLogMessageHistory history;
+
+    @AfterEach
+    void tearDown() {
+        if (history != null) history.close();
+    }
+
+    private MappedLogMessageHistory open(int segmentBytes, int maxSegments, Duration retention) {
+        history = new MappedLogMessageHistory(
+                new HistorySettings(directory, segmentBytes, 256, Duration.ofMillis(10), maxSegments, retention), clock);
+        return history;
+    }
+
+    private MappedLogMessageHistory open() {
+        return open(64 * 1024, 16, Duration.ofDays(1));
+    }
+
+    private static EncodedChatMessage message(String text, String room) {
+        return new EncodedChatMessage(text, "message", room, "node-1", text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Entry(long offset, long timestamp, String room, String payload) {
+    }
+
+    private List<Entry> readFrom(long offset) {
+        final List<Entry> entries = new ArrayList<>();
+        history.read(offset, (o, timestamp, room, type, payload) -> {
+            entries.add(new Entry(o, timestamp, room, StandardCharsets.UTF_8.decode(payload).toString()));
+            return true;
+        });
+        return entries;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Nested
+    @DisplayName("append and read")
+    class AppendAndReadTest {
+
+        @Test
+        @DisplayName("should hand out consecutive offsets and read messages back in order")
+        void shouldReadMessagesBackInOrder() {
+            // Given
+            open();
+
+            // When
+            long first = history.append(message("hello", "lobby"));
+            long second = history.append(message("welcome", null));
+            long third = history.append(message("bye", "random"));
+
+            // Then
+            assertEquals(0, first);
+            assertEquals(1, second);
+            assertEquals(2, third);
+            assertEquals(List.of(
+                    new Entry(0, clock.millis(), "lobby", "hello"),
+                    new Entry(1, clock.millis(), null, "welcome"),
+                    new Entry(2, clock.millis(), "random", "bye")), readFrom(0));
+        }
+
+        @Test
+        @DisplayName("should start reading at the requested offset")
+        void shouldStartAtRequestedOffset() {
+            // Given
+            open();
+            for (int i = 0; i < 100; i++) {
+                history.append(message("m" + i, "lobby"));
+            }
+
+            // When
+            List<Entry> entries = readFrom(97);
+
+            // Then
+            assertEquals(List.of("m97", "m98", "m99"), entries.stream().map(Entry::payload).toList());
+        }
+
+        @Test
+        @DisplayName("should stop when the visitor returns false")
+        void shouldStopWhenVisitorReturnsFalse() {
+            // Given
+            open();
+            for (int i = 0; i < 10; i++) {
+                history.append(message("m" + i, "lobby"));
+            }
+            List<Long> visited = new ArrayList<>();
+
+            // When
+            history.read(0, (offset, timestamp, room, type, payload) -> {
+                visited.add(offset);
+                return visited.size() < 3;
+            });
+
+            // Then
+            assertEquals(List.of(0L, 1L, 2L), visited);
+        }
+
+        @Test
+        @DisplayName("should hand out read-only payloads")
+        void shouldHandOutReadOnlyPayloads() {
+            // Given
+            open();
+            history.append(message("hello", "lobby"));
+
+            // When / Then
+            history.read(0, (offset, timestamp, room, type, payload) -> {
+                assertTrue(payload.isReadOnly());
+                assertThrows(Exception.class, () -> payload.put(0, (byte) 'x'));
+                return true;
+            });
+        }
+
+        @Test
+        @DisplayName("should keep each message's type")
+        void shouldKeepEachMessagesType() {
+            // Given
+            open();
+            history.append(new EncodedChatMessage("1", "message", "lobby", "node-1", "hello".getBytes(StandardCharsets.UTF_8)));
+            history.append(new EncodedChatMessage("2", "system", "lobby", "node-1", "notice".getBytes(StandardCharsets.UTF_8)));
+            history.append(new EncodedChatMessage("3", null, "lobby", "node-1", "untyped".getBytes(StandardCharsets.UTF_8)));
+            List<String> types = new ArrayList<>();
+
+            // When
+            history.read(0, (offset, timestamp, room, type, payload) -> types.add(type));
+
+            // Then
+            assertEquals(Arrays.asList("message", "system", null), types);
+        }
+
+        @Test
+        @DisplayName("should reject a room too long for its length field instead of corrupting the record")
+        void shouldRejectRoomTooLongToStore() {
+            // Given
+            open(256 * 1024, 16, Duration.ofDays(1));
+
+            // When / Then
+            assertThrows(IllegalArgumentException.class,
+                    () -> history.append(message("hello", "r".repeat(Short.MAX_VALUE + 1))));
+            history.append(message("after", "lobby"));
+            assertEquals(List.of(new Entry(0, clock.millis(), "lobby", "after")), readFrom(0));
+        }
+
+        @Test
+        @DisplayName("should reject messages larger than a segment")
+        void shouldRejectMessagesLargerThanSegment() {
+            // Given
+            open(1024, 16, Duration.ofDays(1));
+
+            // When / Then
+            assertThrows(IllegalArgumentException.class, () -> history.append(message("x".repeat(2048), "lobby")));
+        }
+    }
+
+    @Nested
+    @DisplayName("readBackward method")
+    class ReadBackwardTest {
+
+        @Test
+        @DisplayName("should visit messages newest first, across segments and index entries")
+        void shouldVisitNewestFirst() {
+            // Given
+            open(1024, 100, Duration.ofDays(1));
+            for (int i = 0; i < 200; i++) {
+                history.append(message("message number " + i, "lobby"));
+            }
+            List<Long> visited = new ArrayList<>();
+
+            // When
+            history.readBackward((offset, timestamp, room, type, payload) -> {
+                assertEquals("message number " + offset, StandardCharsets.UTF_8.decode(payload).toString());
+                visited.add(offset);
+                return true;
+            });
+
+            // Then
+            assertTrue(history.segmentCount() > 1);
+            assertEquals(200, visited.size());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(199 - i, visited.get(i));
+            }
+        }
+
+        @Test
+        @DisplayName("should stop when the visitor returns false")
+        void shouldStopWhenVisitorReturnsFalse() {
+            // Given
+            open();
+            for (int i = 0; i < 10; i++) {
+                history.append(message("m" + i, "lobby"));
+            }
+            List<Long> visited = new ArrayList<>();
+
+            // When
+            history.readBackward((offset, timestamp, room, type, payload) -> {
+                visited.add(offset);
+                return visited.size() < 3;
+            });
+
+            // Then
+            assertEquals(List.of(9L, 8L, 7L), visited);
+        }
+    }
+
+    @Nested
+    @DisplayName("offer method")
+    class OfferTest {
+
+        @Test
+        @DisplayName("should append offered messages on the writer thread, in order")
+        void shouldAppendOfferedMessagesInOrder() {
+            // Given
+            open();
+
+            // When
+            assertTrue(history.offer(message("hello", "lobby")));
+            assertTrue(history.offer(message("bye", "random")));
+
+            // Then
+            await().atMost(Duration.ofSeconds(2)).until(() -> history.nextOffset() == 2);
+            assertEquals(List.of("hello", "bye"), readFrom(0).stream().map(Entry::payload).toList());
+        }
+
+        @Test
+        @DisplayName("should append what is still queued before it closes, and refuse offers after")
+        void shouldAppendQueuedMessagesBeforeClosing() {
+            // Given
+            open();
+            for (int i = 0; i < 1000; i++) {
+                history.offer(message("m" + i, "lobby"));
+            }
+
+            // When
+            history.close();
+
+            // Then
+            assertFalse(history.offer(message("late", "lobby")));
+            open();
+            assertEquals(1000, history.nextOffset());
+        }
+    }
+
+    @Nested
+    @DisplayName("segments")
+    class SegmentTest {
+
+        @Test
+        @DisplayName("should roll into new segments and read across them")
+        void shouldRollIntoNewSegments() throws IOException {
+            // Given
+            open(1024, 100, Duration.ofDays(1));
+
+            // When
+            for (int i = 0; i < 200; i++) {
+                history.append(message("message number " + i, "lobby"));
+            }
+
+            // Then
+            assertTrue(history.segmentCount() > 1);
+            assertEquals(history.segmentCount(), segmentFiles().size());
+            List<Entry> entries = readFrom(0);
+            assertEquals(200, entries.size());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, entries.get(i).offset());
+                assertEquals("message number " + i, entries.get(i).payload());
+            }
+        }
+
+        @Test
+        @DisplayName("should drop the oldest segments beyond maxSegments")
+        void shouldDropOldestSegmentsBeyondMaxSegments() throws IOException {
+            // Given
+            open(1024, 3, Duration.ofDays(1));
+
+            // When
+            for (int i = 0; i < 500; i++) {
+                history.append(message("message number " + i, "lobby"));
+            }
+
+            // Then
+            assertEquals(3, history.segmentCount());
+            assertEquals(3, segmentFiles().size());
+            List<Entry> entries = readFrom(0);
+            assertEquals(499, entries.getLast().offset());
+            assertTrue(entries.getFirst().offset() > 0);
+        }
+
+        @Test
+        @DisplayName("should drop segments older than the retention")
+        void shouldDropSegmentsOlderThanRetention() {
+            // Given
+            open(1024, 100, Duration.ofHours(1));
+            for (int i = 0; i < 100; i++) {
+                history.append(message("message number " + i, "lobby"));
+            }
+            int before = history.segmentCount();
+
+            // When
+            clock.advance(Duration.ofHours(2));
+            for (int i = 0; i < 30; i++) {
+                history.append(message("fresh message " + i, "lobby"));
+            }
+
+            // Then
+            // only the segment that was active when the clock moved can still hold old messages
+            assertTrue(before > 2);
+            assertTrue(history.segmentCount() < before);
+            assertTrue(readFrom(0).getFirst().offset() > 0);
+        }
+    }
+
+    @Nested
+    @DisplayName("recovery")
+    class RecoveryTest {
+
+        @Test
+        @DisplayName("should continue after the last message when reopened")
+        void shouldContinueAfterReopen() {
+            // Given
+            open(1024, 100, Duration.ofDays(1));
+            for (int i = 0; i < 50; i++) {
+                history.append(message("message number " + i, "lobby"));
+            }
+            history.close();
+
+            // When
+            open(1024, 100, Duration.ofDays(1));
+            long next = history.append(message("after restart", "lobby"));
+
+            // Then
+            assertEquals(50, next);
+            List<Entry> entries = readFrom(0);
+            assertEquals(51, entries.size());
+            assertEquals("message number 49", entries.get(49).payload());
+            assertEquals("after restart", entries.get(50).payload());
+        }
+
+        @Test
+        @DisplayName("should drop a torn record at the end of the log")
+        void shouldDropTornRecord() throws IOException {
+            // Given
+            open();
+            history.append(message("kept", "lobby"));
+            history.append(message("torn", "lobby"));
+            history.close();
+            Path segment = segmentFiles().getFirst();
+            int fields = "lobby".length() + "message".length();
+            int tornPosition = LogSegment.HEADER_BYTES + fields + "kept".length();
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                // flip a payload byte of the second record so its checksum no longer matches
+                channel.write(ByteBuffer.wrap(new byte[]{'T'}), tornPosition + LogSegment.HEADER_BYTES + fields);
+            }
+
+            // When
+            open();
+            long next = history.append(message("rewritten", "lobby"));
+
+            // Then
+            assertEquals(1, next);
+            assertEquals(List.of("kept", "rewritten"), readFrom(0).stream().map(Entry::payload).toList());
+        }
+    }
+
+    @Nested
+    @DisplayName("offsetAt method")
+    class OffsetAtTest {
+
+        @Test
+        @DisplayName("should find the first message at or after an instant")
+        void shouldFindFirstMessageAtOrAfterInstant() {
+            // Given
+            open(1024, 100, Duration.ofDays(1));
+            Instant start = clock.instant();
+            for (int i = 0; i < 100; i++) {
+                history.append(message("message number " + i, "lobby"));
+                clock.advance(Duration.ofSeconds(1));
+            }
+
+            // When / Then
+            assertEquals(0, history.offsetAt(start.minusSeconds(10)));
+            assertEquals(42, history.offsetAt(start.plusSeconds(42)));
+            assertEquals(43, history.offsetAt(start.plusMillis(42_500)));
+            assertEquals(MessageHistory.NO_OFFSET, history.offsetAt(start.plusSeconds(100)));
+        }
+
+        @Test
+        @DisplayName("should keep timestamps monotonic when the clock steps back")
+        void shouldKeepTimestampsMonotonic() {
+            // Given
+            open();
+            history.append(message("first", "lobby"));
+
+            // When
+            clock.advance(Duration.ofMinutes(-5));
+            history.append(message("second", "lobby"));
+
+            // Then
+            List<Entry> entries = readFrom(0);
+            assertEquals(entries.get(0).timestamp(), entries.get(1).timestamp());
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package net.malevy.chatserver.infrastructure.adapters.local;
 
 import net.malevy.chatserver.application.ports.SessionManager;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.dispatch.RoomExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -23,7 +25,7 @@ class LocalMessageBroadcasterTest {
 
     @BeforeEach
     void setUp() {
-        localMessageBroadcaster = new LocalMessageBroadcaster(sessionManager);
+        localMessageBroadcaster = new LocalMessageBroadcaster(sessionManager, RoomExecutor.INLINE);
     }
 
     @Nested
@@ -39,12 +41,31 @@ class LocalMessageBroadcasterTest {
             message.setMessage("Hello world");
 
             // When
-            localMessageBroadcaster.broadcast(message);
+            boolean accepted = localMessageBroadcaster.broadcast(message);
 
             // Then
+            assertTrue(accepted);
             verify(sessionManager).broadcast(message);
         }
 
+        @Test
+        @DisplayName("should hand the message to its room's executor")
+        void shouldHandMessageToRoomsExecutor() {
+            // Given
+            ChatMessage message = ChatMessage.createSystemMessage("joined", "lobby", MessageIdGenerator.RANDOM);
+            RoomExecutor rejecting = (room, task) -> {
+                assertEquals("lobby", room);
+                return false;
+            };
+
+            // When
+            boolean accepted = new LocalMessageBroadcaster(sessionManager, rejecting).broadcast(message);
+
+            // Then
+            assertFalse(accepted);
+            verifyNoInteractions(sessionManager);
+        }
+
         @Test
         @DisplayName("should validate message is not null before delegating")
         void shouldValidateMessageIsNotNullBeforeDelegating() {
@@ -101,7 +122,7 @@ class LocalMessageBroadcasterTest {
         @DisplayName("should create instance with sessionManager dependency")
         void shouldCreateInstanceWithSessionManagerDependency() {
             // When
-            LocalMessageBroadcaster broadcaster = new LocalMessageBroadcaster(sessionManager);
+            LocalMessageBroadcaster broadcaster = new LocalMessageBroadcaster(sessionManager, RoomExecutor.INLINE);
 
             // Then
             assertNotNull(broadcaster);
@@ -109,4 +130,4 @@ class LocalMessageBroadcasterTest {
 
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,277 @@
+package net.malevy.chatserver.infrastructure.adapters.presence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PresenceServiceTest {
+
+    private static final PresenceSettings SETTINGS = new PresenceSettings(Duration.ofMillis(250), 3, Duration.ofSeconds(5), Duration.ofSeconds(15));
+
+    @Mock
+    private SessionManager sessionManager;
+
+    @Mock
+    private WebSocketSession session;
+
+    private final ObjectMapper mapper = new ObjectMapperConfig().buildObjectMapper();
+    private PresenceService presence;
+
+    @BeforeEach
+    void setUp() {
+        presence = new PresenceService(sessionManager, mapper, SETTINGS, new SimpleMeterRegistry());
+        lenient().when(sessionManager.hasMembers(any())).thenReturn(true);
+    }
+
+    private List<JsonNode> flushed() throws IOException {
+        clearInvocations(sessionManager);
+        presence.flush();
+        ArgumentCaptor<EncodedChatMessage> captor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+        verify(sessionManager, atLeast(0)).broadcast(captor.capture());
+        List<JsonNode> frames = new ArrayList<>();
+        for (EncodedChatMessage message : captor.getAllValues()) {
+            assertEquals(EncodedChatMessage.PRESENCE, message.type());
+            assertTrue(message.ephemeral());
+            frames.add(mapper.readTree(message.payload()));
+        }
+        return frames;
+    }
+
+    private static List<String> names(JsonNode array) {
+        List<String> names = new ArrayList<>();
+        array.forEach(name -> names.add(name.asText()));
+        return names;
+    }
+
+    private JsonNode lastSnapshot() throws IOException {
+        ArgumentCaptor<EncodedChatMessage> captor = ArgumentCaptor.forClass(EncodedChatMessage.class);
+        verify(sessionManager, atLeastOnce()).send(eq(session), captor.capture());
+        return mapper.readTree(captor.getValue().payload());
+    }
+
+    @Nested
+    @DisplayName("joined method")
+    class JoinedTest {
+
+        @Test
+        @DisplayName("should send the joining session a snapshot that includes itself")
+        void shouldSendSnapshot() throws IOException {
+            // Given
+            presence.joined(mock(WebSocketSession.class), "alice", "lobby");
+
+            // When
+            presence.joined(session, "bob", "lobby");
+
+            // Then
+            JsonNode snapshot = lastSnapshot();
+            assertEquals("presence", snapshot.get("type").asText());
+            assertTrue(snapshot.get("snapshot").asBoolean());
+            assertEquals(2, snapshot.get("count").asInt());
+            assertEquals(Set.of("alice", "bob"), Set.copyOf(names(snapshot.get("members"))));
+        }
+
+        @Test
+        @DisplayName("should list at most maxNames members in a snapshot but count them all")
+        void shouldCapSnapshotNames() throws IOException {
+            // Given
+            for (String username : List.of("a", "b", "c", "d")) {
+                presence.joined(mock(WebSocketSession.class), username, "lobby");
+            }
+
+            // When
+            presence.joined(session, "e", "lobby");
+
+            // Then
+            JsonNode snapshot = lastSnapshot();
+            assertEquals(5, snapshot.get("count").asInt());
+            assertEquals(3, snapshot.get("members").size());
+        }
+    }
+
+    @Nested
+    @DisplayName("flush method")
+    class FlushTest {
+
+        @Test
+        @DisplayName("should send one update per room however many users joined in the window")
+        void shouldCoalesceJoinsIntoOneUpdate() throws IOException {
+            // Given
+            for (int i = 0; i < 100; i++) {
+                presence.joined(mock(WebSocketSession.class), "user-" + i, "lobby");
+            }
+
+            // When
+            List<JsonNode> frames = flushed();
+
+            // Then
+            assertEquals(1, frames.size());
+            JsonNode update = frames.get(0);
+            assertFalse(update.get("snapshot").asBoolean());
+            assertEquals(100, update.get("count").asInt());
+            assertEquals(100, update.get("joinedCount").asInt());
+            assertEquals(3, update.get("joined").size());
+            assertEquals(0, update.get("leftCount").asInt());
+        }
+
+        @Test
+        @DisplayName("should send nothing for a user who joined and left within the window")
+        void shouldCancelJoinFollowedByLeave() throws IOException {
+            // Given
+            presence.joined(session, "alice", "lobby");
+            presence.left("alice", "lobby");
+
+            // When & Then
+            assertEquals(List.of(), flushed());
+        }
+
+        @Test
+        @DisplayName("should only change presence with a user's first and last session in the room")
+        void shouldCountSessionsPerUser() throws IOException {
+            // Given
+            presence.joined(session, "alice", "lobby");
+            flushed();
+
+            // When
+            presence.joined(mock(WebSocketSession.class), "alice", "lobby");
+            presence.left("alice", "lobby");
+
+            // Then
+            assertEquals(List.of(), flushed());
+
+            // When
+            presence.left("alice", "lobby");
+
+            // Then
+            JsonNode update = flushed().get(0);
+            assertEquals(0, update.get("count").asInt());
+            assertEquals(1, update.get("leftCount").asInt());
+        }
+
+        @Test
+        @DisplayName("should not send updates to rooms without local members")
+        void shouldSkipRoomsWithoutLocalMembers() throws IOException {
+            // Given
+            when(sessionManager.hasMembers("lobby")).thenReturn(false);
+            presence.applyRemote("node-b", Map.of("lobby", new RoomDelta(Set.of("bob"), Set.of())));
+
+            // When & Then
+            assertEquals(List.of(), flushed());
+        }
+    }
+
+    @Nested
+    @DisplayName("remote members")
+    class RemoteMembersTest {
+
+        @Test
+        @DisplayName("should include other nodes' members in snapshots")
+        void shouldIncludeRemoteMembers() throws IOException {
+            // Given
+            presence.applyRemote("node-b", Map.of("lobby", new RoomDelta(Set.of("bob", "carol"), Set.of())));
+
+            // When
+            presence.joined(session, "alice", "lobby");
+
+            // Then
+            assertEquals(3, lastSnapshot().get("count").asInt());
+        }
+
+        @Test
+        @DisplayName("should keep a user present while any node still holds them")
+        void shouldKeepUserHeldElsewhere() throws IOException {
+            // Given
+            presence.joined(session, "alice", "lobby");
+            presence.applyRemote("node-b", Map.of("lobby", new RoomDelta(Set.of("alice"), Set.of())));
+            flushed();
+
+            // When
+            presence.left("alice", "lobby");
+
+            // Then
+            assertEquals(List.of(), flushed());
+
+            // When
+            presence.forget("node-b");
+
+            // Then
+            assertEquals(1, flushed().get(0).get("leftCount").asInt());
+        }
+
+        @Test
+        @DisplayName("should apply only the difference when a node's whole state replaces what was known")
+        void shouldReplaceRemoteState() throws IOException {
+            // Given
+            presence.joined(session, "alice", "lobby");
+            presence.applyRemote("node-b", Map.of("lobby", new RoomDelta(Set.of("bob", "carol"), Set.of())));
+            flushed();
+
+            // When
+            presence.replaceRemote("node-b", Map.of("lobby", Set.of("carol", "dave")));
+
+            // Then
+            JsonNode update = flushed().get(0);
+            assertEquals(3, update.get("count").asInt());
+            assertEquals(List.of("dave"), names(update.get("joined")));
+            assertEquals(List.of("bob"), names(update.get("left")));
+        }
+    }
+
+    @Nested
+    @DisplayName("drainChanges method")
+    class DrainChangesTest {
+
+        @Test
+        @DisplayName("should hand the replicator this node's own changes, with cancelled pairs dropped")
+        void shouldDrainOwnChanges() {
+            // Given
+            presence.drainChanges();
+            presence.joined(session, "alice", "lobby");
+            presence.joined(mock(WebSocketSession.class), "bob", "lobby");
+            presence.left("bob", "lobby");
+            presence.applyRemote("node-b", Map.of("lobby", new RoomDelta(Set.of("carol"), Set.of())));
+
+            // When
+            Map<String, RoomDelta> changes = presence.drainChanges();
+
+            // Then
+            assertEquals(Map.of("lobby", new RoomDelta(Set.of("alice"), Set.of())), changes);
+            assertEquals(Map.of(), presence.drainChanges());
+            assertEquals(Map.of("lobby", Set.of("alice")), presence.localMembers());
+        }
+
+        @Test
+        @DisplayName("should not keep changes for a replicator that never asked")
+        void shouldNotKeepChangesWithoutReplicator() {
+            // Given
+            presence.joined(session, "alice", "lobby");
+
+            // When & Then
+            assertEquals(Map.of(), presence.drainChanges());
+        }
+    }
+}
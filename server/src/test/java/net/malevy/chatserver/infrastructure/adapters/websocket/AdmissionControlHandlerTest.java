@@ -0,0 +1,180 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlHandlerTest {
+
+    @Mock
+    private WebSocketHandler delegate;
+
+    @Mock
+    private WebSocketSession webSocketSession1;
+
+    @Mock
+    private WebSocketSession webSocketSession2;
+
+    private AdmissionControlHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new AdmissionControlHandler(delegate, new AdmissionSettings(1, 1, Duration.ofMillis(10)));
+        lenient().when(webSocketSession1.getId()).thenReturn("session-1");
+        lenient().when(webSocketSession2.getId()).thenReturn("session-2");
+    }
+
+    @Nested
+    @DisplayName("session admission")
+    class SessionAdmissionTest {
+
+        @Test
+        @DisplayName("should reject sessions beyond the limit without reaching the delegate")
+        void shouldRejectSessionsBeyondTheLimit() throws Exception {
+            // Given
+            handler.afterConnectionEstablished(webSocketSession1);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession2);
+            handler.afterConnectionClosed(webSocketSession2, AdmissionControlHandler.TOO_MANY_SESSIONS);
+
+            // Then
+            verify(webSocketSession2).close(AdmissionControlHandler.TOO_MANY_SESSIONS);
+            verify(delegate).afterConnectionEstablished(webSocketSession1);
+            verify(delegate, never()).afterConnectionEstablished(webSocketSession2);
+            verify(delegate, never()).afterConnectionClosed(eq(webSocketSession2), any());
+            assertEquals(1, handler.openSessions());
+        }
+
+        @Test
+        @DisplayName("should free the slot when an admitted session closes")
+        void shouldFreeTheSlotWhenAdmittedSessionCloses() throws Exception {
+            // Given
+            handler.afterConnectionEstablished(webSocketSession1);
+            handler.afterConnectionClosed(webSocketSession1, CloseStatus.NORMAL);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession2);
+
+            // Then
+            verify(delegate).afterConnectionClosed(webSocketSession1, CloseStatus.NORMAL);
+            verify(delegate).afterConnectionEstablished(webSocketSession2);
+            verify(webSocketSession2, never()).close(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("message admission")
+    class MessageAdmissionTest {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Test
+        @DisplayName("should pass messages from admitted sessions to the delegate")
+        void shouldPassMessagesFromAdmittedSessions() throws Exception {
+            // Given
+            TextMessage message = new TextMessage("{}");
+            handler.afterConnectionEstablished(webSocketSession1);
+
+            // When
+            handler.handleMessage(webSocketSession1, message);
+            handler.handleMessage(webSocketSession1, message);
+
+            // Then
+            verify(delegate, times(2)).handleMessage(webSocketSession1, message);
+        }
+
+        @Test
+        @DisplayName("should close a session when no permit frees up in time")
+        void shouldCloseSessionWhenNoPermitFreesUpInTime() throws Exception {
+            // Given
+            handler = new AdmissionControlHandler(delegate, new AdmissionSettings(2, 1, Duration.ofMillis(10)));
+            Thread busy = holdPermit();
+
+            // When
+            Thread waiting = Thread.ofVirtual().start(() -> handle(webSocketSession2));
+            waiting.join();
+
+            // Then
+            verify(webSocketSession2).close(AdmissionControlHandler.OVERLOADED);
+            verify(delegate, never()).handleMessage(eq(webSocketSession2), any());
+            release.countDown();
+            busy.join();
+        }
+
+        @Test
+        @DisplayName("should let a virtual thread wait for a permit to free up")
+        void shouldLetVirtualThreadWaitForPermit() throws Exception {
+            // Given
+            handler = new AdmissionControlHandler(delegate, new AdmissionSettings(2, 1, Duration.ofSeconds(5)));
+            Thread busy = holdPermit();
+
+            // When
+            Thread waiting = Thread.ofVirtual().start(() -> handle(webSocketSession2));
+            release.countDown();
+            waiting.join();
+            busy.join();
+
+            // Then
+            verify(delegate).handleMessage(eq(webSocketSession2), any());
+            verify(webSocketSession2, never()).close(any());
+        }
+
+        @Test
+        @DisplayName("should refuse a platform thread at once instead of parking a Tomcat worker")
+        void shouldRefusePlatformThreadAtOnce() throws Exception {
+            // Given
+            handler = new AdmissionControlHandler(delegate, new AdmissionSettings(2, 1, Duration.ofSeconds(30)));
+            Thread busy = holdPermit();
+
+            // When
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> handle(webSocketSession2));
+
+            // Then
+            verify(webSocketSession2).close(AdmissionControlHandler.OVERLOADED);
+            verify(delegate, never()).handleMessage(eq(webSocketSession2), any());
+            release.countDown();
+            busy.join();
+        }
+
+        // admits both sessions and parks a message of the first inside the delegate until release
+        private Thread holdPermit() throws Exception {
+            handler.afterConnectionEstablished(webSocketSession1);
+            handler.afterConnectionEstablished(webSocketSession2);
+            CountDownLatch inDelegate = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                inDelegate.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }).when(delegate).handleMessage(eq(webSocketSession1), any());
+            Thread busy = Thread.ofVirtual().start(() -> handle(webSocketSession1));
+            assertTrue(inDelegate.await(5, TimeUnit.SECONDS));
+            return busy;
+        }
+
+        private void handle(WebSocketSession session) {
+            try {
+                handler.handleMessage(session, new TextMessage("{}"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import jakarta.websocket.Extension;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeflateNegotiatingUpgradeStrategyTest {
+
+    private static Extension extension(String name, String... parameters) {
+        final List<Extension.Parameter> params = Arrays.stream(parameters).map(DeflateNegotiatingUpgradeStrategyTest::parameter).toList();
+        return new Extension() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public List<Parameter> getParameters() {
+                return params;
+            }
+        };
+    }
+
+    private static Extension.Parameter parameter(String name) {
+        return new Extension.Parameter() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getValue() {
+                return null;
+            }
+        };
+    }
+
+    private static List<String> parameterNames(Extension extension) {
+        return extension.getParameters().stream().map(Extension.Parameter::getName).toList();
+    }
+
+    @Nested
+    @DisplayName("negotiate method")
+    class NegotiateTest {
+
+        @Test
+        @DisplayName("should pass the client's offer through with context takeover")
+        void shouldPassOfferThroughWithContextTakeover() {
+            // Given
+            DeflateNegotiatingUpgradeStrategy strategy =
+                    new DeflateNegotiatingUpgradeStrategy(new CompressionSettings(true, true, true));
+            Extension offer = extension("permessage-deflate", "client_max_window_bits");
+
+            // When
+            List<Extension> negotiated = strategy.negotiate(List.of(offer));
+
+            // Then
+            assertEquals(1, negotiated.size());
+            assertEquals("permessage-deflate", negotiated.getFirst().getName());
+            assertEquals(List.of("client_max_window_bits"), parameterNames(negotiated.getFirst()));
+        }
+
+        @Test
+        @DisplayName("should ask for no context takeover when it is disabled")
+        void shouldAskForNoContextTakeoverWhenDisabled() {
+            // Given
+            DeflateNegotiatingUpgradeStrategy strategy =
+                    new DeflateNegotiatingUpgradeStrategy(new CompressionSettings(true, false, false));
+
+            // When
+            List<Extension> negotiated = strategy.negotiate(List.of(extension("permessage-deflate", "client_max_window_bits")));
+
+            // Then
+            assertEquals(List.of("client_max_window_bits", "server_no_context_takeover", "client_no_context_takeover"),
+                    parameterNames(negotiated.getFirst()));
+        }
+
+        @Test
+        @DisplayName("should not repeat a parameter the client already offered")
+        void shouldNotRepeatParameterClientAlreadyOffered() {
+            // Given
+            DeflateNegotiatingUpgradeStrategy strategy =
+                    new DeflateNegotiatingUpgradeStrategy(new CompressionSettings(true, false, true));
+
+            // When
+            List<Extension> negotiated = strategy.negotiate(List.of(extension("permessage-deflate", "server_no_context_takeover")));
+
+            // Then
+            assertEquals(List.of("server_no_context_takeover"), parameterNames(negotiated.getFirst()));
+        }
+
+        @Test
+        @DisplayName("should drop permessage-deflate and keep other extensions when disabled")
+        void shouldDropDeflateWhenDisabled() {
+            // Given
+            DeflateNegotiatingUpgradeStrategy strategy =
+                    new DeflateNegotiatingUpgradeStrategy(new CompressionSettings(false, true, true));
+            Extension other = extension("x-custom");
+
+            // When
+            List<Extension> negotiated = strategy.negotiate(List.of(extension("permessage-deflate"), other));
+
+            // Then
+            assertEquals(List.of(other), negotiated);
+        }
+    }
+}
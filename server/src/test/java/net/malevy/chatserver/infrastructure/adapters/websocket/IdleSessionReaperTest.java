@@ -0,0 +1,179 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdleSessionReaperTest {
+
+    private static final HeartbeatSettings SETTINGS = new HeartbeatSettings(Duration.ofSeconds(30), Duration.ofSeconds(75), Duration.ofSeconds(1));
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @Mock
+    private LeaveChatUseCase leaveChatUseCase;
+
+    @Mock
+    private WebSocketSession session;
+
+    private final MutableClock clock = new MutableClock();
+    private SimpleMeterRegistry meterRegistry;
+    private IdleSessionReaper reaper;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reaper = new IdleSessionReaper(sessionManager, leaveChatUseCase, SETTINGS, Runnable::run, clock, meterRegistry);
+        lenient().when(session.getId()).thenReturn("session-1");
+        lenient().when(sessionManager.ping(session)).thenReturn(true);
+    }
+
+    // moves the clock a second at a time, sweeping after each, as the sweeper thread would
+    private void elapse(Duration duration) {
+        for (long s = 0; s < duration.toSeconds(); s++) {
+            clock.advance(Duration.ofSeconds(1));
+            reaper.sweep();
+        }
+    }
+
+    @Nested
+    @DisplayName("sweep method")
+    class SweepTest {
+
+        @Test
+        @DisplayName("should ping a session once it has been quiet for pingAfter")
+        void shouldPingQuietSession() {
+            // Given
+            reaper.track(session);
+
+            // When
+            elapse(Duration.ofSeconds(29));
+
+            // Then
+            verify(sessionManager, never()).ping(session);
+
+            // When
+            elapse(Duration.ofSeconds(1));
+
+            // Then
+            verify(sessionManager).ping(session);
+            assertEquals(1, meterRegistry.get("chat.sessions.pings").counter().count());
+        }
+
+        @Test
+        @DisplayName("should not ping a session that keeps talking")
+        void shouldNotPingActiveSession() {
+            // Given
+            reaper.track(session);
+
+            // When
+            for (int i = 0; i < 10; i++) {
+                elapse(Duration.ofSeconds(20));
+                reaper.touch(session);
+            }
+
+            // Then
+            verify(sessionManager, never()).ping(session);
+            verifyNoInteractions(leaveChatUseCase);
+        }
+
+        @Test
+        @DisplayName("should remove and close a session that never answers")
+        void shouldReapSilentSession() throws IOException {
+            // Given
+            reaper.track(session);
+
+            // When
+            elapse(Duration.ofSeconds(74));
+
+            // Then
+            verifyNoInteractions(leaveChatUseCase);
+            verify(sessionManager, times(1)).ping(session);
+
+            // When
+            elapse(Duration.ofSeconds(1));
+
+            // Then
+            InOrder inOrder = inOrder(leaveChatUseCase, session);
+            inOrder.verify(leaveChatUseCase).run(session);
+            inOrder.verify(session).close(IdleSessionReaper.IDLE_TIMEOUT);
+            assertEquals(0, reaper.trackedCount());
+            assertEquals(1, meterRegistry.get("chat.sessions.reaped").counter().count());
+        }
+
+        @Test
+        @DisplayName("should keep a session that answers the ping")
+        void shouldKeepSessionThatAnswersPing() {
+            // Given
+            reaper.track(session);
+            elapse(Duration.ofSeconds(31));
+
+            // When
+            reaper.touch(session);
+            elapse(Duration.ofSeconds(60));
+
+            // Then
+            verifyNoInteractions(leaveChatUseCase);
+            verify(sessionManager, times(2)).ping(session);
+        }
+
+        @Test
+        @DisplayName("should forget a session that closed on its own")
+        void shouldForgetUntrackedSession() {
+            // Given
+            reaper.track(session);
+
+            // When
+            reaper.untrack(session);
+            elapse(Duration.ofSeconds(90));
+
+            // Then
+            verify(sessionManager, never()).ping(session);
+            verifyNoInteractions(leaveChatUseCase);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
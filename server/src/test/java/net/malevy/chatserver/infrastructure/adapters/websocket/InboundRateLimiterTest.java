@@ -0,0 +1,294 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.application.ports.SessionManager;
+import net.malevy.chatserver.application.ports.UserDirectory;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InboundRateLimiterTest {
+
+    private static final RateLimitSettings SETTINGS = new RateLimitSettings(
+            Map.of("message", RateLimit.parse("3/1s"), "join", RateLimit.parse("2/10s")),
+            Map.of("message", RateLimit.parse("5/1s")),
+            RateLimit.parse("4/10s"),
+            Duration.ofSeconds(5));
+
+    @Mock
+    private UserDirectory userDirectory;
+
+    @Mock
+    private SessionManager sessionManager;
+
+    private final MutableClock clock = new MutableClock();
+    private SimpleMeterRegistry meterRegistry;
+    private InboundRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new InboundRateLimiter(SETTINGS, userDirectory, sessionManager,
+                new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper()), () -> "notice-1", clock, meterRegistry);
+        lenient().when(userDirectory.nodesHolding(any())).thenReturn(1);
+    }
+
+    private WebSocketSession open(String id, String username) {
+        final WebSocketSession session = mock(WebSocketSession.class);
+        lenient().when(session.getId()).thenReturn(id);
+        limiter.open(session, username);
+        return session;
+    }
+
+    private int admitted(WebSocketSession session, String type, int attempts) {
+        int admitted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (limiter.admit(session, type)) admitted++;
+        }
+        return admitted;
+    }
+
+    @Nested
+    @DisplayName("per-session limits")
+    class SessionLimitsTest {
+
+        @Test
+        @DisplayName("should let a full burst through and then refill at the sustained rate")
+        void shouldAllowBurstThenRefill() {
+            // Given
+            WebSocketSession session = open("s1", null);
+
+            // When & Then
+            assertEquals(3, admitted(session, "message", 5));
+            clock.advance(Duration.ofMillis(340));
+            assertEquals(1, admitted(session, "message", 3));
+            clock.advance(Duration.ofSeconds(5));
+            assertEquals(3, admitted(session, "message", 5));
+        }
+
+        @Test
+        @DisplayName("should limit each message type on its own and leave unlisted types alone")
+        void shouldLimitTypesIndependently() {
+            // Given
+            WebSocketSession session = open("s1", null);
+
+            // When & Then
+            assertEquals(2, admitted(session, "join", 3));
+            assertEquals(3, admitted(session, "message", 3));
+            assertEquals(20, admitted(session, "leave", 20));
+        }
+
+        @Test
+        @DisplayName("should treat unknown and missing types as messages")
+        void shouldTreatUnknownTypesAsMessages() {
+            // Given
+            WebSocketSession session = open("s1", null);
+
+            // When & Then
+            assertTrue(limiter.admit(session, null));
+            assertTrue(limiter.admit(session, "whatever"));
+            assertTrue(limiter.admit(session, "message"));
+            assertFalse(limiter.admit(session, "message"));
+            assertEquals(1, meterRegistry.get("chat.inbound.throttled").tag("type", "message").counter().count());
+        }
+
+        @Test
+        @DisplayName("should admit everything from a session it was never told about")
+        void shouldAdmitUnknownSession() {
+            // Given
+            WebSocketSession session = mock(WebSocketSession.class);
+            when(session.getId()).thenReturn("unknown");
+
+            // When & Then
+            assertEquals(10, admitted(session, "message", 10));
+        }
+    }
+
+    @Nested
+    @DisplayName("throttled clients")
+    class ThrottledTest {
+
+        @Test
+        @DisplayName("should tell the client once per run of rejected messages")
+        void shouldNotifyOncePerRun() {
+            // Given
+            WebSocketSession session = open("s1", null);
+
+            // When
+            admitted(session, "message", 5);
+
+            // Then
+            verify(sessionManager, times(1)).send(eq(session), argThat((EncodedChatMessage message) -> "notice-1".equals(message.id())));
+
+            // When
+            clock.advance(Duration.ofSeconds(1));
+            assertTrue(limiter.admit(session, "message"));
+            admitted(session, "message", 3);
+
+            // Then
+            verify(sessionManager, times(2)).send(eq(session), any(EncodedChatMessage.class));
+        }
+
+        @Test
+        @DisplayName("should close a session that keeps sending past its allowance of violations")
+        void shouldCloseSessionPastViolations() throws IOException {
+            // Given
+            WebSocketSession session = open("s1", null);
+            admitted(session, "message", 3);
+
+            // When
+            admitted(session, "message", 4);
+
+            // Then
+            verify(session, never()).close(any());
+
+            // When
+            assertFalse(limiter.admit(session, "message"));
+            clock.advance(Duration.ofSeconds(5));
+            assertFalse(limiter.admit(session, "message"));
+
+            // Then
+            verify(session, times(1)).close(InboundRateLimiter.RATE_LIMITED);
+            assertEquals(1, meterRegistry.get("chat.inbound.throttle.closes").counter().count());
+        }
+    }
+
+    @Nested
+    @DisplayName("per-user limits")
+    class UserLimitsTest {
+
+        @Test
+        @DisplayName("should share the user's allowance between their sessions")
+        void shouldShareAllowanceBetweenSessions() {
+            // Given
+            WebSocketSession first = open("s1", "alice");
+            WebSocketSession second = open("s2", "alice");
+
+            // When & Then
+            assertEquals(3, admitted(first, "message", 3));
+            assertEquals(2, admitted(second, "message", 3));
+        }
+
+        @Test
+        @DisplayName("should not pool anonymous sessions")
+        void shouldNotPoolAnonymousSessions() {
+            // Given
+            WebSocketSession first = open("s1", null);
+            WebSocketSession second = open("s2", null);
+
+            // When & Then
+            assertEquals(3, admitted(first, "message", 3));
+            assertEquals(3, admitted(second, "message", 3));
+        }
+
+        @Test
+        @DisplayName("should give the session its token back when the user's allowance refuses the message")
+        void shouldRefundSessionTokenWhenUserRefuses() {
+            // Given
+            WebSocketSession first = open("s1", "alice");
+            WebSocketSession second = open("s2", "alice");
+            assertEquals(3, admitted(first, "message", 3));
+            assertEquals(2, admitted(second, "message", 2));
+            assertFalse(limiter.admit(second, "message"));
+
+            // When: long enough for the user's bucket to refill a token, not the session's
+            clock.advance(Duration.ofMillis(200));
+
+            // Then
+            assertTrue(limiter.admit(second, "message"));
+        }
+
+        @Test
+        @DisplayName("should take only this node's share when the user is connected to several")
+        void shouldTakeShareOfClusterAllowance() {
+            // Given
+            when(userDirectory.nodesHolding("alice")).thenReturn(2);
+            WebSocketSession session = open("s1", "alice");
+
+            // When & Then
+            assertEquals(2, admitted(session, "message", 3));
+        }
+
+        @Test
+        @DisplayName("should look the share up again once it is due for a refresh")
+        void shouldRefreshShare() {
+            // Given
+            WebSocketSession session = open("s1", "alice");
+            limiter.admit(session, "message");
+            when(userDirectory.nodesHolding("alice")).thenReturn(5);
+
+            // When
+            clock.advance(Duration.ofSeconds(4));
+            limiter.admit(session, "message");
+            clock.advance(Duration.ofSeconds(1));
+            limiter.admit(session, "message");
+
+            // Then
+            verify(userDirectory, times(2)).nodesHolding("alice");
+        }
+
+        @Test
+        @DisplayName("should start a user afresh once their last session here has closed")
+        void shouldForgetUserAfterLastSession() {
+            // Given
+            WebSocketSession first = open("s1", "alice");
+            WebSocketSession second = open("s2", "alice");
+            admitted(first, "message", 3);
+            admitted(second, "message", 2);
+
+            // When
+            limiter.close(first);
+            limiter.close(second);
+            WebSocketSession third = open("s3", "alice");
+
+            // Then
+            assertEquals(3, admitted(third, "message", 3));
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
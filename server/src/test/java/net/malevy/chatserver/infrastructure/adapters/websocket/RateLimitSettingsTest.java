@@ -0,0 +1,55 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitSettingsTest {
+
+    @Nested
+    @DisplayName("parseLimits method")
+    class ParseLimitsTest {
+
+        @Test
+        @DisplayName("should read a limit per type")
+        void shouldReadLimitPerType() {
+            // When
+            Map<String, RateLimit> limits = RateLimitSettings.parseLimits("message=10/1s, join = 20/10s");
+
+            // Then
+            assertEquals(Map.of("message", new RateLimit(10, Duration.ofSeconds(1)),
+                    "join", new RateLimit(20, Duration.ofSeconds(10))), limits);
+        }
+
+        @Test
+        @DisplayName("should read a blank spec as no limits")
+        void shouldReadBlankAsNoLimits() {
+            assertEquals(Map.of(), RateLimitSettings.parseLimits(""));
+        }
+
+        @Test
+        @DisplayName("should reject a malformed spec")
+        void shouldRejectMalformedSpec() {
+            assertThrows(IllegalArgumentException.class, () -> RateLimitSettings.parseLimits("message"));
+            assertThrows(IllegalArgumentException.class, () -> RateLimitSettings.parseLimits("message=10"));
+            assertThrows(IllegalArgumentException.class, () -> RateLimitSettings.parseLimits("message=0/1s"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should reject a limit for a type the server does not handle")
+        void shouldRejectUnknownType() {
+            assertThrows(IllegalArgumentException.class, () -> new RateLimitSettings(
+                    Map.of("typing", RateLimit.parse("1/1s")), Map.of(), RateLimit.parse("1/1s"), Duration.ofSeconds(5)));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayBufferTest {
+
+    private ReplayBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new ReplayBuffer(4);
+    }
+
+    private long append(String id, String room) {
+        return buffer.append(id, room, "message", new TextMessage(id));
+    }
+
+    private static List<String> payloads(List<OutboundMessage> messages) {
+        return messages.stream().map(m -> (String) m.frame().getPayload()).toList();
+    }
+
+    @Nested
+    @DisplayName("append method")
+    class AppendTest {
+
+        @Test
+        @DisplayName("should hand out increasing sequences starting at one")
+        void shouldHandOutIncreasingSequences() {
+            assertEquals(1, append("a", "lobby"));
+            assertEquals(2, append("b", "lobby"));
+            assertEquals(2, buffer.lastSequence());
+        }
+
+        @Test
+        @DisplayName("should reject capacities that are not a power of two")
+        void shouldRejectCapacitiesThatAreNotPowerOfTwo() {
+            assertThrows(IllegalArgumentException.class, () -> new ReplayBuffer(3));
+            assertThrows(IllegalArgumentException.class, () -> new ReplayBuffer(1));
+        }
+    }
+
+    @Nested
+    @DisplayName("find method")
+    class FindTest {
+
+        @Test
+        @DisplayName("should find buffered ids and forget overwritten ones")
+        void shouldFindBufferedIdsAndForgetOverwrittenOnes() {
+            // Given
+            for (String id : List.of("a", "b", "c", "d", "e", "f")) {
+                append(id, "lobby");
+            }
+
+            // When & Then
+            assertEquals(6, buffer.find("f"));
+            assertEquals(3, buffer.find("c"));
+            assertEquals(ReplayBuffer.NOT_FOUND, buffer.find("b"));
+            assertEquals(ReplayBuffer.NOT_FOUND, buffer.find("unknown"));
+        }
+    }
+
+    @Nested
+    @DisplayName("between method")
+    class BetweenTest {
+
+        @Test
+        @DisplayName("should return the frames after a sequence in order, filtered by room")
+        void shouldReturnFramesAfterSequenceInOrder() {
+            // Given
+            append("a", "lobby");
+            append("b", "random");
+            append("c", "lobby");
+            append("d", null);
+
+            // When
+            List<OutboundMessage> replay = buffer.between(1, 4, room -> room == null || room.equals("lobby"));
+
+            // Then
+            assertEquals(List.of("c", "d"), payloads(replay));
+            assertEquals(List.of(3L, 4L), replay.stream().map(OutboundMessage::sequence).toList());
+        }
+
+        @Test
+        @DisplayName("should skip frames that have already been overwritten")
+        void shouldSkipOverwrittenFrames() {
+            // Given
+            for (String id : List.of("a", "b", "c", "d", "e", "f")) {
+                append(id, "lobby");
+            }
+
+            // When
+            List<OutboundMessage> replay = buffer.between(0, 6, room -> true);
+
+            // Then
+            assertEquals(List.of("c", "d", "e", "f"), payloads(replay));
+        }
+
+        @Test
+        @DisplayName("should read consistent frames while writers keep appending")
+        void shouldReadConsistentFramesWhileWritersKeepAppending() throws InterruptedException {
+            // Given
+            ReplayBuffer shared = new ReplayBuffer(64);
+            ExecutorService writers = Executors.newFixedThreadPool(4);
+            CountDownLatch done = new CountDownLatch(4);
+            for (int w = 0; w < 4; w++) {
+                writers.execute(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        String id = Thread.currentThread().getName() + "-" + i;
+                        shared.append(id, "lobby", "message", new TextMessage(id));
+                    }
+                    done.countDown();
+                });
+            }
+
+            // When & Then
+            while (done.getCount() > 0) {
+                long through = shared.lastSequence();
+                for (OutboundMessage message : shared.between(0, through, room -> true)) {
+                    assertTrue(message.sequence() <= through);
+                    assertNotNull(message.frame());
+                }
+            }
+            writers.shutdown();
+            assertTrue(writers.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(80_000, shared.lastSequence());
+        }
+
+        @Test
+        @DisplayName("should never pair a room with another message's frame while writers lap the ring")
+        void shouldKeepRoomAndFrameTogether() throws InterruptedException {
+            // Given: each writer has a room of its own, and its frames name that room
+            ReplayBuffer shared = new ReplayBuffer(8);
+            ExecutorService writers = Executors.newFixedThreadPool(4);
+            CountDownLatch done = new CountDownLatch(4);
+            for (int w = 0; w < 4; w++) {
+                String room = "room-" + w;
+                writers.execute(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        shared.append(room + "/" + i, room, "message", new TextMessage(room + "/" + i));
+                    }
+                    done.countDown();
+                });
+            }
+
+            // When & Then
+            while (done.getCount() > 0) {
+                for (OutboundMessage message : shared.between(0, shared.lastSequence(), "room-0"::equals)) {
+                    assertTrue(((String) message.frame().getPayload()).startsWith("room-0/"));
+                }
+            }
+            writers.shutdown();
+            assertTrue(writers.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionOutboundTest {
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    // holds writer tasks until the test releases them, standing in for a busy writer pool
+    private Deque<Runnable> pendingWrites;
+    private Executor writer;
+    private SimpleMeterRegistry meterRegistry;
+    private OutboundMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        pendingWrites = new ArrayDeque<>();
+        writer = pendingWrites::add;
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new OutboundMetrics(meterRegistry);
+    }
+
+    private SessionOutbound outbound(OverflowPolicy policy) {
+        return new SessionOutbound(webSocketSession,
+                new OutboundQueueSettings(2, policy, Set.of("system"), Duration.ofSeconds(10)),
+                writer, metrics);
+    }
+
+    private static OutboundMessage frame(String type, String text) {
+        return new OutboundMessage(type, new TextMessage(text));
+    }
+
+    private void runWrites() {
+        while (!pendingWrites.isEmpty()) {
+            pendingWrites.poll().run();
+        }
+    }
+
+    private List<String> sentPayloads() throws IOException {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<WebSocketMessage<?>> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(webSocketSession, atLeast(0)).sendMessage(captor.capture());
+        return captor.getAllValues().stream().map(m -> (String) m.getPayload()).toList();
+    }
+
+    @Nested
+    @DisplayName("offer method")
+    class OfferTest {
+
+        @Test
+        @DisplayName("should not write on the offering thread")
+        void shouldNotWriteOnTheOfferingThread() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+
+            // When
+            outbound.offer(frame("message", "one"));
+
+            // Then
+            verify(webSocketSession, never()).sendMessage(any());
+            assertEquals(1, outbound.queued());
+        }
+
+        @Test
+        @DisplayName("should write queued frames in order with a single drain task")
+        void shouldWriteQueuedFramesInOrderWithSingleDrainTask() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+
+            // Then
+            assertEquals(1, pendingWrites.size());
+            runWrites();
+            assertEquals(List.of("one", "two"), sentPayloads());
+        }
+    }
+
+    @Nested
+    @DisplayName("overflow policies")
+    class OverflowPolicyTest {
+
+        @Test
+        @DisplayName("should drop the oldest frame when full")
+        void shouldDropTheOldestFrameWhenFull() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+            outbound.offer(frame("message", "three"));
+            runWrites();
+
+            // Then
+            assertEquals(List.of("two", "three"), sentPayloads());
+            assertFalse(outbound.isEvicted());
+            assertEquals(1, meterRegistry.get("chat.outbound.dropped").counter().count());
+            assertEquals(0, metrics.queued());
+        }
+
+        @Test
+        @DisplayName("should drop a queued droppable frame before a regular one")
+        void shouldDropQueuedDroppableFrameFirst() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_BY_TYPE);
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("system", "joined"));
+            outbound.offer(frame("message", "two"));
+            runWrites();
+
+            // Then
+            assertEquals(List.of("one", "two"), sentPayloads());
+        }
+
+        @Test
+        @DisplayName("should drop an incoming droppable frame when nothing queued can be dropped")
+        void shouldDropIncomingDroppableFrame() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_BY_TYPE);
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+            outbound.offer(frame("system", "joined"));
+            runWrites();
+
+            // Then
+            assertEquals(List.of("one", "two"), sentPayloads());
+            assertFalse(outbound.isEvicted());
+        }
+
+        @Test
+        @DisplayName("should evict when nothing can be dropped")
+        void shouldEvictWhenNothingCanBeDropped() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_BY_TYPE);
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+            outbound.offer(frame("message", "three"));
+            runWrites();
+
+            // Then
+            assertTrue(outbound.isEvicted());
+            verify(webSocketSession).close(SessionOutbound.SLOW_CONSUMER);
+            verify(webSocketSession, never()).sendMessage(any());
+        }
+
+        @Test
+        @DisplayName("should evict immediately with the disconnect policy")
+        void shouldEvictImmediatelyWithDisconnectPolicy() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DISCONNECT);
+
+            // When
+            outbound.offer(frame("system", "one"));
+            outbound.offer(frame("system", "two"));
+            outbound.offer(frame("system", "three"));
+            runWrites();
+
+            // Then
+            assertTrue(outbound.isEvicted());
+            verify(webSocketSession).close(SessionOutbound.SLOW_CONSUMER);
+        }
+    }
+
+    @Nested
+    @DisplayName("eviction")
+    class EvictionTest {
+
+        @Test
+        @DisplayName("should evict a session whose send exceeds the time limit")
+        void shouldEvictSessionWhoseSendExceedsTimeLimit() throws Exception {
+            // Given
+            SessionOutbound outbound = new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(8, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ZERO),
+                    writer, metrics);
+            doAnswer(invocation -> {
+                // a new frame arrives while the peer is still not reading
+                Thread.sleep(1);
+                outbound.offer(frame("message", "two"));
+                return null;
+            }).when(webSocketSession).sendMessage(any());
+
+            // When
+            outbound.offer(frame("message", "one"));
+            runWrites();
+
+            // Then
+            assertTrue(outbound.isEvicted());
+            verify(webSocketSession).close(SessionOutbound.SLOW_CONSUMER);
+            verify(webSocketSession, times(1)).sendMessage(any());
+        }
+
+        @Test
+        @DisplayName("should evict a session after a failed send")
+        void shouldEvictSessionAfterFailedSend() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+            when(webSocketSession.getId()).thenReturn("session-1");
+            doThrow(new IOException("Connection reset")).when(webSocketSession).sendMessage(any());
+
+            // When
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+            runWrites();
+
+            // Then
+            assertTrue(outbound.isEvicted());
+            verify(webSocketSession, times(1)).sendMessage(any());
+            verify(webSocketSession).close(SessionOutbound.SEND_FAILED);
+            assertEquals(1, meterRegistry.get("chat.session.send.failures").counter().count());
+            assertEquals(1, meterRegistry.get("chat.session.evictions").tag("reason", "send-failed").counter().count());
+            assertEquals(0, metrics.queued());
+        }
+
+        @Test
+        @DisplayName("should ignore frames offered after eviction")
+        void shouldIgnoreFramesOfferedAfterEviction() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+            outbound.evict(CloseStatus.GOING_AWAY);
+
+            // When
+            outbound.offer(frame("message", "late"));
+            runWrites();
+
+            // Then
+            verify(webSocketSession, never()).sendMessage(any());
+            verify(webSocketSession, times(1)).close(CloseStatus.GOING_AWAY);
+        }
+    }
+
+    @Nested
+    @DisplayName("ping method")
+    class PingTest {
+
+        // pings as "ping", text frames as their payload
+        private List<String> sentFrames() throws IOException {
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<WebSocketMessage<?>> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+            verify(webSocketSession, atLeast(0)).sendMessage(captor.capture());
+            return captor.getAllValues().stream()
+                    .map(m -> m instanceof PingMessage ? "ping" : (String) m.getPayload())
+                    .toList();
+        }
+
+        @Test
+        @DisplayName("should write the ping ahead of a full queue without dropping a data frame")
+        void shouldPingAheadOfFullQueueWithoutDropping() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DROP_OLDEST);
+            outbound.offer(frame("message", "one"));
+            outbound.offer(frame("message", "two"));
+
+            // When
+            outbound.ping();
+            runWrites();
+
+            // Then
+            assertEquals(List.of("ping", "one", "two"), sentFrames());
+            assertEquals(0, meterRegistry.get("chat.outbound.dropped").counter().count());
+            assertFalse(outbound.isEvicted());
+        }
+
+        @Test
+        @DisplayName("should send one ping for pings offered while one is pending")
+        void shouldCoalescePendingPings() throws IOException {
+            // Given
+            SessionOutbound outbound = outbound(OverflowPolicy.DISCONNECT);
+
+            // When
+            outbound.ping();
+            outbound.ping();
+            runWrites();
+
+            // Then
+            assertEquals(List.of("ping"), sentFrames());
+            assertEquals(0, outbound.queued());
+        }
+
+        @Test
+        @DisplayName("should ping a held session without releasing its queued frames")
+        void shouldPingHeldSessionWithoutReleasingFrames() throws IOException {
+            // Given
+            SessionOutbound outbound = new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(8, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10)),
+                    writer, metrics, true);
+            outbound.offer(new OutboundMessage("message", new TextMessage("live-5"), 5));
+
+            // When
+            outbound.ping();
+            runWrites();
+
+            // Then
+            assertEquals(List.of("ping"), sentFrames());
+            assertEquals(1, outbound.queued());
+            outbound.resume(List.of(new OutboundMessage("message", new TextMessage("replay-4"), 4)), 4);
+            runWrites();
+            assertEquals(List.of("ping", "replay-4", "live-5"), sentFrames());
+        }
+    }
+
+    @Nested
+    @DisplayName("resume method")
+    class ResumeTest {
+
+        private OutboundMessage sequenced(long sequence, String text) {
+            return new OutboundMessage("message", new TextMessage(text), sequence);
+        }
+
+        @Test
+        @DisplayName("should hold frames until resumed and put the replay first")
+        void shouldHoldFramesUntilResumedAndPutReplayFirst() throws IOException {
+            // Given
+            SessionOutbound outbound = new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(8, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10)),
+                    writer, metrics, true);
+            outbound.offer(sequenced(5, "live-5"));
+            runWrites();
+            verify(webSocketSession, never()).sendMessage(any());
+
+            // When
+            outbound.resume(List.of(sequenced(3, "replay-3"), sequenced(4, "replay-4")), 4);
+            runWrites();
+
+            // Then
+            assertEquals(List.of("replay-3", "replay-4", "live-5"), sentPayloads());
+        }
+
+        @Test
+        @DisplayName("should drop live frames the replay already covered")
+        void shouldDropLiveFramesReplayAlreadyCovered() throws IOException {
+            // Given
+            SessionOutbound outbound = new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(8, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10)),
+                    writer, metrics, true);
+            outbound.offer(sequenced(4, "queued-4"));
+
+            // When
+            outbound.resume(List.of(sequenced(3, "replay-3"), sequenced(4, "replay-4")), 4);
+            outbound.offer(sequenced(4, "late-4"));
+            outbound.offer(sequenced(5, "live-5"));
+            runWrites();
+
+            // Then
+            assertEquals(List.of("replay-3", "replay-4", "live-5"), sentPayloads());
+        }
+    }
+
+    @Nested
+    @DisplayName("batched frames")
+    class BatchedFramesTest {
+
+        private final ChatMessageCodec codec = new ChatMessageCodec(new ObjectMapperConfig().buildObjectMapper());
+
+        private SessionOutbound batched(WireFormat format, int batchSize) {
+            when(webSocketSession.getAcceptedProtocol()).thenReturn(format.subprotocol());
+            return new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(64, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10), batchSize, Duration.ZERO),
+                    writer, metrics);
+        }
+
+        private OutboundMessage message(int n) {
+            byte[] json = ("{\"message\":\"m" + n + "\"}").getBytes(StandardCharsets.UTF_8);
+            return new OutboundMessage("message", new TextMessage(json), OutboundMessage.UNSEQUENCED, new BinaryFrame(json, codec));
+        }
+
+        @Test
+        @DisplayName("should send everything queued as one JSON array frame")
+        void shouldSendQueuedMessagesAsOneJsonArray() throws IOException {
+            // Given
+            SessionOutbound outbound = batched(WireFormat.JSON_BATCH, 32);
+            for (int i = 1; i <= 3; i++) {
+                outbound.offer(message(i));
+            }
+
+            // When
+            runWrites();
+
+            // Then
+            assertEquals(List.of("[{\"message\":\"m1\"},{\"message\":\"m2\"},{\"message\":\"m3\"}]"), sentPayloads());
+            assertEquals(3, meterRegistry.get("chat.outbound.batch.size").summary().totalAmount());
+        }
+
+        @Test
+        @DisplayName("should split what is queued into frames of at most batchSize messages")
+        void shouldCapMessagesPerFrame() throws IOException {
+            // Given
+            SessionOutbound outbound = batched(WireFormat.JSON_BATCH, 2);
+            for (int i = 1; i <= 5; i++) {
+                outbound.offer(message(i));
+            }
+
+            // When
+            runWrites();
+
+            // Then
+            ObjectMapper json = new ObjectMapper();
+            List<String> frames = sentPayloads();
+            assertEquals(3, frames.size());
+            assertEquals(List.of(2, 2, 1), frames.stream().map(frame -> {
+                try {
+                    return json.readTree(frame).size();
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }).toList());
+        }
+
+        @Test
+        @DisplayName("should send a CBOR array of the messages' CBOR forms")
+        void shouldSendCborArray() throws IOException {
+            // Given
+            SessionOutbound outbound = batched(WireFormat.CBOR_BATCH, 32);
+            // past 23 items the array count takes a byte of its own
+            for (int i = 1; i <= 30; i++) {
+                outbound.offer(message(i));
+            }
+
+            // When
+            runWrites();
+
+            // Then
+            ArgumentCaptor<BinaryMessage> captor = ArgumentCaptor.forClass(BinaryMessage.class);
+            verify(webSocketSession).sendMessage(captor.capture());
+            JsonNode frame = new ObjectMapper(new CBORFactory()).readTree(captor.getValue().getPayload().array());
+            assertTrue(frame.isArray());
+            assertEquals(30, frame.size());
+            assertEquals("m1", frame.get(0).get("message").asText());
+            assertEquals("m30", frame.get(29).get("message").asText());
+        }
+
+        @Test
+        @DisplayName("should send a message without the format's encoding in a frame of its own")
+        void shouldSendUnbatchableMessageAlone() throws IOException {
+            // Given
+            SessionOutbound outbound = batched(WireFormat.CBOR_BATCH, 32);
+            outbound.offer(message(1));
+            outbound.offer(frame("system", "plain"));
+            outbound.offer(message(2));
+
+            // When
+            runWrites();
+
+            // Then
+            verify(webSocketSession, times(3)).sendMessage(any());
+        }
+
+        @Test
+        @DisplayName("should let a short batch linger for company without holding the writer thread")
+        void shouldLingerOffTheWriterThread() throws IOException {
+            // Given
+            Queue<Runnable> writes = new ConcurrentLinkedQueue<>();
+            when(webSocketSession.getAcceptedProtocol()).thenReturn(WireFormat.JSON_BATCH.subprotocol());
+            SessionOutbound outbound = new SessionOutbound(webSocketSession,
+                    new OutboundQueueSettings(64, OverflowPolicy.DROP_OLDEST, Set.of(), Duration.ofSeconds(10), 32, Duration.ofMillis(50)),
+                    writes::add, metrics);
+            outbound.offer(message(1));
+
+            // When
+            long startedAt = System.nanoTime();
+            writes.poll().run();
+            long held = System.nanoTime() - startedAt;
+            outbound.offer(message(2));
+
+            // Then
+            assertTrue(held < Duration.ofMillis(50).toNanos());
+            verify(webSocketSession, never()).sendMessage(any());
+            assertTrue(writes.isEmpty());
+
+            // When
+            await().atMost(Duration.ofSeconds(2)).until(() -> !writes.isEmpty());
+            writes.poll().run();
+
+            // Then
+            assertEquals(List.of("[{\"message\":\"m1\"},{\"message\":\"m2\"}]"), sentPayloads());
+        }
+
+        @Test
+        @DisplayName("should send one message per frame to sessions that did not ask for batches")
+        void shouldNotBatchUnbatchedFormats() throws IOException {
+            // Given
+            SessionOutbound outbound = batched(WireFormat.JSON, 32);
+            outbound.offer(message(1));
+            outbound.offer(message(2));
+
+            // When
+            runWrites();
+
+            // Then
+            assertEquals(List.of("{\"message\":\"m1\"}", "{\"message\":\"m2\"}"), sentPayloads());
+        }
+    }
+}
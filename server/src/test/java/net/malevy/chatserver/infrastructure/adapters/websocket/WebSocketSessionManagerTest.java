@@ -1,20 +1,34 @@
 package net.malevy.chatserver.infrastructure.adapters.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.malevy.chatserver.config.ObjectMapperConfig;
 import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.adapters.history.DisabledMessageHistory;
+import net.malevy.chatserver.infrastructure.codec.ChatMessageCodec;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -24,6 +38,7 @@ import static org.mockito.Mockito.*;
 class WebSocketSessionManagerTest {
 
     private ObjectMapper objectMapper;
+    private ChatMessageCodec codec;
 
     @Mock
     private WebSocketSession webSocketSession1;
@@ -34,6 +49,7 @@ class WebSocketSessionManagerTest {
     @Mock
     private WebSocketSession webSocketSession3;
 
+    private OutboundQueueSettings outboundSettings;
     private WebSocketSessionManager sessionManager;
 
     @BeforeEach
@@ -41,7 +57,15 @@ class WebSocketSessionManagerTest {
         // Use real ObjectMapper with actual configuration
         ObjectMapperConfig config = new ObjectMapperConfig();
         objectMapper = config.buildObjectMapper();
-        sessionManager = new WebSocketSessionManager(objectMapper);
+        codec = new ChatMessageCodec(objectMapper);
+        outboundSettings = new OutboundQueueSettings(16, OverflowPolicy.DROP_OLDEST, Set.of("system"), Duration.ofSeconds(10));
+        // run the per-session writers on the calling thread so sends can be verified synchronously
+        sessionManager = new WebSocketSessionManager(codec, outboundSettings, Runnable::run, new ReplayBuffer(64), new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
+
+        // sessions are registered by id
+        lenient().when(webSocketSession1.getId()).thenReturn("session-1");
+        lenient().when(webSocketSession2.getId()).thenReturn("session-2");
+        lenient().when(webSocketSession3.getId()).thenReturn("session-3");
     }
 
     @Nested
@@ -104,6 +128,20 @@ class WebSocketSessionManagerTest {
             // Then
             verify(webSocketSession1, times(1)).sendMessage(any(TextMessage.class));
         }
+
+        @Test
+        @DisplayName("should register sessions by id")
+        void shouldRegisterSessionsById() {
+            // Given
+            when(webSocketSession2.getId()).thenReturn("session-1");
+
+            // When
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+
+            // Then
+            assertEquals(1, sessionManager.sessionCount());
+        }
     }
 
     @Nested
@@ -127,6 +165,7 @@ class WebSocketSessionManagerTest {
             // Then
             verify(webSocketSession1, never()).sendMessage(any(TextMessage.class));
             verify(webSocketSession2).sendMessage(any(TextMessage.class));
+            assertEquals(1, sessionManager.sessionCount());
         }
 
         @Test
@@ -137,7 +176,6 @@ class WebSocketSessionManagerTest {
                 sessionManager.removeSession(webSocketSession1);
             });
         }
-
         @Test
         @DisplayName("should handle null session")
         void shouldHandleNullSession() {
@@ -153,6 +191,28 @@ class WebSocketSessionManagerTest {
     @DisplayName("broadcast method")
     class BroadcastTest {
 
+        @Test
+        @DisplayName("should send CBOR frames to sessions that negotiated it")
+        void shouldSendCborFramesToSessionsThatNegotiatedIt() throws Exception {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello world", "testuser", MessageIdGenerator.RANDOM);
+            when(webSocketSession2.getAcceptedProtocol()).thenReturn(WireFormat.CBOR.subprotocol());
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+
+            // When
+            sessionManager.broadcast(message);
+
+            // Then
+            verify(webSocketSession1).sendMessage(any(TextMessage.class));
+            ArgumentCaptor<BinaryMessage> captor = ArgumentCaptor.forClass(BinaryMessage.class);
+            verify(webSocketSession2).sendMessage(captor.capture());
+            ChatMessage received = objectMapper.copyWith(new CBORFactory())
+                    .readValue(captor.getValue().getPayload().array(), ChatMessage.class);
+            assertEquals(message.getId(), received.getId());
+            assertEquals("Hello world", received.getMessage());
+        }
+
         @Test
         @DisplayName("should serialize message and send to all sessions")
         void shouldSerializeMessageAndSendToAllSessions() throws Exception {
@@ -216,6 +276,42 @@ class WebSocketSessionManagerTest {
             verify(webSocketSession2).sendMessage(any(TextMessage.class));
         }
 
+        @Test
+        @DisplayName("should allow sessions to join and leave while broadcasting")
+        void shouldAllowSessionsToJoinAndLeaveWhileBroadcasting() throws IOException {
+            // Given
+            ChatMessage message = new ChatMessage();
+            message.setMessage("test");
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+            doAnswer(invocation -> {
+                sessionManager.addSession(webSocketSession3);
+                sessionManager.removeSession(webSocketSession2);
+                return null;
+            }).when(webSocketSession1).sendMessage(any(TextMessage.class));
+
+            // When & Then
+            assertDoesNotThrow(() -> sessionManager.broadcast(message));
+            assertEquals(2, sessionManager.sessionCount());
+        }
+
+        @Test
+        @DisplayName("should send pre-encoded payload without re-serializing")
+        void shouldSendPreEncodedPayloadWithoutReserializing() throws IOException {
+            // Given
+            byte[] payload = "{\"id\":\"remote-1\",\"type\":\"message\",\"message\":\"as received\"}".getBytes();
+            EncodedChatMessage encoded = new EncodedChatMessage("remote-1", "message", null, "remote-node", payload);
+            sessionManager.addSession(webSocketSession1);
+
+            // When
+            sessionManager.broadcast(encoded);
+
+            // Then
+            ArgumentCaptor<TextMessage> captor = ArgumentCaptor.forClass(TextMessage.class);
+            verify(webSocketSession1).sendMessage(captor.capture());
+            assertArrayEquals(payload, captor.getValue().asBytes());
+        }
+
         @Test
         @DisplayName("should handle null message")
         void shouldHandleNullMessage() {
@@ -224,8 +320,314 @@ class WebSocketSessionManagerTest {
 
             // When & Then
             assertThrows(NullPointerException.class,() -> {
-                sessionManager.broadcast(null);
+                sessionManager.broadcast((ChatMessage) null);
             });
+            assertThrows(NullPointerException.class,() -> {
+                sessionManager.broadcast((EncodedChatMessage) null);
+            });
+        }
+    }
+
+    @Nested
+    @DisplayName("rooms")
+    class RoomsTest {
+
+        private ChatMessage messageFor(String room) {
+            ChatMessage message = ChatMessage.create("hello", "testuser", MessageIdGenerator.RANDOM);
+            message.setRoom(room);
+            return message;
+        }
+
+        @Test
+        @DisplayName("should only deliver room messages to its members")
+        void shouldOnlyDeliverRoomMessagesToMembers() throws IOException {
+            // Given
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+            sessionManager.joinRoom(webSocketSession2, "random");
+
+            // When
+            sessionManager.broadcast(messageFor("lobby"));
+
+            // Then
+            verify(webSocketSession1).sendMessage(any(TextMessage.class));
+            verify(webSocketSession2, never()).sendMessage(any());
+        }
+
+        @Test
+        @DisplayName("should drop messages for a room without local members")
+        void shouldDropMessagesForRoomWithoutLocalMembers() throws IOException {
+            // Given
+            sessionManager.addSession(webSocketSession1);
+
+            // When
+            sessionManager.broadcast(messageFor("lobby"));
+
+            // Then
+            verify(webSocketSession1, never()).sendMessage(any());
+            assertFalse(sessionManager.hasMembers("lobby"));
+        }
+
+        @Test
+        @DisplayName("should report whether membership changed")
+        void shouldReportWhetherMembershipChanged() {
+            // Given
+            sessionManager.addSession(webSocketSession1);
+
+            // When & Then
+            assertTrue(sessionManager.joinRoom(webSocketSession1, "lobby"));
+            assertFalse(sessionManager.joinRoom(webSocketSession1, "lobby"));
+            assertTrue(sessionManager.isMember(webSocketSession1, "lobby"));
+            assertTrue(sessionManager.leaveRoom(webSocketSession1, "lobby"));
+            assertFalse(sessionManager.leaveRoom(webSocketSession1, "lobby"));
+            assertFalse(sessionManager.isMember(webSocketSession1, "lobby"));
+            assertFalse(sessionManager.hasMembers("lobby"));
+        }
+
+        @Test
+        @DisplayName("should not join a room for an unknown session")
+        void shouldNotJoinRoomForUnknownSession() {
+            assertFalse(sessionManager.joinRoom(webSocketSession1, "lobby"));
+            assertFalse(sessionManager.hasMembers("lobby"));
+        }
+
+        @Test
+        @DisplayName("should return and vacate the rooms of a removed session")
+        void shouldReturnAndVacateRoomsOfRemovedSession() {
+            // Given
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+            sessionManager.joinRoom(webSocketSession1, "random");
+            sessionManager.joinRoom(webSocketSession2, "random");
+
+            // When
+            Set<String> rooms = sessionManager.removeSession(webSocketSession1);
+
+            // Then
+            assertEquals(Set.of("lobby", "random"), rooms);
+            assertFalse(sessionManager.hasMembers("lobby"));
+            assertTrue(sessionManager.hasMembers("random"));
+            // a second remove finds nothing to undo
+            assertNull(sessionManager.removeSession(webSocketSession1));
+        }
+    }
+
+    @Nested
+    @DisplayName("direct messages")
+    class DirectMessagesTest {
+
+        private void connect(WebSocketSession session, String username) {
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("username", username);
+            lenient().when(session.getAttributes()).thenReturn(attributes);
+            sessionManager.addSession(session);
+        }
+
+        private ChatMessage directTo(String username) {
+            ChatMessage source = new ChatMessage();
+            source.setMessage("psst");
+            source.setTo(username);
+            return ChatMessage.directFrom(source, "alice", MessageIdGenerator.RANDOM);
+        }
+
+        @Test
+        @DisplayName("should deliver only to the recipient's sessions, whatever rooms they are in")
+        void shouldDeliverOnlyToRecipientSessions() throws IOException {
+            // Given
+            connect(webSocketSession1, "bob");
+            connect(webSocketSession2, "bob");
+            connect(webSocketSession3, "carol");
+            sessionManager.joinRoom(webSocketSession3, ChatMessage.DEFAULT_ROOM);
+
+            // When
+            sessionManager.broadcast(directTo("bob"));
+
+            // Then
+            verify(webSocketSession1).sendMessage(any(TextMessage.class));
+            verify(webSocketSession2).sendMessage(any(TextMessage.class));
+            verify(webSocketSession3, never()).sendMessage(any());
+        }
+
+        @Test
+        @DisplayName("should keep direct messages out of the replay buffer")
+        void shouldKeepDirectMessagesOutOfReplayBuffer() {
+            // Given
+            ReplayBuffer replayBuffer = new ReplayBuffer(64);
+            WebSocketSessionManager manager = new WebSocketSessionManager(codec, outboundSettings, Runnable::run,
+                    replayBuffer, new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
+
+            // When
+            manager.broadcast(directTo("bob"));
+
+            // Then
+            assertEquals(0, replayBuffer.lastSequence());
+        }
+
+        @Test
+        @DisplayName("should report a user online while any of their sessions is connected")
+        void shouldTrackWhetherUserIsOnline() {
+            // Given
+            connect(webSocketSession1, "bob");
+            connect(webSocketSession2, "bob");
+
+            // When & Then
+            assertTrue(sessionManager.isOnline("bob"));
+            sessionManager.removeSession(webSocketSession1);
+            assertTrue(sessionManager.isOnline("bob"));
+            sessionManager.removeSession(webSocketSession2);
+            assertFalse(sessionManager.isOnline("bob"));
+            assertFalse(sessionManager.isOnline(null));
+        }
+    }
+
+    @Nested
+    @DisplayName("presence frames")
+    class PresenceFramesTest {
+
+        private EncodedChatMessage presenceIn(String room) {
+            return new EncodedChatMessage(null, EncodedChatMessage.PRESENCE, room, null,
+                    "{\"type\":\"presence\",\"count\":1}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        @DisplayName("should deliver to the room's members without buffering for replay")
+        void shouldDeliverToRoomWithoutBuffering() throws IOException {
+            // Given
+            ReplayBuffer replayBuffer = new ReplayBuffer(64);
+            WebSocketSessionManager manager = new WebSocketSessionManager(codec, outboundSettings, Runnable::run,
+                    replayBuffer, new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
+            manager.addSession(webSocketSession1);
+            manager.addSession(webSocketSession2);
+            manager.joinRoom(webSocketSession1, "lobby");
+
+            // When
+            manager.broadcast(presenceIn("lobby"));
+
+            // Then
+            verify(webSocketSession1).sendMessage(any(TextMessage.class));
+            verify(webSocketSession2, never()).sendMessage(any());
+            assertEquals(0, replayBuffer.lastSequence());
+        }
+
+        @Test
+        @DisplayName("should send to the one session only")
+        void shouldSendToOneSession() throws IOException {
+            // Given
+            sessionManager.addSession(webSocketSession1);
+            sessionManager.addSession(webSocketSession2);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+            sessionManager.joinRoom(webSocketSession2, "lobby");
+
+            // When
+            sessionManager.send(webSocketSession1, presenceIn("lobby"));
+            sessionManager.send(webSocketSession3, presenceIn("lobby"));
+
+            // Then
+            verify(webSocketSession1).sendMessage(any(TextMessage.class));
+            verify(webSocketSession2, never()).sendMessage(any());
+            verify(webSocketSession3, never()).sendMessage(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("resume method")
+    class ResumeTest {
+
+        private ChatMessage messageFor(String room, String text) {
+            ChatMessage message = ChatMessage.create(text, "testuser", MessageIdGenerator.RANDOM);
+            message.setRoom(room);
+            return message;
+        }
+
+        private List<String> sentTo(WebSocketSession session) throws IOException {
+            ArgumentCaptor<TextMessage> captor = ArgumentCaptor.forClass(TextMessage.class);
+            verify(session, atLeast(0)).sendMessage(captor.capture());
+            return captor.getAllValues().stream().map(TextMessage::getPayload).toList();
+        }
+
+        @Test
+        @DisplayName("should replay what the session missed in its rooms before live traffic")
+        void shouldReplayMissedMessagesBeforeLiveTraffic() throws IOException {
+            // Given
+            ChatMessage seen = messageFor("lobby", "seen");
+            sessionManager.broadcast(seen);
+            sessionManager.broadcast(messageFor("lobby", "missed"));
+            sessionManager.broadcast(messageFor("random", "other room"));
+
+            // When
+            sessionManager.addResumingSession(webSocketSession1);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+            sessionManager.broadcast(messageFor("lobby", "while joining"));
+            int replayed = sessionManager.resume(webSocketSession1, seen.getId());
+            sessionManager.broadcast(messageFor("lobby", "live"));
+
+            // Then
+            assertEquals(2, replayed);
+            List<String> sent = sentTo(webSocketSession1);
+            assertEquals(3, sent.size());
+            assertTrue(sent.get(0).contains("\"missed\""));
+            assertTrue(sent.get(1).contains("\"while joining\""));
+            assertTrue(sent.get(2).contains("\"live\""));
+        }
+
+        @Test
+        @DisplayName("should replay what is buffered behind a gap notice when the id is unknown")
+        void shouldReplayBufferedBehindGapNoticeWhenIdIsUnknown() throws IOException {
+            // Given
+            sessionManager.broadcast(messageFor("lobby", "first"));
+            sessionManager.broadcast(messageFor("lobby", "second"));
+            sessionManager.addResumingSession(webSocketSession1);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+
+            // When
+            int replayed = sessionManager.resume(webSocketSession1, "long-gone");
+
+            // Then
+            assertEquals(2, replayed);
+            List<String> sent = sentTo(webSocketSession1);
+            assertEquals(3, sent.size());
+            assertTrue(sent.get(0).contains(WebSocketSessionManager.REPLAY_GAP));
+            assertTrue(sent.get(1).contains("\"first\""));
+        }
+
+        @Test
+        @DisplayName("should replay no more than the session's queue holds, newest first kept, behind a gap notice")
+        void shouldCapReplayAtQueueCapacity() throws IOException {
+            // Given
+            ChatMessage seen = messageFor("lobby", "seen");
+            sessionManager.broadcast(seen);
+            for (int i = 0; i < 30; i++) {
+                sessionManager.broadcast(messageFor("lobby", "missed-" + i));
+            }
+            sessionManager.addResumingSession(webSocketSession1);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+
+            // When
+            int replayed = sessionManager.resume(webSocketSession1, seen.getId());
+
+            // Then
+            assertEquals(outboundSettings.capacity() - 1, replayed);
+            List<String> sent = sentTo(webSocketSession1);
+            assertEquals(outboundSettings.capacity(), sent.size());
+            assertTrue(sent.get(0).contains(WebSocketSessionManager.REPLAY_GAP));
+            assertTrue(sent.get(1).contains("\"missed-15\""));
+            assertTrue(sent.get(sent.size() - 1).contains("\"missed-29\""));
+        }
+
+        @Test
+        @DisplayName("should write nothing to a resuming session before it resumes")
+        void shouldWriteNothingBeforeResume() throws IOException {
+            // Given
+            sessionManager.addResumingSession(webSocketSession1);
+            sessionManager.joinRoom(webSocketSession1, "lobby");
+
+            // When
+            sessionManager.broadcast(messageFor("lobby", "held"));
+
+            // Then
+            verify(webSocketSession1, never()).sendMessage(any());
         }
     }
 
@@ -234,24 +636,33 @@ class WebSocketSessionManagerTest {
     class ConstructorTest {
 
         @Test
-        @DisplayName("should create instance with ObjectMapper dependency")
-        void shouldCreateInstanceWithObjectMapperDependency() {
+        @DisplayName("should create instance with codec dependency")
+        void shouldCreateInstanceWithCodecDependency() {
             // When
-            WebSocketSessionManager manager = new WebSocketSessionManager(objectMapper);
+            WebSocketSessionManager manager = new WebSocketSessionManager(codec, outboundSettings, Runnable::run, new ReplayBuffer(64), new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
 
             // Then
             assertNotNull(manager);
         }
 
         @Test
-        @DisplayName("should handle null ObjectMapper")
-        void shouldHandleNullObjectMapper() {
+        @DisplayName("should handle null codec")
+        void shouldHandleNullCodec() {
+            // When & Then
+            assertThrows(NullPointerException.class,() -> {
+                new WebSocketSessionManager(null, outboundSettings, Runnable::run, new ReplayBuffer(64), new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
+            });
+        }
+
+        @Test
+        @DisplayName("should handle null writer")
+        void shouldHandleNullWriter() {
             // When & Then
             assertThrows(NullPointerException.class,() -> {
-                new WebSocketSessionManager(null);
+                new WebSocketSessionManager(codec, outboundSettings, null, new ReplayBuffer(64), new DisabledMessageHistory(), MessageIdGenerator.RANDOM, new SimpleMeterRegistry());
             });
         }
 
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,263 +1,545 @@
-package net.malevy.chatserver.infrastructure.adapters.websocket;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import net.malevy.chatserver.application.usecases.JoinChatUseCase;
-import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
-import net.malevy.chatserver.application.usecases.SendMessageUseCase;
-import net.malevy.chatserver.config.ObjectMapperConfig;
-import net.malevy.chatserver.domain.entities.ChatMessage;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.DisplayName;
-import org.junit.jupiter.api.Nested;
-import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
-
-import java.net.URI;
-import java.net.URISyntaxException;
-
-import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.*;
-
-@ExtendWith(MockitoExtension.class)
-class WebsocketConnectionHandlerTest {
-
-    @Mock
-    private JoinChatUseCase joinChatUseCase;
-
-    @Mock
-    private LeaveChatUseCase leaveChatUseCase;
-
-    @Mock
-    private SendMessageUseCase sendMessageUseCase;
-
-    @Mock
-    private WebSocketSession webSocketSession;
-
-    private ObjectMapper objectMapper;
-    private WebsocketConnectionHandler handler;
-
-    @BeforeEach
-    void setUp() {
-        ObjectMapperConfig config = new ObjectMapperConfig();
-        objectMapper = config.buildObjectMapper();
-        handler = new WebsocketConnectionHandler(
-                objectMapper,
-                joinChatUseCase,
-                leaveChatUseCase,
-                sendMessageUseCase
-        );
-    }
-
-    @Nested
-    @DisplayName("Constructor")
-    class ConstructorTest {
-
-        @Test
-        @DisplayName("should create instance with all dependencies")
-        void shouldCreateInstanceWithAllDependencies() {
-            WebsocketConnectionHandler handler = new WebsocketConnectionHandler(
-                    objectMapper,
-                    joinChatUseCase,
-                    leaveChatUseCase,
-                    sendMessageUseCase
-            );
-
-            assertNotNull(handler);
-        }
-    }
-
-    @Nested
-    @DisplayName("afterConnectionEstablished method")
-    class AfterConnectionEstablishedTest {
-
-        @Test
-        @DisplayName("should extract username from URI and call joinChatUseCase")
-        void shouldExtractUsernameFromUriAndCallJoinChatUseCase() throws Exception {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?username=testuser");
-            when(webSocketSession.getUri()).thenReturn(uri);
-
-            // When
-            handler.afterConnectionEstablished(webSocketSession);
-
-            // Then
-            verify(joinChatUseCase).run(eq(webSocketSession), eq("testuser"));
-        }
-
-        @Test
-        @DisplayName("should use default username when URI has no username parameter")
-        void shouldUseDefaultUsernameWhenUriHasNoUsernameParameter() throws Exception {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat");
-            when(webSocketSession.getUri()).thenReturn(uri);
-
-            // When
-            handler.afterConnectionEstablished(webSocketSession);
-
-            // Then
-            verify(joinChatUseCase).run(eq(webSocketSession), eq("{unknown}"));
-        }
-
-        @Test
-        @DisplayName("should handle malformed URI gracefully")
-        void shouldHandleMalformedUriGracefully() throws Exception {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?username=");
-            when(webSocketSession.getUri()).thenReturn(uri);
-
-            // When
-            handler.afterConnectionEstablished(webSocketSession);
-
-            // Then
-            verify(joinChatUseCase).run(eq(webSocketSession), eq(""));
-        }
-
-    }
-
-    @Nested
-    @DisplayName("afterConnectionClosed method")
-    class AfterConnectionClosedTest {
-
-        @Test
-        @DisplayName("should call leaveChatUseCase when connection is closed")
-        void shouldCallLeaveChatUseCaseWhenConnectionIsClosed() throws Exception {
-            // Given
-            CloseStatus closeStatus = CloseStatus.NORMAL;
-
-            // When
-            handler.afterConnectionClosed(webSocketSession, closeStatus);
-
-            // Then
-            verify(leaveChatUseCase).run(eq(webSocketSession));
-        }
-
-    }
-
-    @Nested
-    @DisplayName("handleTextMessage method")
-    class HandleTextMessageTest {
-
-        @Test
-        @DisplayName("should deserialize message and call sendMessageUseCase")
-        void shouldDeserializeMessageAndCallSendMessageUseCase() throws Exception {
-            // Given
-            ChatMessage originalMessage = ChatMessage.create("Hello world", "testuser");
-            String messageJson = objectMapper.writeValueAsString(originalMessage);
-            TextMessage textMessage = new TextMessage(messageJson);
-            when(webSocketSession.getId()).thenReturn("session-123");
-
-            // When
-            handler.handleTextMessage(webSocketSession, textMessage);
-
-            // Then
-            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
-            verify(sendMessageUseCase).run(eq(webSocketSession), messageCaptor.capture());
-
-            ChatMessage capturedMessage = messageCaptor.getValue();
-            assertEquals("Hello world", capturedMessage.getMessage());
-            assertEquals("testuser", capturedMessage.getUsername());
-            assertEquals("message", capturedMessage.getType());
-        }
-
-    }
-
-    @Nested
-    @DisplayName("getUsernameFromUri static method")
-    class GetUsernameFromUriTest {
-
-        @Test
-        @DisplayName("should extract username from valid URI")
-        void shouldExtractUsernameFromValidUri() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?username=testuser");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertEquals("testuser", username);
-        }
-
-        @Test
-        @DisplayName("should return null when no username parameter")
-        void shouldReturnNullWhenNoUsernameParameter() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertNull(username);
-        }
-
-        @Test
-        @DisplayName("should return null when username parameter is empty")
-        void shouldReturnNullWhenUsernameParameterIsEmpty() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?username=");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertEquals("", username);
-        }
-
-        @Test
-        @DisplayName("should extract username with other parameters present")
-        void shouldExtractUsernameWithOtherParametersPresent() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?room=general&username=john&token=abc123");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertEquals("john", username);
-        }
-
-        @Test
-        @DisplayName("should handle null URI")
-        void shouldHandleNullUri() {
-            // When & Then
-            assertThrows(NullPointerException.class, () -> {
-                WebsocketConnectionHandler.getUsernameFromUri(null);
-            });
-        }
-
-        @Test
-        @DisplayName("should handle URI without query parameters")
-        void shouldHandleUriWithoutQueryParameters() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertNull(username);
-        }
-
-        @Test
-        @DisplayName("should return first username when multiple username parameters")
-        void shouldReturnFirstUsernameWhenMultipleUsernameParameters() throws URISyntaxException {
-            // Given
-            URI uri = new URI("ws://localhost:8080/chat?username=first&username=second");
-
-            // When
-            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
-
-            // Then
-            assertEquals("first", username);
-        }
-    }
-}
\ No newline at end of file
+package net.malevy.chatserver.infrastructure.adapters.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.application.usecases.FetchHistoryUseCase;
+import net.malevy.chatserver.application.usecases.JoinChatUseCase;
+import net.malevy.chatserver.application.usecases.JoinRoomUseCase;
+import net.malevy.chatserver.application.usecases.LeaveChatUseCase;
+import net.malevy.chatserver.application.usecases.LeaveRoomUseCase;
+import net.malevy.chatserver.application.usecases.SendDirectMessageUseCase;
+import net.malevy.chatserver.application.usecases.SendMessageUseCase;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import net.malevy.chatserver.infrastructure.codec.InboundMessageLimits;
+import net.malevy.chatserver.infrastructure.codec.InboundMessageReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebsocketConnectionHandlerTest {
+
+    @Mock
+    private JoinChatUseCase joinChatUseCase;
+
+    @Mock
+    private LeaveChatUseCase leaveChatUseCase;
+
+    @Mock
+    private SendMessageUseCase sendMessageUseCase;
+
+    @Mock
+    private SendDirectMessageUseCase sendDirectMessageUseCase;
+
+    @Mock
+    private JoinRoomUseCase joinRoomUseCase;
+
+    @Mock
+    private LeaveRoomUseCase leaveRoomUseCase;
+
+    @Mock
+    private FetchHistoryUseCase fetchHistoryUseCase;
+
+    @Mock
+    private IdleSessionReaper idleSessions;
+
+    @Mock
+    private InboundRateLimiter rateLimiter;
+
+    @Mock
+    private WebSocketSession webSocketSession;
+
+    private ObjectMapper objectMapper;
+    private final InboundMessageReader reader = new InboundMessageReader(new InboundMessageLimits(8192, 4000, 128));
+    private WebsocketConnectionHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapperConfig config = new ObjectMapperConfig();
+        objectMapper = config.buildObjectMapper();
+        handler = new WebsocketConnectionHandler(
+                reader,
+                joinChatUseCase,
+                leaveChatUseCase,
+                sendMessageUseCase,
+                sendDirectMessageUseCase,
+                joinRoomUseCase,
+                leaveRoomUseCase,
+                fetchHistoryUseCase,
+                idleSessions,
+                rateLimiter
+        );
+        lenient().when(rateLimiter.admit(any(), any())).thenReturn(true);
+    }
+
+    @Nested
+    @DisplayName("Constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should create instance with all dependencies")
+        void shouldCreateInstanceWithAllDependencies() {
+            WebsocketConnectionHandler handler = new WebsocketConnectionHandler(
+                    reader,
+                    joinChatUseCase,
+                    leaveChatUseCase,
+                    sendMessageUseCase,
+                    sendDirectMessageUseCase,
+                    joinRoomUseCase,
+                    leaveRoomUseCase,
+                    fetchHistoryUseCase,
+                    idleSessions,
+                    rateLimiter
+            );
+
+            assertNotNull(handler);
+        }
+    }
+
+    @Nested
+    @DisplayName("afterConnectionEstablished method")
+    class AfterConnectionEstablishedTest {
+
+        @Test
+        @DisplayName("should extract username from URI and call joinChatUseCase")
+        void shouldExtractUsernameFromUriAndCallJoinChatUseCase() throws Exception {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=testuser");
+            when(webSocketSession.getUri()).thenReturn(uri);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession);
+
+            // Then
+            verify(joinChatUseCase).run(eq(webSocketSession), eq("testuser"), eq(Set.of()), isNull());
+            verify(idleSessions).track(webSocketSession);
+            verify(rateLimiter).open(webSocketSession, "testuser");
+        }
+
+        @Test
+        @DisplayName("should use default username when URI has no username parameter")
+        void shouldUseDefaultUsernameWhenUriHasNoUsernameParameter() throws Exception {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat");
+            when(webSocketSession.getUri()).thenReturn(uri);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession);
+
+            // Then
+            verify(joinChatUseCase).run(eq(webSocketSession), eq("{unknown}"), eq(Set.of()), isNull());
+        }
+
+        @Test
+        @DisplayName("should handle malformed URI gracefully")
+        void shouldHandleMalformedUriGracefully() throws Exception {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=");
+            when(webSocketSession.getUri()).thenReturn(uri);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession);
+
+            // Then
+            verify(joinChatUseCase).run(eq(webSocketSession), eq(""), eq(Set.of()), isNull());
+        }
+
+        @Test
+        @DisplayName("should pass the requested rooms to joinChatUseCase")
+        void shouldPassRequestedRoomsToJoinChatUseCase() throws Exception {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=testuser&room=lobby&room=random");
+            when(webSocketSession.getUri()).thenReturn(uri);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession);
+
+            // Then
+            verify(joinChatUseCase).run(eq(webSocketSession), eq("testuser"), eq(Set.of("lobby", "random")), isNull());
+        }
+
+        @Test
+        @DisplayName("should pass lastMessageId through so the session can resume")
+        void shouldPassLastMessageIdThrough() throws Exception {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=testuser&lastMessageId=msg-41");
+            when(webSocketSession.getUri()).thenReturn(uri);
+
+            // When
+            handler.afterConnectionEstablished(webSocketSession);
+
+            // Then
+            verify(joinChatUseCase).run(eq(webSocketSession), eq("testuser"), eq(Set.of()), eq("msg-41"));
+        }
+    }
+
+    @Nested
+    @DisplayName("afterConnectionClosed method")
+    class AfterConnectionClosedTest {
+
+        @Test
+        @DisplayName("should call leaveChatUseCase when connection is closed")
+        void shouldCallLeaveChatUseCaseWhenConnectionIsClosed() throws Exception {
+            // Given
+            CloseStatus closeStatus = CloseStatus.NORMAL;
+
+            // When
+            handler.afterConnectionClosed(webSocketSession, closeStatus);
+
+            // Then
+            verify(leaveChatUseCase).run(eq(webSocketSession));
+            verify(idleSessions).untrack(webSocketSession);
+            verify(rateLimiter).close(webSocketSession);
+        }
+
+    }
+
+    @Nested
+    @DisplayName("handleMessage method")
+    class HandleMessageTest {
+
+        @Test
+        @DisplayName("should count a pong as hearing from the session")
+        void shouldTouchSessionOnPong() throws Exception {
+            // When
+            handler.handleMessage(webSocketSession, new PongMessage());
+
+            // Then
+            verify(idleSessions).touch(webSocketSession);
+            verifyNoInteractions(sendMessageUseCase);
+        }
+    }
+
+    @Nested
+    @DisplayName("handleTextMessage method")
+    class HandleTextMessageTest {
+
+        @Test
+        @DisplayName("should deserialize message and call sendMessageUseCase")
+        void shouldDeserializeMessageAndCallSendMessageUseCase() throws Exception {
+            // Given
+            ChatMessage originalMessage = ChatMessage.create("Hello world", "testuser", MessageIdGenerator.RANDOM);
+            String messageJson = objectMapper.writeValueAsString(originalMessage);
+            TextMessage textMessage = new TextMessage(messageJson);
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            verify(sendMessageUseCase).run(eq(webSocketSession), messageCaptor.capture());
+
+            ChatMessage capturedMessage = messageCaptor.getValue();
+            assertEquals("Hello world", capturedMessage.getMessage());
+            assertEquals("testuser", capturedMessage.getUsername());
+            assertEquals("message", capturedMessage.getType());
+        }
+
+        @Test
+        @DisplayName("should route a join request to joinRoomUseCase")
+        void shouldRouteJoinRequestToJoinRoomUseCase() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"join\",\"room\":\"lobby\"}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(joinRoomUseCase).run(webSocketSession, "lobby");
+            verifyNoInteractions(sendMessageUseCase, leaveRoomUseCase);
+        }
+
+        @Test
+        @DisplayName("should route a leave request to leaveRoomUseCase")
+        void shouldRouteLeaveRequestToLeaveRoomUseCase() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"leave\"}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(leaveRoomUseCase).run(webSocketSession, ChatMessage.DEFAULT_ROOM);
+            verifyNoInteractions(sendMessageUseCase, joinRoomUseCase);
+        }
+
+        @Test
+        @DisplayName("should route a history request to fetchHistoryUseCase")
+        void shouldRouteHistoryRequestToFetchHistoryUseCase() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"history\",\"room\":\"lobby\",\"timestamp\":\"2025-06-01T12:00:00Z\"}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(fetchHistoryUseCase).run(webSocketSession, "lobby", Instant.parse("2025-06-01T12:00:00Z"));
+            verifyNoInteractions(sendMessageUseCase, joinRoomUseCase);
+        }
+
+        @Test
+        @DisplayName("should route a direct message to sendDirectMessageUseCase")
+        void shouldRouteDirectMessageToSendDirectMessageUseCase() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"direct\",\"to\":\"bob\",\"message\":\"psst\"}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(sendDirectMessageUseCase).run(eq(webSocketSession), messageCaptor.capture());
+            assertEquals("bob", messageCaptor.getValue().getTo());
+            verifyNoInteractions(sendMessageUseCase, joinRoomUseCase, leaveRoomUseCase);
+        }
+
+        @Test
+        @DisplayName("should drop a message the rate limiter rejects")
+        void shouldDropRateLimitedMessage() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"join\",\"room\":\"lobby\"}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+            when(rateLimiter.admit(webSocketSession, "join")).thenReturn(false);
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verifyNoInteractions(joinRoomUseCase, sendMessageUseCase);
+        }
+
+        @Test
+        @DisplayName("should close a session that sends a type only the server may send")
+        void shouldCloseSessionSendingReservedType() throws Exception {
+            // Given
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, new TextMessage("{\"type\":\"presence\",\"room\":\"general\"}"));
+            handler.handleTextMessage(webSocketSession, new TextMessage("{\"type\":\"system\",\"message\":\"hi\"}"));
+
+            // Then
+            verify(webSocketSession, times(2)).close(WebsocketConnectionHandler.RESERVED_TYPE);
+            verifyNoInteractions(sendMessageUseCase, rateLimiter);
+        }
+
+        @Test
+        @DisplayName("should close the session on a frame that is not a message")
+        void shouldCloseSessionOnMalformedFrame() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage("{\"type\":\"message\",\"admin\":true}");
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(webSocketSession).close(CloseStatus.BAD_DATA);
+            verifyNoInteractions(sendMessageUseCase, rateLimiter);
+        }
+
+        @Test
+        @DisplayName("should close the session on a message over the length limit")
+        void shouldCloseSessionOnOversizedMessage() throws Exception {
+            // Given
+            TextMessage textMessage = new TextMessage(objectMapper.writeValueAsString(ChatMessage.create("x".repeat(4001), "testuser", MessageIdGenerator.RANDOM)));
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleTextMessage(webSocketSession, textMessage);
+
+            // Then
+            verify(webSocketSession).close(CloseStatus.TOO_BIG_TO_PROCESS);
+            verifyNoInteractions(sendMessageUseCase);
+        }
+
+    }
+
+    @Nested
+    @DisplayName("handleBinaryMessage method")
+    class HandleBinaryMessageTest {
+
+        private BinaryMessage cbor(ChatMessage message) throws Exception {
+            return new BinaryMessage(objectMapper.copyWith(new CBORFactory()).writeValueAsBytes(message));
+        }
+
+        @Test
+        @DisplayName("should decode a CBOR message and call sendMessageUseCase")
+        void shouldDecodeCborMessageAndCallSendMessageUseCase() throws Exception {
+            // Given
+            ChatMessage originalMessage = ChatMessage.create("Hello world", "testuser", MessageIdGenerator.RANDOM);
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleMessage(webSocketSession, cbor(originalMessage));
+
+            // Then
+            ArgumentCaptor<ChatMessage> messageCaptor = ArgumentCaptor.forClass(ChatMessage.class);
+            verify(sendMessageUseCase).run(eq(webSocketSession), messageCaptor.capture());
+            assertEquals("Hello world", messageCaptor.getValue().getMessage());
+            assertEquals(originalMessage.getTimestamp(), messageCaptor.getValue().getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should route a CBOR join request to joinRoomUseCase")
+        void shouldRouteCborJoinRequestToJoinRoomUseCase() throws Exception {
+            // Given
+            ChatMessage join = new ChatMessage();
+            join.setType("join");
+            join.setRoom("lobby");
+            when(webSocketSession.getId()).thenReturn("session-123");
+
+            // When
+            handler.handleMessage(webSocketSession, cbor(join));
+
+            // Then
+            verify(joinRoomUseCase).run(webSocketSession, "lobby");
+            verifyNoInteractions(sendMessageUseCase, leaveRoomUseCase);
+        }
+    }
+
+    @Nested
+    @DisplayName("getUsernameFromUri static method")
+    class GetUsernameFromUriTest {
+
+        @Test
+        @DisplayName("should extract username from valid URI")
+        void shouldExtractUsernameFromValidUri() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=testuser");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertEquals("testuser", username);
+        }
+
+        @Test
+        @DisplayName("should return null when no username parameter")
+        void shouldReturnNullWhenNoUsernameParameter() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertNull(username);
+        }
+
+        @Test
+        @DisplayName("should return null when username parameter is empty")
+        void shouldReturnNullWhenUsernameParameterIsEmpty() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertEquals("", username);
+        }
+
+        @Test
+        @DisplayName("should extract username with other parameters present")
+        void shouldExtractUsernameWithOtherParametersPresent() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?room=general&username=john&token=abc123");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertEquals("john", username);
+        }
+
+        @Test
+        @DisplayName("should handle null URI")
+        void shouldHandleNullUri() {
+            // When & Then
+            assertThrows(NullPointerException.class, () -> {
+                WebsocketConnectionHandler.getUsernameFromUri(null);
+            });
+        }
+
+        @Test
+        @DisplayName("should handle URI without query parameters")
+        void shouldHandleUriWithoutQueryParameters() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertNull(username);
+        }
+
+        @Test
+        @DisplayName("should return first username when multiple username parameters")
+        void shouldReturnFirstUsernameWhenMultipleUsernameParameters() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?username=first&username=second");
+
+            // When
+            String username = WebsocketConnectionHandler.getUsernameFromUri(uri);
+
+            // Then
+            assertEquals("first", username);
+        }
+    }
+
+    @Nested
+    @DisplayName("getRoomsFromUri static method")
+    class GetRoomsFromUriTest {
+
+        @Test
+        @DisplayName("should return distinct non-blank rooms in request order")
+        void shouldReturnDistinctNonBlankRoomsInRequestOrder() throws URISyntaxException {
+            // Given
+            URI uri = new URI("ws://localhost:8080/chat?room=lobby&room=&room=random&room=lobby");
+
+            // When
+            Set<String> rooms = WebsocketConnectionHandler.getRoomsFromUri(uri);
+
+            // Then
+            assertEquals(List.of("lobby", "random"), List.copyOf(rooms));
+        }
+
+        @Test
+        @DisplayName("should return no rooms when the parameter is missing")
+        void shouldReturnNoRoomsWhenParameterIsMissing() throws URISyntaxException {
+            assertTrue(WebsocketConnectionHandler.getRoomsFromUri(new URI("ws://localhost:8080/chat")).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.EncodedChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMessageCodecTest {
+
+    private ObjectMapper mapper;
+    private ChatMessageCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        mapper = new ObjectMapperConfig().buildObjectMapper();
+        codec = new ChatMessageCodec(mapper);
+    }
+
+    @Nested
+    @DisplayName("encode method")
+    class EncodeTest {
+
+        @Test
+        @DisplayName("should carry routing fields alongside the payload")
+        void shouldCarryRoutingFieldsAlongsidePayload() throws IOException {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello", "user1", MessageIdGenerator.RANDOM);
+            message.setNodeId("node-1");
+
+            // When
+            EncodedChatMessage encoded = codec.encode(message);
+
+            // Then
+            assertEquals(message.getId(), encoded.id());
+            assertEquals("message", encoded.type());
+            assertEquals("node-1", encoded.nodeId());
+            assertTrue(new String(encoded.payload()).contains("\"message\":\"Hello\""));
+        }
+
+        @Test
+        @DisplayName("should round trip through decode")
+        void shouldRoundTripThroughDecode() throws IOException {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello", "user1", MessageIdGenerator.RANDOM);
+            message.setTimestamp(Instant.parse("2023-01-01T12:00:00Z"));
+
+            // When
+            ChatMessage decoded = codec.decode(codec.encode(message));
+
+            // Then
+            assertEquals(message.getId(), decoded.getId());
+            assertEquals("Hello", decoded.getMessage());
+            assertEquals("user1", decoded.getUsername());
+            assertEquals(message.getTimestamp(), decoded.getTimestamp());
+        }
+    }
+
+    @Nested
+    @DisplayName("wrap method")
+    class WrapTest {
+
+        @Test
+        @DisplayName("should read routing fields and keep the payload untouched")
+        void shouldReadRoutingFieldsAndKeepPayloadUntouched() throws IOException {
+            // Given
+            byte[] payload = ("{\"id\":\"abc\",\"type\":\"system\",\"message\":\"hi\",\"extra\":{\"nested\":[1,2]},"
+                    + "\"room\":\"lobby\",\"nodeId\":\"node-9\",\"hlc\":123456789}").getBytes();
+
+            // When
+            EncodedChatMessage wrapped = codec.wrap(payload);
+
+            // Then
+            assertEquals("abc", wrapped.id());
+            assertEquals("system", wrapped.type());
+            assertEquals("lobby", wrapped.room());
+            assertEquals("node-9", wrapped.nodeId());
+            assertEquals(123456789L, wrapped.hlc());
+            assertNull(wrapped.to());
+            assertSame(payload, wrapped.payload());
+        }
+
+        @Test
+        @DisplayName("should read the recipient of a direct message")
+        void shouldReadRecipientOfDirectMessage() throws IOException {
+            // Given
+            ChatMessage source = new ChatMessage();
+            source.setMessage("psst");
+            source.setTo("bob");
+            byte[] payload = codec.encode(ChatMessage.directFrom(source, "alice", MessageIdGenerator.RANDOM)).payload();
+
+            // When
+            EncodedChatMessage wrapped = codec.wrap(payload);
+
+            // Then
+            assertEquals("bob", wrapped.to());
+            assertEquals("direct", wrapped.type());
+            assertNull(wrapped.room());
+        }
+
+        @Test
+        @DisplayName("should treat missing and null routing fields as null")
+        void shouldTreatMissingAndNullRoutingFieldsAsNull() throws IOException {
+            // When
+            EncodedChatMessage wrapped = codec.wrap("{\"id\":null,\"message\":\"hi\"}".getBytes());
+
+            // Then
+            assertNull(wrapped.id());
+            assertNull(wrapped.type());
+            assertNull(wrapped.room());
+            assertNull(wrapped.nodeId());
+            assertEquals(0, wrapped.hlc());
+        }
+
+        @Test
+        @DisplayName("should reject malformed payloads")
+        void shouldRejectMalformedPayloads() {
+            assertThrows(IOException.class, () -> codec.wrap("invalid json".getBytes()));
+            assertThrows(IOException.class, () -> codec.wrap(new byte[0]));
+            assertThrows(IOException.class, () -> codec.wrap("[1,2]".getBytes()));
+            assertThrows(IOException.class, () -> codec.wrap("{\"id\":\"a\"".getBytes()));
+            assertThrows(IOException.class, () -> codec.wrap("{\"id\":\"a\"} trailing".getBytes()));
+        }
+    }
+
+    @Nested
+    @DisplayName("toCbor method")
+    class ToCborTest {
+
+        @Test
+        @DisplayName("should carry every field of the JSON payload")
+        void shouldCarryEveryFieldOfJsonPayload() throws IOException {
+            // Given
+            ChatMessage message = ChatMessage.create("Hello", "user1", MessageIdGenerator.RANDOM);
+            message.setRoom("lobby");
+            message.setNodeId("node-1");
+            message.setTimestamp(Instant.parse("2023-01-01T12:00:00Z"));
+            EncodedChatMessage encoded = codec.encode(message);
+
+            // When
+            byte[] cbor = codec.toCbor(encoded.payload());
+
+            // Then
+            ChatMessage decoded = mapper.copyWith(new CBORFactory()).readValue(cbor, ChatMessage.class);
+            assertEquals(message.getId(), decoded.getId());
+            assertEquals("Hello", decoded.getMessage());
+            assertEquals("user1", decoded.getUsername());
+            assertEquals("lobby", decoded.getRoom());
+            assertEquals("node-1", decoded.getNodeId());
+            assertEquals(message.getTimestamp(), decoded.getTimestamp());
+            assertTrue(cbor.length < encoded.payload().length);
+        }
+
+        @Test
+        @DisplayName("should reject malformed payloads")
+        void shouldRejectMalformedPayloads() {
+            assertThrows(IOException.class, () -> codec.toCbor("invalid json".getBytes()));
+            assertThrows(IOException.class, () -> codec.toCbor(new byte[0]));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterEnvelopeTest {
+
+    private static final byte[] BODY = ("{\"id\":\"abc\",\"type\":\"message\",\"message\":\"" + "hello ".repeat(40)
+            + "\",\"room\":\"lobby\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Nested
+    @DisplayName("seal method")
+    class SealTest {
+
+        @Test
+        @DisplayName("should put origin, clock and room in a header the receiver reads back")
+        void shouldWriteHeaderFields() {
+            // When
+            byte[] frame = new ClusterEnvelope(0).seal(-7, 123456789L, "lobby", BODY);
+
+            // Then
+            ClusterEnvelope.Header header = ClusterEnvelope.header(frame);
+            assertEquals(-7, header.origin());
+            assertEquals(123456789L, header.hlc());
+            assertEquals("lobby", header.room());
+            assertEquals(-1, header.inflatedLength());
+            assertArrayEquals(BODY, ClusterEnvelope.body(frame, header));
+        }
+
+        @Test
+        @DisplayName("should tell a message without a room from one in a room with an empty name")
+        void shouldKeepNoRoomApartFromEmptyRoom() {
+            // Given
+            ClusterEnvelope envelope = new ClusterEnvelope(0);
+
+            // Then
+            assertNull(ClusterEnvelope.header(envelope.seal(1, 1, null, BODY)).room());
+            assertEquals("", ClusterEnvelope.header(envelope.seal(1, 1, "", BODY)).room());
+        }
+
+        @Test
+        @DisplayName("should deflate bodies from the threshold up and leave smaller ones as they are")
+        void shouldDeflateBodiesFromThreshold() {
+            // Given
+            ClusterEnvelope envelope = new ClusterEnvelope(BODY.length);
+
+            // When
+            byte[] compressed = envelope.seal(1, 1, "lobby", BODY);
+            byte[] small = envelope.seal(1, 1, "lobby", "{}".getBytes(StandardCharsets.UTF_8));
+
+            // Then
+            assertTrue(compressed.length < BODY.length);
+            assertEquals(BODY.length, ClusterEnvelope.header(compressed).inflatedLength());
+            assertArrayEquals(BODY, ClusterEnvelope.open(compressed));
+            assertEquals(-1, ClusterEnvelope.header(small).inflatedLength());
+        }
+    }
+
+    @Nested
+    @DisplayName("reading")
+    class ReadingTest {
+
+        @Test
+        @DisplayName("should pass bare JSON from nodes without envelopes through")
+        void shouldPassBareJsonThrough() {
+            // Then
+            assertFalse(ClusterEnvelope.isSealed(BODY));
+            assertSame(BODY, ClusterEnvelope.open(BODY));
+        }
+
+        @Test
+        @DisplayName("should reject truncated frames and unknown versions")
+        void shouldRejectTruncatedFramesAndUnknownVersions() {
+            // Given
+            byte[] frame = new ClusterEnvelope(0).seal(1, 1, "lobby", BODY);
+            byte[] future = frame.clone();
+            future[1] = 9;
+
+            // Then
+            assertThrows(IllegalArgumentException.class, () -> ClusterEnvelope.header(new byte[]{ClusterEnvelope.MAGIC, 1, 0}));
+            assertThrows(IllegalArgumentException.class, () -> ClusterEnvelope.header(Arrays.copyOf(frame, 20)));
+            assertThrows(IllegalArgumentException.class, () -> ClusterEnvelope.header(future));
+        }
+
+        @Test
+        @DisplayName("should reject a compressed body that does not inflate to its declared length")
+        void shouldRejectCorruptCompressedBody() {
+            // Given
+            byte[] frame = new ClusterEnvelope(1).seal(1, 1, "lobby", BODY);
+            byte[] truncated = Arrays.copyOf(frame, frame.length - 10);
+
+            // Then
+            assertThrows(IllegalArgumentException.class,
+                    () -> ClusterEnvelope.body(truncated, ClusterEnvelope.header(truncated)));
+        }
+
+        @Test
+        @DisplayName("should reject a declared inflated length beyond the cap before allocating for it")
+        void shouldRejectOversizedInflatedLength() {
+            // Given: the inflated length follows the 18 header bytes and the 5 of "lobby"
+            byte[] frame = new ClusterEnvelope(1).seal(1, 1, "lobby", BODY);
+            ByteBuffer.wrap(frame).putInt(23, ClusterEnvelope.MAX_INFLATED_LENGTH + 1);
+
+            // Then
+            assertThrows(IllegalArgumentException.class, () -> ClusterEnvelope.header(frame));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package net.malevy.chatserver.infrastructure.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.malevy.chatserver.config.ObjectMapperConfig;
+import net.malevy.chatserver.domain.entities.ChatMessage;
+import net.malevy.chatserver.domain.entities.MessageIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundMessageReaderTest {
+
+    private static final InboundMessageLimits LIMITS = new InboundMessageLimits(1024, 200, 40);
+
+    private ObjectMapper mapper;
+    private InboundMessageReader reader;
+
+    @BeforeEach
+    void setUp() {
+        mapper = new ObjectMapperConfig().buildObjectMapper();
+        reader = new InboundMessageReader(LIMITS);
+    }
+
+    private RejectedMessageException rejected(String json) {
+        return assertThrows(RejectedMessageException.class, () -> reader.readJson(json));
+    }
+
+    @Nested
+    @DisplayName("readJson method")
+    class ReadJsonTest {
+
+        @Test
+        @DisplayName("should read what the ObjectMapper writes")
+        void shouldReadSerializedMessage() throws Exception {
+            // Given
+            ChatMessage original = ChatMessage.create("Hello", "alice", MessageIdGenerator.RANDOM);
+            original.setRoom("lobby");
+            original.setTimestamp(Instant.parse("2024-01-01T12:00:00.123Z"));
+            original.setNodeId("node-1");
+            original.setHlc(42L);
+
+            // When
+            ChatMessage read = reader.readJson(mapper.writeValueAsString(original));
+
+            // Then
+            assertEquals(original.getId(), read.getId());
+            assertEquals("message", read.getType());
+            assertEquals("Hello", read.getMessage());
+            assertEquals("alice", read.getUsername());
+            assertEquals("lobby", read.getRoom());
+            assertEquals(original.getTimestamp(), read.getTimestamp());
+            // the server's own fields are never taken from a client
+            assertNull(read.getNodeId());
+            assertNull(read.getHlc());
+        }
+
+        @Test
+        @DisplayName("should read the few fields a client needs to send")
+        void shouldReadMinimalMessage() throws Exception {
+            // When
+            ChatMessage read = reader.readJson("{\"type\":\"direct\",\"to\":\"bob\",\"message\":\"psst\"}");
+
+            // Then
+            assertEquals("direct", read.getType());
+            assertEquals("bob", read.getTo());
+            assertEquals("psst", read.getMessage());
+            assertNull(read.getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should read a timestamp given as seconds since the epoch")
+        void shouldReadNumericTimestamp() throws Exception {
+            assertEquals(Instant.ofEpochSecond(1700000000), reader.readJson("{\"timestamp\":1700000000}").getTimestamp());
+            assertEquals(Instant.ofEpochSecond(1700000000, 500_000_000),
+                    reader.readJson("{\"timestamp\":1700000000.5}").getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should reject a frame over the size limit before parsing it")
+        void shouldRejectOversizedFrame() {
+            // When
+            RejectedMessageException e = rejected("{\"message\":\"" + "x".repeat(1100) + "\"}");
+
+            // Then
+            assertTrue(e.oversized());
+            assertNull(e.getCause());
+        }
+
+        @Test
+        @DisplayName("should reject a field over its length limit")
+        void shouldRejectOversizedField() {
+            assertTrue(rejected("{\"message\":\"" + "x".repeat(201) + "\"}").oversized());
+            assertTrue(rejected("{\"room\":\"" + "r".repeat(41) + "\"}").oversized());
+        }
+
+        @Test
+        @DisplayName("should accept fields right at their length limit")
+        void shouldAcceptFieldsAtLimit() throws Exception {
+            // When
+            ChatMessage read = reader.readJson("{\"message\":\"" + "x".repeat(200) + "\",\"room\":\"" + "r".repeat(40) + "\"}");
+
+            // Then
+            assertEquals(200, read.getMessage().length());
+            assertEquals(40, read.getRoom().length());
+        }
+
+        @Test
+        @DisplayName("should reject an unknown field")
+        void shouldRejectUnknownField() {
+            assertFalse(rejected("{\"type\":\"message\",\"admin\":true}").oversized());
+        }
+
+        @Test
+        @DisplayName("should reject a value of the wrong shape")
+        void shouldRejectWrongShape() {
+            rejected("{\"message\":42}");
+            rejected("{\"room\":[\"a\",\"b\"]}");
+            rejected("{\"hlc\":{\"a\":1}}");
+            rejected("{\"timestamp\":\"yesterday\"}");
+        }
+
+        @Test
+        @DisplayName("should reject anything but a single object")
+        void shouldRejectNonObjects() {
+            rejected("[]");
+            rejected("\"message\"");
+            rejected("{\"type\":\"message\"} {}");
+            rejected("{\"type\":\"mess");
+            rejected("");
+        }
+    }
+
+    @Nested
+    @DisplayName("readCbor method")
+    class ReadCborTest {
+
+        @Test
+        @DisplayName("should read a CBOR message from a heap or direct buffer")
+        void shouldReadCbor() throws Exception {
+            // Given
+            ChatMessage original = ChatMessage.create("Hello", "alice", MessageIdGenerator.RANDOM);
+            byte[] cbor = mapper.copyWith(new CBORFactory()).writeValueAsBytes(original);
+            ByteBuffer direct = ByteBuffer.allocateDirect(cbor.length).put(cbor).flip();
+
+            // When & Then
+            assertEquals("Hello", reader.readCbor(ByteBuffer.wrap(cbor)).getMessage());
+            assertEquals(original.getTimestamp(), reader.readCbor(direct).getTimestamp());
+        }
+
+        @Test
+        @DisplayName("should apply the same limits as to JSON")
+        void shouldApplyLimits() throws Exception {
+            // Given
+            byte[] cbor = mapper.copyWith(new CBORFactory()).writeValueAsBytes(ChatMessage.create("x".repeat(201), "alice", MessageIdGenerator.RANDOM));
+
+            // When
+            RejectedMessageException e = assertThrows(RejectedMessageException.class, () -> reader.readCbor(ByteBuffer.wrap(cbor)));
+
+            // Then
+            assertTrue(e.oversized());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.malevy.chatserver.infrastructure.diagnostics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadPinningMonitorTest {
+
+    private VirtualThreadPinningMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new VirtualThreadPinningMonitor(Duration.ofMillis(5));
+        monitor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    @DisplayName("should record a virtual thread that blocks inside a monitor")
+    void shouldRecordVirtualThreadThatBlocksInsideMonitor() throws InterruptedException {
+        // Given
+        final Object monitorLock = new Object();
+
+        // When
+        Thread.ofVirtual().start(() -> {
+            synchronized (monitorLock) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).join();
+
+        // Then
+        await().atMost(Duration.ofSeconds(10)).until(() -> monitor.pinnedCount() > 0);
+        assertTrue(monitor.pinnedCount() >= 1);
+    }
+}
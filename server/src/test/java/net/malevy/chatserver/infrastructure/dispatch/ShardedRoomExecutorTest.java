@@ -0,0 +1,254 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedRoomExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ShardedRoomExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new ShardedRoomExecutor(4, 1000, 1000, meterRegistry);
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.stop();
+    }
+
+    @Nested
+    @DisplayName("execute method")
+    class ExecuteTest {
+
+        @Test
+        @DisplayName("should run a room's tasks one at a time in submission order")
+        void shouldRunRoomTasksInSubmissionOrder() {
+            // Given
+            List<Integer> seen = new CopyOnWriteArrayList<>();
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+
+            // When
+            for (int i = 0; i < 500; i++) {
+                final int n = i;
+                assertTrue(executor.execute("lobby", () -> {
+                    if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                    seen.add(n);
+                    running.decrementAndGet();
+                }));
+            }
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> seen.size() == 500);
+            for (int i = 0; i < 500; i++) assertEquals(i, seen.get(i));
+            assertEquals(0, overlaps.get());
+        }
+
+        @Test
+        @DisplayName("should keep each room's order when many threads submit")
+        void shouldKeepEachRoomsOrderWithConcurrentProducers() throws Exception {
+            // Given
+            int producers = 8;
+            int perProducer = 2_000;
+            Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+            // When: each producer owns a room, so its submissions have a defined order
+            try (ExecutorService threads = Executors.newFixedThreadPool(producers)) {
+                for (int p = 0; p < producers; p++) {
+                    final String room = "room-" + p;
+                    seen.put(room, new CopyOnWriteArrayList<>());
+                    threads.submit(() -> {
+                        for (int i = 0; i < perProducer; i++) {
+                            final int n = i;
+                            while (!executor.execute(room, () -> seen.get(room).add(n))) Thread.onSpinWait();
+                        }
+                    });
+                }
+            }
+
+            // Then
+            await().atMost(Duration.ofSeconds(10))
+                    .until(() -> seen.values().stream().allMatch(list -> list.size() == perProducer));
+            for (List<Integer> list : seen.values()) {
+                for (int i = 0; i < perProducer; i++) assertEquals(i, list.get(i));
+            }
+        }
+
+        @Test
+        @DisplayName("should always send a room to the same shard and spread rooms across shards")
+        void shouldMapRoomsToStableShards() {
+            // Given
+            Set<Integer> used = new HashSet<>();
+
+            // When
+            for (int i = 0; i < 100; i++) {
+                final int shard = executor.shardOf("room-" + i);
+                assertEquals(shard, executor.shardOf("room-" + i));
+                used.add(shard);
+            }
+
+            // Then
+            assertEquals(executor.shards(), used.size());
+            assertEquals(executor.shardOf(""), executor.shardOf(null));
+        }
+
+        @Test
+        @DisplayName("should reject tasks once a shard's queue is full, without affecting other shards")
+        void shouldRejectTasksWhenShardIsFull() throws InterruptedException {
+            // Given
+            ShardedRoomExecutor small = new ShardedRoomExecutor(2, 2, 2, meterRegistry);
+            small.start();
+            String busy = "busy";
+            String other = findRoomOnOtherShard(small, busy);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch blocked = new CountDownLatch(1);
+            assertTrue(small.execute(busy, () -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            blocked.await();
+
+            // When
+            boolean first = small.execute(busy, () -> { });
+            boolean second = small.execute(busy, () -> { });
+            boolean third = small.execute(busy, () -> { });
+            CountDownLatch otherRan = new CountDownLatch(1);
+            boolean elsewhere = small.execute(other, otherRan::countDown);
+
+            // Then
+            assertTrue(first);
+            assertTrue(second);
+            assertFalse(third);
+            assertTrue(elsewhere);
+            otherRan.await();
+            assertEquals(1.0, meterRegistry.counter("chat.dispatch.rejected", "limit", "shard").count());
+            release.countDown();
+            small.stop();
+        }
+
+        @Test
+        @DisplayName("should reject a room's tasks past its share of the shard, while rooms beside it carry on")
+        void shouldRejectTasksPastRoomCapacity() throws InterruptedException {
+            // Given
+            ShardedRoomExecutor quota = new ShardedRoomExecutor(1, 10, 2, meterRegistry);
+            quota.start();
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch blocked = new CountDownLatch(1);
+            assertTrue(quota.execute("busy", () -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            blocked.await();
+
+            // When
+            boolean first = quota.execute("busy", () -> { });
+            boolean second = quota.execute("busy", () -> { });
+            boolean third = quota.execute("busy", () -> { });
+            CountDownLatch quietRan = new CountDownLatch(1);
+            boolean quiet = quota.execute("quiet", quietRan::countDown);
+
+            // Then
+            assertTrue(first);
+            assertTrue(second);
+            assertFalse(third);
+            assertTrue(quiet);
+            assertEquals(1.0, meterRegistry.counter("chat.dispatch.rejected", "limit", "room").count());
+            release.countDown();
+            quietRan.await();
+
+            // When: the room's share is given back as its tasks run
+            await().atMost(Duration.ofSeconds(5)).until(() -> quota.execute("busy", () -> { }));
+            quota.stop();
+        }
+
+        @Test
+        @DisplayName("should keep running after a task throws")
+        void shouldKeepRunningAfterTaskThrows() {
+            // Given
+            List<String> seen = new CopyOnWriteArrayList<>();
+
+            // When
+            executor.execute("lobby", () -> {
+                throw new IllegalStateException("boom");
+            });
+            executor.execute("lobby", () -> seen.add("after"));
+
+            // Then
+            await().atMost(Duration.ofSeconds(5)).until(() -> seen.size() == 1);
+        }
+    }
+
+    @Nested
+    @DisplayName("stop method")
+    class StopTest {
+
+        @Test
+        @DisplayName("should run tasks accepted before stopping")
+        void shouldRunTasksAcceptedBeforeStopping() throws InterruptedException {
+            // Given
+            List<Integer> seen = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int n = i;
+                executor.execute("lobby", () -> seen.add(n));
+            }
+
+            // When
+            executor.stop();
+
+            // Then
+            assertEquals(100, seen.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should reject fewer than one shard, a queue without room or a room share beyond the queue")
+        void shouldRejectInvalidSizes() {
+            assertThrows(IllegalArgumentException.class, () -> new ShardedRoomExecutor(0, 10, 10, meterRegistry));
+            assertThrows(IllegalArgumentException.class, () -> new ShardedRoomExecutor(1, 0, 1, meterRegistry));
+            assertThrows(IllegalArgumentException.class, () -> new ShardedRoomExecutor(1, 10, 0, meterRegistry));
+            assertThrows(IllegalArgumentException.class, () -> new ShardedRoomExecutor(1, 10, 11, meterRegistry));
+        }
+    }
+
+    private static String findRoomOnOtherShard(ShardedRoomExecutor executor, String room) {
+        for (int i = 0; ; i++) {
+            if (executor.shardOf("room-" + i) != executor.shardOf(room)) return "room-" + i;
+        }
+    }
+}
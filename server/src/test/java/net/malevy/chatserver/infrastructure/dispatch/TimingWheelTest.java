@@ -0,0 +1,117 @@
+package net.malevy.chatserver.infrastructure.dispatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    // 10ms ticks, 8 slots: one turn is 80ms
+    private TimingWheel<String> wheel;
+    private List<String> expired;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel<>(10, 8, 0);
+        expired = new ArrayList<>();
+    }
+
+    @Nested
+    @DisplayName("advance method")
+    class AdvanceTest {
+
+        @Test
+        @DisplayName("should expire an item only once its deadline has passed")
+        void shouldExpireAtDeadline() {
+            // Given
+            wheel.schedule("a", 35);
+
+            // When & Then
+            wheel.advance(30, expired::add);
+            assertEquals(List.of(), expired);
+            wheel.advance(40, expired::add);
+            assertEquals(List.of("a"), expired);
+            wheel.advance(50, expired::add);
+            assertEquals(List.of("a"), expired);
+        }
+
+        @Test
+        @DisplayName("should keep an item more than a turn away until the turn it is due")
+        void shouldKeepItemsBeyondOneTurn() {
+            // Given: the same slot as tick 2, two turns later
+            wheel.schedule("far", 180);
+
+            // When & Then
+            wheel.advance(20, expired::add);
+            wheel.advance(100, expired::add);
+            assertEquals(List.of(), expired);
+            wheel.advance(180, expired::add);
+            assertEquals(List.of("far"), expired);
+        }
+
+        @Test
+        @DisplayName("should expire everything due when advanced past more than a turn at once")
+        void shouldCatchUpAfterLongPause() {
+            // Given
+            wheel.schedule("a", 10);
+            wheel.schedule("b", 75);
+            wheel.schedule("c", 300);
+            wheel.schedule("d", 500);
+
+            // When
+            wheel.advance(400, expired::add);
+
+            // Then
+            assertEquals(List.of("a", "b", "c"), expired.stream().sorted().toList());
+        }
+
+        @Test
+        @DisplayName("should expire an item scheduled in the past on the next advance")
+        void shouldExpirePastDeadlineOnNextAdvance() {
+            // Given
+            wheel.advance(100, expired::add);
+
+            // When
+            wheel.schedule("late", 50);
+            wheel.advance(100, expired::add);
+
+            // Then
+            assertEquals(List.of("late"), expired);
+        }
+
+        @Test
+        @DisplayName("should let an expiring item reschedule itself")
+        void shouldAllowRescheduleFromCallback() {
+            // Given
+            wheel.schedule("again", 10);
+
+            // When
+            wheel.advance(10, item -> {
+                expired.add(item);
+                wheel.schedule(item, 30);
+            });
+            wheel.advance(30, expired::add);
+
+            // Then
+            assertEquals(List.of("again", "again"), expired);
+        }
+    }
+
+    @Nested
+    @DisplayName("Constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should reject a slot count that is not a power of two")
+        void shouldRejectInvalidSlots() {
+            assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(10, 6, 0));
+            assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(0, 8, 0));
+        }
+    }
+}
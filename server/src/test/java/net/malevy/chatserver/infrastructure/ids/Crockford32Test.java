@@ -0,0 +1,59 @@
+package net.malevy.chatserver.infrastructure.ids;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Crockford32Test {
+
+    @Nested
+    @DisplayName("encode method")
+    class EncodeTest {
+
+        @Test
+        @DisplayName("should pad to thirteen characters")
+        void shouldPadToThirteenCharacters() {
+            assertEquals("0000000000000", Crockford32.encode(0));
+            assertEquals("000000000000Z", Crockford32.encode(31));
+            assertEquals("0000000000010", Crockford32.encode(32));
+        }
+
+        @Test
+        @DisplayName("should treat the value as unsigned")
+        void shouldTreatValueAsUnsigned() {
+            assertEquals("FZZZZZZZZZZZZ", Crockford32.encode(-1));
+            assertTrue(Crockford32.encode(Long.MAX_VALUE).compareTo(Crockford32.encode(Long.MIN_VALUE)) < 0);
+        }
+    }
+
+    @Nested
+    @DisplayName("decode method")
+    class DecodeTest {
+
+        @Test
+        @DisplayName("should round trip any value")
+        void shouldRoundTripAnyValue() {
+            for (long value : new long[]{0, 1, 31, 32, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, -1}) {
+                assertEquals(value, Crockford32.decode(Crockford32.encode(value)));
+            }
+        }
+
+        @Test
+        @DisplayName("should accept lower case and the I, L and O aliases")
+        void shouldAcceptLowerCaseAndAliases() {
+            assertEquals(Crockford32.decode("00000000011AB"), Crockford32.decode("o00000000i1ab"));
+            assertEquals(Crockford32.decode("0000000000011"), Crockford32.decode("00000000000Il"));
+        }
+
+        @Test
+        @DisplayName("should reject text of the wrong length or with letters outside the alphabet")
+        void shouldRejectInvalidText() {
+            assertThrows(IllegalArgumentException.class, () -> Crockford32.decode("000000000000"));
+            assertThrows(IllegalArgumentException.class, () -> Crockford32.decode("000000000000U"));
+            assertThrows(IllegalArgumentException.class, () -> Crockford32.decode("G000000000000"));
+            assertThrows(IllegalArgumentException.class, () -> Crockford32.decode("3f2c4a1e-8d5b-4c6f-9e7a-1b2c3d4e5f60"));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.malevy.chatserver.infrastructure.ids;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+    @Nested
+    @DisplayName("nextId method")
+    class NextIdTest {
+
+        @Test
+        @DisplayName("should carry the worker and the clock's millisecond")
+        void shouldCarryWorkerAndMillisecond() {
+            // Given
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42, new SteppingClock(NOW.toEpochMilli()));
+
+            // When
+            long id = generator.nextId();
+
+            // Then
+            assertEquals(42, SnowflakeIdGenerator.workerOf(id));
+            assertEquals(NOW, SnowflakeIdGenerator.timestampOf(id));
+        }
+
+        @Test
+        @DisplayName("should increase within the same millisecond")
+        void shouldIncreaseWithinSameMillisecond() {
+            // Given
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, new SteppingClock(NOW.toEpochMilli()));
+
+            // When
+            long first = generator.nextId();
+            long second = generator.nextId();
+
+            // Then
+            assertEquals(first + 1, second);
+        }
+
+        @Test
+        @DisplayName("should carry into the next millisecond when the sequence is used up")
+        void shouldCarryIntoNextMillisecondWhenSequenceIsUsedUp() {
+            // Given
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, new SteppingClock(NOW.toEpochMilli()));
+            long previous = generator.nextId();
+
+            // When
+            for (int i = 1; i <= 1 << SnowflakeIdGenerator.SEQUENCE_BITS; i++) {
+                long id = generator.nextId();
+                assertTrue(id > previous);
+                previous = id;
+            }
+
+            // Then
+            assertEquals(NOW.plusMillis(1), SnowflakeIdGenerator.timestampOf(previous));
+            assertEquals(1, SnowflakeIdGenerator.workerOf(previous));
+        }
+
+        @Test
+        @DisplayName("should keep increasing when the clock steps back")
+        void shouldKeepIncreasingWhenClockStepsBack() {
+            // Given
+            SteppingClock clock = new SteppingClock(NOW.toEpochMilli());
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock);
+            long before = generator.nextId();
+
+            // When
+            clock.millis = NOW.toEpochMilli() - 5_000;
+            long after = generator.nextId();
+
+            // Then
+            assertTrue(after > before);
+            assertEquals(NOW, SnowflakeIdGenerator.timestampOf(after));
+        }
+
+        @Test
+        @DisplayName("should hand out unique increasing ids to concurrent callers")
+        void shouldHandOutUniqueIdsToConcurrentCallers() throws Exception {
+            // Given
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, Clock.systemUTC());
+            int threads = 8;
+            int perThread = 20_000;
+            Callable<long[]> task = () -> {
+                long[] ids = new long[perThread];
+                for (int i = 0; i < perThread; i++) ids[i] = generator.nextId();
+                return ids;
+            };
+
+            // When
+            List<Future<long[]>> results = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+                for (int t = 0; t < threads; t++) results.add(executor.submit(task));
+            }
+
+            // Then
+            Set<Long> seen = new HashSet<>();
+            for (Future<long[]> result : results) {
+                long[] ids = result.get();
+                for (int i = 0; i < ids.length; i++) {
+                    assertTrue(seen.add(ids[i]), "duplicate id");
+                    if (i > 0) assertTrue(ids[i] > ids[i - 1], "ids went backwards within a thread");
+                }
+            }
+            assertEquals(threads * perThread, seen.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("next method")
+    class NextTest {
+
+        @Test
+        @DisplayName("should produce 13-character ids that sort as strings in the order they were made")
+        void shouldProduceIdsThatSortAsStrings() {
+            // Given
+            SteppingClock clock = new SteppingClock(NOW.toEpochMilli());
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER, clock);
+
+            // When
+            String first = generator.next();
+            clock.millis += 1;
+            String second = generator.next();
+            String third = generator.next();
+
+            // Then
+            assertEquals(Crockford32.LENGTH, first.length());
+            assertTrue(first.compareTo(second) < 0);
+            assertTrue(second.compareTo(third) < 0);
+            assertEquals(SnowflakeIdGenerator.MAX_WORKER, SnowflakeIdGenerator.workerOf(Crockford32.decode(third)));
+        }
+    }
+
+    @Nested
+    @DisplayName("constructor")
+    class ConstructorTest {
+
+        @Test
+        @DisplayName("should reject a worker outside the ten-bit range")
+        void shouldRejectWorkerOutsideRange() {
+            assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1, Clock.systemUTC()));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER + 1, Clock.systemUTC()));
+        }
+
+        @Test
+        @DisplayName("should reject a null clock")
+        void shouldRejectNullClock() {
+            assertThrows(NullPointerException.class, () -> new SnowflakeIdGenerator(1, null));
+        }
+    }
+
+    private static final class SteppingClock extends Clock {
+        private volatile long millis;
+
+        SteppingClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}